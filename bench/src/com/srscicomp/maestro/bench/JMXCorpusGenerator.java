@@ -0,0 +1,480 @@
+package com.srscicomp.maestro.bench;
+
+import java.io.File;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.srscicomp.maestro.JMXDoc;
+
+/**
+ * Generates synthetic, valid JSON-formatted <i>Maestro</i> experiment (JMX) documents of a chosen size, for use in
+ * benchmarks and scale testing.
+ *
+ * <p>The document content is pseudo-random but entirely determined by the size parameters and the random seed in the
+ * {@link Spec} provided, so the same document is produced on every run. The document is built through the public
+ * <code>JMXDoc</code> API, so every object added is validated as it would be in <i>maestrodoc()</i>; generation fails
+ * with a {@link JSONException} if that is not the case.</p>
+ *
+ * <p>Content and naming conventions:
+ * <ul>
+ *    <li>The application settings are randomized within their allowed ranges.</li>
+ *    <li>Channel configurations are named "chcfg_K" and perturbations "pert_K". Perturbation types cycle through all
+ *    four waveform types.</li>
+ *    <li>Target sets are named "tgset_I", and the targets in each set "tgt_J". The target type cycles through all
+ *    RMVideo target types -- point, dotpatch, flowfield, bar, spot, grating, plaid, movie, image -- so every type is
+ *    represented once the document has at least 9 targets. Every parameter applicable to a target's type is set.</li>
+ *    <li>Trial sets are named "trset_I". Each holds trials named "trial_J", followed by trial subsets "subset_K", each
+ *    of which holds trials named "trial_J".</li>
+ *    <li>Every trial sets every general trial parameter -- chancfg, wt, keep, startseg, failsafeseg, specialseg,
+ *    specialop, saccvt, marksegs, mtr, rewpulses, rewWHVR, stair -- and every segment header and trajectory parameter.
+ *    Each trial includes a tagged section and up to 4 perturbations, and it defines the requested number of random
+ *    variables (cycling through all RV types) with each RV assigned to a segment table parameter. Participating targets
+ *    are drawn at random, without replacement, from all targets in the document.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Usage: <code>java com.srscicomp.maestro.bench.JMXCorpusGenerator outfile.jmx [-name value ...]</code>, where each
+ * option name is a field of {@link Spec}, eg: <code>-trialsPerSet 5000 -tgtsPerTrial 50 -seed 7</code>.</p>
+ *
+ * @author sruffner
+ */
+public class JMXCorpusGenerator
+{
+   /** The size parameters and random seed that determine the content of a generated JMX document. */
+   public static class Spec
+   {
+      /** Seed for the pseudo-random number generator. */
+      public long seed = 1;
+      /** Number of channel configurations. */
+      public int chancfgs = 2;
+      /** Number of perturbation waveforms. */
+      public int perts = 4;
+      /** Number of target sets. */
+      public int targetSets = 2;
+      /** Number of targets in each target set. */
+      public int targetsPerSet = 20;
+      /** Number of trial sets. */
+      public int trialSets = 2;
+      /** Number of trials that are direct children of each trial set. */
+      public int trialsPerSet = 50;
+      /** Number of trial subsets in each trial set. */
+      public int subsetsPerSet = 1;
+      /** Number of trials in each trial subset. */
+      public int trialsPerSubset = 10;
+      /** Number of segments in each trial. */
+      public int segs = 6;
+      /** Number of participating targets in each trial, restricted to [1..50] and the number of targets defined. */
+      public int tgtsPerTrial = 8;
+      /** Number of random variables defined in each trial, restricted to [0..10]. */
+      public int rvs = 2;
+
+      /** @return Total number of trials in the generated document. */
+      public int totalTrials() { return(trialSets * (trialsPerSet + subsetsPerSet*trialsPerSubset)); }
+   }
+
+   /**
+    * Generate a synthetic JMX document IAW the specified size parameters and random seed.
+    * @param spec The document specification.
+    * @return The generated document.
+    * @throws JSONException if any generated object fails validation. This should not happen.
+    */
+   public static JMXDoc generate(Spec spec) throws JSONException
+   {
+      return(new JMXCorpusGenerator(spec).build());
+   }
+
+   /**
+    * Generate a synthetic JMX document IAW the specified size parameters and random seed, then save it to file.
+    * @param spec The document specification.
+    * @param f The destination file. File extension must be ".jmx".
+    * @throws JSONException if any generated object fails validation, or if the save operation fails.
+    */
+   public static void generate(Spec spec, File f) throws JSONException
+   {
+      JMXDoc doc = generate(spec);
+      check(JMXDoc.saveDocument(doc, f.getAbsolutePath()));
+   }
+
+   public static void main(String[] args)
+   {
+      if(args.length < 1 || (args.length % 2) != 1)
+      {
+         System.out.println("Usage: JMXCorpusGenerator outfile.jmx [-name value ...]");
+         System.exit(1);
+      }
+
+      Spec spec = new Spec();
+      try
+      {
+         for(int i=1; i<args.length; i+=2)
+         {
+            if(!args[i].startsWith("-")) throw new IllegalArgumentException("Bad option: " + args[i]);
+            java.lang.reflect.Field fld = Spec.class.getField(args[i].substring(1));
+            if(fld.getType() == long.class) fld.setLong(spec, Long.parseLong(args[i+1]));
+            else fld.setInt(spec, Integer.parseInt(args[i+1]));
+         }
+      }
+      catch(Exception e)
+      {
+         System.out.println("Invalid option: " + e.getMessage());
+         System.exit(1);
+      }
+
+      try
+      {
+         long tStart = System.currentTimeMillis();
+         generate(spec, new File(args[0]));
+         System.out.println("Generated " + spec.totalTrials() + " trials in " + args[0] + " (" +
+               (System.currentTimeMillis() - tStart) + " ms)");
+      }
+      catch(JSONException jse)
+      {
+         System.out.println("FAIL: " + jse.getMessage());
+         System.exit(1);
+      }
+   }
+
+
+   JMXCorpusGenerator(Spec spec)
+   {
+      this.spec = spec;
+      this.rng = new Random(spec.seed);
+   }
+
+   /** The document specification. */
+   private final Spec spec;
+   /** The pseudo-random number generator, seeded IAW the document specification. */
+   private final Random rng;
+   /** Paths "set/tgt" of all targets defined in the document. */
+   private String[] tgtPaths;
+
+   JMXDoc build() throws JSONException
+   {
+      JMXDoc doc = JMXDoc.openDocument(null, null);
+
+      check(doc.changeSettings(
+            new int[] {range(300, 500), range(200, 400), range(400, 1000), rng.nextInt(0x01000000), range(0, 50),
+                  range(1, 9)},
+            new double[] {dbl(0.5, 5), dbl(0.5, 5)},
+            new int[] {range(500, 3000), range(1, 999), range(1, 999), rng.nextInt(2), range(1, 10),
+                  rng.nextBoolean() ? 0 : range(100, 1000), rng.nextInt(2), range(1, 20)}));
+
+      for(int i=0; i<spec.chancfgs; i++) check(doc.addChanCfg("chcfg_" + i, randomChannels()));
+
+      for(int i=0; i<spec.perts; i++)
+      {
+         String type = PERT_TYPES[i % PERT_TYPES.length];
+         double[] params;
+         switch(type)
+         {
+         case "sinusoid" : params = new double[] {range(10, 2000), range(-180, 180)}; break;
+         case "pulse train" :
+            int rd = range(0, 20), pd = range(10, 200);
+            params = new double[] {rd, pd, pd + 2*rd + range(0, 500)};
+            break;
+         default : params = new double[] {range(1, 20), dbl(-1, 1), range(0, 10000000)}; break;
+         }
+         check(doc.addPert("pert_" + i, type, range(10, 5000), params));
+      }
+
+      int nTgts = spec.targetSets * spec.targetsPerSet;
+      tgtPaths = new String[nTgts];
+      int k = 0;
+      for(int i=0; i<spec.targetSets; i++)
+      {
+         String set = "tgset_" + i;
+         check(doc.addTargetSet(set));
+         for(int j=0; j<spec.targetsPerSet; j++)
+         {
+            String type = RMVTYPES[k % RMVTYPES.length];
+            String name = "tgt_" + j;
+            check(doc.addTarget(set, name, type, randomTargetParams(type)));
+            tgtPaths[k++] = set + "/" + name;
+         }
+      }
+
+      for(int i=0; i<spec.trialSets; i++)
+      {
+         String set = "trset_" + i;
+         check(doc.addTrialSet(set));
+         for(int j=0; j<spec.trialsPerSet; j++) check(doc.addTrial(set, randomTrial("trial_" + j)));
+         for(int m=0; m<spec.subsetsPerSet; m++)
+         {
+            String subset = "subset_" + m;
+            check(doc.addTrialSubset(set, subset));
+            for(int j=0; j<spec.trialsPerSubset; j++)
+               check(doc.addTrialToSubset(set, subset, randomTrial("trial_" + j)));
+         }
+      }
+
+      return(doc);
+   }
+
+   private JSONArray randomChannels() throws JSONException
+   {
+      JSONArray channels = new JSONArray();
+      int n = range(1, 8);
+      int first = rng.nextInt(CHANNELS.length - n + 1);
+      for(int i=0; i<n; i++)
+      {
+         JSONArray ch = new JSONArray();
+         ch.put(CHANNELS[first + i]).put(rng.nextInt(2)).put(rng.nextInt(2)).put(range(-90000, 90000));
+         ch.put(range(-5, 5)).put(COLORS[rng.nextInt(COLORS.length)]);
+         channels.put(ch);
+      }
+      return(channels);
+   }
+
+   /**
+    * Generate a random but valid set of parameters for an RMVideo target of the specified type. Every parameter that
+    * applies to the target type is included.
+    * @param type The RMVideo target type.
+    * @return The list of ('param-name', param-value) pairs defining the target.
+    * @throws JSONException if an error occurs while preparing the JSON array. Should not happen.
+    */
+   private JSONArray randomTargetParams(String type) throws JSONException
+   {
+      JSONArray params = new JSONArray();
+      boolean isDots = type.equals("point") || type.equals("dotpatch") || type.equals("flowfield");
+      boolean hasAperture = type.equals("dotpatch") || type.equals("spot") || type.equals("grating") ||
+            type.equals("plaid");
+      boolean isGrating = type.equals("grating") || type.equals("plaid");
+      boolean isMedia = type.equals("movie") || type.equals("image");
+
+      if(isDots)
+         params.put("dotsize").put(range(1, 25)).put("disparity").put(dbl(0, 2));
+      if(isDots || type.equals("bar") || type.equals("spot"))
+         params.put("rgb").put(rng.nextInt(0x01000000));
+      if(type.equals("dotpatch"))
+         params.put("rgbcon").put(rng.nextInt(0x00646464)).put("seed").put(rng.nextInt(100000)).
+               put("wrtscreen").put(rng.nextInt(2));
+      if(type.equals("dotpatch") || type.equals("flowfield"))
+         params.put("ndots").put(range(0, 9999));
+      if(hasAperture)
+         params.put("aperture").put(isGrating ? (rng.nextBoolean() ? "rect" : "oval") : APERTURES[rng.nextInt(4)]);
+
+      if(!(type.equals("point") || type.equals("movie")))
+      {
+         double w = dbl(1, 40), h = dbl(1, 40);
+         JSONArray dim = new JSONArray();
+         if(type.equals("flowfield")) dim.put(w + h).put(h);
+         else if(type.equals("bar")) dim.put(w).put(h).put(dbl(0, 359));
+         else if(type.equals("dotpatch") || type.equals("spot")) dim.put(w).put(h).put(w/2).put(h/2);
+         else dim.put(w).put(h);
+         params.put("dim").put(dim);
+      }
+      if(hasAperture)
+         params.put("sigma").put(new JSONArray().put(dbl(0, 5)).put(dbl(0, 5)));
+
+      if(type.equals("dotpatch"))
+      {
+         params.put("pct").put(range(0, 100));
+         params.put("dotlf").put(new JSONArray().put(rng.nextInt(2)).put(dbl(0, 10)));
+         boolean isDir = rng.nextBoolean(), isMult = rng.nextBoolean();
+         int noiseRng = isDir ? range(0, 180) : (isMult ? range(1, 7) : range(0, 300));
+         params.put("noise").put(new JSONArray().put(isDir ? 1 : 0).put(isMult ? 1 : 0).put(noiseRng).
+               put(range(0, 100)));
+      }
+
+      if(isGrating)
+      {
+         params.put("square").put(rng.nextInt(2)).put("oriadj").put(rng.nextInt(2));
+         params.put("grat1").put(randomGrating());
+         if(type.equals("plaid"))
+            params.put("indep").put(rng.nextInt(2)).put("grat2").put(randomGrating());
+      }
+
+      if(isMedia)
+      {
+         params.put("folder").put("folder_" + range(0, 99)).put("file").put("media_" + range(0, 999) + ".dat");
+         if(type.equals("movie"))
+            params.put("flags").put(new JSONArray().put(rng.nextInt(2)).put(rng.nextInt(2)).put(rng.nextInt(2)));
+      }
+
+      params.put("flicker").put(new JSONArray().put(range(0, 99)).put(range(0, 99)).put(range(0, 99)));
+      return(params);
+   }
+
+   private JSONArray randomGrating() throws JSONException
+   {
+      int con = range(0, 100);
+      JSONArray grat = new JSONArray();
+      grat.put(rng.nextInt(0x01000000)).put((con << 16) | (con << 8) | con).put(dbl(0.01, 4)).put(dbl(0, 359)).
+            put(dbl(-180, 180));
+      return(grat);
+   }
+
+   /**
+    * Generate a random trial IAW the document specification. See class header. The document must be built first, since
+    * the participating targets are drawn from those defined in the document.
+    * @param name The trial name.
+    * @return The trial definition.
+    * @throws JSONException if an error occurs while preparing the JSON trial object. Should not happen.
+    */
+   JSONObject randomTrial(String name) throws JSONException
+   {
+      int nSegs = Math.max(1, spec.segs);
+      int nTgts = Math.max(1, Math.min(Math.min(spec.tgtsPerTrial, 50), tgtPaths.length));
+      int nRVs = Math.max(0, Math.min(spec.rvs, 10));
+
+      JSONObject trial = new JSONObject();
+      trial.put("name", name);
+
+      // general trial parameters -- all of them
+      JSONArray params = new JSONArray();
+      params.put("chancfg").put(spec.chancfgs > 0 ? "chcfg_" + rng.nextInt(spec.chancfgs) : "default");
+      params.put("wt").put(range(0, 255)).put("keep").put(rng.nextInt(2));
+      params.put("startseg").put(range(0, nSegs)).put("failsafeseg").put(range(0, nSegs));
+      params.put("specialseg").put(range(1, nSegs)).put("specialop").put(SPECIALOPS[rng.nextInt(SPECIALOPS.length)]);
+      params.put("saccvt").put(range(0, 999));
+      params.put("marksegs").put(new JSONArray().put(range(0, nSegs)).put(range(0, nSegs)));
+      params.put("mtr").put(new JSONArray().put(rng.nextInt(2)).put(range(1, 999)).put(range(100, 9999)));
+      params.put("rewpulses").put(new JSONArray().put(range(1, 999)).put(range(1, 999)));
+      int d1 = range(1, 100), d2 = range(1, 100);
+      params.put("rewWHVR").put(new JSONArray().put(rng.nextInt(d1)).put(d1).put(rng.nextInt(d2)).put(d2));
+      params.put("stair").put(new JSONArray().put(range(0, 5)).put(dbl(0, 999)).put(rng.nextInt(2)));
+      trial.put("params", params);
+
+      // participating targets: drawn at random, without replacement, from all targets in the document
+      int[] perm = new int[tgtPaths.length];
+      for(int i=0; i<perm.length; i++) perm[i] = i;
+      JSONArray tgts = new JSONArray();
+      for(int i=0; i<nTgts; i++)
+      {
+         int j = i + rng.nextInt(perm.length - i);
+         int tmp = perm[i]; perm[i] = perm[j]; perm[j] = tmp;
+         tgts.put(tgtPaths[perm[i]]);
+      }
+      trial.put("tgts", tgts);
+
+      // perturbations
+      JSONArray perts = new JSONArray();
+      for(int i=0; i<Math.min(4, spec.perts); i++)
+      {
+         JSONArray pert = new JSONArray();
+         pert.put("pert_" + rng.nextInt(spec.perts)).put(dbl(-999, 999)).put(range(1, nSegs)).put(range(1, nTgts));
+         pert.put(PERT_TRAJCMPTS[rng.nextInt(PERT_TRAJCMPTS.length)]);
+         perts.put(pert);
+      }
+      trial.put("perts", perts);
+
+      // a single tagged section
+      JSONArray tags = new JSONArray();
+      int start = range(1, nSegs);
+      tags.put(new JSONArray().put("tag_" + start).put(start).put(range(start, nSegs)));
+      trial.put("tags", tags);
+
+      // random variables, cycling through all RV types, and an assignment of each RV to a segment table parameter
+      if(nRVs > 0)
+      {
+         JSONArray rvs = new JSONArray();
+         JSONArray rvuse = new JSONArray();
+         for(int i=0; i<nRVs; i++)
+         {
+            JSONArray rv = new JSONArray();
+            String type = RVTYPES[i % RVTYPES.length];
+            rv.put(type);
+            switch(type)
+            {
+            case "uniform":
+               double a = dbl(-10, 10);
+               rv.put(range(0, 99999)).put(a).put(a + dbl(0.1, 10));
+               break;
+            case "normal":
+               double sd = dbl(0.1, 5);
+               rv.put(range(0, 99999)).put(dbl(-10, 10)).put(sd).put(3*sd + dbl(0, 5));
+               break;
+            case "exponential":
+               double rate = dbl(0.1, 5);
+               rv.put(range(0, 99999)).put(rate).put(3/rate + dbl(0.1, 5));
+               break;
+            case "gamma":
+               double kappa = dbl(0.1, 5), theta = dbl(0.1, 5);
+               rv.put(range(0, 99999)).put(kappa).put(theta).put(theta*(kappa + 3*Math.sqrt(kappa)) + dbl(0.1, 5));
+               break;
+            default:
+               // a function RV may not depend on another function RV
+               int j = rng.nextInt(i);
+               if(RVTYPES[j % RVTYPES.length].equals("function")) --j;
+               rv.put("2*x" + j + " + sin(pi/4)");
+               break;
+            }
+            rvs.put(rv);
+
+            String pname = RVASSIGNABLE_PARAMS[rng.nextInt(RVASSIGNABLE_PARAMS.length)];
+            rvuse.put(new JSONArray().put(i+1).put(pname).put(range(1, nSegs)).put(range(1, nTgts)));
+         }
+         trial.put("rvs", rvs);
+         trial.put("rvuse", rvuse);
+      }
+
+      // segment table: every header parameter, every trajectory parameter for every target
+      JSONArray segs = new JSONArray();
+      for(int s=0; s<nSegs; s++)
+      {
+         JSONArray hdr = new JSONArray();
+         int minDur = range(0, 500);
+         hdr.put("dur").put(new JSONArray().put(minDur).put(minDur + range(0, 500)));
+         hdr.put("fix1").put(range(0, nTgts)).put("fix2").put(range(0, nTgts));
+         hdr.put("fixacc").put(new JSONArray().put(dbl(0.1, 5)).put(dbl(0.1, 5)));
+         hdr.put("grace").put(range(0, 200)).put("mtrena").put(rng.nextInt(2)).put("chkrsp").put(rng.nextInt(2));
+         hdr.put("rmvsync").put(rng.nextInt(2)).put("marker").put(range(0, 10));
+
+         JSONArray traj = new JSONArray();
+         for(int t=0; t<nTgts; t++)
+         {
+            JSONArray tv = new JSONArray();
+            tv.put("on").put(rng.nextInt(2)).put("abs").put(rng.nextInt(2)).put("snap").put(rng.nextInt(2));
+            tv.put("vstab").put(VSTAB[rng.nextInt(VSTAB.length)]);
+            for(String p : TRAJ_PAIRS) tv.put(p).put(new JSONArray().put(dbl(-50, 50)).put(dbl(-50, 50)));
+            traj.put(tv);
+         }
+
+         JSONObject seg = new JSONObject();
+         seg.put("hdr", hdr);
+         seg.put("traj", traj);
+         segs.put(seg);
+      }
+      trial.put("segs", segs);
+
+      return(trial);
+   }
+
+   /** @return A random integer uniformly distributed over [lo..hi], inclusive. */
+   private int range(int lo, int hi) { return(lo + rng.nextInt(hi - lo + 1)); }
+
+   /** @return A random double uniformly distributed over [lo..hi), rounded to two decimal places. */
+   private double dbl(double lo, double hi)
+   {
+      double d = Math.round((lo + (hi-lo)*rng.nextDouble()) * 100.0) / 100.0;
+      return((d >= hi) ? lo : d);
+   }
+
+   private static void check(String emsg) throws JSONException
+   {
+      if(!emsg.isEmpty()) throw new JSONException(emsg);
+   }
+
+   private final static String[] RMVTYPES =
+         new String[] {"point", "dotpatch", "flowfield", "bar", "spot", "grating", "plaid", "movie", "image"};
+   private final static String[] APERTURES = new String[] {"rect", "oval", "rectannu", "ovalannu"};
+   private final static String[] PERT_TYPES =
+         new String[] {"sinusoid", "pulse train", "uniform noise", "gaussian noise"};
+   private final static String[] PERT_TRAJCMPTS =
+         new String[] {"winH", "winV", "patH", "patV", "winDir", "patDir", "winSpd", "patSpd", "speed", "direc"};
+   private final static String[] SPECIALOPS = new String[] {"none", "skip", "selbyfix", "selbyfix2", "switchfix",
+         "rpdistro", "choosefix1", "choosefix2", "search", "selectDur", "findAndWait"};
+   private final static String[] RVTYPES = new String[] {"uniform", "normal", "exponential", "gamma", "function"};
+   private final static String[] RVASSIGNABLE_PARAMS = new String[] {"mindur", "maxdur", "hpos", "vpos", "hvel",
+         "vvel", "hacc", "vacc", "hpatvel", "vpatvel", "hpatacc", "vpatacc"};
+   private final static String[] VSTAB = new String[] {"none", "h", "v", "hv"};
+   private final static String[] TRAJ_PAIRS = new String[] {"pos", "vel", "acc", "patvel", "patacc"};
+   private final static String[] CHANNELS = new String[] {"hgpos", "vepos", "hevel", "vevel", "htpos", "vtpos",
+         "hhvel", "hhpos", "hdvel", "htpos2", "vtpos2", "vepos2", "ai12", "ai13", "hgpos2", "spwav", "di0", "di1",
+         "fix1_hvel", "fix1_vvel", "fix1_hpos", "fix1_vpos", "fix2_hvel", "fix2_vvel"};
+   private final static String[] COLORS = new String[] {"white", "red", "green", "blue", "yellow", "magenta", "cyan",
+         "dk green", "orange", "purple", "pink", "med gray"};
+}
@@ -0,0 +1,296 @@
+package com.srscicomp.maestro.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.srscicomp.maestro.JMXDoc;
+
+/**
+ * JMH benchmarks for the principal operations on a JSON-formatted <i>Maestro</i> experiment (JMX) document: opening
+ * (parse plus validation), saving, and adding targets and trials to a document that already holds many trials.
+ *
+ * <p>Each benchmark runs against a synthetic document prepared by {@link JMXCorpusGenerator}, containing a single
+ * trial set, <i>trset_0</i>, that holds {@link #nTrials} trials: half of them are direct children of the set, and the
+ * other half are in the trial subset <i>trset_0/subset_0</i>. All trials use the {@link #nTgts} RMVideo targets in
+ * target set <i>tgset_0</i> and have {@link #nSegs} segments. The document parameters can be overridden on the JMH
+ * command line with <code>-p name=v1,v2,...</code>.</p>
+ *
+ * <p>The <code>addXxx()</code> benchmarks replace the LAST trial (or target) in the destination container rather than
+ * appending a new one, so that the document does not grow during a measurement iteration. Each measures the time it
+ * takes to locate the destination container and the existing child plus the time to validate the definition.</p>
+ *
+ * <p>Run {@link #main} to execute all benchmarks reporting throughput and average latency, with the JMH GC profiler
+ * enabled so that the bytes allocated per operation (<i>gc.alloc.rate.norm</i>) are included in the results. Any
+ * command-line arguments are passed on to JMH.</p>
+ *
+ * @author sruffner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class JMXDocBenchmark
+{
+   /** Total number of trials in the benchmark document. */
+   @Param({"10", "100", "1000", "10000", "100000"})
+   public int nTrials;
+
+   /** Number of participating targets in each trial. Maestro allows up to 50. */
+   @Param({"8"})
+   public int nTgts;
+
+   /** Number of segments in each trial. */
+   @Param({"6"})
+   public int nSegs;
+
+   /** The benchmark document, rebuilt at the start of each measurement trial. */
+   private JMXDoc doc;
+
+   /** The document in {@link #doc} is saved to this file prior to the measurement trial. */
+   private File jmxFile;
+
+   /** The document in {@link #doc} is also saved to this gzip-compressed file prior to the measurement trial. */
+   private File gzipFile;
+
+   /** Target file for the {@link #saveDocument} benchmark. */
+   private File saveFile;
+
+   /** Target file for the {@link #saveDocumentGzip} benchmark. */
+   private File saveGzipFile;
+
+   /** Trial definition used by the {@link #addTrial} benchmark. */
+   private JSONObject trialToAdd;
+
+   /** Trial definition used by the {@link #addTrialToSubset} benchmark. */
+   private JSONObject subsetTrialToAdd;
+
+   /** Target parameters used by the {@link #addTarget} benchmark. */
+   private JSONArray targetParams;
+
+   /** Name of the last target in the target set; it is replaced by the {@link #addTarget} benchmark. */
+   private String lastTgtName;
+
+   @Setup(Level.Trial)
+   public void setUp() throws IOException, JSONException
+   {
+      JMXCorpusGenerator gen = new JMXCorpusGenerator(benchmarkSpec(nTrials, nTgts, nSegs));
+      doc = gen.build();
+
+      File dir = Files.createTempDirectory("jmxbench").toFile();
+      jmxFile = new File(dir, "bench.jmx");
+      gzipFile = new File(dir, "bench.jmx.gz");
+      saveFile = new File(dir, "saved.jmx");
+      saveGzipFile = new File(dir, "saved.jmx.gz");
+      String emsg = JMXDoc.saveDocument(doc, jmxFile.getAbsolutePath());
+      if(emsg.isEmpty()) emsg = JMXDoc.saveDocument(doc, gzipFile.getAbsolutePath());
+      if(!emsg.isEmpty()) throw new IOException(emsg);
+
+      int nDirect = nTrials - nTrials/2;
+      trialToAdd = gen.randomTrial("trial_" + (nDirect-1));
+      subsetTrialToAdd = gen.randomTrial("trial_" + Math.max(0, nTrials/2 - 1));
+      targetParams = new JSONArray();
+      targetParams.put("ndots").put(200).put("dotsize").put(2).put("dim").put(new JSONArray().put(10).put(10));
+      lastTgtName = "tgt_" + (nTgts-1);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown()
+   {
+      File dir = jmxFile.getParentFile();
+      if(!jmxFile.delete()) jmxFile.deleteOnExit();
+      if(!gzipFile.delete()) gzipFile.deleteOnExit();
+      if(!saveFile.delete()) saveFile.deleteOnExit();
+      if(!saveGzipFile.delete()) saveGzipFile.deleteOnExit();
+      if(!dir.delete()) dir.deleteOnExit();
+   }
+
+   @Benchmark
+   public JMXDoc openDocument()
+   {
+      StringBuffer errBuf = new StringBuffer();
+      JMXDoc opened = JMXDoc.openDocument(jmxFile.getAbsolutePath(), errBuf);
+      if(opened == null) throw new IllegalStateException(errBuf.toString());
+      return(opened);
+   }
+
+   /** Open the document, parsing and validating the trials concurrently in a pipeline. */
+   @Benchmark
+   public JMXDoc openDocumentPipelined()
+   {
+      StringBuffer errBuf = new StringBuffer();
+      JMXDoc opened = JMXDoc.openDocument(jmxFile.getAbsolutePath(), errBuf, JMXDoc.OPEN_PIPELINED);
+      if(opened == null) throw new IllegalStateException(errBuf.toString());
+      return(opened);
+   }
+
+   /** Open the gzip-compressed copy of the document. */
+   @Benchmark
+   public JMXDoc openDocumentGzip()
+   {
+      StringBuffer errBuf = new StringBuffer();
+      JMXDoc opened = JMXDoc.openDocument(gzipFile.getAbsolutePath(), errBuf);
+      if(opened == null) throw new IllegalStateException(errBuf.toString());
+      return(opened);
+   }
+
+   /** Open the document with all trial sets deferred, then load one trial set as a typical edit would. */
+   @Benchmark
+   public JMXDoc openDocumentLazy()
+   {
+      StringBuffer errBuf = new StringBuffer();
+      JMXDoc opened = JMXDoc.openDocument(jmxFile.getAbsolutePath(), errBuf, JMXDoc.OPEN_LAZY);
+      if(opened == null) throw new IllegalStateException(errBuf.toString());
+      String emsg = opened.addTrialSubset(TRIALSET, "lazy_subset");
+      if(!emsg.isEmpty()) throw new IllegalStateException(emsg);
+      return(opened);
+   }
+
+   /** Open the document without validation, replace one trial, and save it. */
+   @Benchmark
+   public String openEditSave()
+   {
+      return(openEditSave(JMXDoc.OPEN_VALIDATE_OFF));
+   }
+
+   /** As {@link #openEditSave}, but strings and numbers are left undecoded until read. */
+   @Benchmark
+   public String openEditSaveLazyScalars()
+   {
+      return(openEditSave(JMXDoc.OPEN_VALIDATE_OFF | JMXDoc.OPEN_LAZY_SCALARS));
+   }
+
+   private String openEditSave(int flags)
+   {
+      StringBuffer errBuf = new StringBuffer();
+      JMXDoc opened = JMXDoc.openDocument(jmxFile.getAbsolutePath(), errBuf, flags);
+      if(opened == null) throw new IllegalStateException(errBuf.toString());
+      String emsg = opened.addTrial(TRIALSET, trialToAdd);
+      if(!emsg.isEmpty()) throw new IllegalStateException(emsg);
+      return(JMXDoc.saveDocument(opened, saveFile.getAbsolutePath()));
+   }
+
+   @Benchmark
+   public String saveDocument()
+   {
+      return(JMXDoc.saveDocument(doc, saveFile.getAbsolutePath()));
+   }
+
+   @Benchmark
+   public String saveDocumentGzip()
+   {
+      return(JMXDoc.saveDocument(doc, saveGzipFile.getAbsolutePath()));
+   }
+
+   /** Stream the document in pretty form to a null output stream, isolating serialization from file IO. */
+   @Benchmark
+   public void writeJSONPretty() throws IOException, JSONException
+   {
+      doc.writeJSON(OutputStream.nullOutputStream(), true, -1);
+   }
+
+   /** Stream the document in compact form to a null output stream. */
+   @Benchmark
+   public void writeJSONCompact() throws IOException, JSONException
+   {
+      doc.writeJSON(OutputStream.nullOutputStream(), false, -1);
+   }
+
+   /** Stream the document in pretty form, rounding every floating-point value to 2 decimal places. */
+   @Benchmark
+   public void writeJSONFixed() throws IOException, JSONException
+   {
+      doc.writeJSON(OutputStream.nullOutputStream(), true, 2);
+   }
+
+   @Benchmark
+   public String addTarget()
+   {
+      return(doc.addTarget(TGTSET, lastTgtName, "dotpatch", targetParams));
+   }
+
+   @Benchmark
+   public String addTrial()
+   {
+      return(doc.addTrial(TRIALSET, trialToAdd));
+   }
+
+   @Benchmark
+   public String addTrialToSubset()
+   {
+      return(doc.addTrialToSubset(TRIALSET, SUBSET, subsetTrialToAdd));
+   }
+
+   /** Name of the target set in the benchmark document. */
+   static final String TGTSET = "tgset_0";
+   /** Name of the trial set in the benchmark document. */
+   static final String TRIALSET = "trset_0";
+   /** Name of the trial subset in the benchmark document. */
+   static final String SUBSET = "subset_0";
+
+   /**
+    * Prepare the specification for the synthetic benchmark document. See class header.
+    * @param nTrials Total number of trials.
+    * @param nTgts Number of targets in the target set, all of which participate in every trial.
+    * @param nSegs Number of segments per trial.
+    * @return The document specification for {@link JMXCorpusGenerator}.
+    */
+   static JMXCorpusGenerator.Spec benchmarkSpec(int nTrials, int nTgts, int nSegs)
+   {
+      JMXCorpusGenerator.Spec spec = new JMXCorpusGenerator.Spec();
+      spec.targetSets = 1;
+      spec.targetsPerSet = nTgts;
+      spec.tgtsPerTrial = nTgts;
+      spec.trialSets = 1;
+      spec.trialsPerSet = nTrials - nTrials/2;
+      spec.subsetsPerSet = 1;
+      spec.trialsPerSubset = nTrials/2;
+      spec.segs = nSegs;
+      return(spec);
+   }
+
+   /**
+    * Run all benchmarks in this class with the JMH GC profiler enabled, so that normalized allocation rates (bytes
+    * allocated per operation) are reported alongside throughput and average time per operation.
+    * @param args Additional JMH command-line options, eg: <code>-p nTrials=1000 -p nTgts=50</code>.
+    * @throws RunnerException if JMH fails to run the benchmarks.
+    * @throws CommandLineOptionException if the command-line arguments are invalid.
+    */
+   public static void main(String[] args) throws RunnerException, CommandLineOptionException
+   {
+      Options opts = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .include(JMXDocBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+      new Runner(opts).run();
+   }
+}
@@ -0,0 +1,415 @@
+package com.srscicomp.maestro.bench;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.srscicomp.maestro.JMXDoc;
+
+/**
+ * A randomized check of the index of children by name in the target sets, trial sets and trial subsets of a
+ * <i>Maestro</i> experiment (JMX) document, after most of the children of a large container are removed.
+ *
+ * <p>A document is prepared by {@link JMXCorpusGenerator}, with one large trial set containing one trial subset. Extra
+ * targets are added to a target set. Then, for the trial set, the subset and the target set in turn, most of the
+ * children are removed in random order, and some new children are added along the way. Each time a name is removed,
+ * one of the names removed earlier is tried again, and must be reported as nonexistent. Finally, every remaining
+ * child is replaced by a copy of itself, which locates it by name in the index, and a few targets are renamed. If a
+ * name resolved to the wrong position, another child would be overwritten; so the names of the children in the saved
+ * document must match, in order, the names that are expected to remain.</p>
+ *
+ * <p>The time taken by the removals is printed. Each removal should take time proportional to the number of objects
+ * that refer to the child removed, not to the number of children in the container; so removing 90% of 20000 trials
+ * should take well under a second.</p>
+ *
+ * <p>Usage: <code>java com.srscicomp.maestro.bench.JMXRemoveCheck [trials [seed]]</code>. The trial set holds the
+ * specified number of trials (default 20000), the subset a tenth as many, and the target set gains a tenth as many
+ * extra targets. The random seed defaults to 1. Each mismatch found is printed, up to a limit, and the exit status is
+ * nonzero if there were any.</p>
+ *
+ * @author sruffner
+ */
+public class JMXRemoveCheck
+{
+   public static void main(String[] args) throws JSONException
+   {
+      int nTrials = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+      long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1;
+
+      JMXCorpusGenerator.Spec spec = new JMXCorpusGenerator.Spec();
+      spec.seed = seed;
+      spec.trialSets = 1;
+      spec.trialsPerSet = nTrials;
+      spec.subsetsPerSet = 1;
+      spec.trialsPerSubset = Math.max(1, nTrials / 10);
+      spec.segs = 1;
+      spec.tgtsPerTrial = 1;
+      spec.rvs = 0;
+
+      JMXRemoveCheck check = new JMXRemoveCheck(JMXCorpusGenerator.generate(spec), seed);
+      check.checkTrialSet();
+      check.checkSubset();
+      check.checkTargetSet(Math.max(1, nTrials / 10));
+
+      System.out.println("Total: " + check.nBad + " mismatches");
+      if(check.nBad > 0) System.exit(1);
+   }
+
+   /**
+    * Construct the checker.
+    * @param doc The document to be modified.
+    * @param seed Seed for the pseudo-random number generator.
+    */
+   private JMXRemoveCheck(JMXDoc doc, long seed)
+   {
+      this.doc = doc;
+      rng = new Random(seed);
+   }
+
+   /**
+    * Remove most of the trials in the trial set, leaving the subset in place, then check the index of the set's
+    * children.
+    * @throws JSONException if the document content is not as generated. This should not happen.
+    */
+   private void checkTrialSet() throws JSONException
+   {
+      JSONArray kids = trialSetKids();
+      List<String> names = new ArrayList<>();
+      List<JSONObject> trials = new ArrayList<>();
+      for(int i=0; i<kids.length(); i++)
+      {
+         JSONObject kid = kids.getJSONObject(i);
+         names.add(kid.has("subset") ? kid.getString("subset") : kid.getString("name"));
+         if(!kid.has("subset")) trials.add(kid);
+      }
+
+      check("trial set", names, trials, new Editor()
+      {
+         public String add(JSONObject trial) { return(doc.addTrial(SET, trial)); }
+         public String remove(String name) { return(doc.removeTrial(SET, name)); }
+         public String rename(String name, String newName) { return(null); }
+         public List<String> names() throws JSONException { return(childNames(trialSetKids(), "subset")); }
+      });
+   }
+
+   /**
+    * Remove most of the trials in the trial subset, then check the index of the subset's trials.
+    * @throws JSONException if the document content is not as generated. This should not happen.
+    */
+   private void checkSubset() throws JSONException
+   {
+      JSONArray kids = subsetKids();
+      List<String> names = new ArrayList<>();
+      List<JSONObject> trials = new ArrayList<>();
+      for(int i=0; i<kids.length(); i++)
+      {
+         trials.add(kids.getJSONObject(i));
+         names.add(kids.getJSONObject(i).getString("name"));
+      }
+
+      check("trial subset", names, trials, new Editor()
+      {
+         public String add(JSONObject trial) { return(doc.addTrialToSubset(SET, SUBSET, trial)); }
+         public String remove(String name) { return(doc.removeTrialFromSubset(SET, SUBSET, name)); }
+         public String rename(String name, String newName) { return(null); }
+         public List<String> names() throws JSONException { return(childNames(subsetKids(), null)); }
+      });
+   }
+
+   /**
+    * Add extra targets to a target set, copied from the first target in the set, then remove most of them and check
+    * the index of the set's targets. Unlike trials, targets may be renamed. The targets generated in the set are used
+    * by trials, so they are neither removed nor renamed.
+    * @param nExtra The number of extra targets to add.
+    * @throws JSONException if the document content is not as generated. This should not happen.
+    */
+   private void checkTargetSet(int nExtra) throws JSONException
+   {
+      JSONArray kids = targetSetKids();
+      List<String> names = new ArrayList<>();
+      for(int i=0; i<kids.length(); i++) names.add(kids.getJSONObject(i).getString("name"));
+
+      JSONObject model = kids.getJSONObject(0);
+      List<JSONObject> targets = new ArrayList<>();
+      for(int i=0; i<nExtra; i++)
+      {
+         JSONObject tgt = copy(model, "extra_" + i);
+         check(doc.addTarget(TGSET, tgt.getString("name"), tgt.getString("type"), tgt.getJSONArray("params")));
+         names.add(tgt.getString("name"));
+         targets.add(tgt);
+      }
+
+      check("target set", names, targets, new Editor()
+      {
+         public String add(JSONObject tgt) throws JSONException
+         {
+            return(doc.addTarget(TGSET, tgt.getString("name"), tgt.getString("type"), tgt.getJSONArray("params")));
+         }
+         public String remove(String name) { return(doc.removeTarget(TGSET, name)); }
+         public String rename(String name, String newName) { return(doc.renameTarget(TGSET, name, newName)); }
+         public List<String> names() throws JSONException { return(childNames(targetSetKids(), null)); }
+      });
+   }
+
+   /** Operations on the children of one container in the document. */
+   private interface Editor
+   {
+      /**
+       * Add a child, or replace the child with the same name.
+       * @param kid The child.
+       * @return An empty string if successful, else an error message.
+       * @throws JSONException if the child lacks a required field.
+       */
+      String add(JSONObject kid) throws JSONException;
+      /**
+       * Remove a child.
+       * @param name The child's name.
+       * @return An empty string if successful, else an error message.
+       */
+      String remove(String name);
+      /**
+       * Rename a child.
+       * @param name The child's name.
+       * @param newName The child's new name.
+       * @return An empty string if successful, else an error message. Null if children cannot be renamed.
+       */
+      String rename(String name, String newName);
+      /**
+       * Get the names of the container's children, in order, as they appear in the saved document.
+       * @return The names.
+       * @throws JSONException if the document content is not as expected.
+       */
+      List<String> names() throws JSONException;
+   }
+
+   /**
+    * Check the index of children in a container.
+    * @param what Description of the container.
+    * @param names The names of all children in the container, in order.
+    * @param kids The children that may be removed or renamed, in any order.
+    * @param ed Operations on the container's children.
+    * @throws JSONException if a child lacks a required field.
+    */
+   private void check(String what, List<String> names, List<JSONObject> kids, Editor ed) throws JSONException
+   {
+      int bad = nBad;
+      List<String> order = new ArrayList<>(names);
+      Set<String> gone = new HashSet<>();
+      Map<String, String> renamed = new HashMap<>();
+      List<JSONObject> pool = new ArrayList<>(kids);
+      Collections.shuffle(pool, rng);
+      List<String> removed = new ArrayList<>();
+      int nRemove = pool.size() - pool.size()/10;
+
+      // the children to be added along the way are copied in advance, so that copying is not included in the timing
+      List<JSONObject> added = new ArrayList<>();
+      for(int i=0; i<nRemove; i+=50) added.add(copy(pool.get(i), "added_" + added.size()));
+
+      long tStart = System.nanoTime();
+      for(int i=0; i<nRemove; i++)
+      {
+         String name = pool.get(i).getString("name");
+         check(ed.remove(name), what + ": remove " + name);
+         gone.add(name);
+         removed.add(name);
+
+         // a name removed earlier must no longer be found
+         String again = removed.get(rng.nextInt(removed.size()));
+         if(ed.remove(again).isEmpty()) report(what + ": removed twice: " + again);
+
+         // now and then, append a new child
+         if(i % 50 == 0)
+         {
+            JSONObject kid = added.get(i / 50);
+            check(ed.add(kid), what + ": add " + kid.getString("name"));
+            order.add(kid.getString("name"));
+            pool.add(kid);
+         }
+      }
+      long tRemove = System.nanoTime() - tStart;
+
+      // replace each remaining child by a copy of itself, and rename a few
+      for(int i=nRemove; i<pool.size(); i++)
+      {
+         JSONObject kid = pool.get(i);
+         String name = kid.getString("name");
+         check(ed.add(copy(kid, name)), what + ": replace " + name);
+         if(i % 7 == 0)
+         {
+            String newName = "renamed_" + i;
+            String emsg = ed.rename(name, newName);
+            if(emsg != null)
+            {
+               check(emsg, what + ": rename " + name);
+               renamed.put(name, newName);
+            }
+         }
+      }
+
+      List<String> expected = new ArrayList<>();
+      for(String name : order) if(!gone.contains(name)) expected.add(renamed.getOrDefault(name, name));
+
+      List<String> actual = ed.names();
+      if(!expected.equals(actual))
+      {
+         int i = 0;
+         while(i < Math.min(expected.size(), actual.size()) && expected.get(i).equals(actual.get(i))) ++i;
+         report(what + ": children differ at position " + i + ": expected " +
+               (i < expected.size() ? expected.get(i) : "none") + ", found " +
+               (i < actual.size() ? actual.get(i) : "none"));
+      }
+
+      System.out.println(what + ": removed " + nRemove + " of " + names.size() + " children in " +
+            (tRemove / 1000000) + " ms, " + actual.size() + " remain, " + (nBad - bad) + " mismatches");
+   }
+
+   /**
+    * Copy a trial or target under a new name.
+    * @param obj The trial or target.
+    * @param name The new name.
+    * @return The copy.
+    * @throws JSONException if the copy cannot be made. This should not happen.
+    */
+   private static JSONObject copy(JSONObject obj, String name) throws JSONException
+   {
+      JSONObject copy = new JSONObject(obj.toString());
+      copy.put("name", name);
+      return(copy);
+   }
+
+   /**
+    * Get the names of the children of a container.
+    * @param kids The container's children.
+    * @param altKey If not null, the key holding the name of a child that lacks a "name" key.
+    * @return The names, in order.
+    * @throws JSONException if a child lacks a name.
+    */
+   private static List<String> childNames(JSONArray kids, String altKey) throws JSONException
+   {
+      List<String> names = new ArrayList<>();
+      for(int i=0; i<kids.length(); i++)
+      {
+         JSONObject kid = kids.getJSONObject(i);
+         names.add((altKey != null && !kid.has("name")) ? kid.getString(altKey) : kid.getString("name"));
+      }
+      return(names);
+   }
+
+   /**
+    * Get the children of the large trial set, as written in the document.
+    * @return The children.
+    * @throws JSONException if the trial set is not found.
+    */
+   private JSONArray trialSetKids() throws JSONException
+   {
+      return(find(written().getJSONArray("trialSets"), SET).getJSONArray("trials"));
+   }
+
+   /**
+    * Get the trials in the subset of the large trial set, as written in the document.
+    * @return The trials.
+    * @throws JSONException if the subset is not found.
+    */
+   private JSONArray subsetKids() throws JSONException
+   {
+      JSONArray kids = trialSetKids();
+      for(int i=0; i<kids.length(); i++)
+      {
+         JSONObject kid = kids.getJSONObject(i);
+         if(SUBSET.equals(kid.optString("subset", null))) return(kid.getJSONArray("trials"));
+      }
+      throw new JSONException("Trial subset not found: " + SUBSET);
+   }
+
+   /**
+    * Get the targets in the target set, as written in the document.
+    * @return The targets.
+    * @throws JSONException if the target set is not found.
+    */
+   private JSONArray targetSetKids() throws JSONException
+   {
+      return(find(written().getJSONArray("targetSets"), TGSET).getJSONArray("targets"));
+   }
+
+   /**
+    * Find a named object in an array.
+    * @param arr The array of objects.
+    * @param name The name.
+    * @return The object whose "name" field has that value.
+    * @throws JSONException if there is no such object.
+    */
+   private static JSONObject find(JSONArray arr, String name) throws JSONException
+   {
+      for(int i=0; i<arr.length(); i++) if(name.equals(arr.getJSONObject(i).optString("name", null)))
+         return(arr.getJSONObject(i));
+      throw new JSONException("Not found: " + name);
+   }
+
+   /**
+    * Write the document and parse it back.
+    * @return The document content.
+    * @throws JSONException if the document cannot be written.
+    */
+   private JSONObject written() throws JSONException
+   {
+      StringWriter sw = new StringWriter();
+      doc.writeJSON(sw, false, -1);
+      return(new JSONObject(sw.toString()));
+   }
+
+   /**
+    * Report an operation that failed.
+    * @param emsg The result of the operation: an empty string if it succeeded, else an error message.
+    * @param what Description of the operation.
+    */
+   private void check(String emsg, String what)
+   {
+      if(!emsg.isEmpty()) report(what + ": " + emsg);
+   }
+
+   /**
+    * Throw an exception if an operation failed while the document was prepared.
+    * @param emsg The result of the operation: an empty string if it succeeded, else an error message.
+    * @throws JSONException if the operation failed.
+    */
+   private static void check(String emsg) throws JSONException
+   {
+      if(!emsg.isEmpty()) throw new JSONException(emsg);
+   }
+
+   /**
+    * Print a mismatch, unless too many have been printed already.
+    * @param msg Description of the mismatch.
+    */
+   private void report(String msg)
+   {
+      if(++nBad <= MAX_REPORTED) System.out.println("MISMATCH: " + msg);
+   }
+
+   /** Name of the large trial set, as named by {@link JMXCorpusGenerator}. */
+   private static final String SET = "trset_0";
+   /** Name of the trial subset in the large trial set. */
+   private static final String SUBSET = "subset_0";
+   /** Name of the target set to which extra targets are added. */
+   private static final String TGSET = "tgset_0";
+
+   /** At most this many mismatches are printed. */
+   private static final int MAX_REPORTED = 20;
+
+   /** The document being modified. */
+   private final JMXDoc doc;
+   /** The pseudo-random number generator. */
+   private final Random rng;
+   /** Number of mismatches found so far. */
+   private int nBad = 0;
+}
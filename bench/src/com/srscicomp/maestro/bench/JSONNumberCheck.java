@@ -0,0 +1,172 @@
+package com.srscicomp.maestro.bench;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.json.JSONException;
+import org.json.JSONWriter;
+
+/**
+ * A randomized differential check of the number formatting used when a JSON document is written: each random double
+ * is written through a {@link JSONWriter}, and the text is compared against a reference computed with
+ * <code>BigDecimal</code> and the standard library.
+ *
+ * <p>In the shortest round-trip form (no fixed decimal places), the text must parse back to exactly the same double,
+ * and it must have no more significant digits than the text of {@link Double#toString(double)}. When rounding to a
+ * fixed number of decimal places, the text must be exactly that of <code>BigDecimal.setScale(decimals,
+ * RoundingMode.HALF_UP)</code> without trailing zeros -- except for integral values of 2^53 or more, which are not
+ * changed by rounding and are written in shortest form, so they need only parse back to the same value.</p>
+ *
+ * <p>The doubles are drawn from a mix of distributions meant to reach every code path: uniformly random bit patterns,
+ * values of random magnitude from 1e-5 to 1e17, and short decimals like those in a typical document. In addition, an
+ * exact tie at the rounding position is checked for each double drawn -- including ties beyond 2^52 when scaled,
+ * where a double has no fractional bits.</p>
+ *
+ * <p>Usage: <code>java com.srscicomp.maestro.bench.JSONNumberCheck [count [seed]]</code>. The default is 2000000
+ * doubles, seed 1. Each mismatch found is printed, up to a limit, and the exit status is nonzero if there were any.
+ * </p>
+ *
+ * @author sruffner
+ */
+public class JSONNumberCheck
+{
+   public static void main(String[] args)
+   {
+      int count = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+      long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1;
+
+      JSONNumberCheck check = new JSONNumberCheck();
+      Random rng = new Random(seed);
+      for(int i=0; i<count; i++)
+      {
+         double d = randomDouble(rng);
+         check.checkShortest(d);
+         check.checkFixed(d, rng.nextInt(MAX_DECIMALS + 1));
+
+         // an exact tie: an odd multiple of 2^-t is a tie at t-1 decimal places, since its last decimal digit is 5.
+         // The scaled value is spread over [1, 2^54), so that many ties lie beyond 2^52, where a double has no 
+         // fractional bits.
+         int t = 1 + rng.nextInt(5);
+         double scaled = Math.scalb(1 + rng.nextDouble(), rng.nextInt(54));
+         long j = Math.min((long) (scaled * (1L << t) / Math.pow(10, t - 1)), (1L << 53) - 1) | 1;
+         double tie = Math.scalb((double) j, -t);
+         check.checkFixed(rng.nextBoolean() ? tie : -tie, t - 1);
+      }
+
+      System.out.println("Checked " + count + " doubles: " + check.nBad + " mismatches");
+      if(check.nBad > 0) System.exit(1);
+   }
+
+   /** The maximum number of decimal places, as in {@link com.srscicomp.maestro.JMXDoc#MAX_DECIMALS}. */
+   private static final int MAX_DECIMALS = 17;
+
+   /** At most this many mismatches are printed. */
+   private static final int MAX_REPORTED = 20;
+
+   /** Number of mismatches found so far. */
+   private int nBad = 0;
+
+   /**
+    * Check the shortest round-trip form of a double.
+    * @param d The value.
+    */
+   private void checkShortest(double d)
+   {
+      String text = write(d, -1);
+      boolean ok = (text != null) && Double.parseDouble(text) == d &&
+            significantDigits(text) <= significantDigits(Double.toString(d));
+      if(!ok) report(d, -1, text, Double.toString(d));
+   }
+
+   /**
+    * Check the text of a double rounded to a fixed number of decimal places.
+    * @param d The value.
+    * @param decimals The number of decimal places.
+    */
+   private void checkFixed(double d, int decimals)
+   {
+      String text = write(d, decimals);
+      if(Math.abs(d) >= TWO_53)
+      {
+         if(text == null || Double.parseDouble(text) != d) report(d, decimals, text, Double.toString(d));
+         return;
+      }
+      String expected = new BigDecimal(d).setScale(decimals, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+      if(!expected.equals(text)) report(d, decimals, text, expected);
+   }
+
+   /**
+    * Print a mismatch, unless too many have been printed already.
+    * @param d The value.
+    * @param decimals The number of decimal places, or -1 for the shortest round-trip form.
+    * @param text The text written, or null if writing failed.
+    * @param expected The reference text.
+    */
+   private void report(double d, int decimals, String text, String expected)
+   {
+      if(++nBad <= MAX_REPORTED)
+         System.out.println("MISMATCH: " + d + " (decimals=" + decimals + "): wrote " + text + 
+               ", expected " + expected);
+   }
+
+   /**
+    * Write a double through a compact {@link JSONWriter} as the sole element of an array.
+    * @param d The value.
+    * @param decimals The number of decimal places, or -1 for the shortest round-trip form.
+    * @return The text of the value, or null if writing failed.
+    */
+   private static String write(double d, int decimals)
+   {
+      StringWriter sw = new StringWriter();
+      try { new JSONWriter(sw, -1, decimals).array().value(d).endArray(); }
+      catch(JSONException jse) { return(null); }
+      String s = sw.toString();
+      return(s.substring(1, s.length() - 1));
+   }
+
+   /**
+    * Count the significant digits in the text of a number: the digits of the mantissa, excluding leading and trailing
+    * zeros.
+    * @param text The text, in plain or scientific notation.
+    * @return The number of significant digits.
+    */
+   private static int significantDigits(String text)
+   {
+      int e = text.indexOf('E');
+      String digits = ((e < 0) ? text : text.substring(0, e)).replace("-", "").replace(".", "");
+      int first = 0;
+      int last = digits.length();
+      while(first < last && digits.charAt(first) == '0') ++first;
+      while(last > first && digits.charAt(last - 1) == '0') --last;
+      return(Math.max(1, last - first));
+   }
+
+   /**
+    * Draw a random finite double from a mix of distributions; see class header.
+    * @param rng The random number generator.
+    * @return The value.
+    */
+   private static double randomDouble(Random rng)
+   {
+      double d;
+      switch(rng.nextInt(3))
+      {
+      case 0:
+         do { d = Double.longBitsToDouble(rng.nextLong()); } while(Double.isNaN(d) || Double.isInfinite(d));
+         return(d);
+      case 1:
+         d = Math.pow(10, -5 + 22*rng.nextDouble());
+         break;
+      default:
+         // a short decimal, like the positions and velocities in a typical document
+         d = (rng.nextInt(2000000) - 1000000) / Math.pow(10, rng.nextInt(5));
+         return(d);
+      }
+      return(rng.nextBoolean() ? d : -d);
+   }
+
+   /** 2^53. No double of this magnitude or more has a fractional part. */
+   private static final double TWO_53 = 9007199254740992.0;
+}
@@ -0,0 +1,467 @@
+package com.srscicomp.maestro.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.json.JSONArray;
+import org.json.JSONByteTokener;
+import org.json.JSONException;
+import org.json.JSONIndexedParser;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.srscicomp.maestro.JMXDoc;
+
+/**
+ * Randomized differential checks of the JSON parsers used to open a JSON-formatted <i>Maestro</i> experiment (JMX)
+ * document. Each parser is checked against the one it replaced, or against the path it must agree with, on documents
+ * prepared by {@link JMXCorpusGenerator} and on randomly corrupted copies of them:
+ * <ul>
+ *    <li><i>tokener</i>: {@link JSONByteTokener} against the <code>Reader</code>-based {@link JSONTokener}. Both must
+ *    parse the same value, or fail with the same message. The line and column in the message are ignored, since the
+ *    <code>Reader</code>-based tokener counts a line twice when it backs up over a linefeed.</li>
+ *    <li><i>strict</i>: the strict mode of {@link JSONByteTokener} against the lenient mode, and the lazy-scalar mode
+ *    against the usual one. Whatever the strict mode accepts, the lenient mode must parse to the same value. The
+ *    corrupted copies include ones that use only the lenient forms of the org.json syntax, which the strict mode must
+ *    reject.</li>
+ *    <li><i>indexed</i>: {@link JSONIndexedParser} against a serial parse, on a document large enough to be indexed.
+ *    Both must parse the same value, or fail with the same message.</li>
+ *    <li><i>open</i>: {@link JMXDoc#openDocument} in serial, parallel and pipelined modes. All must open the same
+ *    document or fail with the same message, whether the error is a syntax error or a validation error. Every
+ *    twentieth document is the large one, so that the parallel open takes the indexed path.</li>
+ * </ul>
+ *
+ * <p>Usage: <code>java com.srscicomp.maestro.bench.JSONParseCheck [count [seed]]</code>. Each check is applied to
+ * <i>count</i> documents (default 400; a twentieth as many for the large document of the indexed check), starting from
+ * the specified random seed (default 1). The parallelism of the common fork-join pool is raised to at least 4, so
+ * that the parallel paths are taken even on a single-core machine. Each mismatch found is printed, up to a limit, and
+ * the exit status is nonzero if there were any.</p>
+ *
+ * @author sruffner
+ */
+public class JSONParseCheck
+{
+   public static void main(String[] args) throws Exception
+   {
+      // must be set before the common pool is first used
+      if(System.getProperty(PARALLELISM_PROP) == null) System.setProperty(PARALLELISM_PROP, "4");
+
+      int count = (args.length > 0) ? Integer.parseInt(args[0]) : 400;
+      long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1;
+
+      JSONParseCheck check = new JSONParseCheck(seed);
+      check.checkTokener(count);
+      check.checkStrict(count);
+      check.checkIndexed(Math.max(1, count/20));
+      check.checkOpen(count);
+
+      System.out.println("Total: " + check.nBad + " mismatches");
+      if(check.nBad > 0) System.exit(1);
+   }
+
+   /**
+    * Construct the checker and prepare the documents from which the corrupted copies are made.
+    * @param seed Seed for the pseudo-random number generator.
+    * @throws JSONException if a document cannot be generated. This should not happen.
+    */
+   private JSONParseCheck(long seed) throws JSONException
+   {
+      rng = new Random(seed);
+      for(int i=0; i<3; i++)
+      {
+         JMXCorpusGenerator.Spec spec = new JMXCorpusGenerator.Spec();
+         spec.seed = seed + i;
+         spec.trialsPerSet = 10 + 10*i;
+         spec.trialsPerSubset = 5;
+         JMXDoc doc = JMXCorpusGenerator.generate(spec);
+         docs.add(text(doc, true));
+         docs.add(text(doc, false));
+      }
+
+      // the documents are written in compact form, so this many trials comfortably exceed the indexed size
+      JMXCorpusGenerator.Spec spec = new JMXCorpusGenerator.Spec();
+      spec.seed = seed;
+      spec.trialSets = 4;
+      spec.trialsPerSet = 500;
+      spec.subsetsPerSet = 2;
+      spec.trialsPerSubset = 100;
+      bigDoc = text(JMXCorpusGenerator.generate(spec), false);
+      if(bigDoc.length() < JSONIndexedParser.MIN_INDEXED_SIZE)
+         throw new IllegalStateException("Large document too small to be indexed: " + bigDoc.length());
+   }
+
+   /**
+    * Check {@link JSONByteTokener} against the <code>Reader</code>-based {@link JSONTokener}.
+    * @param count The number of documents to check.
+    */
+   private void checkTokener(int count)
+   {
+      int bad = nBad;
+      for(int i=0; i<count; i++)
+      {
+         byte[] bytes = corrupt(pick(), rng.nextInt(4));
+         String expected = parse(() -> new JSONObject(new JSONTokener(new StringReader(decode(bytes)))), true);
+         String actual = parse(() -> new JSONObject(new JSONByteTokener(bytes)), true);
+         if(!expected.equals(actual)) report("tokener", i, expected, actual);
+      }
+      System.out.println("tokener: " + count + " documents, " + (nBad - bad) + " mismatches");
+   }
+
+   /**
+    * Check the strict and lazy-scalar modes of {@link JSONByteTokener} against the usual lenient mode.
+    * @param count The number of documents to check.
+    */
+   private void checkStrict(int count)
+   {
+      int bad = nBad;
+      int nLenient = 0;
+      for(int i=0; i<count; i++)
+      {
+         // every third document uses a lenient-only form of the syntax, but is otherwise intact
+         boolean lenientForm = (i % 3 == 2);
+         byte[] bytes = lenientForm ? lenientForm(pick()) : corrupt(pick(), rng.nextInt(4));
+         String lenient = parse(() -> new JSONObject(new JSONByteTokener(bytes)), false);
+         String strict = parse(() -> strictObject(bytes, JSONByteTokener.STRICT), false);
+         String lazy = parse(() -> new JSONObject(new JSONByteTokener(bytes, 0, bytes.length,
+               JSONByteTokener.LAZY_SCALARS)), false);
+         if(!lazy.equals(lenient)) report("lazy", i, lenient, lazy);
+         if(lenientForm)
+         {
+            if(lenient.startsWith(FAILED)) report("lenient", i, "a document", lenient);
+            else if(!strict.startsWith(FAILED)) report("strict", i, "a syntax error", "a document");
+            else ++nLenient;
+         }
+         else if(!strict.startsWith(FAILED) && !strict.equals(lenient)) report("strict", i, lenient, strict);
+      }
+      System.out.println("strict: " + count + " documents (" + nLenient + " rejected lenient forms), " +
+            (nBad - bad) + " mismatches");
+   }
+
+   /**
+    * Check {@link JSONIndexedParser} against a serial parse, on the large document. The subtrees are built in a pool
+    * of 4 workers.
+    * @param count The number of documents to check.
+    */
+   private void checkIndexed(int count)
+   {
+      int bad = nBad;
+      ForkJoinPool pool = new ForkJoinPool(4);
+      try
+      {
+         for(int i=0; i<count; i++)
+         {
+            byte[] bytes = (i == 0) ? bigDoc.getBytes(StandardCharsets.UTF_8) : corrupt(bigDoc, 1 + rng.nextInt(3));
+            String expected = parse(() -> new JSONObject(new JSONByteTokener(bytes)), false);
+            String actual = parse(() -> JSONIndexedParser.parseObject(ByteBuffer.wrap(bytes), pool), false);
+            if(!expected.equals(actual)) report("indexed", i, expected, actual);
+         }
+      }
+      finally { pool.shutdown(); }
+      System.out.println("indexed: " + count + " documents, " + (nBad - bad) + " mismatches");
+   }
+
+   /**
+    * Check that {@link JMXDoc#openDocument} opens the same document, or reports the same error, in serial, parallel
+    * and pipelined modes.
+    * @param count The number of documents to check.
+    * @throws IOException if a document cannot be written to a temporary file.
+    */
+   private void checkOpen(int count) throws IOException
+   {
+      int bad = nBad;
+      int nOpened = 0;
+      File dir = Files.createTempDirectory("jmxcheck").toFile();
+      File f = new File(dir, "check.jmx");
+      try
+      {
+         for(int i=0; i<count; i++)
+         {
+            // every twentieth document is the large one, so that the parallel open uses the indexed parser
+            Files.write(f.toPath(), corrupt((i % 20 == 0) ? bigDoc : pick(), rng.nextInt(3)));
+            String serial = open(f, 0);
+            if(!serial.startsWith(FAILED)) ++nOpened;
+            String parallel = open(f, JMXDoc.OPEN_PARALLEL);
+            if(!serial.equals(parallel)) report("open parallel", i, serial, parallel);
+            String pipelined = open(f, JMXDoc.OPEN_PIPELINED);
+            if(!serial.equals(pipelined)) report("open pipelined", i, serial, pipelined);
+         }
+      }
+      finally
+      {
+         if(!f.delete()) f.deleteOnExit();
+         if(!dir.delete()) dir.deleteOnExit();
+      }
+      System.out.println("open: " + count + " documents (" + nOpened + " valid), " + (nBad - bad) + " mismatches");
+   }
+
+   /** A parse operation that may fail with a {@link JSONException}. */
+   private interface Parse
+   {
+      JSONObject run() throws JSONException;
+   }
+
+   /**
+    * Run a parse operation and describe its outcome.
+    * @param p The parse operation.
+    * @param ignoreLine If true, the line and column are removed from the message of a syntax error.
+    * @return The canonical JSON text of the object parsed (see {@link #canonical}), or {@link #FAILED} followed by
+    * the error message.
+    */
+   private static String parse(Parse p, boolean ignoreLine)
+   {
+      try { return(canonical(p.run())); }
+      catch(JSONException jse)
+      {
+         String msg = String.valueOf(jse.getMessage());
+         return(FAILED + (ignoreLine ? msg.replaceAll(" \\[character \\d+ line \\d+\\]", "") : msg));
+      }
+   }
+
+   /**
+    * Parse a JSON object with the byte tokener, requiring that nothing but whitespace follows it.
+    * @param bytes The JSON text.
+    * @param options The tokener options.
+    * @return The object parsed.
+    * @throws JSONException if the text is not a single JSON object.
+    */
+   private static JSONObject strictObject(byte[] bytes, int options) throws JSONException
+   {
+      JSONByteTokener x = new JSONByteTokener(bytes, 0, bytes.length, options);
+      Object value = x.nextValue();
+      if(!(value instanceof JSONObject)) throw x.syntaxError("A JSONObject text must begin with '{'");
+      return((JSONObject) value);
+   }
+
+   /**
+    * Open a JMX document and describe the outcome.
+    * @param f The document file.
+    * @param flags The open flags.
+    * @return The compact JSON text of the document opened, or {@link #FAILED} followed by the error message.
+    */
+   private static String open(File f, int flags)
+   {
+      StringBuffer errBuf = new StringBuffer();
+      JMXDoc doc = JMXDoc.openDocument(f.getAbsolutePath(), errBuf, flags);
+      if(doc == null) return(FAILED + errBuf);
+      try { return(text(doc, false)); }
+      catch(JSONException jse) { return(FAILED + "writeJSON: " + jse.getMessage()); }
+   }
+
+   /**
+    * Write a JSON value with the members of every object sorted by key, so that two values can be compared as text
+    * regardless of the iteration order of their maps. Each number is written with its class, so that an Integer and a
+    * Long of the same value differ, as do 0.0 and -0.0.
+    * @param value The value.
+    * @return The canonical text.
+    */
+   private static String canonical(Object value)
+   {
+      StringBuilder sb = new StringBuilder();
+      canonical(value, sb);
+      return(sb.toString());
+   }
+
+   private static void canonical(Object value, StringBuilder sb)
+   {
+      if(value instanceof JSONObject)
+      {
+         JSONObject obj = (JSONObject) value;
+         List<String> keys = new ArrayList<>();
+         for(Iterator<?> it = obj.keys(); it.hasNext(); ) keys.add(it.next().toString());
+         keys.sort(null);
+         sb.append('{');
+         for(String key : keys)
+         {
+            sb.append(JSONObject.quote(key)).append(':');
+            canonical(obj.opt(key), sb);
+            sb.append(',');
+         }
+         sb.append('}');
+      }
+      else if(value instanceof JSONArray)
+      {
+         JSONArray arr = (JSONArray) value;
+         sb.append('[');
+         for(int i=0; i<arr.length(); i++)
+         {
+            canonical(arr.opt(i), sb);
+            sb.append(',');
+         }
+         sb.append(']');
+      }
+      else if(value instanceof String) sb.append(JSONObject.quote((String) value));
+      else if(value instanceof Number)
+         sb.append(value.getClass().getSimpleName()).append('(').append(value).append(')');
+      else sb.append(value);
+   }
+
+   /**
+    * Make a randomly corrupted copy of a document. Each corruption replaces, deletes or inserts a single character,
+    * chosen from the JSON structural characters, digits, letters and some non-ASCII characters.
+    * @param doc The document text.
+    * @param n The number of corruptions. If 0, the copy is intact.
+    * @return The UTF-8 encoded text of the copy.
+    */
+   private byte[] corrupt(String doc, int n)
+   {
+      StringBuilder sb = new StringBuilder(doc);
+      for(int k=0; k<n; k++)
+      {
+         int pos = rng.nextInt(sb.length());
+         String c = CORRUPT_CHARS[rng.nextInt(CORRUPT_CHARS.length)];
+         switch(rng.nextInt(3))
+         {
+         case 0: sb.replace(pos, pos+1, c); break;
+         case 1: sb.deleteCharAt(pos); break;
+         default: sb.insert(pos, c); break;
+         }
+      }
+      return(sb.toString().getBytes(StandardCharsets.UTF_8));
+   }
+
+   /**
+    * Make a copy of a document in which one randomly chosen separator or string uses a form of the syntax that only
+    * the lenient org.json parser accepts: '=' or '=&gt;' after a key, ';' between members, a trailing comma, or a
+    * single-quoted string.
+    * @param doc The document text.
+    * @return The UTF-8 encoded text of the copy.
+    */
+   private byte[] lenientForm(String doc)
+   {
+      StringBuilder sb = new StringBuilder(doc);
+      for(;;)
+      {
+         int pos = rng.nextInt(sb.length());
+         switch(rng.nextInt(5))
+         {
+         case 0:
+         case 1:
+            pos = sb.indexOf("\":", pos);
+            if(pos < 0 || inString(sb, pos+1)) continue;
+            sb.replace(pos+1, pos+2, rng.nextBoolean() ? "=" : "=>");
+            break;
+         case 2:
+            pos = sb.indexOf(",\"", pos);
+            if(pos < 0 || inString(sb, pos)) continue;
+            sb.setCharAt(pos, ';');
+            break;
+         case 3:
+            pos = sb.indexOf("]", pos);
+            if(pos < 0 || inString(sb, pos) || sb.toString().substring(0, pos).trim().endsWith("[")) continue;
+            sb.insert(pos, ',');
+            break;
+         default:
+            // a string without quotes or backslashes, so only its delimiters change
+            pos = sb.indexOf("\"", pos);
+            if(pos < 0 || inString(sb, pos)) continue;
+            int end = sb.indexOf("\"", pos+1);
+            if(sb.substring(pos+1, end).matches(".*[\\\\'].*")) continue;
+            sb.setCharAt(pos, '\'');
+            sb.setCharAt(end, '\'');
+            break;
+         }
+         return(sb.toString().getBytes(StandardCharsets.UTF_8));
+      }
+   }
+
+   /**
+    * Is a character of an intact JSON text inside a string?
+    * @param sb The JSON text.
+    * @param pos The character position.
+    * @return True if the character lies between the quotes of a string. An opening quote is not in the string; a
+    * closing quote is.
+    */
+   private static boolean inString(CharSequence sb, int pos)
+   {
+      boolean in = false;
+      for(int i=0; i<pos; i++)
+      {
+         char c = sb.charAt(i);
+         if(in && c == '\\') ++i;
+         else if(c == '"') in = !in;
+      }
+      return(in);
+   }
+
+   /** @return One of the small documents, chosen at random. */
+   private String pick() { return(docs.get(rng.nextInt(docs.size()))); }
+
+   /**
+    * Get the JSON text of a JMX document.
+    * @param doc The document.
+    * @param pretty True for the indented form that is saved to a ".jmx" file; false for the compact form.
+    * @return The JSON text.
+    * @throws JSONException if the document cannot be written.
+    */
+   private static String text(JMXDoc doc, boolean pretty) throws JSONException
+   {
+      StringWriter sw = new StringWriter();
+      doc.writeJSON(sw, pretty, -1);
+      return(sw.toString());
+   }
+
+   /**
+    * Decode UTF-8 text exactly as the bytes were encoded by {@link #corrupt}, for the <code>Reader</code>-based
+    * tokener.
+    * @param bytes The UTF-8 encoded text.
+    * @return The text.
+    */
+   private static String decode(byte[] bytes) { return(new String(bytes, StandardCharsets.UTF_8)); }
+
+   /**
+    * Print a mismatch, unless too many have been printed already.
+    * @param check The name of the check.
+    * @param i The index of the document within the check.
+    * @param expected Description of the expected outcome.
+    * @param actual Description of the actual outcome.
+    */
+   private void report(String check, int i, String expected, String actual)
+   {
+      if(++nBad <= MAX_REPORTED)
+         System.out.println("MISMATCH in " + check + " check, document " + i + ":\n  expected " + abbrev(expected) +
+               "\n  actual   " + abbrev(actual));
+   }
+
+   /**
+    * Shorten a description of an outcome for printing.
+    * @param s The description.
+    * @return The description, truncated to 300 characters.
+    */
+   private static String abbrev(String s) { return((s.length() <= 300) ? s : s.substring(0, 300) + "..."); }
+
+   /** System property that sets the parallelism of the common fork-join pool. */
+   private static final String PARALLELISM_PROP = "java.util.concurrent.ForkJoinPool.common.parallelism";
+
+   /** Prefix for the description of a failed parse or open. */
+   private static final String FAILED = "FAILED: ";
+
+   /** At most this many mismatches are printed. */
+   private static final int MAX_REPORTED = 20;
+
+   /** The characters, or surrogate pairs, with which {@link #corrupt} replaces or inserts characters. */
+   private static final String[] CORRUPT_CHARS = {
+         "{", "}", "[", "]", ",", ":", "\"", "'", "\\", " ", "\n", "=", ";", "-", "+", ".", "0", "1", "5", "9", "e",
+         "E", "a", "t", "n", "x", "é", "€", new String(Character.toChars(0x1F600))
+   };
+
+   /** The pseudo-random number generator. */
+   private final Random rng;
+   /** The small documents from which corrupted copies are made, in pretty and compact form. */
+   private final List<String> docs = new ArrayList<>();
+   /** The large document used by the indexed check, in compact form. */
+   private final String bigDoc;
+   /** Number of mismatches found so far. */
+   private int nBad = 0;
+}
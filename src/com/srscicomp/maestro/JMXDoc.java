@@ -2,15 +2,32 @@ package com.srscicomp.maestro;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONArray;
+import org.json.JSONAsciiWriter;
+import org.json.JSONByteTokener;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONSlice;
+import org.json.JSONTape;
 import org.json.JSONUtilities;
+import org.json.JSONWriter;
 
 
 /**
@@ -29,6 +46,10 @@ import org.json.JSONUtilities;
  * <b>J</b>SON-formatted, <i><b>M</b>aestro</i> e<b>X</b>periment document as a <b>JMX</b> document; the document file 
  * ends in the extension ".jmx". <i>Maestro</i>, of course, can read in a JMX file, but it cannot write one.</p>
  * 
+ * <p>A large JMX document may also be saved as a gzip-compressed file with the extension ".jmx.gz", which is typically
+ * a fraction of the size. <code>JMXDoc</code> opens such a file transparently, but it must be decompressed before
+ * <i>Maestro</i> can read it.</p>
+ * 
  * <p><code>JMXDoc</code> encapsulates a JMX document. The <i>Matlab</i> utility function <i>maestroDoc()</i> uses an 
  * instance of <code>JMXDoc</code> to open/create, edit, and save a JMX file. <i>Maestro</i> users then can write their
  * own scripts with <i>maestroDoc()</i> (and a JAR file that includes <code>JMXDoc</code> and supporting classes) to 
@@ -233,19 +254,136 @@ public class JMXDoc
    /**
     * Open a new or existing JSON-formatted Maestro experiment (JMX) document.
     * @param path File system path. Ignored if null or empty, in which case a brand-new document object is returned.
-    * Otherwise, this must specify an existing JMX file. File extension must be ".jmx".
+    * Otherwise, this must specify an existing JMX file. File extension must be ".jmx" or ".jmx.gz".
     * @param errBuf Optional error message buffer. If specified and operation fails, it will hold an error message; 
     * otherwise, it will be empty.
     * @return A <code>JMXDoc</code> initialized IAW the contents of the file specified, or null if operation failed.
     */
    public static JMXDoc openDocument(String path, StringBuffer errBuf)
+   {
+      return(openDocument(path, errBuf, 0));
+   }
+   
+   /**
+    * Flag for {@link #openDocument(String, StringBuffer, int)}: Parse a large document file and validate the trials in
+    * the document concurrently, using all available processors. The outcome is the same as for a serial open. In 
+    * particular, if the document contains more than one error, the error reported is the one a serial open would have 
+    * reported.
+    */
+   public static final int OPEN_PARALLEL = 1;
+   
+   /**
+    * Flag for {@link #openDocument(String, StringBuffer, int)}: Open the document with validation level {@link 
+    * #VALIDATE_STRUCTURAL}, which is retained for subsequent changes to the document.
+    */
+   public static final int OPEN_VALIDATE_STRUCTURAL = 2;
+   
+   /**
+    * Flag for {@link #openDocument(String, StringBuffer, int)}: Open the document with validation level {@link 
+    * #VALIDATE_OFF}, which is retained for subsequent changes to the document. Use only for trusted input, such as a
+    * document generated by a program. Takes precedence over {@link #OPEN_VALIDATE_STRUCTURAL}.
+    */
+   public static final int OPEN_VALIDATE_OFF = 4;
+   
+   /**
+    * Flag for {@link #openDocument(String, StringBuffer, int)}: Defer the parsing and validation of trial sets. The
+    * application settings, channel configurations, perturbations and target sets are loaded as usual, but each trial
+    * set is kept as unparsed JSON text until it is first accessed. When a trial set is loaded, the names of its trials
+    * and subsets are checked and indexed, but each trial is again kept as unparsed text; the trial is discarded 
+    * without being parsed if it is replaced or removed. Any trial set or trial that is never accessed is parsed only 
+    * transiently when the document is saved, so that the file has the same layout as if the document had been opened
+    * in full; it is neither validated nor retained. Such a trial set or trial that fails to parse is saved verbatim.
+    * 
+    * <p>An error in a deferred trial set or trial is reported by the first operation that needs it, rather than by
+    * {@link #openDocument}. Operations that depend on the trials' references to other objects -- removing or renaming
+    * a target, perturbation or channel configuration, {@link #findTrialsUsing}, and {@link #validate} -- first load
+    * and validate all deferred content in the document.</p>
+    */
+   public static final int OPEN_LAZY = 8;
+   
+   /**
+    * Flag for {@link #openDocument(String, StringBuffer, int)}: Defer the decoding of strings and numbers. Each string
+    * or number in the document file is kept as unparsed JSON text until it is first read, and any that is never read
+    * is written back to file verbatim when the document is saved. The syntax of every value is still checked when the
+    * file is parsed. Use this flag with {@link #OPEN_VALIDATE_OFF} and, for a large document, {@link #OPEN_LAZY}: an 
+    * open-edit-save cycle that touches only a few trials then decodes and re-formats very little of the document.
+    * Validation reads nearly every value, so with validation on, the flag only adds the cost of keeping each value 
+    * undecoded for a while.
+    * 
+    * <p>The entire file content is retained in memory while the document is open. The file is parsed serially, even
+    * if {@link #OPEN_PARALLEL} is set.</p>
+    */
+   public static final int OPEN_LAZY_SCALARS = 16;
+   
+   /**
+    * Flag for {@link #openDocument(String, StringBuffer, int)}: Parse and validate the trial sets concurrently, as a
+    * pipeline. A parser thread parses the trial sets in document order and hands off batches of trials through a 
+    * bounded queue, while validator tasks in the common fork-join pool check the trials already parsed. The open time
+    * for a large document approaches the longer of the two stages, rather than their sum. The outcome is the same as
+    * for a serial open; if the file is not a valid JMX document, the error reported is the one a serial open would 
+    * have reported.
+    * 
+    * <p>The entire file content is read into memory first. If any part of the file fails to parse in the strict mode
+    * described in {@link #openDocument(String, StringBuffer, int)}, the file is opened serially instead. The flag is
+    * ignored if trial sets or values are deferred (see {@link #OPEN_LAZY}, {@link #OPEN_LAZY_SCALARS}), and it 
+    * overrides {@link #OPEN_PARALLEL}.</p>
+    */
+   public static final int OPEN_PIPELINED = 32;
+   
+   /** The maximum number of decimal places to which floating-point values may be rounded when saving a document. */
+   public static final int MAX_DECIMALS = 17;
+   
+   /**
+    * Open a new or existing JSON-formatted Maestro experiment (JMX) document.
+    * 
+    * <p>Since every document written by {@link #saveDocument} is standard JSON, the file is first parsed in a strict
+    * mode that accepts only standard JSON and is faster than the lenient syntax of the org.json package. The JMX 
+    * version header cannot be checked beforehand, since it is not at a fixed position in the file. If the strict
+    * parse fails, the file is parsed again leniently, so a document that was edited by hand still opens. Strict 
+    * parsing is not used if trial sets are deferred (see {@link #OPEN_LAZY}), nor if {@link #OPEN_PARALLEL} is set.
+    * </p>
+    * 
+    * @param path File system path. Ignored if null or empty, in which case a brand-new document object is returned.
+    * Otherwise, this must specify an existing JMX file. File extension must be ".jmx" or ".jmx.gz".
+    * @param errBuf Optional error message buffer. If specified and operation fails, it will hold an error message; 
+    * otherwise, it will be empty.
+    * @param flags Bitwise OR of zero or more of the open flags: {@link #OPEN_PARALLEL}, {@link 
+    * #OPEN_VALIDATE_STRUCTURAL}, {@link #OPEN_VALIDATE_OFF}, {@link #OPEN_LAZY}, {@link #OPEN_LAZY_SCALARS}, {@link 
+    * #OPEN_PIPELINED}.
+    * @return A <code>JMXDoc</code> initialized IAW the contents of the file specified, or null if operation failed.
+    */
+   public static JMXDoc openDocument(String path, StringBuffer errBuf, int flags)
+   {
+      return(openDocument(path, errBuf, flags, null));
+   }
+   
+   /**
+    * Open an existing JSON-formatted Maestro experiment (JMX) document, loading only the named trial sets. The named 
+    * trial sets, and all trials in them, are parsed and validated as usual. All other trial sets are deferred, exactly
+    * as if the document were opened with the {@link #OPEN_LAZY} flag.
+    * @param path File system path. Ignored if null or empty, in which case a brand-new document object is returned.
+    * Otherwise, this must specify an existing JMX file. File extension must be ".jmx" or ".jmx.gz".
+    * @param errBuf Optional error message buffer. If specified and operation fails, it will hold an error message; 
+    * otherwise, it will be empty.
+    * @param flags Bitwise OR of zero or more of the open flags: {@link #OPEN_PARALLEL}, {@link 
+    * #OPEN_VALIDATE_STRUCTURAL}, {@link #OPEN_VALIDATE_OFF}, {@link #OPEN_LAZY}, {@link #OPEN_LAZY_SCALARS}, {@link 
+    * #OPEN_PIPELINED}.
+    * @param trialSets Names of the trial sets to load. If null, all trial sets are loaded, unless the {@link 
+    * #OPEN_LAZY} flag is set. The operation fails if any trial set named does not exist in the document.
+    * @return A <code>JMXDoc</code> initialized IAW the contents of the file specified, or null if operation failed.
+    */
+   public static JMXDoc openDocument(String path, StringBuffer errBuf, int flags, String[] trialSets)
    {
       if(errBuf != null) errBuf.setLength(0);
-      if(path == null || path.isEmpty()) return(new JMXDoc());
       
-      if(!path.endsWith(".jmx"))
+      JMXDoc jmxDoc = new JMXDoc();
+      if((flags & OPEN_VALIDATE_OFF) != 0) jmxDoc.validationLevel = VALIDATE_OFF;
+      else if((flags & OPEN_VALIDATE_STRUCTURAL) != 0) jmxDoc.validationLevel = VALIDATE_STRUCTURAL;
+      if(path == null || path.isEmpty()) return(jmxDoc);
+      
+      if(!isJMXPath(path))
       {
-         if(errBuf != null) errBuf.append("Filename must end with .jmx");
+         if(errBuf != null) errBuf.append("Filename must end with .jmx or .jmx.gz");
          return(null);
       }
       
@@ -256,12 +394,39 @@ public class JMXDoc
          return(null);
       }
       
-      JMXDoc jmxDoc = new JMXDoc();
       boolean ok = false;
       try
       {
-         JSONObject jsonObj = JSONUtilities.readJSONObject(f);
-         jmxDoc.fromJSON(jsonObj);
+         boolean parallel = (flags & OPEN_PARALLEL) != 0;
+         boolean lazySets = (flags & OPEN_LAZY) != 0 || trialSets != null;
+         boolean pipelined = (flags & OPEN_PIPELINED) != 0 && !lazySets && (flags & OPEN_LAZY_SCALARS) == 0;
+         int options = ((flags & OPEN_LAZY_SCALARS) != 0) ? JSONByteTokener.LAZY_SCALARS : 0;
+         JSONObject jsonObj = null;
+         if(lazySets || options != 0 || pipelined)
+         {
+            // the file content is read into the heap rather than memory-mapped, since it is retained by the deferred
+            // trial sets or values -- and the document may well be saved back to the same file. The pipeline parses
+            // slices of it as well. Deferred trial sets are always parsed leniently, since there's no falling back 
+            // once they're parsed on demand.
+            byte[] content = JSONUtilities.readJSONBytes(f);
+            if(!(pipelined && jmxDoc.openPipelined(content)))
+            {
+               jsonObj = lazySets ? null : parseStrict(ByteBuffer.wrap(content), options);
+               if(jsonObj == null)
+                  jsonObj = JSONSlice.parseObject(content, 0, content.length, lazySets ? "trialSets" : null, options);
+            }
+         }
+         else if(!parallel)
+         {
+            ByteBuffer content = JSONUtilities.loadJSONFile(f);
+            jsonObj = (content != null) ? parseStrict(content, 0) : null;
+            if(jsonObj == null)
+               jsonObj = (content != null) ? new JSONObject(new JSONByteTokener(content)) : 
+                     JSONUtilities.readJSONObject(f);
+         }
+         else jsonObj = JSONUtilities.readJSONObject(f, true);
+         if(jsonObj != null) jmxDoc.fromJSON(jsonObj, parallel || pipelined);
+         if(trialSets != null) jmxDoc.loadDeferred(trialSets, parallel);
          ok = true;
       }
       catch(IOException ioe)
@@ -278,25 +443,102 @@ public class JMXDoc
    }
    
    /**
-    * Save the contents of a JSON-formatted Maestro experiment (JMX) document to file.
+    * Helper for {@link #openDocument(String, StringBuffer, int, String[])}: Parse a JMX document in the strict mode of
+    * {@link JSONByteTokener}, which accepts only standard JSON and is faster than the lenient org.json syntax. Every
+    * document written by {@link #saveDocument} is standard JSON, so strict parsing fails only for a file that was 
+    * produced or edited by other means -- in which case the caller must parse the content again leniently.
+    * @param content The file content.
+    * @param options Any additional {@link JSONByteTokener} options.
+    * @return The JSON object parsed, or null if the content is not a standard JSON object.
+    */
+   private static JSONObject parseStrict(ByteBuffer content, int options)
+   {
+      try
+      {
+         Object value = new JSONByteTokener(content, options | JSONByteTokener.STRICT).nextValue();
+         return((value instanceof JSONObject) ? (JSONObject) value : null);
+      }
+      catch(JSONException jse) { return(null); }
+   }
+   
+   /** File extension of a gzip-compressed JMX document file. */
+   private static final String GZIP_EXT = ".jmx.gz";
+   
+   /**
+    * Does a file system path have the extension of a JMX document file, either ".jmx" or ".jmx.gz"? Note that a file
+    * is opened as gzip-compressed only if its content says so, regardless of its extension.
+    * @param path The file system path.
+    * @return True if the path ends with ".jmx" or ".jmx.gz".
+    */
+   private static boolean isJMXPath(String path)
+   {
+      return(path.endsWith(".jmx") || path.endsWith(GZIP_EXT));
+   }
+   
+   /**
+    * Save the contents of a JSON-formatted Maestro experiment (JMX) document to file. If any changes were made to the
+    * document in deferred validation mode, the document is validated first, and it is not saved if it is invalid. See
+    * {@link #validate()}.
     * @param doc The JMX document to be persisted to file.
-    * @param savePath File system path. File extension must be ".jmx". If file already exists, it is overwritten.
+    * @param savePath File system path. File extension must be ".jmx" or, for a gzip-compressed file, ".jmx.gz". If 
+    * file already exists, it is overwritten.
     * @return An empty string if operation is successful; else, a brief description of the reason for failure.
      */
    public static String saveDocument(JMXDoc doc, String savePath)
+   {
+      return(saveDocument(doc, savePath, -1));
+   }
+   
+   /**
+    * Save the contents of a JSON-formatted Maestro experiment (JMX) document to file, as in {@link 
+    * #saveDocument(JMXDoc, String)}, optionally rounding every floating-point value to a fixed number of decimal
+    * places. 
+    * 
+    * <p>Rounding makes the file smaller and faster to write, but the values saved are no longer exactly those in the
+    * document. Use it only when all floating-point values in the document are specified at a known resolution -- eg,
+    * 2 decimal places for trajectory positions and velocities specified to 0.01 deg and deg/s. Any trial set that has
+    * not been loaded yet (see {@link #OPEN_LAZY}) is loaded and validated first, so that its values are rounded too.
+    * Integer values are never affected.</p>
+    * 
+    * <p>If the file extension is ".jmx.gz", the JSON text is gzip-compressed as it is written. It is written in compact
+    * form, without the line breaks and indentation of a ".jmx" file: the file is not meant to be read in a text editor,
+    * and there is far less text to compress.</p>
+    * 
+    * @param doc The JMX document to be persisted to file.
+    * @param savePath File system path. File extension must be ".jmx" or, for a gzip-compressed file, ".jmx.gz". If 
+    * file already exists, it is overwritten.
+    * @param decimals The number of decimal places to which each floating-point value is rounded, in [0..17]. If 
+    * negative, each value is saved in the shortest form that reads back as the same value.
+    * @return An empty string if operation is successful; else, a brief description of the reason for failure.
+    */
+   public static String saveDocument(JMXDoc doc, String savePath, int decimals)
    {
       if(doc == null) return("No document specified");
-      if(savePath == null || !savePath.endsWith(".jmx"))
-         return("No save file path specified, or filename extension is not .jmx.");
+      if(decimals > MAX_DECIMALS) return("Number of decimal places may not exceed " + MAX_DECIMALS);
+      if(savePath == null || !isJMXPath(savePath))
+         return("No save file path specified, or filename extension is not .jmx or .jmx.gz.");
       
       File f = new File(savePath);
       if(f.getParentFile() == null || !f.getParentFile().isDirectory())
          return("Save file path cannot be found.");
       
+      if(doc.validationPending)
+      {
+         String emsg = doc.validate();
+         if(!emsg.isEmpty()) return("Document failed validation:\n  " + emsg);
+      }
+      if(decimals >= 0)
+      {
+         String emsg = doc.loadDeferred();
+         if(!emsg.isEmpty()) return("Document failed validation:\n  " + emsg);
+      }
+      
       String errMsg = "";
-      try
+      boolean compress = savePath.endsWith(GZIP_EXT);
+      try(Writer writer = new JSONAsciiWriter(
+            compress ? JSONUtilities.openGzipForWriting(f) : JSONUtilities.openForWriting(f)))
       {
-         JSONUtilities.writeJSONObject(f, doc.toJSON(), true);
+         doc.writeJSON(writer, !compress, decimals);
       }
       catch(IOException ioe)
       {
@@ -310,6 +552,139 @@ public class JMXDoc
       return(errMsg);
    }
    
+   /**
+    * Write the contents of this JMX document as JSON text, in the format described in the class header. The document
+    * is streamed section by section through a {@link JSONWriter}, so the JSON text is never assembled in memory, and
+    * memory use does not grow with the size of the document. Any trial set or trial that has not been loaded yet is 
+    * parsed transiently, one at a time, and written in the same layout as the rest of the document; see {@link 
+    * #OPEN_LAZY}. Unlike {@link #saveDocument}, this method does not validate the document first.
+    * @param writer The writer that receives the JSON text. It is neither flushed nor closed.
+    * @param pretty True to add linefeeds and whitespace indentation so the text is easier to read in a text editor. If
+    * false, no linefeeds or indentation are added (for minimum size).
+    * @param decimals If non-negative, the number of decimal places to which each floating-point value is rounded, as
+    * described in {@link #saveDocument(JMXDoc, String, int)}. If negative, each value is written in the shortest form
+    * that reads back as the same value.
+    * @throws JSONException if the document contains an invalid number. Also wraps any IO exception that occurs while 
+    * writing.
+    * @throws IllegalArgumentException if the number of decimal places exceeds {@link #MAX_DECIMALS}.
+    */
+   public void writeJSON(Writer writer, boolean pretty, int decimals) throws JSONException
+   {
+      JSONWriter jw = new JSONWriter(writer, pretty ? 2 : -1, decimals);
+      jw.object();
+      jw.key("version").value(CURRVERSION);
+      jw.key("settings").value(settings);
+      jw.key("chancfgs").value(chancfgs);
+      jw.key("perts").value(perts);
+      jw.key("targetSets").value(targetSets);
+      jw.key("trialSets").value(trialSets);
+      jw.endObject();
+   }
+   
+   /**
+    * Write the contents of this JMX document as ASCII-encoded JSON text to an output stream, as in {@link 
+    * #writeJSON(Writer, boolean, int)}. The text is buffered by a {@link JSONAsciiWriter}, and the buffer is flushed
+    * to the stream before returning. Any non-ASCII character in a string is written as a Unicode escape sequence.
+    * @param out The output stream. It is flushed but not closed.
+    * @param pretty True to add linefeeds and whitespace indentation; false for minimum size.
+    * @param decimals If non-negative, the number of decimal places to which each floating-point value is rounded.
+    * @throws IOException if an IO error occurs while writing.
+    * @throws JSONException if the document contains an invalid number.
+    * @throws IllegalArgumentException if the number of decimal places exceeds {@link #MAX_DECIMALS}.
+    */
+   public void writeJSON(OutputStream out, boolean pretty, int decimals) throws IOException, JSONException
+   {
+      Writer writer = new JSONAsciiWriter(Channels.newChannel(out));
+      writeJSON(writer, pretty, decimals);
+      writer.flush();
+      out.flush();
+   }
+   
+   /**
+    * List the trials in a JSON-formatted Maestro experiment (JMX) document file, without opening the document. The file
+    * is parsed onto a read-only {@link JSONTape} rather than into a JSON object tree, so even a very large document can
+    * be listed within a small heap. The document is not validated, apart from the structure of its trial sets.
+    * @param path File system path. Must specify an existing JMX file. File extension must be ".jmx" or ".jmx.gz".
+    * @param errBuf Optional error message buffer. If specified and operation fails, it will hold an error message; 
+    * otherwise, it will be empty.
+    * @return The path names of all trials in the document, in document order: <i>set/trial</i> for a trial that is
+    * not in a subset, <i>set/subset/trial</i> for one that is. Returns null if operation failed.
+    */
+   public static String[] listTrials(String path, StringBuffer errBuf)
+   {
+      if(errBuf != null) errBuf.setLength(0);
+      if(path == null || !isJMXPath(path))
+      {
+         if(errBuf != null) errBuf.append("Filename must end with .jmx or .jmx.gz");
+         return(null);
+      }
+      
+      File f = new File(path);
+      if(!f.isFile())
+      {
+         if(errBuf != null) errBuf.append("Specified file does not exist");
+         return(null);
+      }
+      
+      try
+      {
+         JSONTape.Cursor c = JSONUtilities.readJSONTape(f).root();
+         if(!c.find("trialSets") || !c.isArray()) throw new JSONException("Missing or invalid trialSets field");
+         List<String> paths = new ArrayList<>();
+         for(boolean more = c.enter(); more; more = c.next())
+         {
+            if(!c.find("name")) throw new JSONException("Trial set " + paths.size() + " has no name");
+            String set = c.getString();
+            c.exit();
+            listTrials(c, set + "/", paths);
+         }
+         return(paths.toArray(new String[0]));
+      }
+      catch(IOException ioe)
+      {
+         if(errBuf != null) errBuf.append("IO exception while reading file:\n  ").append(ioe.getMessage());
+      }
+      catch(JSONException jse)
+      {
+         if(errBuf != null) errBuf.append("Unable to parse file as JMX document:\n  ").append(jse.getMessage());
+      }
+      return(null);
+   }
+   
+   /**
+    * Helper for {@link #listTrials(String, StringBuffer)}. Append the path names of the trials in a trial set or trial
+    * subset to the list provided.
+    * @param c Cursor positioned at the JSON object defining the trial set or subset. On return, it is positioned
+    * there again.
+    * @param prefix Path name prefix for each trial in the set or subset.
+    * @param paths The list of trial path names.
+    * @throws JSONException if the set or subset, or any trial in it, is missing a required field.
+    */
+   private static void listTrials(JSONTape.Cursor c, String prefix, List<String> paths) throws JSONException
+   {
+      if(!c.find("trials") || !c.isArray()) throw new JSONException("Missing or invalid trials field in " + prefix);
+      if(c.enter())
+      {
+         do
+         {
+            if(c.find("subset"))
+            {
+               String subset = c.getString();
+               c.exit();
+               listTrials(c, prefix + subset + "/", paths);
+            }
+            else if(c.find("name"))
+            {
+               paths.add(prefix + c.getString());
+               c.exit();
+            }
+            else throw new JSONException("Unnamed trial in " + prefix);
+         } while(c.next());
+         c.exit();
+      }
+      c.exit();
+   }
+   
    /** 
     * Construct a new, empty JMX document. The new document contains no channel configurations, perturbation waveforms,
     * target sets or trial sets. All application settings are set to default values.
@@ -355,48 +730,319 @@ public class JMXDoc
     * earlier versions, we append a default value of 1ms to the field.</li>
     * </ul>
     * </p>
+    * <p>As each section of the document is validated, the name indexes of the channel configurations, perturbations,
+    * target sets and trial sets are rebuilt.</p>
     * @param jsonDoc JSON object encapsulating a JMX document's contents.
+    * @param parallel If true, the trials in the document are validated concurrently. See {@link #checkTrialSets}.
     * @throws JSONException if the argument cannot be parsed as a JMX document object.
     */
-   private void fromJSON(JSONObject jsonDoc) throws JSONException
+   private void fromJSON(JSONObject jsonDoc, boolean parallel) throws JSONException
    {
       reset();
+      boolean ok = false;
       try
       {
-         int v = jsonDoc.getInt("version");
-         if(v < 1 || v > CURRVERSION) throw new JSONException("Invalid JMX version = " + v);
-         
-         settings = jsonDoc.getJSONObject("settings");
-         if(v < 3)
+         loadSections(jsonDoc);
+         checkTrialSets(parallel);
+         ok = true;
+      }
+      finally { if(!ok) reset(); }
+   }
+   
+   /**
+    * Helper method for {@link #fromJSON} and {@link #openPipelined}. It loads all sections of a JMX document object,
+    * migrating an older version as described in {@link #fromJSON}, and validates all of them except the trial sets.
+    * @param jsonDoc JSON object encapsulating a JMX document's contents.
+    * @throws JSONException if the argument cannot be parsed as a JMX document object.
+    */
+   private void loadSections(JSONObject jsonDoc) throws JSONException
+   {
+      int v = jsonDoc.getInt("version");
+      if(v < 1 || v > CURRVERSION) throw new JSONException("Invalid JMX version = " + v);
+      
+      settings = jsonDoc.getJSONObject("settings");
+      if(v < 3)
+      {
+         // new RMVideo VSync flash feature: add default spot size (0=disabled) and flash duration
+         JSONArray rmv = settings.getJSONArray("rmv");
+         rmv.put(0);
+         rmv.put(1);
+      }
+      if(v < 4)
+      {
+         // VStab window length added as a persisted application setting in Maestro 4.1.1.
+         JSONArray other = settings.getJSONArray("other");
+         other.put(1);
+      }
+      checkSettings();
+      
+      chancfgs = jsonDoc.getJSONArray("chancfgs");
+      checkChanCfgs();
+      
+      perts = jsonDoc.getJSONArray("perts");
+      checkPerts();
+      
+      targetSets = jsonDoc.getJSONArray("targetSets");
+      checkTargetSets();
+      
+      trialSets = jsonDoc.getJSONArray("trialSets");
+   }
+   
+   /**
+    * Helper method for {@link #openDocument(String, StringBuffer, int, String[])}: Load a JMX document from the file
+    * content specified, parsing and validating the trial sets in a pipeline (see {@link #OPEN_PIPELINED}).
+    *
+    * <p>The calling thread parses the document object, but merely skips over the array of trial sets, which is parsed
+    * by a parser thread meanwhile (see {@link #parseTrialSets}). The parser hands off the trials in batches through a
+    * queue of at most {@link #PIPELINE_CAPACITY} batches, and it stalls whenever the queue is full. Once all other
+    * sections of the document are validated, the calling thread takes each batch in turn and passes its trials to a
+    * {@link TrialValidator} in the common fork-join pool. Trial validation does not depend on the names of trial sets
+    * and trials, which are checked and indexed as usual once each trial set has been parsed in full. As in {@link
+    * #checkTrialSets}, the error reported is the first one found in document order.</p>
+    *
+    * <p>The content is parsed only in the strict mode of {@link JSONByteTokener}, and the syntax error reported by a
+    * serial open includes the position of the error in the whole file. Hence, if any part of the content fails to
+    * parse, nothing is reported; the caller must load the content serially instead. No error is reported until all of
+    * the content has been parsed, since a syntax error takes precedence over all others.</p>
+    *
+    * @param content The file content.
+    * @return True if the document was loaded, false if any part of the content failed to parse. In the latter case,
+    * the document is reset.
+    * @throws JSONException if the content parsed but is not a valid JMX document. The error reported is the one that
+    * {@link #fromJSON} would report. The document is reset.
+    */
+   private boolean openPipelined(byte[] content) throws JSONException
+   {
+      reset();
+      BlockingQueue<Object> parsed = new ArrayBlockingQueue<>(PIPELINE_CAPACITY);
+      Thread parser = null;
+      List<TrialValidator> validators = new ArrayList<>();
+      List<TrialItem> items = new ArrayList<>();
+      JSONException sectionErr = null;
+      JSONException structErr = null;
+      boolean ok = false;
+      try
+      {
+         JSONObject jsonDoc = new JSONObject();
+         JSONArray sets = new JSONArray();
+         try
          {
-            // new RMVideo VSync flash feature: add default spot size (0=disabled) and flash duration
-            JSONArray rmv = settings.getJSONArray("rmv");
-            rmv.put(0);
-            rmv.put(1);
+            JSONByteTokener x = new JSONByteTokener(content, 0, content.length, JSONByteTokener.STRICT);
+            if(x.nextClean() != '{') return(false);
+            boolean more = (x.nextClean() != '}');
+            x.back();
+            while(more)
+            {
+               String key = x.nextKey();
+               if(x.nextClean() != ':') return(false);
+               boolean isArray = (x.nextClean() == '[');
+               x.back();
+               if(isArray && key.equals("trialSets") && parser == null)
+               {
+                  int start = x.position();
+                  parser = new Thread(() -> parseTrialSets(content, start, parsed), "JMX trial set parser");
+                  parser.setDaemon(true);
+                  parser.start();
+                  x.skipValue();
+                  jsonDoc.putOnce(key, sets);
+               }
+               else jsonDoc.putOnce(key, x.nextValue());
+               char c = x.nextClean();
+               more = (c == ',');
+               if(!(more || c == '}')) return(false);
+            }
          }
-         if(v < 4)
+         catch(JSONException jse) { return(false); }
+         if(parser == null) return(false);
+
+         // validate the other sections of the document while the parser gets underway. Trials are submitted for
+         // validation, and trial sets checked, only until the first error, but the parser's output is always drained
+         try { loadSections(jsonDoc); }
+         catch(JSONException jse) { sectionErr = jse; }
+         for(;;)
          {
-            // VStab window length added as a persisted application setting in Maestro 4.1.1.
-            JSONArray other = settings.getJSONArray("other");
-            other.put(1);
+            Object o = parsed.take();
+            if(o == PARSE_FAILED) return(false);
+            if(o == PARSE_DONE) break;
+            ParsedBatch batch = (ParsedBatch) o;
+            boolean checking = (sectionErr == null && structErr == null);
+            int n = batch.trials.size();
+            if(checking && n > 0)
+            {
+               TrialValidator v = new TrialValidator(batch.trials, new JSONException[n], new AtomicInteger(n), 0, n);
+               ForkJoinPool.commonPool().execute(v);
+               validators.add(v);
+            }
+            if(batch.trSet != null)
+            {
+               sets.put(batch.trSet);
+               if(checking) try
+               {
+                  int i = sets.length() - 1;
+                  String name = checkTrialSetName(i);
+                  collectTrialSet(sets.getJSONObject(i), name, items);
+               }
+               catch(JSONException jse) { structErr = jse; }
+            }
          }
-         checkSettings();
-         
-         chancfgs = jsonDoc.getJSONArray("chancfgs");
-         checkChanCfgs();
-         
-         perts = jsonDoc.getJSONArray("perts");
-         checkPerts();
-         
-         targetSets = jsonDoc.getJSONArray("targetSets");
-         checkTargetSets();
-         
-         trialSets = jsonDoc.getJSONArray("trialSets");
-         checkTrialSets();
+         ok = true;
+      }
+      catch(InterruptedException ie)
+      {
+         Thread.currentThread().interrupt();
+         return(false);
+      }
+      finally
+      {
+         if(parser != null) parser.interrupt();
+         if(!ok) for(TrialValidator v : validators) v.firstBad.set(0);
+         for(TrialValidator v : validators) v.quietlyJoin();
+         if(!ok) reset();
+      }
+
+      // the trials collected are, in document order, a prefix of those validated. Any trial skipped by a validator
+      // comes after an invalid trial handed off in the same batch, which is found first.
+      IdentityHashMap<JSONObject, JSONException> invalid = new IdentityHashMap<>();
+      for(TrialValidator v : validators) for(int i=0; i<v.errs.length; i++)
+      {
+         if(v.errs[i] != null) invalid.put(v.trials.get(i), v.errs[i]);
       }
-      finally { reset(); }
+      JSONException err = sectionErr;
+      for(int i=0; err == null && i<items.size(); i++)
+      {
+         JSONException jse = invalid.get(items.get(i).trial);
+         if(jse != null) err = new JSONException(items.get(i).wrap(jse.getMessage()));
+      }
+      if(err == null) err = structErr;
+      if(err != null)
+      {
+         reset();
+         throw err;
+      }
+      for(TrialItem item : items) indexTrialRefs(item.path(), item.trial, true);
+      return(true);
    }
-   
+
+   /**
+    * Helper method for {@link #openPipelined}, run on the parser thread. It parses the array of trial sets in a JMX
+    * document in strict mode and hands off the trials in each trial set to the calling thread, in document order, as
+    * they are parsed. Each batch holds the trials parsed from at least {@link #PIPELINE_BATCH_SIZE} bytes of content,
+    * or the remaining trials in a trial set; the last batch of a trial set includes the trial set itself. The trials
+    * are the children of the trial set and the trials in each trial subset. Children that are neither are skipped;
+    * they fail the checks applied to each complete trial set.
+    * @param content The file content.
+    * @param start Position of the opening bracket of the array of trial sets.
+    * @param parsed The queue that receives each {@link ParsedBatch}, and then {@link #PARSE_DONE} or, if the array
+    * fails to parse, {@link #PARSE_FAILED}.
+    */
+   private static void parseTrialSets(byte[] content, int start, BlockingQueue<Object> parsed)
+   {
+      Object last = PARSE_FAILED;
+      try
+      {
+         try
+         {
+            JSONByteTokener x = new JSONByteTokener(content, start, content.length - start, JSONByteTokener.STRICT);
+            x.nextClean();
+            boolean more = (x.nextClean() != ']');
+            x.back();
+            while(more)
+            {
+               if(x.nextClean() != '{')
+               {
+                  x.back();
+                  parsed.put(new ParsedBatch(new ArrayList<>(), x.nextValue()));
+               }
+               else parsed.put(parseTrialSet(x, parsed));
+               char c = x.nextClean();
+               more = (c == ',');
+               if(!(more || c == ']')) throw x.syntaxError("Expected a ',' or ']'");
+            }
+            last = PARSE_DONE;
+         }
+         catch(JSONException jse) { /* the syntax error is reported by the serial open */ }
+         finally { parsed.put(last); }
+      }
+      catch(InterruptedException ie) { /* the pipelined open was abandoned */ }
+   }
+
+   /**
+    * Helper method for {@link #parseTrialSets}. It parses one trial set object, after the opening brace, handing off
+    * batches of trials as the children of the trial set are parsed.
+    * @param x The tokener.
+    * @param parsed The queue that receives each batch of trials.
+    * @return The last batch of trials, which includes the trial set itself.
+    * @throws JSONException if a syntax error is encountered.
+    * @throws InterruptedException if the parser thread was interrupted while waiting to hand off a batch.
+    */
+   private static ParsedBatch parseTrialSet(JSONByteTokener x, BlockingQueue<Object> parsed)
+         throws JSONException, InterruptedException
+   {
+      JSONObject trSet = new JSONObject();
+      List<JSONObject> trials = new ArrayList<>();
+      boolean more = (x.nextClean() != '}');
+      x.back();
+      while(more)
+      {
+         String key = x.nextKey();
+         if(x.nextClean() != ':') throw x.syntaxError("Expected a ':' after a key");
+         boolean isArray = (x.nextClean() == '[');
+         if(isArray && key.equals("trials"))
+         {
+            JSONArray kids = new JSONArray();
+            int mark = x.position();
+            boolean moreKids = (x.nextClean() != ']');
+            x.back();
+            while(moreKids)
+            {
+               Object kid = x.nextValue();
+               kids.put(kid);
+               addTrials(kid, trials);
+               if(x.position() - mark >= PIPELINE_BATCH_SIZE)
+               {
+                  parsed.put(new ParsedBatch(trials, null));
+                  trials = new ArrayList<>();
+                  mark = x.position();
+               }
+               char c = x.nextClean();
+               moreKids = (c == ',');
+               if(!(moreKids || c == ']')) throw x.syntaxError("Expected a ',' or ']'");
+            }
+            trSet.putOnce(key, kids);
+         }
+         else
+         {
+            x.back();
+            trSet.putOnce(key, x.nextValue());
+         }
+         char c = x.nextClean();
+         more = (c == ',');
+         if(!(more || c == '}')) throw x.syntaxError("Expected a ',' or '}'");
+      }
+      return(new ParsedBatch(trials, trSet));
+   }
+
+   /**
+    * Helper method for {@link #parseTrialSet}. It appends the trials in a child of a trial set to a list: the child
+    * itself, if it is a trial, or the trials in it, if it is a trial subset.
+    * @param kid The child of the trial set.
+    * @param trials The list to which the trials are appended.
+    */
+   private static void addTrials(Object kid, List<JSONObject> trials)
+   {
+      if(!(kid instanceof JSONObject)) return;
+      JSONObject obj = (JSONObject) kid;
+      if(!obj.has("subset")) trials.add(obj);
+      else if(obj.opt("trials") instanceof JSONArray)
+      {
+         JSONArray subKids = (JSONArray) obj.opt("trials");
+         for(int i=0; i<subKids.length(); i++)
+         {
+            if(subKids.opt(i) instanceof JSONObject) trials.add((JSONObject) subKids.opt(i));
+         }
+      }
+   }
+
    /**
     * Reset this JMX document: no channel configurations, perturbations, target sets or trial sets defined; all 
     * application settings set to their default values.
@@ -417,19 +1063,108 @@ public class JMXDoc
          trialSets = new JSONArray();
       }
       catch(JSONException jse) { /* should never happen */ }
+      
+      chanCfgIndex.clear();
+      pertIndex.clear();
+      targetSetIndex.clear();
+      targetPathIndex.clear();
+      targetPathIndex.put(CHAIR, CHAIR_TARGET);
+      trialSetIndex.clear();
+      deferredSets.clear();
+      hasDeferred = false;
+      tgtRefs.clear();
+      pertRefs.clear();
+      chanCfgRefs.clear();
+      validationPending = false;
    }
    
    /**
-    * Change the application settings in this JMX document.
-    * @param rmvparams RMVideo display properties <i>[w h d b sz dur]</i>.
-    * @param fixacc Cont-mode horizontal and vertical fixation accuracy <i>[h v]</i> in deg.
-    * @param other  Other properties <i>[d p1 p2 ovride varatio audiorew beep vstabwin]</i>.
-    * @return On failure, the settings are left unchanged and a descriptive error message is returned; if successful, an
-    * empty string is returned.
+    * Validation level: No validation of targets and trials, beyond what is needed to index the document by object name
+    * and to index the objects referenced by each trial. Object names must still satisfy <i>Maestro</i> naming rules.
     */
-   public String changeSettings(int[] rmvparams, double[] fixacc, int[] other)
+   public static final int VALIDATE_OFF = 0;
+   
+   /**
+    * Validation level: Targets and trials are validated structurally. Object names are checked, and every target,
+    * perturbation and channel configuration referenced by a trial must exist in the document. Target parameters and
+    * the content of each trial definition are not validated.
+    */
+   public static final int VALIDATE_STRUCTURAL = 1;
+   
+   /** Validation level: All targets and trials are fully validated. This is the default. */
+   public static final int VALIDATE_FULL = 2;
+   
+   /**
+    * Get the level of validation applied to targets and trials in this JMX document. Application settings, channel
+    * configurations and perturbations, which are few and cheap to check, are always fully validated.
+    * @return The validation level: {@link #VALIDATE_OFF}, {@link #VALIDATE_STRUCTURAL}, or {@link #VALIDATE_FULL}.
+    */
+   public int getValidationLevel() { return(validationLevel); }
+   
+   /**
+    * Set the level of validation applied to targets and trials in this JMX document. It applies to subsequent changes 
+    * to the document and to {@link #validate()}. 
+    * @param level The validation level: {@link #VALIDATE_OFF}, {@link #VALIDATE_STRUCTURAL}, or {@link 
+    * #VALIDATE_FULL}. Any other value is ignored.
+    */
+   public void setValidationLevel(int level)
    {
-      JSONObject old = settings;
+      if(level >= VALIDATE_OFF && level <= VALIDATE_FULL) validationLevel = level;
+   }
+   
+   /**
+    * Is deferred validation mode enabled for this JMX document?
+    * @return True if deferred validation is enabled.
+    */
+   public boolean isDeferredValidation() { return(deferValidation); }
+   
+   /**
+    * Enable or disable deferred validation mode. In this mode, adding or replacing a trial or target only checks the
+    * new object's name and, for a trial, verifies that the targets, perturbations and channel configuration it uses
+    * exist in the document. The remaining validation is deferred until {@link #validate()} is called, which happens
+    * automatically when the document is saved. This is much faster when a script adds thousands of trials to a 
+    * document.
+    * @param enable True to enable deferred validation, false to disable it. Disabling the mode does not validate any
+    * changes made while it was enabled; they are still validated when the document is saved.
+    */
+   public void setDeferredValidation(boolean enable) { deferValidation = enable; }
+   
+   /**
+    * Validate the entire content of this JMX document in a single pass, at the document's current validation level.
+    * The trials are validated concurrently. The document is not changed, whether or not the validation succeeds.
+    * @return An empty string if the document is valid; else, a brief message describing the first error found.
+    */
+   public String validate()
+   {
+      String emsg = loadDeferred();
+      if(!emsg.isEmpty()) return(emsg);
+      
+      JMXDoc check = new JMXDoc();
+      check.validationLevel = validationLevel;
+      try
+      {
+         check.fromJSON(toJSON(), true);
+      }
+      catch(JSONException jse)
+      {
+         return(jse.getMessage());
+      }
+      
+      validationPending = false;
+      return("");
+   }
+   
+   /**
+    * Change the application settings in this JMX document.
+    * @param rmvparams RMVideo display properties <i>[w h d b sz dur]</i>.
+    * @param fixacc Cont-mode horizontal and vertical fixation accuracy <i>[h v]</i> in deg.
+    * @param other  Other properties <i>[d p1 p2 ovride varatio audiorew beep vstabwin]</i>.
+    * @return On failure, the settings are left unchanged and a descriptive error message is returned; if successful, an
+    * empty string is returned.
+    */
+   public String changeSettings(int[] rmvparams, double[] fixacc, int[] other)
+   {
+      JSONObject old = settings;
       String errMsg = "";
       try
       {
@@ -520,22 +1255,15 @@ public class JMXDoc
       // append the new channel configuration, or replace an existing one with the same name.
       try
       {
-         boolean found = false;
-         for(int i=0; i<chancfgs.length() && !found; i++)
-         {
-            JSONObject cfg = chancfgs.getJSONObject(i);
-            if(name.equals(cfg.getString("name")))
-            {
-               cfg.put("channels", channels);
-               found = true;
-            }
-         }
-         
-         if(!found)
+         Integer pos = chanCfgIndex.get(name);
+         if(pos != null)
+            chancfgs.getJSONObject(pos).put("channels", channels);
+         else
          {
             JSONObject chCfg = new JSONObject();
             chCfg.put("name", name);
             chCfg.put("channels", channels);
+            chanCfgIndex.put(name, chancfgs.length());
             chancfgs.put(chCfg);
          }
       }
@@ -544,26 +1272,52 @@ public class JMXDoc
       return("");
    }
    
+   /**
+    * Remove the named channel configuration from this JMX document. The operation fails if any trial in the document
+    * uses the channel configuration.
+    * @param name The channel configuration's name.
+    * @return An empty string if operation is successful; else, a brief message describing why the operation failed. On
+    * failure, the JMX document is left unchanged.
+    */
+   public String removeChanCfg(String name)
+   {
+      Integer pos = chanCfgIndex.get(name);
+      if(pos == null) return("Channel configuration does not exist: " + name);
+      String emsg = loadDeferred();
+      if(emsg.isEmpty()) emsg = checkUnreferenced(chanCfgRefs, name, "Channel configuration");
+      if(!emsg.isEmpty()) return(emsg);
+      
+      try
+      {
+         chancfgs.remove(pos);
+         chanCfgIndex.remove(name);
+         for(int i=pos; i<chancfgs.length(); i++)
+            chanCfgIndex.put(chancfgs.getJSONObject(i).getString("name"), i);
+      }
+      catch(JSONException jse) { /* should never happen */ }
+      
+      return("");
+   }
+   
    /**
     * Helper method validates the JSON array holding all channel configurations defined in this JMX document. Each 
     * element of the array must be a JSON object defining a single channel configuration. See class header for a 
-    * complete description of a channel configuration object. 
+    * complete description of a channel configuration object. The channel configuration name index is rebuilt in the
+    * process.
     * @throws JSONException if any channel configuration object is incorrectly formatted, if any such object has an 
     * invalid or duplicate name, or if any channel description within a given channel configuration includes an invalid
     * parameter value. The exception message gives a rough idea of where the problem lies, for debugging purposes.
     */
    private void checkChanCfgs() throws JSONException
    {
-      if(chancfgs.length() == 0) return;
-      
-      HashMap<String, Object> chanNamesUsed = new HashMap<>();
+      chanCfgIndex.clear();
       for(int i=0; i<chancfgs.length(); i++)
       {
          JSONObject cfg = chancfgs.getJSONObject(i);
          String name = cfg.getString("name");
-         if(chanNamesUsed.containsKey(name))
+         if(chanCfgIndex.containsKey(name))
             throw new JSONException("Channel configuration " + i + " --Found duplicate name: " + name);
-         chanNamesUsed.put(name, null);
+         chanCfgIndex.put(name, i);
          if(isNotValidObjectName(name))
             throw new JSONException("Channel configuration " + i + " --Invalid object name: " + name);
 
@@ -602,7 +1356,7 @@ public class JMXDoc
             throw new JSONException("ch# " + i + " --Incorrect number of elements");
          
          String ch = params.getString(0);
-         if(!CHANNEL_NAMES.containsKey(ch))
+         if(!CHANNEL_NAMES.contains(ch))
          {
             // channel ID might be one of the alternate generic IDs for the AI channels. If so, replace the
             // generic ID with its use-specific ID.
@@ -624,7 +1378,7 @@ public class JMXDoc
             throw new JSONException("ch# " + i + " --Illegal gain = " + params.getInt(4));
          
          String color = params.getString(5);
-         if(!CHANNEL_COLORS.containsKey(color))
+         if(!CHANNEL_COLORS.contains(color))
             throw new JSONException("ch# " + i + " --Illegal trace color = " + color);
       }
    }
@@ -666,18 +1420,41 @@ public class JMXDoc
       // append the new perturbation waveform, or replace an existing one with the same name.
       try
       {
-         boolean found = false;
-         for(int i=0; i<perts.length() && !found; i++)
+         Integer pos = pertIndex.get(name);
+         if(pos != null)
+            perts.put(pos, added);
+         else
          {
-            JSONArray p = perts.getJSONArray(i);
-            if(name.equals(p.getString(0)))
-            {
-               perts.put(i, added);
-               found = true;
-            }
+            pertIndex.put(name, perts.length());
+            perts.put(added);
          }
-         
-         if(!found) perts.put(added);
+      }
+      catch(JSONException jse) { /* should never happen */ }
+      
+      return("");
+   }
+   
+   /**
+    * Remove the named perturbation waveform from this JMX document. The operation fails if any trial in the document
+    * uses the perturbation.
+    * @param name The perturbation's name.
+    * @return An empty string if operation is successful; else, a brief message describing why the operation failed. On
+    * failure, the JMX document is left unchanged.
+    */
+   public String removePert(String name)
+   {
+      Integer pos = pertIndex.get(name);
+      if(pos == null) return("Perturbation does not exist: " + name);
+      String emsg = loadDeferred();
+      if(emsg.isEmpty()) emsg = checkUnreferenced(pertRefs, name, "Perturbation");
+      if(!emsg.isEmpty()) return(emsg);
+      
+      try
+      {
+         perts.remove(pos);
+         pertIndex.remove(name);
+         for(int i=pos; i<perts.length(); i++)
+            pertIndex.put(perts.getJSONArray(i).getString(0), i);
       }
       catch(JSONException jse) { /* should never happen */ }
       
@@ -687,16 +1464,14 @@ public class JMXDoc
    /**
     * Helper method validates the JSON array holding all perturbation waveforms defined in this JMX document. Each 
     * element of the array must be a JSON array defining a single perturbation. See class header for a complete 
-    * description of a perturbation waveform object. 
+    * description of a perturbation waveform object. The perturbation name index is rebuilt in the process.
     * @throws JSONException if any perturbation waveform object is incorrectly formatted, if any such object has an 
     * invalid or duplicate name, or if any perturbation definition includes an invalid parameter value. The exception 
     * message gives a rough idea of where the problem lies, for debugging purposes.
     */
    private void checkPerts() throws JSONException
    {
-      if(perts.length() == 0) return;
-      
-      HashMap<String, Object>pertNamesUsed = new HashMap<>();
+      pertIndex.clear();
       for(int i=0; i<perts.length(); i++)
       {
          JSONArray pertAr = perts.getJSONArray(i);
@@ -706,9 +1481,9 @@ public class JMXDoc
             throw new JSONException("Perturbation " + i + " --" + jse.getMessage());
          }
          String name = pertAr.getString(0);
-         if(pertNamesUsed.containsKey(name))
+         if(pertIndex.containsKey(name))
             throw new JSONException("Perturbation " + i + " --Found duplicate name = " + name);
-         pertNamesUsed.put(name, null);
+         pertIndex.put(name, i);
       }
    }
    
@@ -731,7 +1506,7 @@ public class JMXDoc
       if(isNotValidObjectName(name)) throw new JSONException("Invalid object name: " + name);
       
       String type = pert.getString(1);
-      if(!PERT_TYPES.containsKey(type))
+      if(!PERT_TYPES.contains(type))
          throw new JSONException("Unrecognized waveform type = " + type);
       
       int dur = pert.getInt(2);
@@ -779,20 +1554,16 @@ public class JMXDoc
    public String addTargetSet(String name)
    {
       if(isNotValidObjectName(name)) return("Object name violates Maestro naming rules");
+      if(targetSetIndex.containsKey(name)) return("Duplicate target set name!");
       
       try
       {
-         for(int i=0; i<targetSets.length(); i++)
-         {
-            JSONObject tgSet = targetSets.getJSONObject(i);
-            if(name.equals(tgSet.getString("name")))
-               return("Duplicate target set name!");
-         }
-         
          JSONObject setAdded = new JSONObject();
+         JSONArray targets = new JSONArray();
          setAdded.put("name", name);
-         setAdded.put("targets", new JSONArray());
+         setAdded.put("targets", targets);
          targetSets.put(setAdded);
+         targetSetIndex.put(name, new Container(setAdded, targets));
       }
       catch(JSONException jse) { /* should never happen */ }
       
@@ -801,43 +1572,45 @@ public class JMXDoc
    
    /**
     * Helper method validates the JSON array holding all target sets defined in this JMX document. Each element of the
-    * array is a JSONObject <i>tgSet</i>. See class header for a complete description of a target set object. 
+    * array is a JSONObject <i>tgSet</i>. See class header for a complete description of a target set object. The index
+    * of target sets by name, the index of targets by name within each set, and the index of targets by full path
+    * name <i>set/target</i> are rebuilt in the process.
     * @throws JSONException if any target set object in the document is incorrectly formatted, as more fully described
     * in the class header. The exception message gives a rough idea of where the problem lies, for debugging purposes.
     */
    private void checkTargetSets() throws JSONException
    {
-      if(targetSets.length() == 0) return;
-      
-      HashMap<String, Object> tgsetNamesUsed = new HashMap<>();
-      HashMap<String, Object> targetNamesUsed = new HashMap<>();
+      targetSetIndex.clear();
+      targetPathIndex.clear();
+      targetPathIndex.put(CHAIR, CHAIR_TARGET);
       for(int i=0; i<targetSets.length(); i++)
       {
          JSONObject tgSet = targetSets.getJSONObject(i);
          String name = tgSet.getString("name");
-         if(tgsetNamesUsed.containsKey(name))
+         if(targetSetIndex.containsKey(name))
             throw new JSONException("Target set " + i + " --Found duplicate name: " + name);
-         tgsetNamesUsed.put(name, null);
          if(isNotValidObjectName(name))
             throw new JSONException("Target set " + i + " --Invalid object name: " + name);
          else if(name.equals("Predefined"))
             throw new JSONException("Target set " + i + " --'Predefined' cannot be used to name a target set!");
          
          JSONArray targets = tgSet.getJSONArray("targets");
-         targetNamesUsed.clear();
+         Container c = new Container(tgSet, targets);
+         targetSetIndex.put(name, c);
          for(int j=0; j<targets.length(); j++)
          {
             JSONObject target = targets.getJSONObject(j);
             String tgName = target.getString("name");
-            if(targetNamesUsed.containsKey(tgName))
+            if(c.contains(tgName))
                throw new JSONException("Target " + j + " in set " + name + " --Duplicate target name: " + tgName);
-            targetNamesUsed.put(tgName, null);
+            c.add(tgName);
             if(isNotValidObjectName(tgName))
                throw new JSONException("Target " + j + " in set " + name + " --Invalid object name: " + tgName);
+            targetPathIndex.put(name + "/" + tgName, target);
             
             try
             {
-               checkRMVideoTarget(target);
+               if(validationLevel == VALIDATE_FULL) checkRMVideoTarget(target);
             }
             catch(JSONException jse) 
             { 
@@ -863,21 +1636,7 @@ public class JMXDoc
    public String addTarget(String set, String name, String type, JSONArray params)
    {
       // find the target set named
-      JSONObject tgSet = null;
-      try
-      {
-         for(int i=0; i<targetSets.length(); i++)
-         {
-            JSONObject obj = targetSets.getJSONObject(i);
-            if(set.equals(obj.getString("name")))
-            {
-               tgSet = obj;
-               break;
-            }
-         }
-      }
-      catch(JSONException jse) { /* should never happen */ }
-      
+      Container tgSet = targetSetIndex.get(set);
       if(tgSet == null) return("Destination target set does not exist: " + set);
       
       // validate the target name
@@ -893,21 +1652,18 @@ public class JMXDoc
          tgt.put("type", type);
          tgt.put("params", params);
          
-         checkRMVideoTarget(tgt);
+         if(deferValidation) validationPending = true;
+         else if(validationLevel == VALIDATE_FULL) checkRMVideoTarget(tgt);
          
-         JSONArray targets = tgSet.getJSONArray("targets");
-         boolean found = false;
-         for(int i=0; i<targets.length(); i++)
+         int pos = tgSet.indexOf(name);
+         if(pos >= 0)
+            tgSet.kids.put(pos, tgt);
+         else
          {
-            JSONObject t = targets.getJSONObject(i);
-            if(name.equals(t.getString("name")))
-            {
-               targets.put(i, tgt);
-               found = true;
-            }
+            tgSet.add(name);
+            tgSet.kids.put(tgt);
          }
-         
-         if(!found) targets.put(tgt);
+         targetPathIndex.put(set + "/" + name, tgt);
       }
       catch(JSONException jse)
       {
@@ -917,6 +1673,82 @@ public class JMXDoc
       return("");
    }
    
+   /**
+    * Remove a target from the specified target set in this JMX document. The operation fails if any trial in the
+    * document uses the target.
+    * @param set Name of the target set containing the target.
+    * @param name Name of the target to be removed.
+    * @return An empty string if operation is successful; else, a brief message describing why the operation failed. On
+    * failure, the JMX document is left unchanged.
+    */
+   public String removeTarget(String set, String name)
+   {
+      Container tgSet = targetSetIndex.get(set);
+      if(tgSet == null) return("Target set does not exist: " + set);
+      if(!tgSet.contains(name)) return("Target does not exist: " + set + "/" + name);
+      
+      String path = set + "/" + name;
+      String emsg = loadDeferred();
+      if(emsg.isEmpty()) emsg = checkUnreferenced(tgtRefs, path, "Target");
+      if(!emsg.isEmpty()) return(emsg);
+      
+      tgSet.remove(name);
+      targetPathIndex.remove(path);
+      return("");
+   }
+   
+   /**
+    * Rename a target in the specified target set of this JMX document. The target list of every trial that uses the
+    * target is updated to reflect the new name.
+    * @param set Name of the target set containing the target.
+    * @param name The target's current name.
+    * @param newName The target's new name. Must satisfy <i>Maestro</i> object naming rules, and must not duplicate the
+    * name of another target in the same set.
+    * @return An empty string if operation is successful; else, a brief message describing why the operation failed. On
+    * failure, the JMX document is left unchanged.
+    */
+   public String renameTarget(String set, String name, String newName)
+   {
+      Container tgSet = targetSetIndex.get(set);
+      if(tgSet == null) return("Target set does not exist: " + set);
+      int pos = tgSet.indexOf(name);
+      if(pos < 0) return("Target does not exist: " + set + "/" + name);
+      if(name.equals(newName)) return("");
+      if(isNotValidObjectName(newName)) return("Object name violates Maestro naming rules");
+      if(tgSet.contains(newName)) return("Duplicate target name in set: " + newName);
+      String emsg = loadDeferred();
+      if(!emsg.isEmpty()) return(emsg);
+      
+      String path = set + "/" + name;
+      String newPath = set + "/" + newName;
+      try
+      {
+         JSONObject tgt = tgSet.kids.getJSONObject(pos);
+         tgt.put("name", newName);
+         tgSet.rename(name, newName);
+         targetPathIndex.remove(path);
+         targetPathIndex.put(newPath, tgt);
+         
+         LinkedHashMap<String, JSONObject> refs = tgtRefs.remove(path);
+         if(refs != null)
+         {
+            tgtRefs.put(newPath, refs);
+            for(JSONObject trial : refs.values())
+            {
+               JSONArray tgts = trial.getJSONArray("tgts");
+               for(int i=0; i<tgts.length(); i++) if(path.equals(tgts.getString(i)))
+               {
+                  tgts.put(i, newPath);
+                  break;
+               }
+            }
+         }
+      }
+      catch(JSONException jse) { /* should never happen */ }
+      
+      return("");
+   }
+   
    /**
     * Helper method validates a JSON object encapsulating an RMVideo target definition, as it would be stored in a
     * JMX document. 
@@ -930,214 +1762,127 @@ public class JMXDoc
    private void checkRMVideoTarget(JSONObject target) throws JSONException
    {
       String type = target.getString("type");
-      if(!RMVTYPES.containsKey(type))
-         throw new JSONException("Invalid target type: " + type);
+      int t = JMXParam.rmvTypeBit(type);
+      if(t == 0)
+         throw new JSONException("Invalid target type: " + type, false);
       
       JSONArray params = target.getJSONArray("params");
-      if(params.length() % 2 != 0) throw new JSONException("Params array must have an even number of elements!");
+      if(params.length() % 2 != 0) throw new JSONException("Params array must have an even number of elements!", false);
       
-      // validate parameters
+      // validate parameters. Most are fully described by their entry in the parameter table; the rest are checked here.
       for(int i=0; i<params.length(); i+=2)
       {
          String pname = params.getString(i);
-         boolean ok = false;
-         boolean hasAperture = type.equals("dotpatch") || type.equals("spot") || type.equals("grating") || type.equals("plaid");
-         switch(pname)
+         JMXParam p = JMXParam.find(JMXParam.Context.TARGET, pname);
+         boolean ok = (p != null) && p.appliesTo(t);
+         if(ok && p.rule != JMXParam.Rule.CUSTOM) ok = p.isValid(params, i + 1, 0, 0);
+         else if(ok) switch(p)
          {
-         case "dotsize":
-         case "disparity":
-            ok = type.equals("point") || type.equals("dotpatch") || type.equals("flowfield");
-            if(ok)
-            {
-               if(pname.equals("dotsize"))
-               {
-                  int dotsz = params.getInt(i + 1);
-                  ok = (dotsz >= 1) && (dotsz <= 25);
-               }
-               else
-               {
-                  double disparity = params.getDouble(i+1);
-                  ok = (disparity >= 0);
-               }
-            }
-            break;
-         case "rgb":
-            ok = type.equals("point") || type.equals("dotpatch") || type.equals("flowfield") || type.equals("bar") ||
-                  type.equals("spot");
-            if(ok) params.getInt(i + 1);
-            break;
-         case "rgbcon":
-         case "seed":
-         case "wrtscreen":
-            ok = type.equals("dotpatch");
-            if(ok) params.getInt(i + 1);
-            break;
-         case "ndots":
-            ok = type.equals("dotpatch") || type.equals("flowfield");
-            if(ok)
+         case TGT_APERTURE:
+         {
+            String s = params.getString(i + 1);
+            ok = RMVAPERTURES.contains(s);
+
+            // user may use the aperture shape names from the Maestro GUI; map these to the names used in JMXDoc.
+            if((!ok) && RMVAPERTURES_ALT.containsKey(s))
             {
-               int ndots = params.getInt(i + 1);
-               ok = (ndots >= 0) && (ndots <= 9999);
+               s = RMVAPERTURES_ALT.get(s);
+               ok = true;
             }
+
+            if(ok && ((t & (JMXParam.RMV_GRATING|JMXParam.RMV_PLAID)) != 0)) ok = !s.contains("annu");
             break;
-         case "aperture":
-            ok = hasAperture;
+         }
+         case TGT_DIM:
+         {
+            JSONArray dim = params.getJSONArray(i + 1);
+            ok = (dim.length() >= 2) && (dim.length() <= 4);
             if(ok)
             {
-               String s = params.getString(i + 1);
-               ok = RMVAPERTURES.containsKey(s);
+               double w = dim.getDouble(0);
+               double h = dim.getDouble(1);
+               double minW = (t == JMXParam.RMV_BAR) ? 0 : 0.01;
+               ok = (w >= minW) && (w <= 120) && (h >= 0.01) && (h <= 120);
 
-               // user may use the aperture shape names from the Maestro GUI; map these to the names used in JMXDoc.
-               if((!ok) && RMVAPERTURES_ALT.containsKey(s))
+               if(ok && (t == JMXParam.RMV_FLOWFIELD))
+                  ok = (h < w);
+               if(ok && dim.length() >= 3 && (t == JMXParam.RMV_BAR))
                {
-                  s = RMVAPERTURES_ALT.get(s);
-                  ok = true;
+                  double daxis = dim.getDouble(2);
+                  ok = (daxis >= 0) && (daxis < 360);
                }
-
-               if(ok && (type.equals("grating") || type.equals("plaid"))) ok = !s.contains("annu");
-            }
-            break;
-         case "dim":
-            ok = !(type.equals("point") || type.equals("movie"));
-            if(ok)
-            {
-               JSONArray dim = params.getJSONArray(i + 1);
-               ok = (dim.length() >= 2) && (dim.length() <= 4);
-               if(ok)
+               if(ok && ((t & (JMXParam.RMV_DOTPATCH|JMXParam.RMV_SPOT)) != 0))
                {
-                  double w = dim.getDouble(0);
-                  double h = dim.getDouble(1);
-                  double minW = type.equals("bar") ? 0 : 0.01;
-                  ok = (w >= minW) && (w <= 120) && (h >= 0.01) && (h <= 120);
-
-                  if(ok && type.equals("flowfield"))
-                     ok = (h < w);
-                  if(ok && dim.length() >= 3 && type.equals("bar"))
+                  if(dim.length() >= 3)
                   {
-                     double daxis = dim.getDouble(2);
-                     ok = (daxis >= 0) && (daxis < 360);
+                     double iw = dim.getDouble(2);
+                     ok = (iw >= 0.01 && iw < w);
                   }
-                  if(ok && (type.equals("dotpatch") || type.equals("spot")))
+                  if(ok && dim.length() == 4)
                   {
-                     if(dim.length() >= 3)
-                     {
-                        double iw = dim.getDouble(2);
-                        ok = (iw >= 0.01 && iw < w);
-                     }
-                     if(ok && dim.length() == 4)
-                     {
-                        double ih = dim.getDouble(3);
-                        ok = (ih >= 0.01 && ih < h);
-                     }
+                     double ih = dim.getDouble(3);
+                     ok = (ih >= 0.01 && ih < h);
                   }
                }
             }
             break;
-         case "sigma":
-            ok = hasAperture;
-            if(ok)
-            {
-               JSONArray sigma = params.getJSONArray(i + 1);
-               ok = (sigma.length() == 2) && (sigma.getDouble(0) >= 0) && (sigma.getDouble(1) >= 0);
-            }
-            break;
-         case "pct":
-            ok = type.equals("dotpatch");
-            if(ok)
-            {
-               int pct = params.getInt(i + 1);
-               ok = pct >= 0 && pct <= 100;
-            }
-            break;
-         case "dotlf":
-            ok = type.equals("dotpatch");
-            if(ok)
-            {
-               JSONArray dotlf = params.getJSONArray(i + 1);
-               ok = (dotlf.length() == 2) && (dotlf.getDouble(1) >= 0);
-               if(ok) dotlf.getInt(0);  // make sure it's parsable as an integer!
-            }
+         }
+         case TGT_DOTLF:
+         {
+            JSONArray dotlf = params.getJSONArray(i + 1);
+            ok = (dotlf.length() == 2) && (dotlf.getDouble(1) >= 0);
+            if(ok) dotlf.getInt(0);  // make sure it's parsable as an integer!
             break;
-         case "noise":
-            ok = type.equals("dotpatch");
+         }
+         case TGT_NOISE:
+         {
+            JSONArray noise = params.getJSONArray(i + 1);
+            ok = (noise.length() == 4);
             if(ok)
             {
-               JSONArray noise = params.getJSONArray(i + 1);
-               ok = (noise.length() == 4);
-               if(ok)
-               {
-                  boolean isDir = (noise.getInt(0) != 0);
-                  boolean isMult = (noise.getInt(1) != 0);
-                  int rng = noise.getInt(2);
-                  int intv = noise.getInt(3);
-                  int minRng = isDir ? 0 : (isMult ? 1 : 0);
-                  int maxRng = isDir ? 180 : (isMult ? 7 : 300);
+               boolean isDir = (noise.getInt(0) != 0);
+               boolean isMult = (noise.getInt(1) != 0);
+               int rng = noise.getInt(2);
+               int intv = noise.getInt(3);
+               int minRng = isDir ? 0 : (isMult ? 1 : 0);
+               int maxRng = isDir ? 180 : (isMult ? 7 : 300);
 
-                  ok = (rng >= minRng) && (rng <= maxRng) && (intv >= 0);
-               }
+               ok = (rng >= minRng) && (rng <= maxRng) && (intv >= 0);
             }
             break;
-         case "square":
-         case "oriadj":
-            ok = type.equals("grating") || (type.equals("plaid"));
-            if(ok) params.getInt(i + 1);
-            break;
-         case "indep":
-            ok = type.equals("plaid");
-            if(ok) params.getInt(i + 1);
-            break;
-         case "grat1":
-         case "grat2":
-            ok = pname.equals("grat1") ? (type.equals("grating") || type.equals("plaid")) : type.equals("plaid");
+         }
+         case TGT_GRAT1:
+         case TGT_GRAT2:
+         {
+            JSONArray grat = params.getJSONArray(i + 1);
+            ok = (grat.length() == 5);
+            if(ok) grat.getInt(0);
             if(ok)
             {
-               JSONArray grat = params.getJSONArray(i + 1);
-               ok = (grat.length() == 5);
-               if(ok) grat.getInt(0);
-               if(ok)
-               {
-                  int conRGB = grat.getInt(1);
-                  int conR = (conRGB >> 16) & 0x00FF;
-                  int conG = (conRGB >> 16) & 0x00FF;
-                  int conB = conRGB & 0x00FF;
-                  ok = (conR <= 100) && (conG <= 100) && (conB <= 100);
-               }
-               if(ok)
-                  ok = (grat.getDouble(2) >= 0.01) && (grat.getDouble(3) >= 0) && (grat.getDouble(3) < 360) &&
-                        (grat.getDouble(4) >= -180) && (grat.getDouble(4) <= 180);
+               int conRGB = grat.getInt(1);
+               int conR = (conRGB >> 16) & 0x00FF;
+               int conG = (conRGB >> 16) & 0x00FF;
+               int conB = conRGB & 0x00FF;
+               ok = (conR <= 100) && (conG <= 100) && (conB <= 100);
             }
-            break;
-         case "folder":
-         case "file":
-            ok = type.equals("movie") || type.equals("image");
             if(ok)
-            {
-               String s = params.getString(i + 1);
-               ok = (!s.isEmpty()) && (s.length() <= RMV_MVF_LEN) && mediaNameVerifier.matcher(s).matches();
-            }
+               ok = (grat.getDouble(2) >= 0.01) && (grat.getDouble(3) >= 0) && (grat.getDouble(3) < 360) &&
+                     (grat.getDouble(4) >= -180) && (grat.getDouble(4) <= 180);
             break;
-         case "flags":
-            ok = type.equals("movie");
-            if(ok)
-            {
-               JSONArray flags = params.getJSONArray(i + 1);
-               ok = flags.length() == 3;
-               if(ok) for(int j = 0; j < 3; j++) flags.getInt(j);
-            }
+         }
+         case TGT_FOLDER:
+         case TGT_FILE:
+         {
+            String s = params.getString(i + 1);
+            ok = (s.length() <= RMV_MVF_LEN) && consistsOf(s, MEDIANAME_CHARS);
             break;
-         case "flicker":
-            JSONArray flickerParams = params.getJSONArray(i + 1);
-            ok = (flickerParams.length() == 3);
-            for(int j = 0; ok && j < 3; j++)
-            {
-               int val = flickerParams.getInt(j);
-               ok = (val >= 0) && (val <= 99);
-            }
+         }
+         default:
             break;
          }
          
          if(!ok)
-            throw new JSONException("Bad parameter (name = " + pname + ") for target type = " + type);
+            throw new JSONException("Bad parameter (name = " + pname + ") for target type = " + type, false);
       }
    }
    
@@ -1152,134 +1897,394 @@ public class JMXDoc
    {
       if(isNotValidObjectName(name))
          return("Object name violates Maestro naming rules");
+      if(trialSetIndex.containsKey(name) || deferredSets.containsKey(name)) return("Duplicate trial set name!");
       
       try
       {
-         for(int i=0; i<trialSets.length(); i++)
-         {
-            JSONObject trSet = trialSets.getJSONObject(i);
-            if(name.equals(trSet.getString("name")))
-               return("Duplicate trial set name!");
-         }
-         
          JSONObject setAdded = new JSONObject();
+         JSONArray trials = new JSONArray();
          setAdded.put("name", name);
-         setAdded.put("trials", new JSONArray());
+         setAdded.put("trials", trials);
          trialSets.put(setAdded);
+         
+         Container c = new Container(setAdded, trials);
+         c.subsets = new HashMap<>();
+         trialSetIndex.put(name, c);
       }
       catch(JSONException jse) { /* should never happen */ }
       
       return("");
    }
    
-   private void checkTrialSets() throws JSONException
+   /**
+    * Helper method validates the JSON array holding all trial sets defined in this JMX document. Each element of the
+    * array is a JSONObject <i>trSet</i>. See class header for a complete description of a trial set object. The index
+    * of trial sets by name, the index of trials and trial subsets by name within each set, and the index of the
+    * targets, perturbations and channel configurations referenced by each trial are rebuilt in the process.
+    * 
+    * <p>Validation takes two passes. The first pass checks the structure of each trial set and subset and the names
+    * of all children, builds the name indices, and collects the trials in document order. The second validates the
+    * trials themselves, which only reads the document's channel configurations, perturbations and targets (already
+    * validated). The second pass may run concurrently. Either way, the error reported is the first one found in 
+    * document order, just as if the document had been validated in a single serial pass.</p>
+    * 
+    * @param parallel If true, the trials are validated concurrently in the common fork-join pool.
+    * @throws JSONException if any trial set object in the document is incorrectly formatted, as more fully described
+    * in the class header. The exception message gives a rough idea of where the problem lies, for debugging purposes.
+    */
+   private void checkTrialSets(boolean parallel) throws JSONException
+   {
+      trialSetIndex.clear();
+      
+      // first pass stops at the first structural error. It is reported only if all trials preceding it are valid.
+      List<TrialItem> items = new ArrayList<>();
+      JSONException structErr = null;
+      try { collectTrials(items); }
+      catch(JSONException jse) { structErr = jse; }
+      checkTrials(items, structErr, parallel);
+   }
+   
+   /**
+    * Helper method for {@link #checkTrialSets} and {@link #loadDeferred(String[], boolean)}. It validates a list of
+    * trials collected in document order, then adds each trial to the index of objects referenced by trials. The error
+    * reported is the first one in document order.
+    * @param items The trials to be validated.
+    * @param structErr A structural error found while collecting the trials, or null. It is reported only if all of the
+    * trials collected are valid, since they precede it in document order.
+    * @param parallel If true, the trials are validated concurrently in the common fork-join pool.
+    * @throws JSONException if any trial is invalid, or if a structural error was found.
+    */
+   private void checkTrials(List<TrialItem> items, JSONException structErr, boolean parallel) throws JSONException
    {
-      if(trialSets.length() == 0) return;
+      int n = items.size();
+      JSONException[] errs = new JSONException[n];
+      int firstBad;
+      if(parallel && n >= 2*MIN_TRIALS_PER_TASK)
+      {
+         List<JSONObject> trials = new ArrayList<>(n);
+         for(TrialItem item : items) trials.add(item.trial);
+         AtomicInteger firstBadRef = new AtomicInteger(n);
+         ForkJoinPool.commonPool().invoke(new TrialValidator(trials, errs, firstBadRef, 0, n));
+         firstBad = firstBadRef.get();
+      }
+      else
+      {
+         firstBad = n;
+         for(int i=0; i<n && firstBad == n; i++)
+         {
+            try { checkTrial(items.get(i).trial, validationLevel); }
+            catch(JSONException jse) { errs[i] = jse; firstBad = i; }
+         }
+      }
       
-      HashMap<String, Object> trsetNamesUsed = new HashMap<>();
-      HashMap<String, Object> namesUsedInSet = new HashMap<>();
+      if(firstBad < n) throw new JSONException(items.get(firstBad).wrap(errs[firstBad].getMessage()));
+      if(structErr != null) throw structErr;
+      
+      for(TrialItem item : items) indexTrialRefs(item.path(), item.trial, true);
+   }
+   
+   /**
+    * Helper method for {@link #checkTrialSets}. It checks the structure of each trial set and trial subset and the
+    * names of all children, indexes the children by name, and collects all trials in document order for validation.
+    * @param items The list to which the trials are appended.
+    * @throws JSONException upon encountering the first structural or naming error.
+    */
+   private void collectTrials(List<TrialItem> items) throws JSONException
+   {
       for(int i=0; i<trialSets.length(); i++)
       {
-         JSONObject trSet = trialSets.getJSONObject(i);
-         String name = trSet.getString("name");
-         if(trsetNamesUsed.containsKey(name))
-            throw new JSONException("Trial set " + i + " --Found duplicate name: " + name);
-         trsetNamesUsed.put(name, null);
-         if(isNotValidObjectName(name))
-            throw new JSONException("Trial set " + i + " --Invalid object name: " + name);
+         Object o = trialSets.opt(i);
+         String name = checkTrialSetName(i);
+         if(o instanceof JSONSlice)
+         {
+            deferredSets.put(name, (JSONSlice) o);
+            hasDeferred = true;
+         }
+         else collectTrialSet(trialSets.getJSONObject(i), name, items);
+      }
+   }
+   
+   /**
+    * Helper method for {@link #collectTrials}. It checks that the name of a trial set is valid and is not shared by any
+    * trial set that precedes it. A trial set that is unparsed JSON text (see {@link #OPEN_LAZY}) is only scanned for
+    * its name.
+    * @param i The trial set's position in the document.
+    * @return The trial set's name.
+    * @throws JSONException if the trial set is not an object with a name, or the name is invalid or a duplicate.
+    */
+   private String checkTrialSetName(int i) throws JSONException
+   {
+      Object o = trialSets.opt(i);
+      String name = (o instanceof JSONSlice) ? scanMembers((JSONSlice) o, "Trial set " + i, "name").getString("name") :
+            trialSets.getJSONObject(i).getString("name");
+      if(trialSetIndex.containsKey(name) || deferredSets.containsKey(name))
+         throw new JSONException("Trial set " + i + " --Found duplicate name: " + name);
+      if(isNotValidObjectName(name))
+         throw new JSONException("Trial set " + i + " --Invalid object name: " + name);
+      return(name);
+   }
+   
+   /**
+    * Helper method for {@link #collectTrials}. It checks the structure of a trial set and the names of all its 
+    * children, indexes the children by name, and appends the trials in the set to a list for validation. Any child 
+    * that is unparsed JSON text (see {@link #OPEN_LAZY}) is only scanned for its name; a trial subset is parsed, but
+    * its trials are not, and unparsed trials are not added to the list.
+    * @param trSet The trial set object.
+    * @param name The trial set's name, which has already been checked.
+    * @param items The list to which the trials are appended.
+    * @return The trial set, with its index of children by name. It has been added to the index of trial sets.
+    * @throws JSONException upon encountering the first structural or naming error.
+    */
+   private Container collectTrialSet(JSONObject trSet, String name, List<TrialItem> items) throws JSONException
+   {
+      Container c = indexTrialSet(trSet, name);
+      collectTrialSetKids(c, name, 0, c.kids.length(), items);
+      return(c);
+   }
+   
+   /**
+    * Helper method for {@link #collectTrialSet}. It adds a trial set, with an empty index of its children, to the index
+    * of trial sets.
+    * @param trSet The trial set object.
+    * @param name The trial set's name, which has already been checked.
+    * @return The trial set.
+    * @throws JSONException if the trial set object lacks the array of children.
+    */
+   private Container indexTrialSet(JSONObject trSet, String name) throws JSONException
+   {
+      // a trial set con contain individual trial objects or trial subsets, which are groups of related trials
+      Container c = new Container(trSet, trSet.getJSONArray("trials"));
+      c.subsets = new HashMap<>();
+      trialSetIndex.put(name, c);
+      return(c);
+   }
+   
+   /**
+    * Helper method for {@link #collectTrialSet}. It checks the names of a contiguous range of children in a trial set,
+    * adds them to the trial set's index of children, and appends the trials among them to a list for validation.
+    * @param c The trial set.
+    * @param name The trial set's name.
+    * @param start Position of the first child in the range.
+    * @param end Position just past the last child in the range.
+    * @param items The list to which the trials are appended.
+    * @throws JSONException upon encountering the first structural or naming error.
+    */
+   private void collectTrialSetKids(Container c, String name, int start, int end, List<TrialItem> items) 
+         throws JSONException
+   {
+      JSONArray kids = c.kids;
+      for(int j=start; j<end; j++)
+      {
+         Object o = kids.opt(j);
+         boolean deferred = (o instanceof JSONSlice);
+         String where = "Child " + j + " in trial set " + name;
+         JSONObject kid = deferred ? scanMembers((JSONSlice) o, where, "name", "subset") : kids.getJSONObject(j);
+         boolean isSubset = kid.has("subset");
          
-         // a trial set con contain individual trial objects or trial subsets, which are groups of related trials
-         JSONArray kids = trSet.getJSONArray("trials");
-         namesUsedInSet.clear();
-         for(int j=0; j<kids.length(); j++)
+         String kidName = kid.getString(isSubset ? "subset" : "name");
+         if(c.contains(kidName))
+            throw new JSONException("Child " + j + " in trial set " + name + " --Duplicate name: " + kidName);
+         c.add(kidName);
+         if(isNotValidObjectName(kidName))
+            throw new JSONException("Child " + j + " in trial set " + name + " --Invalid object name: " + kidName);
+         
+         if(isSubset)
          {
-            JSONObject kid = kids.getJSONObject(j);
-            boolean isSubset = kid.has("subset");
-            
-            String kidName = kid.getString(isSubset ? "subset" : "name");
-            if(namesUsedInSet.containsKey(kidName))
-               throw new JSONException("Child " + j + " in trial set " + name + " --Duplicate name: " + kidName);
-            namesUsedInSet.put(kidName, null);
-            if(isNotValidObjectName(kidName))
-               throw new JSONException("Child " + j + " in trial set " + name + " --Invalid object name: " + kidName);
-            
-            try
-            { 
-               if(isSubset) checkTrialSubset(kid);
-               else checkTrial(kid); 
-            }
-            catch(JSONException jse)
+            if(deferred)
             {
-               throw new JSONException("Child " + j + " in trial set " + name + " --" + jse.getMessage());
+               try { kid = ((JSONSlice) o).parseObject("trials"); }
+               catch(JSONException jse) { throw new JSONException(where + " --" + jse.getMessage()); }
+               kids.put(j, kid);
             }
+            c.subsets.put(kidName, collectSubsetTrials(kid, name, j, items));
          }
+         else if(deferred) hasDeferred = true;
+         else items.add(new TrialItem(kid, kidName, name, j, null));
       }
    }
    
    /**
-    * Helper method validates a JSON object encapsulating a <i>Maestro</i> trial subset definition, as it would be 
-    * stored in a JMX document. A trial subset, introduced in Maestro v3.1.2, is simply a group of trials that is a 
-    * child of a trial set object. A trial subset can only contain trial objects, while a trial set can contain both
-    * subsets and individual trials.
+    * Helper method for {@link #collectTrials}. It checks a JSON object encapsulating a <i>Maestro</i> trial subset 
+    * definition, as it would be stored in a JMX document. A trial subset, introduced in Maestro v3.1.2, is simply a 
+    * group of trials that is a child of a trial set object. A trial subset can only contain trial objects, while a 
+    * trial set can contain both subsets and individual trials.
     * 
-    * @param sub A trial subset definition object, as more fully described in the class header. This method validates
+    * @param sub A trial subset definition object, as more fully described in the class header. This method checks
     * the content of the object's "trials" field, which should be a JSON array containing only JSON trial object, no two
     * of which can share the same name. The object's "subset" field, which contains the name of the subset itself, must
-    * be validated by the caller.
+    * be validated by the caller. The trials themselves are not validated, only collected; a trial that is unparsed JSON
+    * text (see {@link #OPEN_LAZY}) is only scanned for its name.
+    * @param set Name of the parent trial set.
+    * @param child Position of the subset within the parent trial set.
+    * @param items The list to which the subset's trials are appended.
+    * @return The trial subset, with its index of trials by name.
     * @throws JSONException if the object is not consistent with the definition of a trial subset. The exception message
     * gives a rough idea of where the problem lies, for debugging purposes.
     */
-   private void checkTrialSubset(JSONObject sub) throws JSONException
+   private Container collectSubsetTrials(JSONObject sub, String set, int child, List<TrialItem> items) 
+         throws JSONException
    {
+      String subName = sub.getString("subset");
       try
       {
-         HashMap<String, Object> trialNamesUsed = new HashMap<>();
          JSONArray jsonTrials = sub.getJSONArray("trials");
+         Container c = new Container(sub, jsonTrials);
          for(int i=0; i<jsonTrials.length(); i++)
          {
-            JSONObject trial = jsonTrials.getJSONObject(i);
+            Object o = jsonTrials.opt(i);
+            boolean deferred = (o instanceof JSONSlice);
+            JSONObject trial = deferred ? scanMembers((JSONSlice) o, "Trial " + i + " in subset", "name") : 
+                  jsonTrials.getJSONObject(i);
             String name = trial.getString("name");
-            if(trialNamesUsed.containsKey(name))
+            if(c.contains(name))
                throw new JSONException("Trial " + i + " in subset --Duplicate name: " + name);
-            trialNamesUsed.put(name, null);
+            c.add(name);
             if(isNotValidObjectName(name))
                throw new JSONException("Trial " + i + " in subset --Invalid object name: " + name);
 
-            checkTrial(trial);
+            if(deferred) hasDeferred = true;
+            else items.add(new TrialItem(trial, name, set, child, subName));
          }
+         return(c);
       }
       catch(JSONException jse)
       {
-         throw new JSONException("Bad trial subset (" + jse.getMessage() + ")");
+         throw new JSONException("Child " + child + " in trial set " + set + " --Bad trial subset (" + 
+               jse.getMessage() + ")");
       }
    }
    
-   /**
-    * Append a new trial to the specified trial set in this JMX document, or replace an existing trial in that set.
-    * @param set Name of destination trial set. Must exist in document.
-    * @param trialObj The trial definition. The required content/format of this <code>JSONObject</code> is described
-    * in detail in the class header.
-    * @return An empty string if operation is successful; else, a brief message describing why the operation failed. On
-    * failure, the JMX document is left unchanged.
-    */
-   public String addTrial(String set, JSONObject trialObj)
+   /** A trial awaiting validation in {@link #checkTrialSets}, and its location in the document. */
+   private static class TrialItem
    {
-      // find the trial set named
-      JSONObject trialSet = null;
-      try
+      TrialItem(JSONObject trial, String name, String set, int child, String subset)
       {
-         for(int i=0; i<trialSets.length(); i++)
+         this.trial = trial;
+         this.name = name;
+         this.set = set;
+         this.child = child;
+         this.subset = subset;
+      }
+      
+      /** The trial's path name: <i>set/trial</i> or <i>set/subset/trial</i>. */
+      String path() { return(set + "/" + ((subset != null) ? subset + "/" : "") + name); }
+      
+      /**
+       * Prepare the error message reported when this trial fails validation. It identifies the trial's position in the
+       * parent trial set (and subset, if applicable).
+       * @param msg The validation error message.
+       * @return The error message as reported to the user.
+       */
+      String wrap(String msg)
+      {
+         if(subset != null) msg = "Bad trial subset (" + msg + ")";
+         return("Child " + child + " in trial set " + set + " --" + msg);
+      }
+      
+      /** The trial definition. */
+      final JSONObject trial;
+      /** The trial name. */
+      final String name;
+      /** Name of the trial set containing the trial. */
+      final String set;
+      /** Position of the trial, or the trial subset containing it, within the trial set. */
+      final int child;
+      /** Name of the trial subset containing the trial; null if trial is a direct child of the trial set. */
+      final String subset;
+   }
+   
+   /** Minimum number of trials validated by a single fork-join task during a parallel open. */
+   private final static int MIN_TRIALS_PER_TASK = 8;
+   
+   /** Minimum number of bytes of content from which the trials in one batch are parsed during a pipelined open. */
+   private final static int PIPELINE_BATCH_SIZE = 256*1024;
+   
+   /** Maximum number of parsed batches awaiting validation during a pipelined open. */
+   private final static int PIPELINE_CAPACITY = 64;
+   
+   /** Handed off by the parser after the last batch of trials during a pipelined open. */
+   private final static Object PARSE_DONE = new Object();
+   
+   /** Handed off by the parser in place of a batch when the trial sets fail to parse during a pipelined open. */
+   private final static Object PARSE_FAILED = new Object();
+   
+   /** A batch of trials handed off by the parser to the calling thread during a pipelined open. */
+   private static class ParsedBatch
+   {
+      ParsedBatch(List<JSONObject> trials, Object trSet)
+      {
+         this.trials = trials;
+         this.trSet = trSet;
+      }
+      
+      /** The trials parsed since the previous batch, in document order. */
+      final List<JSONObject> trials;
+      /** If this is the last batch of a trial set, the trial set -- normally a JSON object; else null. */
+      final Object trSet;
+   }
+   
+   /**
+    * A fork-join task that validates a contiguous range of the trials collected by {@link #checkTrialSets} or handed 
+    * off by the parser in {@link #openPipelined}, splitting the range among subtasks if it is large enough. The 
+    * position of the first invalid trial found so far is shared among all tasks; any trial beyond that position is 
+    * skipped, since its error could not be the one reported. Hence, once all tasks are done, the shared position is 
+    * that of the first invalid trial in document order.
+    */
+   private class TrialValidator extends RecursiveAction
+   {
+      TrialValidator(List<JSONObject> trials, JSONException[] errs, AtomicInteger firstBad, int start, int end)
+      {
+         this.trials = trials;
+         this.errs = errs;
+         this.firstBad = firstBad;
+         this.start = start;
+         this.end = end;
+      }
+      
+      @Override protected void compute()
+      {
+         if(end - start >= 2*MIN_TRIALS_PER_TASK)
+         {
+            int mid = (start + end) >>> 1;
+            invokeAll(new TrialValidator(trials, errs, firstBad, start, mid),
+                  new TrialValidator(trials, errs, firstBad, mid, end));
+            return;
+         }
+         
+         for(int i=start; i<end && i<firstBad.get(); i++)
          {
-            JSONObject obj = trialSets.getJSONObject(i);
-            if(set.equals(obj.getString("name")))
+            try { checkTrial(trials.get(i), validationLevel); }
+            catch(JSONException jse)
             {
-               trialSet = obj;
-               break;
+               errs[i] = jse;
+               firstBad.accumulateAndGet(i, Math::min);
+               return;
             }
          }
       }
-      catch(JSONException jse) { /* should never happen */ }
       
+      private static final long serialVersionUID = 1L;
+      private final List<JSONObject> trials;
+      private final JSONException[] errs;
+      private final AtomicInteger firstBad;
+      private final int start;
+      private final int end;
+   }
+   
+   /**
+    * Append a new trial to the specified trial set in this JMX document, or replace an existing trial in that set.
+    * @param set Name of destination trial set. Must exist in document.
+    * @param trialObj The trial definition. The required content/format of this <code>JSONObject</code> is described
+    * in detail in the class header.
+    * @return An empty string if operation is successful; else, a brief message describing why the operation failed. On
+    * failure, the JMX document is left unchanged.
+    */
+   public String addTrial(String set, JSONObject trialObj)
+   {
+      // find the trial set named
+      Container trialSet;
+      try { trialSet = trialSet(set); }
+      catch(JSONException jse) { return(jse.getMessage()); }
       if(trialSet == null) return("Destination trial set does not exist: " + set);
       
       // validate the trial object. If successful, replace a trial with the same name under the destination trial set,
@@ -1290,21 +2295,24 @@ public class JMXDoc
          String trName = trialObj.getString("name");
          if(isNotValidObjectName(trName)) throw new JSONException("Invalid trial name: " + trName);
 
-         checkTrial(trialObj);
+         if(trialSet.subsets.containsKey(trName))
+            throw new JSONException("Trial name duplicates that of a trial subset in set: " + trName);
+
+         checkAddedTrial(trialObj);
          
-         JSONArray trials = trialSet.getJSONArray("trials");
-         boolean found = false;
-         for(int i=0; i<trials.length(); i++)
+         String path = set + "/" + trName;
+         int pos = trialSet.indexOf(trName);
+         if(pos >= 0)
          {
-            JSONObject t = trials.getJSONObject(i);
-            if(trName.equals(t.getString("name")))
-            {
-               trials.put(i, trialObj);
-               found = true;
-            }
+            unindexTrialRefs(path, trialSet.kids.opt(pos));
+            trialSet.kids.put(pos, trialObj);
          }
-         
-         if(!found) trials.put(trialObj);
+         else
+         {
+            trialSet.add(trName);
+            trialSet.kids.put(trialObj);
+         }
+         indexTrialRefs(path, trialObj, true);
       }
       catch(JSONException jse)
       {
@@ -1314,6 +2322,91 @@ public class JMXDoc
       return("");
    }
    
+   /**
+    * Remove a trial from the specified trial set in this JMX document. Use {@link #removeTrialFromSubset} to remove a
+    * trial within a trial subset.
+    * @param set Name of the trial set containing the trial.
+    * @param name Name of the trial to be removed. It must be a trial, not a trial subset, in the set.
+    * @return An empty string if operation is successful; else, a brief message describing why the operation failed. On
+    * failure, the JMX document is left unchanged.
+    */
+   public String removeTrial(String set, String name)
+   {
+      Container trialSet;
+      try { trialSet = trialSet(set); }
+      catch(JSONException jse) { return(jse.getMessage()); }
+      if(trialSet == null) return("Trial set does not exist: " + set);
+      if(trialSet.subsets.containsKey(name)) return("Cannot remove a trial subset: " + set + "/" + name);
+      return(removeTrial(trialSet, set + "/", name));
+   }
+   
+   /**
+    * Validate a trial definition against this JMX document without adding it to the document. The trial is fully
+    * validated regardless of the document's validation level, and its references to targets, perturbations and channel
+    * configurations are checked against the current content of the document.
+    * 
+    * <p>Unlike the methods that add a trial to the document, this method does not report failure by throwing or by
+    * returning a formatted message. Instead it returns a small result object identifying the part of the trial 
+    * definition that is invalid and why, so that a caller that checks many candidate trials -- most of which are 
+    * expected to fail -- need not pay for exceptions or message formatting it will not use. A valid trial yields a 
+    * shared result instance, so validating a good trial allocates nothing.</p>
+    * 
+    * @param trial The trial definition. The required content/format of this <code>JSONObject</code> is described in 
+    * detail in the class header. Its name is validated, but it need not be unique.
+    * @return The validation result. Never null.
+    */
+   public ValidationResult validateTrial(JSONObject trial)
+   {
+      if(trial == null) return(new ValidationResult("", "Trial definition is null!"));
+      Object name = trial.opt("name");
+      if(name == null) return(new ValidationResult("name", "JSONObject[\"name\"] not found."));
+      if(isNotValidObjectName(name.toString())) 
+         return(new ValidationResult("name", "Invalid trial name: " + name));
+      return(checkTrialDefn(trial));
+   }
+   
+   /**
+    * The outcome of validating a trial definition with {@link #validateTrial}.
+    */
+   public static final class ValidationResult
+   {
+      private ValidationResult(String path, String message)
+      {
+         this.path = path;
+         this.message = message;
+      }
+      
+      /** 
+       * Did the trial definition pass validation? 
+       * @return True if trial is valid.
+       */
+      public boolean isValid() { return(message == null); }
+      
+      /**
+       * Get the path to the invalid part of the trial definition, in the same form used in the error messages 
+       * reported when a trial fails validation: eg, "name", "params", "tgts", "RV 2", "segment 3 hdr", or "segment 3 
+       * traj 4" (segment, RV and target indices are 1-based).
+       * @return The error path. Empty string if trial is valid.
+       */
+      public String getPath() { return(path); }
+      
+      /**
+       * Get the message describing why the trial failed validation. 
+       * @return The error message. Null if trial is valid.
+       */
+      public String getMessage() { return(message); }
+      
+      @Override public String toString() { return(isValid() ? "valid" : "(" + path + "): " + message); }
+      
+      /** Path to the invalid part of the trial definition. */
+      private final String path;
+      /** Description of the validation error, or null if there was no error. */
+      private final String message;
+   }
+   
+   /** The result of {@link #validateTrial} for any valid trial. */
+   private final static ValidationResult VALID_TRIAL = new ValidationResult("", null);
+   
    /**
     * Helper method validates a JSON object encapsulating a <i>Maestro</i> trial definition, as it would be stored in a
     * JMX document. 
@@ -1325,68 +2418,54 @@ public class JMXDoc
     */
    private void checkTrial(JSONObject trial) throws JSONException
    {
-      // this string is included in the JSONException message to help indicate where the problem occurred
-      String what = "";
+      ValidationResult res = checkTrialDefn(trial);
+      if(!res.isValid()) 
+         throw new JSONException("In trial " + trial.getString("name") + " " + res, false);
+   }
+   
+   /**
+    * Helper method for {@link #checkTrial(JSONObject)} and {@link #validateTrial}. Failures detected here are thrown
+    * as {@link JSONException}s without stack traces and caught at the end, so that the cost of a rejected trial is 
+    * small.
+    * @param trial A trial definition object. Its name is not validated.
+    * @return {@link #VALID_TRIAL} if the trial is valid; else a result describing where and why validation failed.
+    */
+   private ValidationResult checkTrialDefn(JSONObject trial)
+   {
+      // these indicate where a problem occurred. The context string for the JSONException message is only built upon 
+      // failure, so that validating a good trial allocates nothing.
+      int what = CTX_NONE;
+      int whatSeg = 0;
+      int whatIdx = 0;
       
       try
       {
          // get number of participating targets and number of segments in trial. We need these to validate trial params.
          int nTgts = trial.getJSONArray("tgts").length();
-         if(nTgts == 0) throw new JSONException("Trial target list is empty!");
+         if(nTgts == 0) throw new JSONException("Trial target list is empty!", false);
          int nSegs = trial.getJSONArray("segs").length();
-         if(nSegs == 0) throw new JSONException("Trial has no segments!");
+         if(nSegs == 0) throw new JSONException("Trial has no segments!", false);
          
          // validate general trial parameters in "params" field
-         what = "params";
+         what = CTX_PARAMS;
          JSONArray params = trial.getJSONArray("params");
-         if(params.length() % 2 != 0) throw new JSONException("Params array must have an even number of elements!");
+         if(params.length() % 2 != 0) 
+            throw new JSONException("Params array must have an even number of elements!", false);
          
          for(int i=0; i<params.length(); i+=2)
          {
             String pname = params.getString(i);
-            boolean ok;
-            switch(pname)
+            JMXParam p = JMXParam.find(JMXParam.Context.TRIAL, pname);
+            if(p == null) throw new JSONException("Unrecognized general trial param: " + pname, false);
+            boolean ok = true;
+            if(p.rule != JMXParam.Rule.CUSTOM) ok = p.isValid(params, i + 1, nSegs, nTgts);
+            else switch(p)
             {
-            case "chancfg":
+            case TRIAL_CHANCFG:
                String chcfg = params.getString(i + 1);
-               ok = false;
-               for(int j = 0; j < chancfgs.length() && !ok; j++)
-               {
-                  JSONObject chObj = chancfgs.getJSONObject(j);
-                  ok = chObj.getString("name").equals(chcfg);
-               }
-               if(!ok) ok = chcfg.equals("default");  // Maestro predefined channel configuration
-               break;
-            case "wt":
-               int wt = params.getInt(i + 1);
-               ok = (wt >= 0) && (wt <= 255);
-               break;
-            case "keep":
-               params.getInt(i + 1);
-               ok = true;
+               ok = chanCfgIndex.containsKey(chcfg) || chcfg.equals("default"); // "default" is predefined in Maestro
                break;
-            case "startseg":
-            case "failsafeseg":
-            case "specialseg":
-               int iSeg = params.getInt(i + 1);
-               int min = pname.equals("specialseg") ? 1 : 0;
-               ok = (min <= iSeg) && (iSeg <= nSegs);
-               break;
-            case "specialop":
-               ok = SPECIALOPS.containsKey(params.getString(i + 1));
-               break;
-            case "saccvt":
-               int vt = params.getInt(i + 1);
-               ok = (0 <= vt) && (vt <= 999);
-               break;
-            case "marksegs":
-            {
-               JSONArray ar = params.getJSONArray(i + 1);
-               ok = ar.length() == 2;
-               for(int j = 0; ok && j < 2; j++) ok = (0 <= ar.getInt(j)) && (ar.getInt(j) <= nSegs);
-               break;
-            }
-            case "mtr":
+            case TRIAL_MTR:
             {
                JSONArray ar = params.getJSONArray(i + 1);
                ok = ar.length() == 3;
@@ -1399,14 +2478,7 @@ public class JMXDoc
                }
                break;
             }
-            case "rewpulses":
-            {
-               JSONArray ar = params.getJSONArray(i + 1);
-               ok = ar.length() == 2;
-               for(int j = 0; ok && j < 2; j++) ok = (1 <= ar.getInt(j)) && (ar.getInt(j) <= 999);
-               break;
-            }
-            case "rewWHVR":
+            case TRIAL_REWWHVR:
             {
                // [N1 D1 N2 D2], where 0 <= Nj < Dj <= 100
                JSONArray ar = params.getJSONArray(i + 1);
@@ -1417,7 +2489,7 @@ public class JMXDoc
                }
                break;
             }
-            case "stair":
+            case TRIAL_STAIR:
             {
                JSONArray ar = params.getJSONArray(i + 1);
                ok = ar.length() == 3;
@@ -1431,34 +2503,22 @@ public class JMXDoc
                break;
             }
             default:
-               // obsolete XYScope-related trial params are simply ignored
-               ok = ("xydotseedalt".equals(pname) || "xyinterleave".equals(pname));
-               if(!ok)
-                  throw new JSONException("Unrecognized general trial param: " + pname);
+               break;
             }
             
             if(!ok)
-               throw new JSONException("Invalid value specified for general trial param: " + pname);
+               throw new JSONException("Invalid value specified for general trial param: " + pname, false);
          }
          
          // validate any perturbations used during trial
-         what = "perts";
+         what = CTX_PERTS;
          JSONArray pertsUsed = trial.getJSONArray("perts");
-         if(pertsUsed.length() > 4) throw new JSONException("Too many perturbations in trial");
+         if(pertsUsed.length() > 4) throw new JSONException("Too many perturbations in trial", false);
          for(int i=0; i<pertsUsed.length(); i++)
          {
             JSONArray pert = pertsUsed.getJSONArray(i);
             boolean ok = (pert.length() == 5);
-            if(ok)
-            {
-               String pertName = pert.getString(0);
-               ok = false;
-               for(int j=0; j<perts.length() && !ok; j++)
-               {
-                  JSONArray pertDef = perts.getJSONArray(j);
-                  ok = pertName.equals(pertDef.getString(0));
-               }
-            }
+            if(ok) ok = pertIndex.containsKey(pert.getString(0));
             if(ok)
             {
                double amp = pert.getDouble(1);
@@ -1475,110 +2535,92 @@ public class JMXDoc
                ok = (1 <= iTgt) && (iTgt <= nTgts);
             }
             if(ok)
-               ok = PERT_TRAJCMPTS.containsKey(pert.getString(4));
+               ok = PERT_TRAJCMPTS.contains(pert.getString(4));
 
             if(!ok)
-               throw new JSONException("Entry " + i + " in trial perturbation table is invalid");
+               throw new JSONException("Entry " + i + " in trial perturbation table is invalid", false);
          }
 
-         // validate participating target list -- all targets must exist, and no duplicates.
-         what = "tgts";
+         // validate participating target list -- all targets must exist, and no duplicates. Each entry is the full
+         // path name "set/target" of a target in the document, or "CHAIR".
+         what = CTX_TGTS;
          JSONArray tgts = trial.getJSONArray("tgts");
-         HashMap<String, Object> tgtsInUse = new HashMap<>();
          for(int i=0; i<tgts.length(); i++)
          {
             String s = tgts.getString(i);
-            if(tgtsInUse.containsKey(s))
-               throw new JSONException("Duplicate entry in trial target list: " + s);
-            tgtsInUse.put(s, null);
+            for(int j=0; j<i; j++) if(s.equals(tgts.getString(j)))
+               throw new JSONException("Duplicate entry in trial target list: " + s, false);
 
-            if("CHAIR".equals(s)) continue;  // the only remaining supported Maestro 2-era "predefined" target
-            
-            boolean found = false;
-            int slash = s.indexOf('/');
-            if(slash > 0 && slash == s.lastIndexOf('/'))
-            {
-               String set = s.substring(0, slash);
-               JSONObject tgSetObj = null;
-               for(int j=0; j<targetSets.length(); j++)
-               {
-                  tgSetObj = targetSets.getJSONObject(j);
-                  if(set.equals(tgSetObj.getString("name")))
-                     break;
-               }
-               
-               if(tgSetObj != null)
-               {
-                  JSONArray tgtsInSet = tgSetObj.getJSONArray("targets");
-                  String tgname = s.substring(slash+1);
-                  for(int j=0; j<tgtsInSet.length() && !found; j++)
-                     found = tgname.equals(tgtsInSet.getJSONObject(j).getString("name"));
-               }
-            }
-            
-            if(!found) throw new JSONException("Trial target does not exist: " + s);
+            if(!targetPathIndex.containsKey(s)) throw new JSONException("Trial target does not exist: " + s, false);
          }
          
          // validate tagged sections, if any
-         what = "tags";
+         what = CTX_TAGS;
          JSONArray tagSects = trial.getJSONArray("tags");
-         HashMap<String, Object> tagsInUse = new HashMap<>();
-         List<Integer> segIndices = new ArrayList<>();
+         int[] segIndices = tagRangeScratch.get();  // [start1 end1 start2 end2 ...], sorted by start
+         int nIndices = 0;
          for(int i=0; i<tagSects.length(); i++)
          {
             JSONArray sect = tagSects.getJSONArray(i);
             if(sect.length() != 3) 
-               throw new JSONException("Tagged section " + i + " is invalid.");
+               throw new JSONException("Tagged section " + i + " is invalid.", false);
             
             String tag = sect.getString(0);
             int start = sect.getInt(1);
             int end = sect.getInt(2);
                
-            if(tagsInUse.containsKey(tag)) 
-               throw new JSONException("Tagged section " + i + " has duplicate label: " + tag);
-            tagsInUse.put(tag, null);
+            for(int j=0; j<i; j++) if(tag.equals(tagSects.getJSONArray(j).getString(0)))
+               throw new JSONException("Tagged section " + i + " has duplicate label: " + tag, false);
             
             if(start < 1 || end < start || end > nSegs)
-               throw new JSONException("Tagged section " + i + " has an invalid segment index");
+               throw new JSONException("Tagged section " + i + " has an invalid segment index", false);
             
             int insPos = -1;
-            for(int j=0; j<segIndices.size(); j+=2)
+            for(int j=0; j<nIndices; j+=2)
             {
-               if((start >= segIndices.get(j) && start <= segIndices.get(j+1)) || 
-                     (end >= segIndices.get(j) && end <= segIndices.get(j+1)) ||
-                     (start < segIndices.get(j) && end > segIndices.get(j+1)))
-                  throw new JSONException("Found an overlap among defined tagged sections!");
+               if((start >= segIndices[j] && start <= segIndices[j+1]) || 
+                     (end >= segIndices[j] && end <= segIndices[j+1]) ||
+                     (start < segIndices[j] && end > segIndices[j+1]))
+                  throw new JSONException("Found an overlap among defined tagged sections!", false);
                
-               if(start < segIndices.get(j))
+               if(start < segIndices[j])
                {
                   insPos = j;
                   break;
                }
             }
+            if(nIndices + 2 > segIndices.length)
+            {
+               segIndices = Arrays.copyOf(segIndices, 2*segIndices.length);
+               tagRangeScratch.set(segIndices);
+            }
             if(insPos > -1)
             {
-               segIndices.add(insPos, end);
-               segIndices.add(insPos, start);
+               System.arraycopy(segIndices, insPos, segIndices, insPos + 2, nIndices - insPos);
+               segIndices[insPos] = start;
+               segIndices[insPos+1] = end;
             }
             else
             {
-               segIndices.add(start);
-               segIndices.add(end);
+               segIndices[nIndices] = start;
+               segIndices[nIndices+1] = end;
             }
+            nIndices += 2;
          }
 
          // validate the list of random variables -- if present (field is optional)
-         what = "rvs";
+         what = CTX_RVS;
          int numRVs = 0;
          if(trial.has("rvs"))
          {
             JSONArray rvs = trial.getJSONArray("rvs");
             numRVs = rvs.length();
             if(numRVs > 10)
-               throw new JSONException("A maximum of 10 RVs may defined in any given trial!");
+               throw new JSONException("A maximum of 10 RVs may defined in any given trial!", false);
             for(int i=0; i<numRVs; i++)
             {
-               what = "RV " + (i+1);   // 1-based index
+               what = CTX_RV;
+               whatIdx = i+1;   // 1-based index
 
                JSONArray rv = rvs.getJSONArray(i);
                String rvType = rv.getString(0);
@@ -1587,51 +2629,49 @@ public class JMXDoc
                case "uniform":
                   // uniform(seed, A, B): seed >= 0; A < B
                   if((rv.getInt(1) < 0) || (rv.getDouble(2) >= rv.getDouble(3)))
-                     throw new JSONException("Invalid parameter(s) for a 'uniform' random variable");
+                     throw new JSONException("Invalid parameter(s) for a 'uniform' random variable", false);
                   break;
                case "normal":
                   // normal(seed, M, D, S): seed >= 0, D > 0, S >= 3*D
                   if((rv.getInt(1) < 0) || (rv.getDouble(3) <= 0) ||
                         (rv.getDouble(4) < 3*rv.getDouble(3)))
-                     throw new JSONException("Invalid parameter(s) for a 'normal' random variable");
+                     throw new JSONException("Invalid parameter(s) for a 'normal' random variable", false);
                   break;
                case "exponential":
                   // exponential(seed, L, S): seed >= 0, L > 0, S >= 3/L
                   if((rv.getInt(1) < 0) || (rv.getDouble(2) <= 0) ||
                         (rv.getDouble(3) < 3/rv.getDouble(2)))
-                     throw new JSONException("Invalid parameter(s) for an 'exponential' random variable");
+                     throw new JSONException("Invalid parameter(s) for an 'exponential' random variable", false);
                   break;
                case "gamma":
                   // gamma(seed, K, T, S): seed >= 0, K>0, T>0, S >= T*(K + 3*sqrt(K))
                   double paramK = rv.getDouble(2), paramT = rv.getDouble(3);
                   if((rv.getInt(1) < 0) || (paramK <= 0) || (paramT <= 0) ||
                         (rv.getDouble(4 ) <  paramT*(paramK + 3*Math.sqrt(paramK))))
-                     throw new JSONException("Invalid parameter(s) for a 'gamma' random variable");
+                     throw new JSONException("Invalid parameter(s) for a 'gamma' random variable", false);
                   break;
                case "function":
                   // function RV defined by a string formula. We only verify that it does not depend on its own
                   // value, and only contains references 'xN' to RVs defined in this list. The RV indices are 0-based
                   // in the formula string!
                   String formula = rv.getString(1);
-                  String xRV = "x" + i;
-                  if(formula.contains(xRV))
-                     throw new JSONException("A 'function' random variable cannot depend on its own value!");
+                  if(refersToRV(formula, i))
+                     throw new JSONException("A 'function' random variable cannot depend on its own value!", false);
                   for(int j=0; j<10 && i!=j; j++)
                   {
-                     xRV = "x" + j;
-                     if(formula.contains(xRV) && (j >= numRVs))
-                        throw new JSONException("A 'function' random variable depends on an undefined RV!");
+                     if(refersToRV(formula, j) && (j >= numRVs))
+                        throw new JSONException("A 'function' random variable depends on an undefined RV!", false);
                   }
                   break;
                default:
-                  throw new JSONException("Invalid random variable type!");
+                  throw new JSONException("Invalid random variable type!", false);
                }
             }
          }
 
          // validate RV assignments to segment table parameters, if any (field is optional). Ignore the field if no
          // RVs were defined (rather than failing)
-         what = "rvuse";
+         what = CTX_RVUSE;
          if((numRVs > 0) && trial.has("rvuse") && (trial.getJSONArray("rvuse").length() > 0))
          {
             JSONArray rvAssigns = trial.getJSONArray("rvuse");
@@ -1639,7 +2679,7 @@ public class JMXDoc
             {
                JSONArray assign = rvAssigns.getJSONArray(i);
                if(assign.length() != 4)
-                  throw new JSONException(i + "-th RV assignment is invalid.");
+                  throw new JSONException(i + "-th RV assignment is invalid.", false);
 
                int rvIdx = assign.getInt(0);
                String paramName = assign.getString(1);
@@ -1648,37 +2688,40 @@ public class JMXDoc
 
                // all indices are 1-based in keeping with Matlab convention
                if((rvIdx <= 0) || (rvIdx > numRVs))
-                  throw new JSONException((i+1) + "-th RV assignment invalid: Bad RV index.");
-               if(!RVASSIGNABLE_PARAMS.containsKey(paramName))
-                  throw new JSONException((i+1) + "-th RV assignment invalid: Bad param name.");
+                  throw new JSONException((i+1) + "-th RV assignment invalid: Bad RV index.", false);
+               if(!RVASSIGNABLE_PARAMS.contains(paramName))
+                  throw new JSONException((i+1) + "-th RV assignment invalid: Bad param name.", false);
                if((segIdx <= 0) || (segIdx > nSegs))
-                  throw new JSONException((i+1) + "-th RV assignment invalid: Bad segment index.");
+                  throw new JSONException((i+1) + "-th RV assignment invalid: Bad segment index.", false);
                if((!("mindur".equals(paramName) || "maxdur".equals(paramName))) &&
                      ((tgtIdx <= 0) || (tgtIdx > nTgts)))
-                  throw new JSONException((i+1) + "-th RV assignment invalid: Bad target trajectory index.");
+                  throw new JSONException((i+1) + "-th RV assignment invalid: Bad target trajectory index.", false);
             }
          }
 
          // validate the segment table
-         what = "segs";
+         what = CTX_SEGS;
          JSONArray segments = trial.getJSONArray("segs");
          for(int i=0; i<segments.length(); i++)
          {
-            what = "segment " + (i+1);
+            what = CTX_SEG;
+            whatSeg = i+1;
             
             JSONObject segment = segments.getJSONObject(i);
             JSONArray hdr = segment.getJSONArray("hdr");
             JSONArray trajectories = segment.getJSONArray("traj");
             
             // validate any explicit header parameters
-            what = "segment " + (i+1) + " hdr";
+            what = CTX_SEG_HDR;
             boolean ok = (hdr.length() % 2) == 0;
             for(int j=0; ok && j < hdr.length(); j+=2)
             {
                String pname = hdr.getString(j);
-               switch(pname)
+               JMXParam p = JMXParam.find(JMXParam.Context.HDR, pname);
+               if(p == null)
+                  throw new JSONException("Unrecognized header parameter for segment " + (i + 1) + ": " + pname, false);
+               if(p == JMXParam.HDR_DUR)
                {
-               case "dur":
                   JSONArray dur = hdr.getJSONArray(j + 1);
                   ok = dur.length() == 2;
                   if(ok)
@@ -1687,83 +2730,171 @@ public class JMXDoc
                      int max = dur.getInt(1);
                      ok = (0 <= min) && (min <= max);
                   }
-                  break;
-               case "fix1":
-               case "fix2":
-                  int iTgt = hdr.getInt(j + 1);
-                  ok = (0 <= iTgt) && (iTgt <= nTgts);
-                  break;
-               case "fixacc":
-                  JSONArray fixacc = hdr.getJSONArray(j + 1);
-                  ok = fixacc.length() == 2;
-                  if(ok) ok = (fixacc.getDouble(0) >= 0.1) && (fixacc.getDouble(1) >= 0.1);
-                  break;
-               case "grace":
-                  ok = (hdr.getInt(j + 1) >= 0);
-                  break;
-               case "mtrena":
-               case "chkrsp":
-               case "rmvsync":
-                  hdr.getInt(j + 1);
-                  break;
-               case "marker":
-                  int marker = hdr.getInt(j + 1);
-                  ok = (0 <= marker) && (marker <= 10);
-                  break;
-               default:
-                  // obsolete param 'xyframe' is simply ignored if present
-                  if(!"xyframe".equals(pname))
-                     throw new JSONException("Unrecognized header parameter for segment " + (i + 1) + ": " + pname);
                }
+               else 
+                  ok = p.isValid(hdr, j + 1, nSegs, nTgts);
             }
-            if(!ok) throw new JSONException("Bad header for segment " + (i+1));
+            if(!ok) throw new JSONException("Bad header for segment " + (i+1), false);
             
             // validate all trajectories for the current segment
-            what = "segment " + (i+1) + " traj";
+            what = CTX_SEG_TRAJ;
             if(trajectories.length() != nTgts)
-               throw new JSONException("Missing trajectories for one or more targets in segment " + (i+1));
+               throw new JSONException("Missing trajectories for one or more targets in segment " + (i+1), false);
             for(int iTgt=0; iTgt<nTgts; iTgt++)
             {
-               what = "segment " + (i+1) + " traj " + (iTgt + 1);
+               what = CTX_SEG_TRAJ_TGT;
+               whatIdx = iTgt + 1;
                JSONArray traj = trajectories.getJSONArray(iTgt);
                ok = (traj.length() % 2) == 0;
                for(int j=0; ok && j<traj.length(); j+=2)
                {
-                  String pname = traj.getString(j);
-                  switch(pname)
-                  {
-                  case "on":
-                  case "abs":
-                  case "snap":
-                     traj.getInt(j + 1);  // don't need to check value of any of these flag parameters.
-                     break;
-                  case "vstab":
-                     String vstab = traj.getString(j + 1);
-                     ok = vstab.equals("h") || vstab.equals("v") || vstab.equals("hv") || vstab.equals("none");
-                     break;
-                  case "pos":
-                  case "vel":
-                  case "acc":
-                  case "patvel":
-                  case "patacc":
-                     JSONArray ar = traj.getJSONArray(j + 1);
-                     ok = (ar.length() == 2);
-                     if(ok)
-                     {
-                        ar.getDouble(0);
-                        ar.getDouble(1);
-                     }
-                     break;
-                  }
+                  // unrecognized trajectory parameters are ignored
+                  JMXParam p = JMXParam.find(JMXParam.Context.TRAJ, traj.getString(j));
+                  if(p != null) ok = p.isValid(traj, j + 1, nSegs, nTgts);
                }
                if(!ok)
-                  throw new JSONException("Bad trajectory variables for target " + (iTgt+1) + " in segment " + (i+1));
+                  throw new JSONException("Bad trajectory variables for target " + (iTgt+1) + " in segment " + (i+1), 
+                        false);
             }
          }
       }
       catch(JSONException jse)
       {
-         throw new JSONException("In trial " + trial.getString("name") + " (" + what + "): " + jse.getMessage());
+         return(new ValidationResult(trialContext(what, whatSeg, whatIdx), jse.getMessage()));
+      }
+      return(VALID_TRIAL);
+   }
+   
+   /** Context codes identifying the part of a trial definition being validated in {@link #checkTrial(JSONObject)}. */
+   private final static int CTX_NONE = 0, CTX_PARAMS = 1, CTX_PERTS = 2, CTX_TGTS = 3, CTX_TAGS = 4, CTX_RVS = 5,
+         CTX_RV = 6, CTX_RVUSE = 7, CTX_SEGS = 8, CTX_SEG = 9, CTX_SEG_HDR = 10, CTX_SEG_TRAJ = 11, 
+         CTX_SEG_TRAJ_TGT = 12;
+   
+   /**
+    * Helper method prepares the string describing where an error occurred in a trial definition, for inclusion in the
+    * exception message when {@link #checkTrial(JSONObject)} fails.
+    * @param ctx The context code: <code>CTX_***</code>.
+    * @param seg The 1-based segment index, for the segment-related contexts.
+    * @param idx The 1-based RV index for context CTX_RV, or the 1-based target index for CTX_SEG_TRAJ_TGT.
+    * @return The context string, eg, "params", "RV 2" or "segment 3 traj 4".
+    */
+   private static String trialContext(int ctx, int seg, int idx)
+   {
+      switch(ctx)
+      {
+      case CTX_PARAMS: return("params");
+      case CTX_PERTS: return("perts");
+      case CTX_TGTS: return("tgts");
+      case CTX_TAGS: return("tags");
+      case CTX_RVS: return("rvs");
+      case CTX_RV: return("RV " + idx);
+      case CTX_RVUSE: return("rvuse");
+      case CTX_SEGS: return("segs");
+      case CTX_SEG: return("segment " + seg);
+      case CTX_SEG_HDR: return("segment " + seg + " hdr");
+      case CTX_SEG_TRAJ: return("segment " + seg + " traj");
+      case CTX_SEG_TRAJ_TGT: return("segment " + seg + " traj " + idx);
+      default: return("");
+      }
+   }
+   
+   /**
+    * Does the formula defining a 'function' random variable refer to the specified RV -- ie, does it contain the
+    * substring "xN", where N is the RV index? Equivalent to <code>formula.contains("x" + n)</code> for a single-digit
+    * index, but without allocating the search string.
+    * @param formula The formula string.
+    * @param n The 0-based RV index, 0-9.
+    * @return True if the formula contains "xN".
+    */
+   private static boolean refersToRV(String formula, int n)
+   {
+      char digit = (char) ('0' + n);
+      for(int i = formula.indexOf('x'); i >= 0 && i < formula.length() - 1; i = formula.indexOf('x', i + 1))
+      {
+         if(formula.charAt(i+1) == digit) return(true);
+      }
+      return(false);
+   }
+   
+   /** 
+    * Per-thread scratch buffer used by {@link #checkTrial(JSONObject)} to hold the segment ranges of a trial's tagged
+    * sections. It is grown as needed and reused, so that trial validation does not allocate a new list per trial.
+    */
+   private final static ThreadLocal<int[]> tagRangeScratch = ThreadLocal.withInitial(() -> new int[32]);
+   
+   /**
+    * Helper method validates a trial definition at the specified validation level.
+    * @param trial A trial definition object. Its name is not validated.
+    * @param level The validation level: {@link #VALIDATE_FULL} for {@link #checkTrial(JSONObject)}; {@link 
+    * #VALIDATE_STRUCTURAL} for {@link #checkTrialRefs}; {@link #VALIDATE_OFF} for no validation at all.
+    * @throws JSONException if the trial is invalid.
+    */
+   private void checkTrial(JSONObject trial, int level) throws JSONException
+   {
+      if(level == VALIDATE_FULL) checkTrial(trial);
+      else if(level == VALIDATE_STRUCTURAL) checkTrialRefs(trial);
+   }
+   
+   /**
+    * Helper method validates a trial that is about to be added to this JMX document, IAW the document's validation 
+    * level and mode. The trial's references to other objects in the document are always verified, since the index of
+    * objects referenced by trials depends on them. If deferred validation is enabled, the document is marked as 
+    * needing validation.
+    * @param trial The trial definition object. Its name is not validated.
+    * @throws JSONException if the trial is invalid.
+    */
+   private void checkAddedTrial(JSONObject trial) throws JSONException
+   {
+      if(deferValidation)
+      {
+         checkTrialRefs(trial);
+         validationPending = true;
+      }
+      else if(validationLevel == VALIDATE_FULL) checkTrial(trial);
+      else checkTrialRefs(trial);
+   }
+   
+   /**
+    * Helper method verifies that every target, perturbation and channel configuration referenced by a trial exists in
+    * this JMX document. This is the only validation applied to a trial at level {@link #VALIDATE_STRUCTURAL}. Error
+    * messages are consistent with those from {@link #checkTrial(JSONObject)}.
+    * @param trial The trial definition object. Its name is not validated.
+    * @throws JSONException if the trial's target list is empty or refers to a non-existent target, or if the trial 
+    * refers to a non-existent perturbation or channel configuration.
+    */
+   private void checkTrialRefs(JSONObject trial) throws JSONException
+   {
+      String what = "params";
+      try
+      {
+         JSONArray params = trial.getJSONArray("params");
+         for(int i=0; i+1<params.length(); i+=2) if("chancfg".equals(params.getString(i)))
+         {
+            String chcfg = params.getString(i + 1);
+            if(!(chanCfgIndex.containsKey(chcfg) || chcfg.equals("default")))
+               throw new JSONException("Invalid value specified for general trial param: chancfg", false);
+         }
+         
+         what = "perts";
+         JSONArray pertsUsed = trial.getJSONArray("perts");
+         for(int i=0; i<pertsUsed.length(); i++)
+         {
+            if(!pertIndex.containsKey(pertsUsed.getJSONArray(i).getString(0)))
+               throw new JSONException("Entry " + i + " in trial perturbation table is invalid", false);
+         }
+         
+         what = "tgts";
+         JSONArray tgts = trial.getJSONArray("tgts");
+         if(tgts.length() == 0) throw new JSONException("Trial target list is empty!", false);
+         for(int i=0; i<tgts.length(); i++)
+         {
+            String s = tgts.getString(i);
+            if(!targetPathIndex.containsKey(s)) throw new JSONException("Trial target does not exist: " + s, false);
+         }
+      }
+      catch(JSONException jse)
+      {
+         throw new JSONException("In trial " + trial.getString("name") + " (" + what + "): " + jse.getMessage(), false);
       }
    }
 
@@ -1781,40 +2912,24 @@ public class JMXDoc
          return("Object name violates Maestro naming rules");
       
       // find the trial set named
-      JSONObject theSet = null;
-      try
-      {
-         for(int i=0; i<trialSets.length(); i++)
-         {
-            JSONObject obj = trialSets.getJSONObject(i);
-            if(set.equals(obj.getString("name")))
-            {
-               theSet = obj;
-               break;
-            }
-         }
-      }
-      catch(JSONException jse) { /* should never happen */ }
-      
+      Container theSet;
+      try { theSet = trialSet(set); }
+      catch(JSONException jse) { return(jse.getMessage()); }
       if(theSet == null) return("Destination trial set does not exist: " + set);
       
       // ensure that proposed subset's name does not match that of an existing trial or subset in destination set. If
       // not, go ahead and append the new subset.
+      if(theSet.contains(subName))
+         return("Subset name duplicates that of an existing object in trial set!");
       try
       {
-         JSONArray kids = theSet.getJSONArray("trials");
-         for(int i=0; i<kids.length(); i++)
-         {
-            JSONObject kid = kids.getJSONObject(i);
-            String kidName = kid.has("subset") ? kid.getString("subset") : kid.getString("name");
-            if(kidName.equals(subName))
-               return("Subset name duplicates that of an existing object in trial set!");
-         }
-         
          JSONObject addedSubset = new JSONObject();
+         JSONArray trials = new JSONArray();
          addedSubset.put("subset", subName);
-         addedSubset.put("trials", new JSONArray());
-         kids.put(addedSubset);
+         addedSubset.put("trials", trials);
+         theSet.add(subName);
+         theSet.kids.put(addedSubset);
+         theSet.subsets.put(subName, new Container(addedSubset, trials));
       }
       catch(JSONException jse) { /* should never happen */ }
       
@@ -1834,68 +2949,350 @@ public class JMXDoc
    public String addTrialToSubset(String set, String subset, JSONObject trialObj)
    {
       // find the trial subset identified by the first two arguments
-      JSONObject theSubset = null;
+      Container theSet;
+      try { theSet = trialSet(set); }
+      catch(JSONException jse) { return(jse.getMessage()); }
+      Container theSubset = (theSet != null) ? theSet.subsets.get(subset) : null;
+      if(theSubset == null) return("Destination trial subset does not exist: " + set + "/" + subset);
+      
+      // validate the trial object. If successful, replace a trial with the same name under the destination subset,
+      // or append the new trial to that subset.
       try
       {
-         JSONObject theSet = null;
-         for(int i=0; i<trialSets.length(); i++)
+         // check trial name, which is not checked by checkTrial().
+         String trName = trialObj.getString("name");
+         if(isNotValidObjectName(trName)) throw new JSONException("Invalid trial name: " + trName);
+
+         checkAddedTrial(trialObj);
+         
+         String path = set + "/" + subset + "/" + trName;
+         int pos = theSubset.indexOf(trName);
+         if(pos >= 0)
          {
-            JSONObject obj = trialSets.getJSONObject(i);
-            if(obj.getString("name").equals(set))
-            {
-               theSet = obj;
-               break;
-            }
+            unindexTrialRefs(path, theSubset.kids.opt(pos));
+            theSubset.kids.put(pos, trialObj);
          }
-         
-         if(theSet != null)
+         else
          {
-            JSONArray kids = theSet.getJSONArray("trials");
-            for(int i=0; i<kids.length(); i++)
-            {
-               JSONObject kid = kids.getJSONObject(i);
-               if(kid.has("subset") && kid.getString("subset").equals(subset))
-               {
-                  theSubset = kid;
-                  break;
-               }
-            }
+            theSubset.add(trName);
+            theSubset.kids.put(trialObj);
          }
+         indexTrialRefs(path, trialObj, true);
       }
+      catch(JSONException jse)
+      {
+         return(jse.getMessage());
+      }
+      
+      return("");
+   }
+   
+
+   /**
+    * Remove a trial from the specified trial SUBSET in this JMX document.
+    * @param set Name of trial set containing the subset.
+    * @param subset Name of the trial subset within the set object specified by first argument.
+    * @param name Name of the trial to be removed.
+    * @return An empty string if operation is successful; else, a brief message describing why the operation failed. On
+    * failure, the JMX document is left unchanged.
+    */
+   public String removeTrialFromSubset(String set, String subset, String name)
+   {
+      Container theSet;
+      try { theSet = trialSet(set); }
+      catch(JSONException jse) { return(jse.getMessage()); }
+      Container theSubset = (theSet != null) ? theSet.subsets.get(subset) : null;
+      if(theSubset == null) return("Trial subset does not exist: " + set + "/" + subset);
+      return(removeTrial(theSubset, set + "/" + subset + "/", name));
+   }
+   
+   /**
+    * Find all trials in this JMX document that use the specified target, perturbation or channel configuration.
+    * @param type The type of object referenced: "target", "pert" or "chancfg".
+    * @param name The object's name. For a target, this is the full path name <i>set/target</i>, or "CHAIR".
+    * @return Path names of all trials that use the object, in the form <i>set/trial</i> for a trial that is a child of
+    * a trial set, or <i>set/subset/trial</i> for a trial within a trial subset. Empty if the object is not used. Null
+    * if the object type is not recognized, or if the document has deferred content (see {@link #OPEN_LAZY}) that 
+    * fails validation.
+    */
+   public String[] findTrialsUsing(String type, String name)
+   {
+      HashMap<String, LinkedHashMap<String, JSONObject>> refs;
+      if("target".equals(type)) refs = tgtRefs;
+      else if("pert".equals(type)) refs = pertRefs;
+      else if("chancfg".equals(type)) refs = chanCfgRefs;
+      else return(null);
+      if(!loadDeferred().isEmpty()) return(null);
+      
+      LinkedHashMap<String, JSONObject> users = refs.get(name);
+      return((users == null) ? new String[0] : users.keySet().toArray(new String[0]));
+   }
+   
+   /**
+    * Helper method removes a trial from a trial set or subset in this JMX document, along with its entries in the index
+    * of objects referenced by trials.
+    * @param c The trial set or subset.
+    * @param prefix Path name of the set or subset, with a trailing slash.
+    * @param name Name of the trial to be removed.
+    * @return An empty string if successful, else an error message.
+    */
+   private String removeTrial(Container c, String prefix, String name)
+   {
+      int pos = c.indexOf(name);
+      if(pos < 0) return("Trial does not exist: " + prefix + name);
+      unindexTrialRefs(prefix + name, c.kids.opt(pos));
+      c.remove(name);
+      return("");
+   }
+   
+   /**
+    * Helper method removes the entries for a trial that is about to be replaced or removed from the index of objects
+    * referenced by trials in this JMX document. A trial that is still unparsed JSON text (see {@link #OPEN_LAZY}) has
+    * no entries in the index.
+    * @param path The trial's path name: <i>set/trial</i> or <i>set/subset/trial</i>.
+    * @param trial The trial definition object, or the unparsed trial.
+    */
+   private void unindexTrialRefs(String path, Object trial)
+   {
+      if(!(trial instanceof JSONObject)) return;
+      try { indexTrialRefs(path, (JSONObject) trial, false); }
       catch(JSONException jse) { /* should never happen */ }
+   }
+   
+   /**
+    * Get the named trial set in this JMX document. If the trial set was deferred (see {@link #OPEN_LAZY}), it is
+    * loaded now: its children are indexed by name, but any unparsed trials remain so.
+    * @param name The trial set name.
+    * @return The trial set, or null if there is no trial set with that name.
+    * @throws JSONException if the deferred trial set is invalid. It remains deferred, and the document is unchanged.
+    */
+   private Container trialSet(String name) throws JSONException
+   {
+      Container c = trialSetIndex.get(name);
+      if(c != null) return(c);
+      JSONSlice deferred = deferredSets.get(name);
+      if(deferred == null) return(null);
       
-      if(theSubset == null) return("Destination trial subset does not exist: " + set + "/" + subset);
+      int pos = 0;
+      while(pos < trialSets.length() && trialSets.opt(pos) != deferred) ++pos;
+      JSONObject trSet;
+      try { trSet = deferred.parseObject("trials"); }
+      catch(JSONException jse) { throw new JSONException("Trial set " + pos + " --" + jse.getMessage()); }
       
-      // validate the trial object. If successful, replace a trial with the same name under the destination subset,
-      // or append the new trial to that subset.
+      List<TrialItem> items = new ArrayList<>();
       try
       {
-         // check trial name, which is not checked by checkTrial().
-         String trName = trialObj.getString("name");
-         if(isNotValidObjectName(trName)) throw new JSONException("Invalid trial name: " + trName);
-
-         checkTrial(trialObj);
-         
-         JSONArray trials = theSubset.getJSONArray("trials");
-         boolean found = false;
-         for(int i=0; i<trials.length(); i++)
+         c = collectTrialSet(trSet, name, items);
+         trialSets.put(pos, trSet);
+         deferredSets.remove(name);
+         checkTrials(items, null, false);
+      }
+      catch(JSONException jse)
+      {
+         trialSetIndex.remove(name);
+         trialSets.put(pos, deferred);
+         deferredSets.put(name, deferred);
+         throw jse;
+      }
+      return(c);
+   }
+   
+   /**
+    * Load and validate all deferred content in this JMX document (see {@link #OPEN_LAZY}).
+    * @return An empty string if successful, or if there is no deferred content; else, a brief message describing the
+    * first error found in document order. On failure, the deferred content that was invalid remains deferred.
+    */
+   private String loadDeferred()
+   {
+      if(!hasDeferred) return("");
+      try { loadDeferred(null, true); }
+      catch(JSONException jse) { return(jse.getMessage()); }
+      return("");
+   }
+   
+   /**
+    * Load and validate the deferred content of the specified trial sets in this JMX document (see {@link #OPEN_LAZY}):
+    * each trial set that was deferred is loaded, and each unparsed trial in the trial sets is parsed, validated at the
+    * document's validation level, and added to the index of objects referenced by trials.
+    * @param sets Names of the trial sets to load. If null, all deferred content in the document is loaded.
+    * @param parallel If true, the trials are validated concurrently in the common fork-join pool.
+    * @throws JSONException if any trial set named does not exist, or if any deferred content is invalid. In the latter
+    * case, the error reported is the first one in document order -- except that the trials in a deferred trial set 
+    * with a structural error are not checked. On failure, no unparsed trial is replaced; any trial set already loaded
+    * remains loaded.
+    */
+   private void loadDeferred(String[] sets, boolean parallel) throws JSONException
+   {
+      // as in checkTrialSets(), a structural error is reported only if all trials preceding it are valid
+      List<String> names = new ArrayList<>();
+      JSONException structErr = null;
+      if(sets != null) for(String name : sets)
+      {
+         if(trialSet(name) == null) throw new JSONException("Trial set not found: " + name);
+         names.add(name);
+      }
+      else try
+      {
+         for(int i=0; i<trialSets.length(); i++)
          {
-            JSONObject t = trials.getJSONObject(i);
-            if(trName.equals(t.getString("name")))
+            Object o = trialSets.opt(i);
+            String name = (o instanceof JSONSlice) ? 
+                  scanMembers((JSONSlice) o, "Trial set " + i, "name").getString("name") : 
+                  trialSets.getJSONObject(i).getString("name");
+            trialSet(name);
+            names.add(name);
+         }
+      }
+      catch(JSONException jse) { structErr = jse; }
+      
+      // parse the unparsed trials in document order, then put them in place for validation. If the validation fails,
+      // the trials are restored to their unparsed form.
+      List<TrialItem> items = new ArrayList<>();
+      List<JSONArray> where = new ArrayList<>();
+      List<Integer> whereIdx = new ArrayList<>();
+      for(String name : names)
+      {
+         Container c = trialSetIndex.get(name);
+         for(int j=0; j<c.kids.length(); j++)
+         {
+            Object o = c.kids.opt(j);
+            if(o instanceof JSONSlice)
+            {
+               JSONObject trial = parseDeferredTrial((JSONSlice) o, "Child " + j + " in trial set " + name + " --", "");
+               items.add(new TrialItem(trial, trial.getString("name"), name, j, null));
+               where.add(c.kids);
+               whereIdx.add(j);
+            }
+            else if(o instanceof JSONObject && ((JSONObject) o).has("subset"))
             {
-               trials.put(i, trialObj);
-               found = true;
+               String subName = ((JSONObject) o).getString("subset");
+               JSONArray subKids = c.subsets.get(subName).kids;
+               for(int k=0; k<subKids.length(); k++) if(subKids.opt(k) instanceof JSONSlice)
+               {
+                  String prefix = "Child " + j + " in trial set " + name + " --Bad trial subset (Trial " + k;
+                  JSONObject trial = parseDeferredTrial((JSONSlice) subKids.opt(k), prefix + " in subset --", ")");
+                  items.add(new TrialItem(trial, trial.getString("name"), name, j, subName));
+                  where.add(subKids);
+                  whereIdx.add(k);
+               }
             }
          }
-         
-         if(!found) trials.put(trialObj);
       }
+      
+      Object[] unparsed = new Object[items.size()];
+      for(int i=0; i<items.size(); i++)
+      {
+         unparsed[i] = where.get(i).opt(whereIdx.get(i));
+         where.get(i).put(whereIdx.get(i), items.get(i).trial);
+      }
+      try { checkTrials(items, structErr, parallel); }
       catch(JSONException jse)
       {
-         return(jse.getMessage());
+         for(int i=0; i<items.size(); i++) where.get(i).put(whereIdx.get(i), unparsed[i]);
+         throw jse;
       }
+      if(sets == null) hasDeferred = false;
+   }
+   
+   /**
+    * Scan the unparsed JSON text of an object in this JMX document (see {@link #OPEN_LAZY}) for the named members only.
+    * @param o The unparsed object.
+    * @param where Identifies the object's position in the document, eg, "Trial set 3". Prefixes any error message.
+    * @param keys The names of the members to parse.
+    * @return A JSON object containing those named members that are present.
+    * @throws JSONException if a syntax error is encountered. The error position is that in the entire file.
+    */
+   private static JSONObject scanMembers(JSONSlice o, String where, String... keys) throws JSONException
+   {
+      try { return(o.members(keys)); }
+      catch(JSONException jse) { throw new JSONException(where + " --" + jse.getMessage()); }
+   }
+   
+   /**
+    * Helper method for {@link #loadDeferred(String[], boolean)}. Parse an unparsed trial.
+    * @param trial The unparsed trial.
+    * @param prefix Prefix for the error message, identifying the trial's position in the document.
+    * @param suffix Suffix for the error message.
+    * @return The trial definition object.
+    * @throws JSONException if the trial is not a syntactically valid JSON object.
+    */
+   private static JSONObject parseDeferredTrial(JSONSlice trial, String prefix, String suffix) throws JSONException
+   {
+      try
+      {
+         Object o = trial.parse();
+         if(!(o instanceof JSONObject)) throw new JSONException("Trial is not a JSONObject.");
+         return((JSONObject) o);
+      }
+      catch(JSONException jse)
+      {
+         throw new JSONException(prefix + jse.getMessage() + suffix);
+      }
+   }
+   
+   /**
+    * Helper method adds or removes the entries for a trial in the index of targets, perturbations and channel 
+    * configurations referenced by trials in this JMX document. The trial definition must be valid.
+    * @param path The trial's path name: <i>set/trial</i> or <i>set/subset/trial</i>.
+    * @param trial The trial definition.
+    * @param add True to add the trial's references, false to remove them.
+    * @throws JSONException if the trial's target list, perturbation list, or general parameter list is malformed.
+    */
+   private void indexTrialRefs(String path, JSONObject trial, boolean add) throws JSONException
+   {
+      JSONArray tgts = trial.getJSONArray("tgts");
+      for(int i=0; i<tgts.length(); i++)
+         updateRef(tgtRefs, tgts.getString(i), path, add ? trial : null);
       
-      return("");
+      JSONArray pertsUsed = trial.getJSONArray("perts");
+      for(int i=0; i<pertsUsed.length(); i++)
+         updateRef(pertRefs, pertsUsed.getJSONArray(i).getString(0), path, add ? trial : null);
+      
+      JSONArray params = trial.getJSONArray("params");
+      for(int i=0; i+1<params.length(); i+=2) if("chancfg".equals(params.getString(i)))
+         updateRef(chanCfgRefs, params.getString(i+1), path, add ? trial : null);
+   }
+   
+   /**
+    * Helper method adds or removes a single entry in one of the indices of objects referenced by trials.
+    * @param refs The index: referenced object name --> (trial path name --> trial).
+    * @param name Name of the referenced object.
+    * @param path Path name of the referring trial.
+    * @param trial The referring trial to add, or null to remove the reference.
+    */
+   private static void updateRef(HashMap<String, LinkedHashMap<String, JSONObject>> refs, String name, String path,
+         JSONObject trial)
+   {
+      LinkedHashMap<String, JSONObject> users = refs.get(name);
+      if(trial != null)
+      {
+         if(users == null)
+         {
+            users = new LinkedHashMap<>();
+            refs.put(name, users);
+         }
+         users.put(path, trial);
+      }
+      else if(users != null)
+      {
+         users.remove(path);
+         if(users.isEmpty()) refs.remove(name);
+      }
+   }
+   
+   /**
+    * Helper method verifies that an object is not used by any trial in this JMX document.
+    * @param refs The index of referenced objects to check.
+    * @param name Name of the object.
+    * @param what Description of the object type, for the error message.
+    * @return An empty string if the object is not used, else an error message naming one of the trials that use it.
+    */
+   private static String checkUnreferenced(HashMap<String, LinkedHashMap<String, JSONObject>> refs, String name,
+         String what)
+   {
+      LinkedHashMap<String, JSONObject> users = refs.get(name);
+      if(users == null) return("");
+      return(what + " is used by " + users.size() + " trial(s), including " + users.keySet().iterator().next());
    }
    
 
@@ -1959,6 +3356,204 @@ public class JMXDoc
     */
    private JSONArray trialSets = null;
    
+   /**
+    * A named container of child objects in the JMX document -- a target set, trial set or trial subset -- together 
+    * with a hash index of its children by name. The index lets us find a child, or confirm a name is not in use, in
+    * constant time rather than by a linear scan of the container's children.
+    * 
+    * <p>Removing a child shifts the position of every child after it, so the index does not map a name directly to a
+    * position. Instead, each child is assigned a <i>slot</i> when it is indexed, and slots are never renumbered when a
+    * child is removed. A child's position is the number of occupied slots before its own, which is counted in a binary
+    * indexed (Fenwick) tree over the slots. Looking up, adding or removing a child thus takes O(log N) time, where N is
+    * the number of children; and the vacated slots are discarded in a single pass once they outnumber the occupied
+    * ones, so removing many children in turn takes O(N log N) time overall -- rather than O(N^2) as it would if the
+    * positions were renumbered after each removal.</p>
+    */
+   private static class Container
+   {
+      Container(JSONObject obj, JSONArray kids)
+      {
+         this.obj = obj;
+         this.kids = kids;
+      }
+      
+      /** The JSON object defining the container. */
+      final JSONObject obj;
+      /** The container's list of children: the "targets" or "trials" field of the JSON object. */
+      final JSONArray kids;
+      /**
+       * For a trial set only, the trial subsets in the set, keyed by subset name. The subset names also appear in
+       * the index of children, since trials and subsets in a trial set share the same name space. Null for other
+       * containers.
+       */
+      HashMap<String, Container> subsets = null;
+      
+      /** Index of the container's children: child name --> slot. */
+      private final HashMap<String, Integer> kidSlot = new HashMap<>();
+      /** The name of the child in each slot, or null if the slot was vacated. Only the first nSlots are in use. */
+      private String[] slotNames = new String[16];
+      /**
+       * Binary indexed tree counting the occupied slots. Element i (1-based) counts the occupied slots in the range
+       * [i - lowbit(i), i), where lowbit(i) is the lowest set bit of i. Its length is that of {@link #slotNames} + 1.
+       */
+      private int[] occupied = new int[17];
+      /** The number of slots assigned, including vacated ones. */
+      private int nSlots = 0;
+      
+      /**
+       * Does the container have a child with the specified name?
+       * @param name The name.
+       * @return True if a child with that name is indexed.
+       */
+      boolean contains(String name) { return(kidSlot.containsKey(name)); }
+      
+      /**
+       * Get the position of a named child.
+       * @param name The child's name.
+       * @return The child's position in {@link #kids}, or -1 if there is no child with that name.
+       */
+      int indexOf(String name)
+      {
+         Integer slot = kidSlot.get(name);
+         if(slot == null) return(-1);
+         if(nSlots == kidSlot.size()) return(slot);
+         int pos = 0;
+         for(int i = slot; i > 0; i -= (i & -i)) pos += occupied[i];
+         return(pos);
+      }
+      
+      /**
+       * Add a child to the index, at the end of the container's list of children. The caller must append the child to
+       * {@link #kids} if it is not there already, and must ensure that the name is not in use.
+       * @param name The child's name.
+       */
+      void add(String name)
+      {
+         if(nSlots == slotNames.length) compact(2*nSlots);
+         int slot = nSlots++;
+         slotNames[slot] = name;
+         kidSlot.put(name, slot);
+         for(int i = slot + 1; i < occupied.length; i += (i & -i)) ++occupied[i];
+      }
+      
+      /**
+       * Change the name of a child in the index. The caller must update the child itself, and must ensure that the new
+       * name is not in use.
+       * @param name The child's name.
+       * @param newName The child's new name.
+       */
+      void rename(String name, String newName)
+      {
+         Integer slot = kidSlot.remove(name);
+         if(slot == null) return;
+         kidSlot.put(newName, slot);
+         slotNames[slot] = newName;
+      }
+      
+      /**
+       * Remove a named child from the container's list of children and from the index.
+       * @param name The child's name.
+       * @return The child's position in {@link #kids} prior to its removal, or -1 if there is no child with that name.
+       */
+      int remove(String name)
+      {
+         int pos = indexOf(name);
+         if(pos < 0) return(-1);
+         int slot = kidSlot.remove(name);
+         slotNames[slot] = null;
+         for(int i = slot + 1; i < occupied.length; i += (i & -i)) --occupied[i];
+         kids.remove(pos);
+         if(nSlots - kidSlot.size() > kidSlot.size()) compact(slotNames.length);
+         return(pos);
+      }
+      
+      /**
+       * Discard the vacated slots, renumbering the occupied slots in order, and rebuild the tree of occupied slots.
+       * @param capacity The number of slots to allocate. Must be at least the number of occupied slots.
+       */
+      private void compact(int capacity)
+      {
+         String[] names = new String[Math.max(capacity, 16)];
+         int n = 0;
+         for(int slot=0; slot<nSlots; slot++) if(slotNames[slot] != null)
+         {
+            names[n] = slotNames[slot];
+            kidSlot.put(names[n], n);
+            ++n;
+         }
+         slotNames = names;
+         nSlots = n;
+         
+         // each element of the tree counts itself and adds its count to its parent, in a single pass
+         occupied = new int[names.length + 1];
+         for(int i=1; i<occupied.length; i++)
+         {
+            if(i <= n) ++occupied[i];
+            int parent = i + (i & -i);
+            if(parent < occupied.length) occupied[parent] += occupied[i];
+         }
+      }
+   }
+   
+   /** Index of the channel configurations in {@link #chancfgs}: name --> position in array. */
+   private final HashMap<String, Integer> chanCfgIndex = new HashMap<>();
+   
+   /** Index of the perturbation waveforms in {@link #perts}: name --> position in array. */
+   private final HashMap<String, Integer> pertIndex = new HashMap<>();
+   
+   /** Index of the target sets in {@link #targetSets}, keyed by target set name. */
+   private final HashMap<String, Container> targetSetIndex = new HashMap<>();
+   
+   /**
+    * Index of all targets in the document by full path name, <i>set/target</i>. It also contains the <i>CHAIR</i> 
+    * target (mapped to {@link #CHAIR_TARGET}), so that every valid entry in a trial's target list resolves with a 
+    * single lookup.
+    */
+   private final HashMap<String, JSONObject> targetPathIndex = new HashMap<>();
+   
+   /** The path name of the one <i>Maestro</i> 2-era "predefined" target that may still appear in a trial. */
+   private final static String CHAIR = "CHAIR";
+   
+   /** Placeholder for the predefined CHAIR target in {@link #targetPathIndex}. It has no definition in the document. */
+   private final static JSONObject CHAIR_TARGET = new JSONObject();
+   
+   /** Index of the trial sets in {@link #trialSets}, keyed by trial set name. Excludes deferred trial sets. */
+   private final HashMap<String, Container> trialSetIndex = new HashMap<>();
+   
+   /**
+    * The deferred trial sets in {@link #trialSets}, keyed by trial set name. Each is unparsed JSON text that is loaded
+    * when the trial set is first accessed. See {@link #OPEN_LAZY}.
+    */
+   private final HashMap<String, JSONSlice> deferredSets = new HashMap<>();
+   
+   /**
+    * Set if this document contains any deferred trial set or unparsed trial. Cleared once all deferred content is
+    * loaded, or when the document is reset.
+    */
+   private boolean hasDeferred = false;
+   
+   /**
+    * Inverted index of the targets used by trials in the document: target path name (<i>set/target</i> or CHAIR) -->
+    * (path name of trial --> trial). A target appears only if at least one trial uses it. A trial's path name is 
+    * <i>set/trial</i>, or <i>set/subset/trial</i> for a trial within a trial subset.
+    */
+   private final HashMap<String, LinkedHashMap<String, JSONObject>> tgtRefs = new HashMap<>();
+   
+   /** Inverted index of the perturbations used by trials: perturbation name --> (trial path name --> trial). */
+   private final HashMap<String, LinkedHashMap<String, JSONObject>> pertRefs = new HashMap<>();
+   
+   /** Inverted index of the channel configurations used by trials: config name --> (trial path name --> trial). */
+   private final HashMap<String, LinkedHashMap<String, JSONObject>> chanCfgRefs = new HashMap<>();
+   
+   /** The level of validation applied to targets and trials in this document. See {@link #setValidationLevel}. */
+   private int validationLevel = VALIDATE_FULL;
+   
+   /** Is deferred validation mode enabled? See {@link #setDeferredValidation}. */
+   private boolean deferValidation = false;
+   
+   /** Set whenever a change is made in deferred validation mode; cleared when the document is validated or reset. */
+   private boolean validationPending = false;
+   
    
    /** 
     * The current JMX document version number. 
@@ -1976,21 +3571,19 @@ public class JMXDoc
    private final static int CURRVERSION = 4;
    
    /**
-    * A compiled regular expression that is used to validate <i>Maestro</i> object names: they must have at least one 
+    * The characters allowed in <i>Maestro</i> object names, indexed by ASCII code: names must have at least one 
     * printable ASCII character that is an alphanumeric character or one of <i>_=.,[]():;#@!$%*-+<>?</i>.
-    * ,:;#%*?
     */
-   private static final Pattern objNameVerifier =
-      Pattern.compile("[a-zA-Z0-9_=.,\\[\\]():;#@!$%*\\-+<>?]+");
+   private static final boolean[] OBJNAME_CHARS = asciiCharSet("_=.,[]():;#@!$%*-+<>?");
    
    /** Maximum length of a <i>Maestro</i> object name. */
    private final static int MAXOBJNAMELEN = 50;
    
    /**
-    * A compiled regular expression that is used to validate names of RMVideo media folders and files: they must have at
+    * The characters allowed in the names of RMVideo media folders and files, indexed by ASCII code: they must have at
     * least one printable ASCII character that is an alphanumeric character, the period, or the underscore.
     */
-   private static final Pattern mediaNameVerifier = Pattern.compile("[a-zA-Z0-9_.]+");
+   private static final boolean[] MEDIANAME_CHARS = asciiCharSet("_.");
    
    /** Maximum number of characters in the name of an RMVideo media folder or media file. */
    private final static int RMV_MVF_LEN = 30;
@@ -2000,51 +3593,33 @@ public class JMXDoc
    private final static double[] SETTINGS_FIX_DEFAULTS = new double[] {2.0, 2.0};
    private final static int[] SETTINGS_OTHER_DEFAULTS = new int[] {1500, 25, 25, 0, 1, 0, 0, 1};
    
-   private final static HashMap<String, Object> CHANNEL_NAMES;
+   private final static HashSet<String> CHANNEL_NAMES;
    // this maps the 16 generic AI channel IDs "aiN" to the corresponding entry in CHANNEL_NAMES
    private final static HashMap<String, String> ALT_CHANNEL_NAMES;
-   private final static HashMap<String, Object> CHANNEL_COLORS;
-   private final static HashMap<String, Object> PERT_TYPES;
-   private final static HashMap<String, Object> RMVTYPES;
-   private final static HashMap<String, Object> RMVAPERTURES;
+   private final static HashSet<String> CHANNEL_COLORS;
+   private final static HashSet<String> PERT_TYPES;
+   private final static HashSet<String> RMVAPERTURES;
    // maps the aperture names that appear in the Maestro GUI to the actual aperture shape names MAESTRODOC uses.
    private final static HashMap<String, String> RMVAPERTURES_ALT;
-   private final static HashMap<String, Object> SPECIALOPS;
-   @SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
-   private final static HashMap<String, Object> PERT_TRAJCMPTS;
-   private final static HashMap<String, Object> RVASSIGNABLE_PARAMS;
+   private final static HashSet<String> PERT_TRAJCMPTS;
+   private final static HashSet<String> RVASSIGNABLE_PARAMS;
    static
    {
-      CHANNEL_NAMES = new HashMap<>();
       String[] names = new String[] {"hgpos", "vepos", "hevel", "vevel", "htpos", "vtpos", "hhvel", "hhpos", "hdvel", 
             "htpos2", "vtpos2", "vepos2", "ai12", "ai13", "hgpos2", "spwav", "di0", "di1", "di2", "di3", "di4", "di5", 
             "di6", "di7", "di8", "di9", "di10", "di11", "di12", "di13", "di14", "di15", "fix1_hvel", "fix1_vvel", 
             "fix1_hpos", "fix1_vpos", "fix2_hvel", "fix2_vvel"};
-      for(String s : names) CHANNEL_NAMES.put(s, null);
+      CHANNEL_NAMES = new HashSet<>(Arrays.asList(names));
       
       ALT_CHANNEL_NAMES = new HashMap<>();
       for(int i=0; i<16; i++) ALT_CHANNEL_NAMES.put("ai"+ i, names[i]);
       
-      CHANNEL_COLORS = new HashMap<>();
-      names = new String[] {"white", "red", "green", "blue", "yellow", "magenta", "cyan", "dk green", "orange", 
-            "purple", "pink", "med gray"};
-      for(String s : names) CHANNEL_COLORS.put(s, null);
+      CHANNEL_COLORS = new HashSet<>(Arrays.asList("white", "red", "green", "blue", "yellow", "magenta", "cyan", 
+            "dk green", "orange", "purple", "pink", "med gray"));
       
-      PERT_TYPES = new HashMap<>();
-      PERT_TYPES.put("sinusoid", null);
-      PERT_TYPES.put("pulse train", null);
-      PERT_TYPES.put("uniform noise", null);
-      PERT_TYPES.put("gaussian noise", null);
+      PERT_TYPES = new HashSet<>(Arrays.asList("sinusoid", "pulse train", "uniform noise", "gaussian noise"));
 
-      RMVTYPES = new HashMap<>();
-      names = new String[] {"point", "dotpatch", "flowfield", "bar", "spot", "grating", "plaid", "movie", "image"};
-      for(String s : names) RMVTYPES.put(s, null);
-      
-      RMVAPERTURES = new HashMap<>();
-      RMVAPERTURES.put("rect", null);
-      RMVAPERTURES.put("oval", null);
-      RMVAPERTURES.put("rectannu", null);
-      RMVAPERTURES.put("ovalannu", null);
+      RMVAPERTURES = new HashSet<>(Arrays.asList("rect", "oval", "rectannu", "ovalannu"));
       
       RMVAPERTURES_ALT = new HashMap<>();
       RMVAPERTURES_ALT.put("rectangular", "rect");
@@ -2052,19 +3627,11 @@ public class JMXDoc
       RMVAPERTURES_ALT.put("rectangular annulus", "rectannu");
       RMVAPERTURES_ALT.put("elliptical annulus", "ovalannu");
       
-      SPECIALOPS = new HashMap<>();
-      names = new String[] {"none", "skip", "selbyfix", "selbyfix2", "switchfix", "rpdistro", "choosefix1", 
-            "choosefix2", "search", "selectDur", "findAndWait"};
-      for(String s : names) SPECIALOPS.put(s, null);
-
-      PERT_TRAJCMPTS = new HashMap<>();
-      names = new String[] {"winH", "winV", "patH", "patV", "winDir", "patDir", "winSpd", "patSpd", "speed", "direc"};
-      for(String s : names) PERT_TRAJCMPTS.put(s, null);
+      PERT_TRAJCMPTS = new HashSet<>(Arrays.asList("winH", "winV", "patH", "patV", "winDir", "patDir", "winSpd", 
+            "patSpd", "speed", "direc"));
 
-      RVASSIGNABLE_PARAMS = new HashMap<>();
-      names = new String[] {"mindur", "maxdur", "hpos", "vpos", "hvel", "vvel", "hacc", "vacc",
-            "hpatvel", "vpatvel", "hpatacc", "vpatacc"};
-      for(String s : names) RVASSIGNABLE_PARAMS.put(s, null);
+      RVASSIGNABLE_PARAMS = new HashSet<>(Arrays.asList("mindur", "maxdur", "hpos", "vpos", "hvel", "vvel", "hacc", 
+            "vacc", "hpatvel", "vpatvel", "hpatacc", "vpatacc"));
    }
    
    
@@ -2076,6 +3643,40 @@ public class JMXDoc
     */
    private static boolean isNotValidObjectName(String s)
    {
-      return ((s == null) || (s.length() >= MAXOBJNAMELEN) || !objNameVerifier.matcher(s).matches());
+      return ((s == null) || (s.length() >= MAXOBJNAMELEN) || !consistsOf(s, OBJNAME_CHARS));
+   }
+   
+   /**
+    * Does the specified string contain at least one character, all of which belong to the specified ASCII character 
+    * set? Used in place of a regular expression to validate object and media names without allocating a matcher.
+    * @param s The string to test.
+    * @param charSet The character set, indexed by ASCII code.
+    * @return True if the string is non-empty and consists only of characters in the set.
+    */
+   private static boolean consistsOf(String s, boolean[] charSet)
+   {
+      int n = s.length();
+      if(n == 0) return(false);
+      for(int i=0; i<n; i++)
+      {
+         char c = s.charAt(i);
+         if(c >= charSet.length || !charSet[c]) return(false);
+      }
+      return(true);
+   }
+   
+   /**
+    * Prepare an ASCII character set containing all alphanumeric characters plus the specified characters.
+    * @param others The non-alphanumeric characters in the set.
+    * @return The character set, a boolean array indexed by ASCII code.
+    */
+   private static boolean[] asciiCharSet(String others)
+   {
+      boolean[] charSet = new boolean[128];
+      for(char c='a'; c<='z'; c++) charSet[c] = true;
+      for(char c='A'; c<='Z'; c++) charSet[c] = true;
+      for(char c='0'; c<='9'; c++) charSet[c] = true;
+      for(int i=0; i<others.length(); i++) charSet[others.charAt(i)] = true;
+      return(charSet);
    }
 }
@@ -0,0 +1,313 @@
+package com.srscicomp.maestro;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * The compiled rule table for the named parameters that may appear in a JMX document: RMVideo target parameters,
+ * general trial parameters, and the segment header and trajectory parameters in a trial's segment table. These are
+ * stored in a JSON array as a flat list of name-value pairs, [name1 value1 name2 value2 ...].
+ *
+ * <p>Each descriptor specifies the context in which the parameter appears, the rule by which its value is validated,
+ * the numeric bounds on the value, and -- for a target parameter -- a bit mask identifying the RMVideo target types to
+ * which the parameter applies. Most parameters are validated by one of a few generic rules ({@link Rule}) that are
+ * fully described by the descriptor, so supporting a new <i>Maestro</i> parameter of that kind is a matter of adding a
+ * row to the table. The few parameters with rules too irregular to capture here have rule {@link Rule#CUSTOM}, and
+ * {@link JMXDoc} validates them in code.</p>
+ *
+ * @author sruffner
+ */
+enum JMXParam
+{
+   // RMVideo target parameters
+   TGT_DOTSIZE(Context.TARGET, "dotsize", Rule.INT, 1, 25,
+         JMXParam.RMV_POINT|JMXParam.RMV_DOTPATCH|JMXParam.RMV_FLOWFIELD),
+   TGT_DISPARITY(Context.TARGET, "disparity", Rule.DOUBLE, 0, JMXParam.INF,
+         JMXParam.RMV_POINT|JMXParam.RMV_DOTPATCH|JMXParam.RMV_FLOWFIELD),
+   TGT_RGB(Context.TARGET, "rgb", Rule.INT, -JMXParam.INF, JMXParam.INF,
+         JMXParam.RMV_POINT|JMXParam.RMV_DOTPATCH|JMXParam.RMV_FLOWFIELD|JMXParam.RMV_BAR|JMXParam.RMV_SPOT),
+   TGT_RGBCON(Context.TARGET, "rgbcon", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_DOTPATCH),
+   TGT_SEED(Context.TARGET, "seed", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_DOTPATCH),
+   TGT_WRTSCREEN(Context.TARGET, "wrtscreen", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_DOTPATCH),
+   TGT_NDOTS(Context.TARGET, "ndots", Rule.INT, 0, 9999, JMXParam.RMV_DOTPATCH|JMXParam.RMV_FLOWFIELD),
+   TGT_APERTURE(Context.TARGET, "aperture", Rule.CUSTOM,
+         JMXParam.RMV_DOTPATCH|JMXParam.RMV_SPOT|JMXParam.RMV_GRATING|JMXParam.RMV_PLAID),
+   TGT_DIM(Context.TARGET, "dim", Rule.CUSTOM, JMXParam.RMV_ALL & ~(JMXParam.RMV_POINT|JMXParam.RMV_MOVIE)),
+   TGT_SIGMA(Context.TARGET, "sigma", Rule.DOUBLE_ARRAY, 2, 0, JMXParam.INF,
+         JMXParam.RMV_DOTPATCH|JMXParam.RMV_SPOT|JMXParam.RMV_GRATING|JMXParam.RMV_PLAID),
+   TGT_PCT(Context.TARGET, "pct", Rule.INT, 0, 100, JMXParam.RMV_DOTPATCH),
+   TGT_DOTLF(Context.TARGET, "dotlf", Rule.CUSTOM, JMXParam.RMV_DOTPATCH),
+   TGT_NOISE(Context.TARGET, "noise", Rule.CUSTOM, JMXParam.RMV_DOTPATCH),
+   TGT_SQUARE(Context.TARGET, "square", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_GRATING|JMXParam.RMV_PLAID),
+   TGT_ORIADJ(Context.TARGET, "oriadj", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_GRATING|JMXParam.RMV_PLAID),
+   TGT_INDEP(Context.TARGET, "indep", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_PLAID),
+   TGT_GRAT1(Context.TARGET, "grat1", Rule.CUSTOM, JMXParam.RMV_GRATING|JMXParam.RMV_PLAID),
+   TGT_GRAT2(Context.TARGET, "grat2", Rule.CUSTOM, JMXParam.RMV_PLAID),
+   TGT_FOLDER(Context.TARGET, "folder", Rule.CUSTOM, JMXParam.RMV_MOVIE|JMXParam.RMV_IMAGE),
+   TGT_FILE(Context.TARGET, "file", Rule.CUSTOM, JMXParam.RMV_MOVIE|JMXParam.RMV_IMAGE),
+   TGT_FLAGS(Context.TARGET, "flags", Rule.INT_ARRAY, 3, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_MOVIE),
+   TGT_FLICKER(Context.TARGET, "flicker", Rule.INT_ARRAY, 3, 0, 99, JMXParam.RMV_ALL),
+
+   // general trial parameters
+   TRIAL_CHANCFG(Context.TRIAL, "chancfg", Rule.CUSTOM, JMXParam.RMV_ALL),
+   TRIAL_WT(Context.TRIAL, "wt", Rule.INT, 0, 255, JMXParam.RMV_ALL),
+   TRIAL_KEEP(Context.TRIAL, "keep", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL),
+   TRIAL_STARTSEG(Context.TRIAL, "startseg", Rule.INT, 0, Limit.NSEGS, JMXParam.RMV_ALL),
+   TRIAL_FAILSAFESEG(Context.TRIAL, "failsafeseg", Rule.INT, 0, Limit.NSEGS, JMXParam.RMV_ALL),
+   TRIAL_SPECIALSEG(Context.TRIAL, "specialseg", Rule.INT, 1, Limit.NSEGS, JMXParam.RMV_ALL),
+   TRIAL_SPECIALOP(Context.TRIAL, "specialop", "none", "skip", "selbyfix", "selbyfix2", "switchfix", "rpdistro",
+         "choosefix1", "choosefix2", "search", "selectDur", "findAndWait"),
+   TRIAL_SACCVT(Context.TRIAL, "saccvt", Rule.INT, 0, 999, JMXParam.RMV_ALL),
+   TRIAL_MARKSEGS(Context.TRIAL, "marksegs", Rule.INT_ARRAY, 2, 0, Limit.NSEGS, JMXParam.RMV_ALL),
+   TRIAL_MTR(Context.TRIAL, "mtr", Rule.CUSTOM, JMXParam.RMV_ALL),
+   TRIAL_REWPULSES(Context.TRIAL, "rewpulses", Rule.INT_ARRAY, 2, 1, 999, JMXParam.RMV_ALL),
+   TRIAL_REWWHVR(Context.TRIAL, "rewWHVR", Rule.CUSTOM, JMXParam.RMV_ALL),
+   TRIAL_STAIR(Context.TRIAL, "stair", Rule.CUSTOM, JMXParam.RMV_ALL),
+   TRIAL_XYDOTSEEDALT(Context.TRIAL, "xydotseedalt", Rule.IGNORED, JMXParam.RMV_ALL),
+   TRIAL_XYINTERLEAVE(Context.TRIAL, "xyinterleave", Rule.IGNORED, JMXParam.RMV_ALL),
+
+   // segment header parameters
+   HDR_DUR(Context.HDR, "dur", Rule.CUSTOM, JMXParam.RMV_ALL),
+   HDR_FIX1(Context.HDR, "fix1", Rule.INT, 0, Limit.NTGTS, JMXParam.RMV_ALL),
+   HDR_FIX2(Context.HDR, "fix2", Rule.INT, 0, Limit.NTGTS, JMXParam.RMV_ALL),
+   HDR_FIXACC(Context.HDR, "fixacc", Rule.DOUBLE_ARRAY, 2, 0.1, JMXParam.INF, JMXParam.RMV_ALL),
+   HDR_GRACE(Context.HDR, "grace", Rule.INT, 0, JMXParam.INF, JMXParam.RMV_ALL),
+   HDR_MTRENA(Context.HDR, "mtrena", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL),
+   HDR_CHKRSP(Context.HDR, "chkrsp", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL),
+   HDR_RMVSYNC(Context.HDR, "rmvsync", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL),
+   HDR_MARKER(Context.HDR, "marker", Rule.INT, 0, 10, JMXParam.RMV_ALL),
+   HDR_XYFRAME(Context.HDR, "xyframe", Rule.IGNORED, JMXParam.RMV_ALL),
+
+   // per-target trajectory parameters in a segment
+   TRAJ_ON(Context.TRAJ, "on", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL),
+   TRAJ_ABS(Context.TRAJ, "abs", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL),
+   TRAJ_SNAP(Context.TRAJ, "snap", Rule.INT, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL),
+   TRAJ_VSTAB(Context.TRAJ, "vstab", "h", "v", "hv", "none"),
+   TRAJ_POS(Context.TRAJ, "pos", Rule.DOUBLE_ARRAY, 2, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL),
+   TRAJ_VEL(Context.TRAJ, "vel", Rule.DOUBLE_ARRAY, 2, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL),
+   TRAJ_ACC(Context.TRAJ, "acc", Rule.DOUBLE_ARRAY, 2, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL),
+   TRAJ_PATVEL(Context.TRAJ, "patvel", Rule.DOUBLE_ARRAY, 2, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL),
+   TRAJ_PATACC(Context.TRAJ, "patacc", Rule.DOUBLE_ARRAY, 2, -JMXParam.INF, JMXParam.INF, JMXParam.RMV_ALL);
+
+   /** The contexts in which named parameters appear in a JMX document. */
+   enum Context { TARGET, TRIAL, HDR, TRAJ }
+
+   /** The rules by which a parameter value is validated. */
+   enum Rule
+   {
+      /** An integer in [min, max]. */
+      INT,
+      /** A floating-point number in [min, max]. */
+      DOUBLE,
+      /** An array of exactly <i>len</i> integers, each in [min, max]. */
+      INT_ARRAY,
+      /** An array of exactly <i>len</i> floating-point numbers, each in [min, max]. */
+      DOUBLE_ARRAY,
+      /** A string that is one of the parameter's enumerated values. */
+      STRING_SET,
+      /** An obsolete parameter that is accepted and ignored. Its value is not checked. */
+      IGNORED,
+      /** A parameter with a rule that is not captured in the table; it is validated in code by the caller. */
+      CUSTOM
+   }
+
+   /** The kinds of upper limit on a numeric parameter value. */
+   enum Limit
+   {
+      /** The maximum is the fixed value given in the parameter descriptor. */
+      VALUE,
+      /** The maximum is the number of segments in the trial. */
+      NSEGS,
+      /** The maximum is the number of participating targets in the trial. */
+      NTGTS
+   }
+
+   /** Bit flags identifying the RMVideo target types. */
+   static final int RMV_POINT = 1, RMV_DOTPATCH = 1<<1, RMV_FLOWFIELD = 1<<2, RMV_BAR = 1<<3, RMV_SPOT = 1<<4,
+         RMV_GRATING = 1<<5, RMV_PLAID = 1<<6, RMV_MOVIE = 1<<7, RMV_IMAGE = 1<<8;
+   /** Bit mask for all RMVideo target types. */
+   static final int RMV_ALL = (1<<9) - 1;
+
+   /** Shorthand for an unbounded range limit. */
+   private static final double INF = Double.POSITIVE_INFINITY;
+
+   JMXParam(Context ctx, String name, Rule rule, int len, double min, double max, Limit limit, int types)
+   {
+      this.ctx = ctx;
+      this.pname = name;
+      this.rule = rule;
+      this.len = len;
+      this.min = min;
+      this.max = max;
+      this.limit = limit;
+      this.bounded = (min != -INF) || (max != INF) || (limit != Limit.VALUE);
+      this.types = types;
+      this.members = null;
+   }
+
+   JMXParam(Context ctx, String name, Rule rule, int len, double min, double max, int types)
+   {
+      this(ctx, name, rule, len, min, max, Limit.VALUE, types);
+   }
+
+   JMXParam(Context ctx, String name, Rule rule, int len, double min, Limit limit, int types)
+   {
+      this(ctx, name, rule, len, min, INF, limit, types);
+   }
+
+   JMXParam(Context ctx, String name, Rule rule, double min, double max, int types)
+   {
+      this(ctx, name, rule, 1, min, max, Limit.VALUE, types);
+   }
+
+   JMXParam(Context ctx, String name, Rule rule, double min, Limit limit, int types)
+   {
+      this(ctx, name, rule, 1, min, INF, limit, types);
+   }
+
+   JMXParam(Context ctx, String name, Rule rule, int types)
+   {
+      this(ctx, name, rule, 1, -INF, INF, Limit.VALUE, types);
+   }
+
+   JMXParam(Context ctx, String name, String... members)
+   {
+      this.ctx = ctx;
+      this.pname = name;
+      this.rule = Rule.STRING_SET;
+      this.len = 1;
+      this.min = -INF;
+      this.max = INF;
+      this.limit = Limit.VALUE;
+      this.bounded = false;
+      this.types = RMV_ALL;
+      this.members = new HashSet<>(Arrays.asList(members));
+   }
+
+   /** The context in which the parameter appears. */
+   final Context ctx;
+   /** The parameter name as it appears in the JMX document. */
+   final String pname;
+   /** The rule by which the parameter value is validated. */
+   final Rule rule;
+   /** For the array rules, the required array length. */
+   final int len;
+   /** The minimum allowed value (for numeric rules). */
+   final double min;
+   /** The maximum allowed value (for numeric rules), if {@link #limit} is {@link Limit#VALUE}. */
+   final double max;
+   /** The kind of upper limit on the value (for numeric rules). */
+   final Limit limit;
+   /** False if the value range is unbounded, in which case any parsable value is allowed. */
+   final boolean bounded;
+   /** For a target parameter, bit mask of the RMVideo target types to which it applies. */
+   final int types;
+   /** For rule {@link Rule#STRING_SET}, the allowed values. Null otherwise. */
+   final HashSet<String> members;
+
+   /**
+    * Does this parameter apply to the specified RMVideo target type?
+    * @param type The target type's bit flag, <code>RMV_***</code>.
+    * @return True if parameter applies to the target type.
+    */
+   boolean appliesTo(int type) { return((types & type) != 0); }
+
+   /**
+    * Validate the value of this parameter IAW its rule.
+    * @param params The parameter list.
+    * @param idx Index of the parameter value within the list.
+    * @param nSegs The number of segments in the trial, for parameters bounded by that number.
+    * @param nTgts The number of participating targets in the trial, for parameters bounded by that number.
+    * @return True if the value is valid. Always true for rules {@link Rule#IGNORED} and {@link Rule#CUSTOM}.
+    * @throws JSONException if the value is missing or is not of the expected JSON type.
+    */
+   boolean isValid(JSONArray params, int idx, int nSegs, int nTgts) throws JSONException
+   {
+      double hi = (limit == Limit.NSEGS) ? nSegs : ((limit == Limit.NTGTS) ? nTgts : max);
+      switch(rule)
+      {
+      case INT:
+      {
+         int v = params.getInt(idx);
+         return(!bounded || (v >= min && v <= hi));
+      }
+      case DOUBLE:
+      {
+         double v = params.getDouble(idx);
+         return(!bounded || (v >= min && v <= hi));
+      }
+      case INT_ARRAY:
+      {
+         JSONArray ar = params.getJSONArray(idx);
+         boolean ok = (ar.length() == len);
+         for(int j=0; ok && j<len; j++)
+         {
+            int v = ar.getInt(j);
+            ok = !bounded || (v >= min && v <= hi);
+         }
+         return(ok);
+      }
+      case DOUBLE_ARRAY:
+      {
+         JSONArray ar = params.getJSONArray(idx);
+         boolean ok = (ar.length() == len);
+         for(int j=0; ok && j<len; j++)
+         {
+            double v = ar.getDouble(j);
+            ok = !bounded || (v >= min && v <= hi);
+         }
+         return(ok);
+      }
+      case STRING_SET:
+         return(members.contains(params.getString(idx)));
+      default:
+         return(true);
+      }
+   }
+
+   /**
+    * Find the descriptor for a named parameter.
+    * @param ctx The context in which the parameter appears.
+    * @param name The parameter name.
+    * @return The parameter descriptor, or null if there is no such parameter in the specified context.
+    */
+   static JMXParam find(Context ctx, String name)
+   {
+      return(byName.get(ctx).get(name));
+   }
+
+   /**
+    * Get the bit flag identifying an RMVideo target type.
+    * @param type The RMVideo target type name.
+    * @return The corresponding bit flag <code>RMV_***</code>, or 0 if the type name is not recognized.
+    */
+   static int rmvTypeBit(String type)
+   {
+      switch(type)
+      {
+      case "point": return(RMV_POINT);
+      case "dotpatch": return(RMV_DOTPATCH);
+      case "flowfield": return(RMV_FLOWFIELD);
+      case "bar": return(RMV_BAR);
+      case "spot": return(RMV_SPOT);
+      case "grating": return(RMV_GRATING);
+      case "plaid": return(RMV_PLAID);
+      case "movie": return(RMV_MOVIE);
+      case "image": return(RMV_IMAGE);
+      default: return(0);
+      }
+   }
+
+   /** For each parameter context, the parameters in that context keyed by name. */
+   private static final EnumMap<Context, HashMap<String, JMXParam>> byName = new EnumMap<>(Context.class);
+   static
+   {
+      for(Context ctx : Context.values()) byName.put(ctx, new HashMap<>());
+      for(JMXParam p : values()) byName.get(p.ctx).put(p.pname, p);
+   }
+}
@@ -190,7 +190,8 @@ public class JSONArray {
 
      
     /**
-     * Get the object value associated with an index.
+     * Get the object value associated with an index. Like {@link #opt(int)},
+     * this may store a decoded lazy scalar in the array.
      * @param index
      *  The index must be between 0 and length() - 1.
      * @return An object value.
@@ -369,14 +370,28 @@ public class JSONArray {
 
 
     /**
-     * Get the optional object value associated with an index.
+     * Get the optional object value associated with an index. A string or
+     * number that was parsed by a {@link JSONByteTokener} in lazy-scalar
+     * mode is decoded now and stored in place of the undecoded text.
+     * <p>
+     * Since such a decode modifies the array, this is not a pure read:
+     * threads that share an array parsed in lazy-scalar mode must
+     * synchronize their access to it, even if none of them modifies it.
      * @param index The index must be between 0 and length() - 1.
      * @return      An object value, or null if there is no
      *              object at that index.
      */
+    @SuppressWarnings("unchecked")
     public Object opt(int index) {
-        return (index < 0 || index >= length()) ?
-            null : this.myArrayList.get(index);
+        if (index < 0 || index >= length()) {
+            return null;
+        }
+        Object o = this.myArrayList.get(index);
+        if (o instanceof JSONLazyScalar) {
+            o = ((JSONLazyScalar)o).decode();
+            this.myArrayList.set(index, o);
+        }
+        return o;
     }
 
 
@@ -886,6 +901,19 @@ public class JSONArray {
      * @throws JSONException if an IO error occurs or if JSON array contains an invalid value.
      */
     public Writer write(Writer writer) throws JSONException {
+        return write(writer, new JSONNumberWriter(-1));
+    }
+
+    /**
+     * Write the contents of the JSONArray as JSON text to a writer, as in
+     * {@link #write(Writer)}, formatting numbers with the number writer
+     * specified.
+     * @param writer The writer.
+     * @param numbers The number writer.
+     * @return The writer.
+     * @throws JSONException if an IO error occurs or if JSON array contains an invalid value.
+     */
+    Writer write(Writer writer, JSONNumberWriter numbers) throws JSONException {
         try {
             boolean b = false;
             int     len = length();
@@ -898,11 +926,13 @@ public class JSONArray {
                 }
                 Object v = this.myArrayList.get(i);
                 if (v instanceof JSONObject) {
-                    ((JSONObject)v).write(writer);
+                    ((JSONObject)v).write(writer, numbers);
                 } else if (v instanceof JSONArray) {
-                    ((JSONArray)v).write(writer);
+                    ((JSONArray)v).write(writer, numbers);
+                } else if (v instanceof JSONSlice) {
+                    ((JSONSlice)v).write(writer, numbers);
                 } else {
-                    writer.write(JSONObject.valueToString(v));
+                    JSONObject.writeValue(writer, v, numbers);
                 }
                 b = true;
             }
@@ -915,7 +945,8 @@ public class JSONArray {
 
     /**
      * Write the contents of this JSON array as JSON text via the specified writer. Whitespace and linefeeds are
-     * added for legibility.
+     * added for legibility. If none of the elements is an object or array, all elements are written on one line.
+     * As in {@link JSONObject#write(Writer, int, int)}, the only objects created are for number values.
      * <p>Warning: This method assumes that the data structure is acyclical.</p>
      * <p>NOTE: Method added by sruffner to support "pretty-printing" via a writer.</p>
      * @param writer The writer via which the JSON-encoded text is written.
@@ -926,19 +957,29 @@ public class JSONArray {
      */
     Writer write(Writer writer, int indentBy, int indent) throws JSONException
     {
-       char[] buf = new char[indent];
-       Arrays.fill(buf, ' ');
-       String strCurrIndent = new String(buf);
-       
-       int nextIndent = indent + indentBy;
-       
+       return(write(writer, indentBy, indent, new JSONNumberWriter(-1)));
+    }
+
+    /**
+     * Write the contents of this JSON array as JSON text via the specified writer, with whitespace and linefeeds 
+     * added for legibility as in {@link #write(Writer, int, int)}, formatting numbers with the number writer specified.
+     * @param writer The writer via which the JSON-encoded text is written.
+     * @param indentBy The number of spaces to add to each level of indentation.
+     * @param indent The number of spaces in the current indentation level.
+     * @param numbers The number writer.
+     * @return The writer.
+     * @throws JSONException if this JSON array is invalid. Also wraps any IO exception that occurs while writing.
+     */
+    Writer write(Writer writer, int indentBy, int indent, JSONNumberWriter numbers) throws JSONException
+    {
        try 
        {
           // special case: empty array.
+          JSONObject.newline(writer, indent);
           int len = length();
           if(len == 0)
           {
-             writer.write("\n" + strCurrIndent + "[]");
+             writer.write("[]");
              return(writer);
           }
           
@@ -947,38 +988,33 @@ public class JSONArray {
           for(int i=0; i<len && !hasContainers; i++)
           {
              Object v = this.myArrayList.get(i);
-             hasContainers = (v instanceof JSONObject) || (v instanceof JSONArray);
+             hasContainers = (v instanceof JSONObject) || (v instanceof JSONArray) || 
+                   (v instanceof JSONSlice && ((JSONSlice) v).isContainer());
           }
 
-          writer.write("\n" + strCurrIndent + "[");
-          if(!hasContainers)
+          int nextIndent = indent + indentBy;
+          writer.write('[');
+          for(int i=0; i<len; i++)
           {
-             for(int i=0; i<len; i++)
-             {
-                Object v = this.myArrayList.get(i);
-                writer.write(JSONObject.valueToString(v));
-                if(i < len-1) writer.write(", ");
-             }
-             writer.write("]");
-          }
-          else
-          {
-             for(int i=0; i<len; i++)
+             if(i > 0) writer.write(hasContainers ? "," : ", ");
+             Object v = this.myArrayList.get(i);
+             if(v instanceof JSONObject)
+                ((JSONObject)v).write(writer, indentBy, nextIndent, numbers);
+             else if(v instanceof JSONArray)
+                ((JSONArray)v).write(writer, indentBy, nextIndent, numbers);
+             else if(v instanceof JSONSlice && ((JSONSlice) v).isContainer())
+                ((JSONSlice)v).write(writer, indentBy, nextIndent, numbers);
+             else
              {
-                Object v = this.myArrayList.get(i);
-                if(v instanceof JSONObject)
-                   ((JSONObject)v).write(writer, indentBy, nextIndent);
-                else if(v instanceof JSONArray)
-                   ((JSONArray)v).write(writer, indentBy, nextIndent);
-                else
-                   writer.write("\n" + strCurrIndent + JSONObject.valueToString(v));
-                if(i < len-1) writer.write(",");
+                if(hasContainers) JSONObject.newline(writer, indent);
+                JSONObject.writeValue(writer, v, numbers);
              }
-             writer.write("\n" + strCurrIndent + "]");
           }
+          if(hasContainers) JSONObject.newline(writer, indent);
+          writer.write(']');
           
           return(writer);
        } 
        catch(IOException ioe) { throw new JSONException(ioe); }
     }
-}
\ No newline at end of file
+}
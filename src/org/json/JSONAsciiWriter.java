@@ -0,0 +1,152 @@
+package org.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A writer that stores JSON text as ASCII bytes in a direct byte buffer, which is drained to a byte channel --
+ * typically a <code>FileChannel</code> -- whenever it fills.
+ *
+ * <p>The JSON text written by this package is pure ASCII, apart from any non-ASCII characters within strings. So
+ * rather than passing every character through a charset encoder, as an <code>OutputStreamWriter</code> does, each
+ * character is simply narrowed to a byte and stored in the buffer. Since the buffer is direct, the channel writes
+ * straight from it, without first copying the bytes into a native buffer of its own. The one buffer is reused for
+ * the entire text.</p>
+ *
+ * <p>Any non-ASCII character is written as a Unicode escape sequence. Such a character can only occur inside a JSON
+ * string, where the escape sequence is equivalent, so the text written is always valid JSON and nothing is lost --
+ * unlike an ASCII <code>OutputStreamWriter</code>, which replaces the character with a '?'.</p>
+ *
+ * <p>This class was added to the freely provided org.json.* package and relies on classes from that package.</p>
+ *
+ * @author sruffner
+ */
+public final class JSONAsciiWriter extends Writer
+{
+   /** The default buffer size in bytes. */
+   public static final int DEFAULT_BUFSIZE = 64*1024;
+
+   /**
+    * Construct a writer with a direct buffer of the default size, {@link #DEFAULT_BUFSIZE}.
+    * @param ch The channel that receives the bytes. It is closed when the writer is closed.
+    */
+   public JSONAsciiWriter(WritableByteChannel ch)
+   {
+      this(ch, DEFAULT_BUFSIZE);
+   }
+
+   /**
+    * Construct a writer with a direct buffer of the specified size.
+    * @param ch The channel that receives the bytes. It is closed when the writer is closed.
+    * @param bufSize The buffer size in bytes. Must be at least 16.
+    */
+   public JSONAsciiWriter(WritableByteChannel ch, int bufSize)
+   {
+      if(ch == null) throw new IllegalArgumentException("Null channel argument!");
+      if(bufSize < 16) throw new IllegalArgumentException("Buffer size too small: " + bufSize);
+      this.ch = ch;
+      this.buf = ByteBuffer.allocateDirect(bufSize);
+   }
+
+   @Override public void write(int c) throws IOException
+   {
+      ensureOpen();
+      char chr = (char) c;
+      if(chr < 0x80 && buf.hasRemaining()) buf.put((byte) chr);
+      else putSlow(chr);
+   }
+
+   @Override public void write(char[] cbuf, int off, int len) throws IOException
+   {
+      ensureOpen();
+      for(int i=off; i<off+len; i++)
+      {
+         char c = cbuf[i];
+         if(c < 0x80 && buf.hasRemaining()) buf.put((byte) c);
+         else putSlow(c);
+      }
+   }
+
+   @Override public void write(String str, int off, int len) throws IOException
+   {
+      ensureOpen();
+      for(int i=off; i<off+len; i++)
+      {
+         char c = str.charAt(i);
+         if(c < 0x80 && buf.hasRemaining()) buf.put((byte) c);
+         else putSlow(c);
+      }
+   }
+
+   /**
+    * Store a character that is not ASCII, or that does not fit in the buffer. The buffer is drained first if there
+    * may not be room for the escape sequence.
+    * @param c The character.
+    * @throws IOException if an IO error occurs while draining the buffer.
+    */
+   private void putSlow(char c) throws IOException
+   {
+      if(buf.remaining() < 6) drain();
+      if(c < 0x80) buf.put((byte) c);
+      else
+      {
+         buf.put((byte) '\\').put((byte) 'u');
+         buf.put(HEX[(c >> 12) & 0xF]).put(HEX[(c >> 8) & 0xF]).put(HEX[(c >> 4) & 0xF]).put(HEX[c & 0xF]);
+      }
+   }
+
+   /**
+    * Write all bytes in the buffer to the channel, then clear the buffer.
+    * @throws IOException if an IO error occurs while writing to the channel.
+    */
+   private void drain() throws IOException
+   {
+      buf.flip();
+      while(buf.hasRemaining()) ch.write(buf);
+      buf.clear();
+   }
+
+   /**
+    * Ensure this writer has not been closed.
+    * @throws IOException if the writer is closed.
+    */
+   private void ensureOpen() throws IOException
+   {
+      if(closed) throw new IOException("Writer closed");
+   }
+
+   /**
+    * Write all bytes in the buffer to the channel. The channel itself is not forced to storage.
+    * @throws IOException if an IO error occurs, or if the writer is closed.
+    */
+   @Override public void flush() throws IOException
+   {
+      ensureOpen();
+      drain();
+   }
+
+   /**
+    * Write all bytes in the buffer to the channel, then close the channel. Closing a closed writer has no effect.
+    * @throws IOException if an IO error occurs.
+    */
+   @Override public void close() throws IOException
+   {
+      if(closed) return;
+      closed = true;
+      try { drain(); }
+      finally { ch.close(); }
+   }
+
+   /** Hexadecimal digits for the Unicode escape sequences, as ASCII bytes. */
+   private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+   /** The channel that receives the bytes. */
+   private final WritableByteChannel ch;
+   /** The direct buffer in which bytes are stored until it is drained to the channel. */
+   private final ByteBuffer buf;
+   /** True once this writer is closed. */
+   private boolean closed = false;
+}
@@ -0,0 +1,1073 @@
+package org.json;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link JSONTokener} that extracts characters and tokens directly from a byte buffer holding ASCII or UTF-8 encoded
+ * JSON text, rather than reading one character at a time from a {@link java.io.Reader}.
+ *
+ * <p>The tokener's position is simply an index into the buffer, so backing up is a decrement and looking ahead is an
+ * indexed read. Quoted strings and unquoted values are located by scanning the buffer and are then converted to a
+ * <code>String</code> in one step. The line and character position that {@link #syntaxError} reports are NOT tracked
+ * as the content is consumed; they are computed from the buffer content only when an error message is prepared.</p>
+ *
+ * <p>Multi-byte UTF-8 sequences are decoded within quoted strings and unquoted values; a malformed sequence decodes
+ * as U+FFFD. JSON structural characters are always ASCII, so the tokener otherwise treats the content as bytes. The
+ * character index in an error message counts decoded characters, not bytes.</p>
+ *
+ * <p>This class was added to the freely provided org.json.* package and relies on classes from that package.</p>
+ *
+ * @author sruffner
+ */
+public class JSONByteTokener extends JSONTokener
+{
+   /**
+    * Option flag for the tokener constructors: lazy-scalar mode. In this mode, {@link #nextValue} does not decode a
+    * double-quoted string or a number in strict JSON form. It checks the syntax of the value and returns a slice of 
+    * the underlying byte array instead, and the {@link JSONObject} or {@link JSONArray} that holds the value decodes it
+    * the first time it is retrieved. A value that is never retrieved is written back verbatim when the object or array
+    * is serialized. The byte array must not be modified while the parsed content is in use.
+    */
+   public static final int LAZY_SCALARS = 1;
+
+   /**
+    * Option flag for the tokener constructors: strict mode. In this mode, {@link #nextValue} accepts only standard 
+    * JSON as defined by RFC 8259 -- none of the forms that {@link JSONObject} and {@link JSONArray} otherwise tolerate,
+    * such as single-quoted strings, unquoted text, '=' or ';' as separators, trailing separators, or parenthesized
+    * arrays -- and parses objects and arrays itself, in tight loops that dispatch on the first byte of each value. The
+    * values obtained are identical to those obtained in the usual lenient mode.
+    */
+   public static final int STRICT = 2;
+
+   /**
+    * Construct a tokener that parses the specified portion of a byte array.
+    * @param bytes The byte array.
+    * @param offset Index of the first byte of the JSON text.
+    * @param length Number of bytes of JSON text.
+    */
+   public JSONByteTokener(byte[] bytes, int offset, int length)
+   {
+      this(ByteBuffer.wrap(bytes, offset, length), 0);
+   }
+
+   /**
+    * Construct a tokener that parses the specified portion of a byte array, with options.
+    * @param bytes The byte array.
+    * @param offset Index of the first byte of the JSON text.
+    * @param length Number of bytes of JSON text.
+    * @param options Bitwise OR of zero or more option flags: {@link #LAZY_SCALARS}, {@link #STRICT}.
+    */
+   public JSONByteTokener(byte[] bytes, int offset, int length, int options)
+   {
+      this(ByteBuffer.wrap(bytes, offset, length), options);
+   }
+
+   /**
+    * Construct a tokener that parses the specified portion of a byte array, with options, reporting the position of a
+    * syntax error relative to the specified origin rather than the start of the portion parsed. For example, when the
+    * array holds the entire content of a file and only one value in it is parsed, an origin of 0 reports the error at
+    * its position in the file.
+    * @param bytes The byte array.
+    * @param offset Index of the first byte of the JSON text.
+    * @param length Number of bytes of JSON text.
+    * @param options Bitwise OR of zero or more option flags: {@link #LAZY_SCALARS}, {@link #STRICT}.
+    * @param origin Index of the byte from which the index, character and line numbers in an error message are 
+    * counted. Must lie in [0..offset].
+    * @throws IllegalArgumentException if the origin is out of range.
+    */
+   public JSONByteTokener(byte[] bytes, int offset, int length, int options, int origin)
+   {
+      this(ByteBuffer.wrap(bytes, offset, length), options, origin);
+   }
+
+   /**
+    * Construct a tokener that parses a byte array in its entirety.
+    * @param bytes The byte array.
+    */
+   public JSONByteTokener(byte[] bytes)
+   {
+      this(bytes, 0, bytes.length);
+   }
+
+   /**
+    * Construct a tokener that parses the remaining content of a byte buffer, from its current position up to its
+    * limit. The tokener uses only absolute reads, so the buffer's position and limit are not changed. The buffer
+    * should not be modified while the tokener is in use.
+    * @param buf The byte buffer. May be a heap, direct or memory-mapped buffer.
+    */
+   public JSONByteTokener(ByteBuffer buf)
+   {
+      this(buf, 0);
+   }
+
+   /**
+    * Construct a tokener that parses the remaining content of a byte buffer, with options. See {@link 
+    * #JSONByteTokener(ByteBuffer)}.
+    * @param buf The byte buffer. May be a heap, direct or memory-mapped buffer -- unless the {@link #LAZY_SCALARS}
+    * option is set, in which case it must wrap an entire byte array, as {@link ByteBuffer#wrap} does.
+    * @param options Bitwise OR of zero or more option flags: {@link #LAZY_SCALARS}, {@link #STRICT}.
+    * @throws IllegalArgumentException if lazy-scalar mode is requested for a buffer that does not wrap a byte array.
+    */
+   public JSONByteTokener(ByteBuffer buf, int options)
+   {
+      this(buf, options, buf.position());
+   }
+
+   /**
+    * Construct a tokener that parses the remaining content of a byte buffer, with options and a reporting origin. See
+    * {@link #JSONByteTokener(ByteBuffer, int)} and {@link #JSONByteTokener(byte[], int, int, int, int)}.
+    * @param buf The byte buffer.
+    * @param options Bitwise OR of zero or more option flags: {@link #LAZY_SCALARS}, {@link #STRICT}.
+    * @param origin Index of the byte from which the position in an error message is counted. Must lie in 
+    * [0..buf.position()].
+    * @throws IllegalArgumentException if lazy-scalar mode is requested for a buffer that does not wrap a byte array,
+    * or if the origin is out of range.
+    */
+   private JSONByteTokener(ByteBuffer buf, int options, int origin)
+   {
+      super();
+      if(origin < 0 || origin > buf.position()) throw new IllegalArgumentException("Bad origin: " + origin);
+      this.buf = buf;
+      this.origin = origin;
+      this.start = buf.position();
+      this.limit = buf.limit();
+      this.pos = start;
+      this.strict = (options & STRICT) != 0;
+      if((options & LAZY_SCALARS) != 0)
+      {
+         if(!buf.hasArray() || buf.arrayOffset() != 0)
+            throw new IllegalArgumentException("Lazy-scalar mode requires a buffer that wraps a byte array");
+         lazyBytes = buf.array();
+      }
+   }
+
+   @Override public void back() throws JSONException
+   {
+      if(pos <= start) throw new JSONException("Stepping back two steps is not supported");
+      --pos;
+   }
+
+   @Override public boolean end() { return(pos > limit); }
+
+   @Override public char next()
+   {
+      int p = pos++;
+      if(p >= limit) return(0);
+      int b = buf.get(p);
+      return((char) ((b >= 0) ? b : 0xFFFD));
+   }
+
+   @Override public char nextClean()
+   {
+      for(;;)
+      {
+         int p = pos++;
+         if(p >= limit) return(0);
+         int b = buf.get(p);
+         if(b < 0) return((char) 0xFFFD);
+         if(b == 0 || b > ' ') return((char) b);
+      }
+   }
+
+   /**
+    * Return the characters up to the next close quote character, with backslash processing and UTF-8 decoding. A
+    * string with no escapes and no multi-byte characters -- the usual case -- is converted directly from the buffer.
+    */
+   @Override public String nextString(char quote) throws JSONException
+   {
+      int p = pos;
+      while(p < limit)
+      {
+         int b = buf.get(p);
+         if(b == quote)
+         {
+            String s = ascii(pos, p);
+            pos = p + 1;
+            return(s);
+         }
+         if(b == '\\' || b == '\n' || b == '\r' || b <= 0) break;
+         ++p;
+      }
+
+      StringBuilder sb = new StringBuilder(p - pos + 16);
+      sb.append(ascii(pos, p));
+      pos = p;
+      for(;;)
+      {
+         if(pos >= limit)
+         {
+            ++pos;
+            throw syntaxError("Unterminated string");
+         }
+         int b = buf.get(pos++);
+         switch(b)
+         {
+         case 0:
+         case '\n':
+         case '\r':
+            throw syntaxError("Unterminated string");
+         case '\\':
+            char c = next();
+            switch(c)
+            {
+            case 'b': sb.append('\b'); break;
+            case 't': sb.append('\t'); break;
+            case 'n': sb.append('\n'); break;
+            case 'f': sb.append('\f'); break;
+            case 'r': sb.append('\r'); break;
+            case 'u': sb.append((char)Integer.parseInt(next(4), 16)); break;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+               sb.append(c);
+               break;
+            default:
+               throw syntaxError("Illegal escape.");
+            }
+            break;
+         default:
+            if(b == quote) return(sb.toString());
+            if(b > 0) sb.append((char) b);
+            else pos = decodeUTF8(pos - 1, sb);
+         }
+      }
+   }
+
+   /**
+    * Get the next value. Quoted strings, objects and arrays are handled as in {@link JSONTokener#nextValue}. The extent
+    * of unquoted text is found by scanning the buffer for the next delimiter; the text is then converted in one step.
+    * In lazy-scalar mode, a double-quoted string or a number in strict JSON form is returned as an undecoded slice of
+    * the byte array. In strict mode, the value is parsed by {@link #strictValue}.
+    */
+   @Override public Object nextValue() throws JSONException
+   {
+      if(strict) return(strictValue());
+      char c = nextClean();
+      if(lazyBytes != null)
+      {
+         int first = pos - 1;
+         int end = (c == '"') ? checkString(pos, c) : -1;
+         if(end > 0)
+         {
+            pos = end;
+            return(new JSONLazyScalar(lazyBytes, first, end - first));
+         }
+         end = (c == '-' || (c >= '0' && c <= '9')) ? lazyNumberEnd(first) : -1;
+         if(end > 0)
+         {
+            pos = end;
+            return(new JSONLazyScalar(lazyBytes, first, end - first));
+         }
+      }
+      return(nextValue(c));
+   }
+
+   /** 
+    * Get the next key of an object member. The key is decoded even in lazy-scalar mode. In strict mode, the key must be
+    * a double-quoted string.
+    */
+   @Override public String nextKey() throws JSONException
+   {
+      if(strict)
+      {
+         if(nextStrict() != '"') throw syntaxError("Expected a string key");
+         return(strictString());
+      }
+      return(nextValue(nextClean()).toString());
+   }
+
+   /**
+    * Helper for {@link #nextValue()} in strict mode: parse the next value, which must be standard JSON.
+    * @return The value, exactly as the lenient {@link #nextValue()} would return it for the same text.
+    * @throws JSONException if a syntax error is encountered.
+    */
+   private Object strictValue() throws JSONException
+   {
+      int c = nextStrict();
+      switch((c < 0) ? V_NONE : valueClass[c])
+      {
+      case V_STRING:
+         if(lazyBytes != null)
+         {
+            int end = checkString(pos, c);
+            if(end > 0)
+            {
+               int first = pos - 1;
+               pos = end;
+               return(new JSONLazyScalar(lazyBytes, first, end - first));
+            }
+         }
+         return(strictString());
+      case V_NUMBER:
+         return(strictNumber(pos - 1));
+      case V_OBJECT:
+      {
+         JSONObject jo = new JSONObject();
+         c = nextStrict();
+         if(c == '}') return(jo);
+         for(;;)
+         {
+            if(c != '"') throw syntaxError((c < 0) ? "A JSONObject text must end with '}'" : "Expected a string key");
+            String key = strictString();
+            if(nextStrict() != ':') throw syntaxError("Expected a ':' after a key");
+            jo.putParsed(key, strictValue());
+            c = nextStrict();
+            if(c == '}') return(jo);
+            if(c != ',') throw syntaxError("Expected a ',' or '}'");
+            c = nextStrict();
+         }
+      }
+      case V_ARRAY:
+      {
+         JSONArray ja = new JSONArray();
+         c = nextStrict();
+         if(c == ']') return(ja);
+         --pos;
+         for(;;)
+         {
+            ja.put(strictValue());
+            c = nextStrict();
+            if(c == ']') return(ja);
+            if(c != ',') throw syntaxError("Expected a ',' or ']'");
+         }
+      }
+      case V_TRUE:
+         strictLiteral("rue");
+         return(Boolean.TRUE);
+      case V_FALSE:
+         strictLiteral("alse");
+         return(Boolean.FALSE);
+      case V_NULL:
+         strictLiteral("ull");
+         return(JSONObject.NULL);
+      default:
+         throw syntaxError((c < 0) ? "Missing value" : "Unexpected character");
+      }
+   }
+
+   /**
+    * Helper for strict mode: consume any whitespace -- space, tab, linefeed or carriage return only -- and the byte
+    * after it.
+    * @return The byte consumed, in [0..255]; or -1 if the end of the text was reached.
+    */
+   private int nextStrict()
+   {
+      for(;;)
+      {
+         int p = pos++;
+         if(p >= limit) return(-1);
+         int b = buf.get(p) & 0xFF;
+         if(b != ' ' && b != '\n' && b != '\r' && b != '\t') return(b);
+      }
+   }
+
+   /**
+    * Helper for strict mode: consume the remainder of the literal <i>true</i>, <i>false</i> or <i>null</i>. The
+    * literal must be followed by whitespace, a structural character, or the end of the text.
+    * @param rest The remainder of the literal, after its first letter.
+    * @throws JSONException if the text does not match the literal.
+    */
+   private void strictLiteral(String rest) throws JSONException
+   {
+      int n = rest.length();
+      for(int i = 0; i < n; i++)
+      {
+         if(pos >= limit || buf.get(pos) != rest.charAt(i)) throw syntaxError("Unexpected character");
+         ++pos;
+      }
+      if(pos < limit && !isTerminator(buf.get(pos))) throw syntaxError("Unexpected character");
+   }
+
+   /**
+    * Helper for strict mode: parse the remainder of a double-quoted string, after the open quote. Unlike {@link 
+    * #nextString}, this rejects a raw control character and the non-standard escape <i>\'</i>, and requires 4 hex
+    * digits after <i>\\u</i>.
+    * @return The string.
+    * @throws JSONException if the string is not terminated or is not standard JSON.
+    */
+   private String strictString() throws JSONException
+   {
+      int p = pos;
+      while(p < limit)
+      {
+         int b = buf.get(p);
+         if(b == '"')
+         {
+            String s = ascii(pos, p);
+            pos = p + 1;
+            return(s);
+         }
+         if(b == '\\' || b < ' ') break;
+         ++p;
+      }
+
+      StringBuilder sb = new StringBuilder(p - pos + 16);
+      sb.append(ascii(pos, p));
+      pos = p;
+      for(;;)
+      {
+         if(pos >= limit)
+         {
+            pos = limit + 1;
+            throw syntaxError("Unterminated string");
+         }
+         int b = buf.get(pos++);
+         if(b == '"') return(sb.toString());
+         if(b == '\\')
+         {
+            int c = (pos < limit) ? buf.get(pos) : 0;
+            ++pos;
+            switch(c)
+            {
+            case 'b': sb.append('\b'); break;
+            case 't': sb.append('\t'); break;
+            case 'n': sb.append('\n'); break;
+            case 'f': sb.append('\f'); break;
+            case 'r': sb.append('\r'); break;
+            case '"':
+            case '\\':
+            case '/':
+               sb.append((char) c);
+               break;
+            case 'u':
+               int u = 0;
+               for(int i = 0; i < 4; i++)
+               {
+                  int h = (pos < limit) ? Character.digit(buf.get(pos), 16) : -1;
+                  if(h < 0) throw syntaxError("Illegal escape.");
+                  u = (u << 4) | h;
+                  ++pos;
+               }
+               sb.append((char) u);
+               break;
+            default:
+               throw syntaxError("Illegal escape.");
+            }
+         }
+         else if(b < 0) pos = decodeUTF8(pos - 1, sb);
+         else if(b < ' ') throw syntaxError("Unescaped control character in string");
+         else sb.append((char) b);
+      }
+   }
+
+   /**
+    * Helper for strict mode: parse a number, which must be in standard JSON form and must be followed by whitespace,
+    * a structural character, or the end of the text. The value is converted exactly as the lenient {@link 
+    * #nextValue()} would convert it.
+    * @param first Index of the first byte of the number.
+    * @return The value. In lazy-scalar mode, this may be an undecoded slice of the byte array.
+    * @throws JSONException if the number is not in standard JSON form.
+    */
+   private Object strictNumber(int first) throws JSONException
+   {
+      // the integer part is accumulated as it is checked, so that the common case -- an integer of at most 18 digits,
+      // which cannot overflow -- needs no second pass
+      int p = first;
+      int b = buf.get(p);
+      boolean neg = (b == '-');
+      if(neg) b = (++p < limit) ? buf.get(p) : 0;
+      int digits = p;
+      long v = 0;
+      if(b == '0') b = (++p < limit) ? buf.get(p) : 0;
+      else if(b >= '1' && b <= '9')
+      {
+         while(b >= '0' && b <= '9') 
+         {
+            v = v*10 + (b - '0');
+            b = (++p < limit) ? buf.get(p) : 0;
+         }
+      }
+      else p = -1;
+      digits = p - digits;
+      if(p > 0 && digits <= 18 && b != '.' && b != 'e' && b != 'E' && (p >= limit || isTerminator(b)) && 
+            (lazyBytes == null || p - first <= 3))
+      {
+         pos = p;
+         if(neg) v = -v;
+         return((v == (int) v) ? (Object) (int) v : (Object) v);
+      }
+      if(p > 0 && b == '.')
+      {
+         b = (++p < limit) ? buf.get(p) : 0;
+         if(!(b >= '0' && b <= '9')) p = -1;
+         while(b >= '0' && b <= '9') b = (++p < limit) ? buf.get(p) : 0;
+      }
+      if(p > 0 && (b == 'e' || b == 'E'))
+      {
+         b = (++p < limit) ? buf.get(p) : 0;
+         if(b == '-' || b == '+') b = (++p < limit) ? buf.get(p) : 0;
+         if(!(b >= '0' && b <= '9')) p = -1;
+         while(b >= '0' && b <= '9') b = (++p < limit) ? buf.get(p) : 0;
+      }
+      if(p < 0 || (p < limit && !isTerminator(b))) 
+      {
+         pos = first + 1;
+         throw syntaxError("Invalid number");
+      }
+
+      if(lazyBytes != null && lazyNumberEnd(first) == p)
+      {
+         pos = p;
+         return(new JSONLazyScalar(lazyBytes, first, p - first));
+      }
+      pos = first;
+      if(scanNumber())
+      {
+         if(numIsDouble) return(numDouble);
+         if(numLong == (int) numLong) return((int) numLong);
+         return(numLong);
+      }
+      pos = p;
+      return(JSONObject.stringToValue(ascii(first, p)));
+   }
+
+   /**
+    * Can the specified byte follow a number or literal in standard JSON?
+    * @param b The byte.
+    * @return True if it is whitespace, ',', ']' or '}'.
+    */
+   private static boolean isTerminator(int b)
+   {
+      return(b == ',' || b == ']' || b == '}' || b == ' ' || b == '\n' || b == '\r' || b == '\t');
+   }
+
+   /**
+    * Helper for {@link #nextValue()} and {@link #nextKey}: get the value that starts with the specified character, 
+    * decoding it fully.
+    * @param c The first non-whitespace character of the value, already consumed.
+    * @return The value.
+    * @throws JSONException if a syntax error is encountered.
+    */
+   private Object nextValue(char c) throws JSONException
+   {
+      switch(c)
+      {
+      case '"':
+      case '\'':
+         return(nextString(c));
+      case '{':
+         back();
+         return(new JSONObject(this));
+      case '[':
+      case '(':
+         back();
+         return(new JSONArray(this));
+      }
+
+      // an unquoted number in the usual form is parsed directly from the buffer. The value is boxed exactly as 
+      // JSONObject.stringToValue() would box it.
+      int first = --pos;
+      if(((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.') && scanNumber())
+      {
+         if(numIsDouble) return(numDouble);
+         if(numLong == (int) numLong) return((int) numLong);
+         return(numLong);
+      }
+      
+      // otherwise, accumulate unquoted text until we reach the end of the text or a formatting character. Any byte of a
+      // multi-byte UTF-8 sequence is not a formatting character.
+      boolean ascii = true;
+      while(pos < limit)
+      {
+         int b = buf.get(pos);
+         if(b < 0) ascii = false;
+         else if(b < ' ' || isDelimiter[b]) break;
+         ++pos;
+      }
+
+      String s;
+      if(ascii) s = ascii(first, pos);
+      else
+      {
+         StringBuilder sb = new StringBuilder(pos - first);
+         for(int p = first; p < pos; )
+         {
+            int b = buf.get(p);
+            if(b >= 0) { sb.append((char) b); ++p; }
+            else p = decodeUTF8(p, sb);
+         }
+         s = sb.toString();
+      }
+      s = s.trim();
+      if(s.isEmpty()) throw syntaxError("Missing value");
+      return(JSONObject.stringToValue(s));
+   }
+
+   /**
+    * Parse an unquoted number starting at the current position directly from the buffer, without first converting it
+    * to a string. The result is always identical to what {@link JSONObject#stringToValue} yields for the same text.
+    * 
+    * <p>Only a number of the form <i>[+-]digits[.digits][(e|E)[+-]digits]</i> that is immediately followed by a 
+    * formatting character, a control character or the end of the text is handled here; anything else -- hex integers,
+    * trailing spaces, type suffixes, non-numeric text -- is left to the general path. A number without a fraction or
+    * exponent is an integer; it is accumulated in a <code>long</code> if it has at most 18 significant digits. A 
+    * number with at most 15 significant digits and a decimal exponent in [-22, 22] is converted by a single exact 
+    * multiplication or division by a power of 10, which is correctly rounded and so matches {@link Double#valueOf}. 
+    * Any other decimal number is converted by {@link Double#parseDouble}.</p>
+    * 
+    * @return True if a number was parsed, in which case {@link #numIsDouble} and {@link #numLong} or {@link #numDouble}
+    * hold the value, and the tokener is positioned just after the number. False if the text is not a number in the 
+    * supported form, in which case the tokener position is unchanged.
+    */
+   private boolean scanNumber()
+   {
+      int p = pos;
+      int b = buf.get(p);
+      boolean neg = (b == '-');
+      if(b == '-' || b == '+') b = (++p < limit) ? buf.get(p) : 0;
+      
+      long m = 0;
+      int nDigits = 0, nSig = 0, exp10 = 0;
+      boolean isReal = false;
+      while(b >= '0' && b <= '9')
+      {
+         ++nDigits;
+         if(nSig > 0 || b != '0') { if(++nSig <= 18) m = m*10 + (b - '0'); else ++exp10; }
+         b = (++p < limit) ? buf.get(p) : 0;
+      }
+      if(b == '.')
+      {
+         isReal = true;
+         b = (++p < limit) ? buf.get(p) : 0;
+         while(b >= '0' && b <= '9')
+         {
+            ++nDigits;
+            if(nSig > 0 || b != '0') { if(++nSig <= 18) { m = m*10 + (b - '0'); --exp10; } }
+            else --exp10;
+            b = (++p < limit) ? buf.get(p) : 0;
+         }
+      }
+      if(nDigits == 0) return(false);
+      if(b == 'e' || b == 'E')
+      {
+         isReal = true;
+         b = (++p < limit) ? buf.get(p) : 0;
+         boolean negExp = (b == '-');
+         if(b == '-' || b == '+') b = (++p < limit) ? buf.get(p) : 0;
+         if(!(b >= '0' && b <= '9')) return(false);
+         int e = 0;
+         while(b >= '0' && b <= '9')
+         {
+            if(e < 100000) e = e*10 + (b - '0');
+            b = (++p < limit) ? buf.get(p) : 0;
+         }
+         exp10 += negExp ? -e : e;
+      }
+      if(b < 0 || b == ' ' || (b > ' ' && !isDelimiter[b])) return(false);
+      
+      if(!isReal)
+      {
+         if(nSig > 18) return(false);
+         numIsDouble = false;
+         numLong = neg ? -m : m;
+      }
+      else
+      {
+         numIsDouble = true;
+         if(nSig <= 15 && exp10 >= -22 && exp10 <= 22)
+         {
+            double d = (double) m;
+            d = (exp10 < 0) ? d / POW10[-exp10] : d * POW10[exp10];
+            numDouble = neg ? -d : d;
+         }
+         else numDouble = Double.parseDouble(ascii(pos, p));
+      }
+      pos = p;
+      return(true);
+   }
+   
+   /** Exact powers of 10 as doubles, 10^0 .. 10^22. */
+   private static final double[] POW10 = {
+         1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+         1e20, 1e21, 1e22
+   };
+   
+   /**
+    * Skip the next value without constructing it. This is a tight scan of the buffer: brackets are counted and quoted
+    * strings are stepped over, but nothing is decoded or converted.
+    */
+   @Override public void skipValue() throws JSONException
+   {
+      int c = nextClean();
+      if(c == '"' || c == '\'')
+      {
+         pos = skipString(pos, c);
+         return;
+      }
+      if(c == '{' || c == '[' || c == '(')
+      {
+         int depth = 1;
+         int p = pos;
+         while(depth > 0)
+         {
+            if(p >= limit)
+            {
+               pos = limit + 1;
+               throw syntaxError("Unterminated object or array");
+            }
+            int b = buf.get(p++);
+            switch(skipClass[b & 0xFF])
+            {
+            case 0:
+               break;
+            case SKIP_QUOTE:
+               p = skipString(p, b);
+               break;
+            case SKIP_OPEN:
+               ++depth;
+               break;
+            case SKIP_CLOSE:
+               --depth;
+               break;
+            default:
+               pos = p;
+               throw syntaxError("Unterminated object or array");
+            }
+         }
+         pos = p;
+         return;
+      }
+      
+      int p = --pos;
+      while(p < limit)
+      {
+         int b = buf.get(p);
+         if(b >= 0 && (b < ' ' || isDelimiter[b])) break;
+         ++p;
+      }
+      if(p == pos)
+      {
+         if(c == 0) ++pos;
+         throw syntaxError("Missing value");
+      }
+      pos = p;
+   }
+   
+   /**
+    * Helper for {@link #skipValue}: find the end of a quoted string in the buffer.
+    * @param p Index of the first byte after the open quote.
+    * @param quote The quote character.
+    * @return Index of the first byte after the close quote.
+    * @throws JSONException if the string is not terminated.
+    */
+   private int skipString(int p, int quote) throws JSONException
+   {
+      while(p < limit)
+      {
+         int b = buf.get(p++);
+         if(b == quote) return(p);
+         if(b == '\\') ++p;
+         else if(b == 0 || b == '\n' || b == '\r') break;
+      }
+      pos = Math.min(p, limit + 1);
+      throw syntaxError("Unterminated string");
+   }
+   
+   /**
+    * Helper for {@link #nextValue()} in lazy-scalar mode: find the end of a number that may be left undecoded. Since 
+    * an undecoded number is written back verbatim, only a number in strict JSON form qualifies, and only if it is 
+    * certain to decode as a finite number -- not, say, as a string, which is what a long run of integer digits decodes
+    * to. Like {@link #scanNumber}, the number must be immediately followed by a formatting character, a control 
+    * character or the end of the text. An integer of at most 3 characters is not worth deferring: decoding it is 
+    * trivial, and its boxed value is usually cached by <code>Integer.valueOf</code>.
+    * @param p Index of the first byte of the number.
+    * @return Index of the first byte after the number, or -1 if the number should be decoded now.
+    */
+   private int lazyNumberEnd(int p)
+   {
+      int first = p;
+      int b = buf.get(p);
+      if(b == '-') b = (++p < limit) ? buf.get(p) : 0;
+      if(b == '0') b = (++p < limit) ? buf.get(p) : 0;
+      else if(b >= '1' && b <= '9')
+      {
+         while(b >= '0' && b <= '9') b = (++p < limit) ? buf.get(p) : 0;
+      }
+      else return(-1);
+      boolean isReal = false;
+      if(b == '.')
+      {
+         isReal = true;
+         b = (++p < limit) ? buf.get(p) : 0;
+         if(!(b >= '0' && b <= '9')) return(-1);
+         while(b >= '0' && b <= '9') b = (++p < limit) ? buf.get(p) : 0;
+      }
+      if(b == 'e' || b == 'E')
+      {
+         isReal = true;
+         b = (++p < limit) ? buf.get(p) : 0;
+         if(b == '-' || b == '+') b = (++p < limit) ? buf.get(p) : 0;
+         int nExp = 0;
+         while(b >= '0' && b <= '9')
+         {
+            ++nExp;
+            b = (++p < limit) ? buf.get(p) : 0;
+         }
+         if(nExp == 0 || nExp > 2) return(-1);
+      }
+      if(b < 0 || b == ' ' || (b > ' ' && !isDelimiter[b])) return(-1);
+      if(p - first > (isReal ? 24 : 18)) return(-1);
+      if(!isReal && p - first <= 3) return(-1);
+      return(p);
+   }
+   
+   /**
+    * Helper for {@link #nextValue()} in lazy-scalar mode: find the end of a quoted string in the buffer, checking it 
+    * exactly as {@link #nextString} would, so that the string is certain to decode without error later. Since an 
+    * undecoded string is written back verbatim, a string that contains a raw control character or the non-standard
+    * escape <i>\'</i> must be decoded now.
+    * @param p Index of the first byte after the open quote.
+    * @param quote The quote character.
+    * @return Index of the first byte after the close quote; or -1 if the string must be decoded now, in which case 
+    * the tokener position is unchanged.
+    * @throws JSONException if the string is not terminated or contains an illegal escape sequence.
+    */
+   private int checkString(int p, int quote) throws JSONException
+   {
+      while(p < limit)
+      {
+         int b = buf.get(p++);
+         if(b == quote) return(p);
+         if(b == 0 || b == '\n' || b == '\r') break;
+         if(b > 0 && b < ' ') return(-1);
+         if(b == '\\')
+         {
+            int c = (p < limit) ? buf.get(p) : 0;
+            ++p;
+            switch(c)
+            {
+            case 'b': case 't': case 'n': case 'f': case 'r': case '"': case '\\': case '/':
+               break;
+            case '\'':
+               return(-1);
+            case 'u':
+               if(p + 4 > limit)
+               {
+                  pos = limit + 1;
+                  throw syntaxError("Substring bounds error");
+               }
+               Integer.parseInt(ascii(p, p + 4), 16);
+               p += 4;
+               break;
+            default:
+               pos = p;
+               throw syntaxError("Illegal escape.");
+            }
+         }
+      }
+      pos = (p < limit) ? p : limit + 1;
+      throw syntaxError("Unterminated string");
+   }
+   
+   /**
+    * Parse an unquoted number at the current position directly into a primitive value, without boxing it. This is
+    * for use by {@link JSONPullParser}. On success, the value is available from {@link #isNumberDouble}, {@link 
+    * #numberAsLong} and {@link #numberAsDouble}.
+    * @return True if successful; false if the next value is not a number in the form handled by {@link #scanNumber},
+    * in which case the tokener position is unchanged.
+    */
+   boolean nextNumber()
+   {
+      int p = pos;
+      while(p < limit)
+      {
+         int b = buf.get(p);
+         if(b < 0 || b > ' ') break;
+         ++p;
+      }
+      if(p >= limit) return(false);
+      int b = buf.get(p);
+      if(!((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.')) return(false);
+      int save = pos;
+      pos = p;
+      if(scanNumber()) return(true);
+      pos = save;
+      return(false);
+   }
+   
+   /** @return True if the number most recently parsed by {@link #nextNumber} is a decimal rather than an integer. */
+   boolean isNumberDouble() { return(numIsDouble); }
+   
+   /** @return The integer most recently parsed by {@link #nextNumber}. */
+   long numberAsLong() { return(numLong); }
+   
+   /** @return The number most recently parsed by {@link #nextNumber}, as a double. */
+   double numberAsDouble() { return(numIsDouble ? numDouble : numLong); }
+   
+   /**
+    * @return Index of the next byte to be consumed, relative to the start of the underlying buffer -- not to the start
+    * of the content parsed by this tokener.
+    */
+   public int position() { return(pos); }
+   
+   /**
+    * Move the tokener to the specified position in the buffer. For use by {@link JSONIndexedParser}.
+    * @param p Index of the next byte to be consumed.
+    */
+   void seek(int p) { pos = p; }
+   
+   @Override public char skipTo(char to)
+   {
+      for(int p = pos; p < limit; p++) if(buf.get(p) == to)
+      {
+         pos = p;
+         return(to);
+      }
+      return(0);
+   }
+
+   /**
+    * Make a printable string of this tokener's current position. The index, character and line numbers are computed
+    * from the buffer content between the reporting origin and the current position, so that nothing is tracked as
+    * characters are consumed.
+    * @return " at {index} [character {character} line {line}]"
+    */
+   @Override public String toString()
+   {
+      int end = Math.min(pos, limit);
+      int index = 0, character = 1, line = 1;
+      boolean prevCR = false;
+      for(int p = origin; p < end; p++)
+      {
+         int b = buf.get(p);
+         if((b & 0xC0) == 0x80) continue;  // UTF-8 continuation byte
+         int n = ((b & 0xF8) == 0xF0) ? 2 : 1;  // 4-byte UTF-8 sequence decodes to a surrogate pair
+         index += n;
+         if(prevCR)
+         {
+            ++line;
+            character = (b == '\n') ? 0 : n;
+         }
+         else if(b == '\n')
+         {
+            ++line;
+            character = 0;
+         }
+         else character += n;
+         prevCR = (b == '\r');
+      }
+
+      // any reads past the end of the content count as characters, as with the Reader-based tokener
+      if(pos > limit)
+      {
+         index += pos - limit;
+         if(prevCR) { ++line; character = pos - limit; }
+         else character += pos - limit;
+      }
+      return(" at " + index + " [character " + character + " line " + line + "]");
+   }
+
+   /**
+    * Convert a range of ASCII bytes in the buffer to a string.
+    * @param from Index of first byte.
+    * @param to Index just beyond the last byte.
+    * @return The string.
+    */
+   private String ascii(int from, int to)
+   {
+      int n = to - from;
+      if(n == 0) return("");
+      if(buf.hasArray())
+         return(new String(buf.array(), buf.arrayOffset() + from, n, StandardCharsets.ISO_8859_1));
+
+      if(scratch.length < n) scratch = new byte[Math.max(n, 2*scratch.length)];
+      for(int i=0; i<n; i++) scratch[i] = buf.get(from + i);
+      return(new String(scratch, 0, n, StandardCharsets.ISO_8859_1));
+   }
+
+   /**
+    * Decode the multi-byte UTF-8 sequence starting at the specified position in the buffer. A malformed or truncated
+    * sequence decodes as a single U+FFFD, consuming only the lead byte.
+    * @param p Index of the sequence's lead byte.
+    * @param sb The decoded character(s) are appended here.
+    * @return Index of the byte just beyond the decoded sequence.
+    */
+   private int decodeUTF8(int p, StringBuilder sb)
+   {
+      int b = buf.get(p) & 0xFF;
+      int n = (b >= 0xF0 && b <= 0xF4) ? 3 : ((b >= 0xE0) && (b < 0xF0) ? 2 : ((b >= 0xC2 && b < 0xE0) ? 1 : -1));
+      int cp = (n == 3) ? (b & 0x07) : ((n == 2) ? (b & 0x0F) : (b & 0x1F));
+      boolean ok = (n > 0) && (p + n < limit);
+      for(int i=1; ok && i<=n; i++)
+      {
+         int cb = buf.get(p + i);
+         ok = (cb & 0xC0) == 0x80;
+         cp = (cp << 6) | (cb & 0x3F);
+      }
+      if(ok) ok = (n == 2) ? (cp >= 0x800 && !Character.isSurrogate((char) cp)) :
+            ((n != 3) || (cp >= 0x10000 && cp <= 0x10FFFF));
+      if(!ok)
+      {
+         sb.append('\uFFFD');
+         return(p + 1);
+      }
+      sb.appendCodePoint(cp);
+      return(p + n + 1);
+   }
+
+   /** The buffer containing the JSON text. */
+   private final ByteBuffer buf;
+   /** Index of the first byte of JSON text in the buffer. */
+   private final int start;
+   /** Index of the byte from which the position in an error message is counted. Normally the same as start. */
+   private final int origin;
+   /** Index just beyond the last byte of JSON text in the buffer. */
+   private final int limit;
+   /** Index of the next byte to be consumed. May exceed the limit after the tokener reads past the end of the text. */
+   private int pos;
+   /** True if the number most recently parsed by {@link #scanNumber} is a decimal number rather than an integer. */
+   private boolean numIsDouble;
+   /** The integer value most recently parsed by {@link #scanNumber}. */
+   private long numLong;
+   /** The decimal value most recently parsed by {@link #scanNumber}. */
+   private double numDouble;
+   /** Scratch buffer used to convert byte ranges in a buffer with no accessible backing array. */
+   private byte[] scratch = new byte[64];
+   /** In lazy-scalar mode, the byte array that backs the buffer; else null. */
+   private byte[] lazyBytes = null;
+   /** True in strict mode. */
+   private final boolean strict;
+
+   /** 
+    * For each byte value, its significance when skipping an object or array in {@link #skipValue}: 0 if none, else
+    * {@link #SKIP_QUOTE}, {@link #SKIP_OPEN}, {@link #SKIP_CLOSE}, or {@link #SKIP_NUL}.
+    */
+   private static final byte[] skipClass = new byte[256];
+   private static final byte SKIP_QUOTE = 1, SKIP_OPEN = 2, SKIP_CLOSE = 3, SKIP_NUL = 4;
+   static
+   {
+      skipClass['"'] = skipClass['\''] = SKIP_QUOTE;
+      skipClass['{'] = skipClass['['] = skipClass['('] = SKIP_OPEN;
+      skipClass['}'] = skipClass[']'] = skipClass[')'] = SKIP_CLOSE;
+      skipClass[0] = SKIP_NUL;
+   }
+
+   /** 
+    * For each byte value, the kind of JSON value it starts in strict mode: {@link #V_STRING}, {@link #V_NUMBER}, 
+    * {@link #V_OBJECT}, {@link #V_ARRAY}, {@link #V_TRUE}, {@link #V_FALSE}, {@link #V_NULL}; or {@link #V_NONE} if no
+    * value starts with it.
+    */
+   private static final byte[] valueClass = new byte[256];
+   private static final byte V_NONE = 0, V_STRING = 1, V_NUMBER = 2, V_OBJECT = 3, V_ARRAY = 4, V_TRUE = 5, 
+         V_FALSE = 6, V_NULL = 7;
+   static
+   {
+      valueClass['"'] = V_STRING;
+      valueClass['-'] = V_NUMBER;
+      for(char c = '0'; c <= '9'; c++) valueClass[c] = V_NUMBER;
+      valueClass['{'] = V_OBJECT;
+      valueClass['['] = V_ARRAY;
+      valueClass['t'] = V_TRUE;
+      valueClass['f'] = V_FALSE;
+      valueClass['n'] = V_NULL;
+   }
+
+   /** For each ASCII character, is it a formatting character that terminates unquoted text? */
+   private static final boolean[] isDelimiter = new boolean[128];
+   static
+   {
+      for(char c : ",:]}/\\\"[{;=#".toCharArray()) isDelimiter[c] = true;
+   }
+}
@@ -19,6 +19,17 @@ public class JSONException extends Exception {
         super(message);
     }
 
+    /**
+     * Constructs a JSONException with an explanatory message, optionally without a stack trace. Filling in the stack
+     * trace dominates the cost of constructing an exception; skip it when the exception reports an expected failure
+     * in a performance-critical path and the trace is of no use to the caller.
+     * @param message Detail about the reason for the exception.
+     * @param writableStackTrace If false, the stack trace is not filled in.
+     */
+    public JSONException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+
     public JSONException(Throwable t) {
         super(t.getMessage());
         this.cause = t;
@@ -0,0 +1,484 @@
+package org.json;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A two-stage parser for a large JSON object held in a byte buffer, which builds the large subtrees of the object
+ * concurrently on a fork-join pool.
+ *
+ * <p>The first stage is a single pass over the content that builds a <i>structural index</i>: the position of every
+ * opening brace or bracket outside a quoted string, the position of the matching close, and the nesting of these
+ * containers. The content is read eight bytes at a time, and the quotes, backslashes, braces and brackets in each
+ * 8-byte word are located with a few bitwise operations; only those bytes are examined individually. Since most of
+ * the content of a typical document is numbers, names and whitespace, most words contain no byte of interest.</p>
+ *
+ * <p>The second stage builds the JSON object. A container spanning fewer than {@link #SPLIT_SIZE} bytes is parsed by
+ * a {@link JSONByteTokener} as usual. A larger container is walked by the tokener element by element, but each element
+ * that is itself a container is skipped over using the index and deferred. The deferred elements are then built by
+ * fork-join tasks: each large element in its own task (which splits it the same way), and runs of smaller elements in
+ * batches of about {@link #BATCH_SIZE} bytes. For a JSON-formatted <i>Maestro</i> experiment document, this means
+ * that the trial sets, target sets and the trials within each trial set are all built concurrently.</p>
+ *
+ * <p>Each value is parsed by the same tokener code that a serial parse uses, and each container is walked exactly as
+ * {@link JSONObject#JSONObject(JSONTokener)} and {@link JSONArray#JSONArray(JSONTokener)} would walk it, so the
+ * object built is identical to that built by a serial parse. The index is used only to locate and skip containers,
+ * and the parse fails over to a serial parse of the entire content if any skipped container does not parse to the
+ * indexed end position. This happens for syntax that the index does not model -- single-quoted strings containing
+ * braces or brackets, for example -- and for any content with a syntax error, so that the error reported is always the
+ * one a serial parse reports.</p>
+ *
+ * <p>This class was added to the freely provided org.json.* package and relies on classes from that package.</p>
+ *
+ * @author sruffner
+ */
+public class JSONIndexedParser
+{
+   /**
+    * Parse a JSON object from the remaining content of a byte buffer, building large subtrees concurrently in the
+    * common fork-join pool. See class header.
+    * @param buf The byte buffer containing ASCII or UTF-8 encoded JSON text. Only absolute reads are used, so the
+    * buffer's position and limit are not changed.
+    * @return The JSON object parsed.
+    * @throws JSONException if a JSON syntax error occurs while parsing the content.
+    */
+   public static JSONObject parseObject(ByteBuffer buf) throws JSONException
+   {
+      return(parseObject(buf, ForkJoinPool.commonPool()));
+   }
+
+   /**
+    * Parse a JSON object from the remaining content of a byte buffer, building large subtrees concurrently. See class
+    * header. Content smaller than {@link #MIN_INDEXED_SIZE} is parsed serially, as is all content if the pool's
+    * parallelism is 1.
+    * @param buf The byte buffer containing ASCII or UTF-8 encoded JSON text. Only absolute reads are used, so the
+    * buffer's position and limit are not changed.
+    * @param pool The fork-join pool in which the subtrees are built.
+    * @return The JSON object parsed.
+    * @throws JSONException if a JSON syntax error occurs while parsing the content.
+    */
+   public static JSONObject parseObject(ByteBuffer buf, ForkJoinPool pool) throws JSONException
+   {
+      if(buf.remaining() >= MIN_INDEXED_SIZE && pool.getParallelism() > 1)
+      {
+         JSONObject obj = new JSONIndexedParser(buf).parse(pool);
+         if(obj != null) return(obj);
+      }
+      return(new JSONObject(new JSONByteTokener(buf)));
+   }
+
+   /** Content smaller than this is always parsed serially. */
+   public static final int MIN_INDEXED_SIZE = 4*1024*1024;
+
+   /** A container spanning fewer bytes than this is parsed serially, without consulting the structural index. */
+   static final int SPLIT_SIZE = 64*1024;
+
+   /** Approximate number of bytes of content in a batch of small containers built by a single fork-join task. */
+   static final int BATCH_SIZE = 64*1024;
+
+   /**
+    * Construct a parser for the remaining content of the specified buffer.
+    * @param buf The byte buffer.
+    */
+   JSONIndexedParser(ByteBuffer buf)
+   {
+      this.buf = buf;
+      this.start = buf.position();
+      this.limit = buf.limit();
+   }
+
+   /**
+    * Build the structural index, then build the JSON object in the specified pool.
+    * @param pool The fork-join pool.
+    * @return The JSON object, or null if the content cannot be parsed with the aid of the index -- in which case the
+    * caller should parse it serially.
+    */
+   JSONObject parse(ForkJoinPool pool)
+   {
+      if(!buildIndex()) return(null);
+
+      try
+      {
+         JSONByteTokener x = new JSONByteTokener(buf);
+         if(x.nextClean() != '{' || x.position() - 1 != opens[0]) return(null);
+         Object[] results = new Object[1];
+         pool.invoke(new BuildTask(new int[] {0}, 0, 1, results));
+         return(failed ? null : (JSONObject) results[0]);
+      }
+      catch(RuntimeException re)
+      {
+         return(null);
+      }
+   }
+
+   /**
+    * Stage 1: Build the structural index. This is a single pass over the content, eight bytes at a time. In each 8-byte
+    * word, every byte that is a quote, backslash, brace or bracket is flagged; each flagged byte is then examined to
+    * track whether or not the scan is inside a quoted string and, if not, to open or close a container.
+    * @return True if successful; false if the braces and brackets outside quoted strings are unbalanced or mismatched.
+    */
+   private boolean buildIndex()
+   {
+      int cap = Math.max(16, (limit - start) >> 6);
+      opens = new int[cap];
+      closes = new int[cap];
+      nexts = new int[cap];
+      stack = new int[64];
+
+      ByteBuffer le = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      int p = start;
+      for(; p <= limit - 8; p += 8)
+      {
+         long w = le.getLong(p);
+         long m = zeroBytes(w ^ QUOTES) | zeroBytes(w ^ BACKSLASHES) | zeroBytes(w ^ LBRACES) |
+               zeroBytes(w ^ RBRACES) | zeroBytes(w ^ LBRACKETS) | zeroBytes(w ^ RBRACKETS);
+         while(m != 0)
+         {
+            if(!indexByte(p + (Long.numberOfTrailingZeros(m) >>> 3))) return(false);
+            m &= m - 1;
+         }
+      }
+      for(; p < limit; p++)
+      {
+         int b = buf.get(p);
+         if(b == '"' || b == '\\' || b == '{' || b == '}' || b == '[' || b == ']')
+            if(!indexByte(p)) return(false);
+      }
+
+      return(nOpen > 0 && depth == 0 && !inString);
+   }
+
+   /**
+    * Helper method for {@link #buildIndex}. Update the index IAW a byte that is a quote, backslash, brace or bracket.
+    * @param p Index of the byte in the buffer.
+    * @return False if the byte closes a container that is not open; else true.
+    */
+   private boolean indexByte(int p)
+   {
+      if(p == escaped) return(true);
+      int b = buf.get(p);
+      if(inString)
+      {
+         if(b == '"') inString = false;
+         else if(b == '\\') escaped = p + 1;
+         return(true);
+      }
+
+      switch(b)
+      {
+      case '"':
+         inString = true;
+         break;
+      case '{':
+      case '[':
+         if(nOpen == opens.length)
+         {
+            int cap = nOpen + (nOpen >> 1);
+            opens = Arrays.copyOf(opens, cap);
+            closes = Arrays.copyOf(closes, cap);
+            nexts = Arrays.copyOf(nexts, cap);
+         }
+         if(depth == stack.length) stack = Arrays.copyOf(stack, 2*depth);
+         opens[nOpen] = p;
+         stack[depth++] = nOpen++;
+         break;
+      case '}':
+      case ']':
+         if(depth == 0) return(false);
+         int slot = stack[--depth];
+         if(buf.get(opens[slot]) != ((b == '}') ? '{' : '[')) return(false);
+         closes[slot] = p;
+         nexts[slot] = nOpen;
+         break;
+      }
+      return(true);
+   }
+
+   /**
+    * Flag the zero bytes in a 64-bit word. Unlike the well-known <i>(x - 0x01..01) &amp; ~x &amp; 0x80..80</i>, this
+    * form is exact: no carry or borrow crosses a byte boundary, so a byte following a zero byte is never flagged.
+    * @param x The word.
+    * @return A word with the high bit set in each byte that is zero in <i>x</i>, and all other bits clear.
+    */
+   private static long zeroBytes(long x)
+   {
+      return(~(((x & LOW7) + LOW7) | x | LOW7));
+   }
+
+   private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+   private static final long QUOTES = 0x2222222222222222L;
+   private static final long BACKSLASHES = 0x5C5C5C5C5C5C5C5CL;
+   private static final long LBRACES = 0x7B7B7B7B7B7B7B7BL;
+   private static final long RBRACES = 0x7D7D7D7D7D7D7D7DL;
+   private static final long LBRACKETS = 0x5B5B5B5B5B5B5B5BL;
+   private static final long RBRACKETS = 0x5D5D5D5D5D5D5D5DL;
+
+   /**
+    * Stage 2: Build the JSON object or array in the specified slot of the structural index. A container smaller than
+    * {@link #SPLIT_SIZE} is parsed in its entirety by the tokener. A larger container is walked by the tokener exactly
+    * as the <code>JSONObject</code> or <code>JSONArray</code> constructor would walk it, except that each element that
+    * is itself a container is skipped and deferred. The deferred elements are then built by fork-join tasks.
+    * @param slot Slot of the container in the structural index.
+    * @param x The tokener used to parse the container. It is owned by the calling task.
+    * @return The container built.
+    * @throws JSONException if the content does not parse to the extent recorded in the index, or if a syntax error is
+    * encountered. In either case, the content must be parsed serially to obtain the correct result or error.
+    */
+   private Object build(int slot, JSONByteTokener x) throws JSONException
+   {
+      int open = opens[slot], close = closes[slot];
+      x.seek(open);
+      if(close - open < SPLIT_SIZE)
+      {
+         Object value = x.nextValue();
+         if(x.position() != close + 1) throw mismatch();
+         return(value);
+      }
+
+      List<Object> values = new ArrayList<>();
+      Kids kids = new Kids(slot + 1, nexts[slot]);
+      x.next();
+      if(buf.get(open) == '[')
+      {
+         boolean done = (x.nextClean() == ']');
+         if(!done) x.back();
+         while(!done)
+         {
+            if(x.nextClean() == ',')
+            {
+               x.back();
+               values.add(null);
+            }
+            else
+            {
+               x.back();
+               nextValue(x, kids, values);
+            }
+            switch(x.nextClean())
+            {
+            case ';':
+            case ',':
+               done = (x.nextClean() == ']');
+               if(!done) x.back();
+               break;
+            case ']':
+               done = true;
+               break;
+            default:
+               throw mismatch();
+            }
+         }
+         if(x.position() != close + 1) throw mismatch();
+
+         kids.build(values);
+         JSONArray ja = new JSONArray();
+         for(Object value : values) ja.put(value);
+         return(ja);
+      }
+
+      List<String> keys = new ArrayList<>();
+      for(;;)
+      {
+         char c = x.nextClean();
+         if(c == '}') break;
+         if(c == 0) throw mismatch();
+         x.back();
+         keys.add(x.nextKey());
+
+         c = x.nextClean();
+         if(c == '=')
+         {
+            if(x.next() != '>') x.back();
+         }
+         else if(c != ':') throw mismatch();
+         nextValue(x, kids, values);
+
+         c = x.nextClean();
+         if(c == ';' || c == ',')
+         {
+            if(x.nextClean() == '}') break;
+            x.back();
+         }
+         else if(c != '}') throw mismatch();
+         else break;
+      }
+      if(x.position() != close + 1) throw mismatch();
+
+      kids.build(values);
+      JSONObject jo = new JSONObject();
+      for(int i=0; i<keys.size(); i++) jo.putOnce(keys.get(i), values.get(i));
+      return(jo);
+   }
+
+   /**
+    * Helper method for {@link #build}. If the next value is a container in the structural index, skip over it and
+    * defer it; else parse it.
+    * @param x The tokener.
+    * @param kids The child containers of the container being walked.
+    * @param values The next value, or a placeholder for a deferred container, is appended to this list.
+    * @throws JSONException if a syntax error occurs while parsing the value.
+    */
+   private void nextValue(JSONByteTokener x, Kids kids, List<Object> values) throws JSONException
+   {
+      x.nextClean();
+      x.back();
+      int p = x.position();
+      int slot = kids.at(p);
+      if(slot < 0) values.add(x.nextValue());
+      else
+      {
+         values.add(DEFERRED);
+         x.seek(closes[slot] + 1);
+      }
+   }
+
+   /** @return The exception thrown when the content does not parse as indexed. */
+   private static JSONException mismatch() { return(new JSONException("Structural index mismatch", false)); }
+
+   /** Placeholder for a deferred element in the list of values of a container being built. */
+   private static final Object DEFERRED = new Object();
+
+   /** The child containers of a container being built by {@link #build}, and those that were deferred. */
+   private class Kids
+   {
+      /**
+       * Construct the list of children of a container.
+       * @param first Slot of the first child in the structural index.
+       * @param end Slot just beyond the last descendant.
+       */
+      Kids(int first, int end)
+      {
+         this.next = first;
+         this.end = end;
+      }
+
+      /**
+       * Find the child container starting at the specified position, and defer it if found. Any children preceding
+       * that position were consumed by the tokener -- as part of a parenthesized array, eg -- and are passed over.
+       * @param p A position in the buffer.
+       * @return Slot of the child container starting at that position, or -1 if there is none.
+       */
+      int at(int p)
+      {
+         while(next < end && opens[next] < p) next = nexts[next];
+         if(next >= end || opens[next] != p) return(-1);
+         if(nDeferred == deferred.length) deferred = Arrays.copyOf(deferred, 2*nDeferred);
+         deferred[nDeferred++] = next;
+         int slot = next;
+         next = nexts[next];
+         return(slot);
+      }
+
+      /**
+       * Build all deferred children and replace their placeholders in the list of values. Each large child is built in
+       * its own fork-join task; consecutive smaller children are built in batches.
+       * @param values The list of values of the container being built.
+       * @throws JSONException if any child could not be built.
+       */
+      void build(List<Object> values) throws JSONException
+      {
+         if(nDeferred == 0) return;
+         Object[] results = new Object[nDeferred];
+         List<BuildTask> tasks = new ArrayList<>();
+         int from = 0, size = 0;
+         for(int i=0; i<nDeferred; i++)
+         {
+            int slot = deferred[i];
+            int span = closes[slot] - opens[slot];
+            if(span >= SPLIT_SIZE || size + span >= BATCH_SIZE)
+            {
+               if(from < i) tasks.add(new BuildTask(deferred, from, i, results));
+               from = i;
+               size = 0;
+            }
+            size += span;
+         }
+         tasks.add(new BuildTask(deferred, from, nDeferred, results));
+         if(tasks.size() == 1) tasks.get(0).compute();
+         else RecursiveAction.invokeAll(tasks);
+         if(failed) throw mismatch();
+
+         int n = 0;
+         for(int i=0; i<values.size(); i++) if(values.get(i) == DEFERRED) values.set(i, results[n++]);
+      }
+
+      /** Slot of the next child not yet passed over. */
+      private int next;
+      /** Slot just beyond the last descendant. */
+      private final int end;
+      /** Slots of the deferred children, in order. */
+      private int[] deferred = new int[8];
+      /** Number of deferred children. */
+      private int nDeferred = 0;
+   }
+
+   /** A fork-join task that builds a contiguous range of deferred containers, in order. See {@link #build}. */
+   private class BuildTask extends RecursiveAction
+   {
+      /**
+       * Construct a task to build some deferred containers.
+       * @param slots Slots of the deferred containers in the structural index.
+       * @param from Index of the first container to build.
+       * @param to Index just beyond the last container to build.
+       * @param results Each container built is stored here, at the same index as its slot in <i>slots</i>.
+       */
+      BuildTask(int[] slots, int from, int to, Object[] results)
+      {
+         this.slots = slots;
+         this.from = from;
+         this.to = to;
+         this.results = results;
+      }
+
+      @Override protected void compute()
+      {
+         JSONByteTokener x = new JSONByteTokener(buf);
+         try
+         {
+            for(int i=from; i<to && !failed; i++) results[i] = build(slots[i], x);
+         }
+         catch(JSONException jse)
+         {
+            failed = true;
+         }
+      }
+
+      private static final long serialVersionUID = 1L;
+      private final int[] slots;
+      private final int from;
+      private final int to;
+      private final Object[] results;
+   }
+
+   /** The buffer containing the JSON text. */
+   private final ByteBuffer buf;
+   /** Index of the first byte of JSON text in the buffer. */
+   private final int start;
+   /** Index just beyond the last byte of JSON text in the buffer. */
+   private final int limit;
+
+   /** Structural index: For each container, in order of appearance, the position of its opening brace or bracket. */
+   private int[] opens;
+   /** Structural index: For each container, the position of its closing brace or bracket. */
+   private int[] closes;
+   /** Structural index: For each container, the slot just beyond that of its last descendant. */
+   private int[] nexts;
+   /** Number of containers in the structural index. */
+   private int nOpen = 0;
+   /** Slots of the containers that are open at the current point in the scan that builds the index. */
+   private int[] stack;
+   /** Number of containers that are open at the current point in the scan that builds the index. */
+   private int depth = 0;
+   /** True if the scan that builds the index is inside a quoted string. */
+   private boolean inString = false;
+   /** Position of the character escaped by the last backslash in a quoted string. */
+   private int escaped = -1;
+
+   /** Set if the content could not be parsed with the aid of the index. All build tasks stop at the next element. */
+   private volatile boolean failed = false;
+}
@@ -0,0 +1,84 @@
+package org.json;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A string or number value that has not been decoded yet: a slice of the byte array holding its ASCII or UTF-8 encoded
+ * JSON text, including the quotes of a quoted string.
+ *
+ * <p>A {@link JSONByteTokener} in lazy-scalar mode returns one of these in place of each quoted string or unquoted
+ * number. It is stored as is in the containing {@link JSONObject} or {@link JSONArray}, which replaces it with the
+ * decoded value the first time the value is retrieved. A value that is never retrieved is written back verbatim when
+ * the containing object or array is serialized, since this class implements {@link JSONString}.</p>
+ *
+ * <p>The tokener checks the syntax of the text when it returns the slice, so decoding never fails. The byte array is
+ * shared, not copied, and must not be modified while any slice of it is in use.</p>
+ *
+ * <p>This class was added to the freely provided org.json.* package and relies on classes from that package.</p>
+ *
+ * @author sruffner
+ */
+final class JSONLazyScalar implements JSONString
+{
+   /**
+    * Construct a slice holding the JSON text of a string or number value.
+    * @param bytes The byte array.
+    * @param offset Index of the first byte of the value's JSON text.
+    * @param length Number of bytes of JSON text.
+    */
+   JSONLazyScalar(byte[] bytes, int offset, int length)
+   {
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+   }
+
+   /**
+    * Decode the value, exactly as {@link JSONTokener#nextValue} would have decoded it when it was read.
+    * @return The value: a <code>String</code> or <code>Number</code>.
+    */
+   Object decode()
+   {
+      // the usual cases -- a string with no escapes or multi-byte characters, an integer, a decimal number -- are 
+      // converted directly. The tokener ensures an undecoded number is in strict JSON form, and an integer has at most
+      // 18 digits.
+      int end = offset + length;
+      if(bytes[offset] == '"')
+      {
+         int p = offset + 1;
+         while(p < end - 1 && bytes[p] > 0 && bytes[p] != '\\') ++p;
+         if(p == end - 1) return(new String(bytes, offset + 1, length - 2, StandardCharsets.ISO_8859_1));
+      }
+      else
+      {
+         boolean neg = (bytes[offset] == '-');
+         long v = 0;
+         int p = neg ? offset + 1 : offset;
+         while(p < end && bytes[p] >= '0' && bytes[p] <= '9') v = v*10 + (bytes[p++] - '0');
+         if(p == end)
+         {
+            if(neg) v = -v;
+            return((v == (int) v) ? (Object) (int) v : (Object) v);
+         }
+         return(Double.valueOf(new String(bytes, offset, length, StandardCharsets.ISO_8859_1)));
+      }
+
+      try { return(new JSONByteTokener(bytes, offset, length).nextValue()); }
+      catch(JSONException jse) { throw new IllegalStateException("Lazy scalar failed to decode", jse); }
+   }
+
+   /** @return The JSON text of the value, exactly as it appears in the underlying byte array. */
+   @Override public String toJSONString()
+   {
+      return(new String(bytes, offset, length, StandardCharsets.UTF_8));
+   }
+
+   @Override public String toString() { return(toJSONString()); }
+
+   /** The byte array. */
+   private final byte[] bytes;
+   /** Index of the first byte of the value's JSON text. */
+   private final int offset;
+   /** Number of bytes of JSON text. */
+   private final int length;
+}
@@ -0,0 +1,206 @@
+package org.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Writes the JSON text of number values directly to a writer, formatting each one into a reusable character buffer
+ * rather than a new string.
+ *
+ * <p>A double is written in the shortest decimal form that reads back as the same double. For a value in the range
+ * [1e-3, 1e7) -- which covers nearly all of the numbers in a typical document -- the digits are found by scaling the
+ * value by successive powers of ten until the nearest integer, divided by the same power, gives back the value. Since
+ * both the integer and the power of ten are exactly representable, that division is correctly rounded, so it
+ * reproduces exactly what the parser will read. A value with an integral value skips the search. Any other double is
+ * formatted by {@link Double#toString(double)}, with trailing zeros removed, as {@link JSONObject#numberToString}
+ * always did. The notation is the same either way: plain decimal notation in that range, and computerized scientific
+ * notation outside it.</p>
+ *
+ * <p>Optionally, each double can instead be rounded to a fixed number of decimal places -- eg, 2 places for a
+ * resolution of 0.01 deg. This quantization loses information, but it makes the text shorter and faster to write;
+ * it is meant for values measured or specified at a known resolution. Integer values are never rounded.</p>
+ *
+ * <p>An instance is not thread-safe, since it reuses its buffer. Use one instance per write operation.</p>
+ *
+ * <p>This class was added to the freely provided org.json.* package and relies on classes from that package.</p>
+ *
+ * @author sruffner
+ */
+final class JSONNumberWriter
+{
+   /** The maximum number of decimal places for the fixed-decimal format. */
+   static final int MAX_DECIMALS = 17;
+
+   /**
+    * Construct a number writer.
+    * @param decimals If non-negative, each double is rounded to this many decimal places. If negative, each double is
+    * written in its shortest round-trip form.
+    * @throws IllegalArgumentException if the number of decimal places exceeds {@link #MAX_DECIMALS}.
+    */
+   JSONNumberWriter(int decimals)
+   {
+      if(decimals > MAX_DECIMALS) throw new IllegalArgumentException("Too many decimal places: " + decimals);
+      this.decimals = decimals < 0 ? -1 : decimals;
+   }
+
+   /** @return True if each double is rounded to a fixed number of decimal places. */
+   boolean isFixed() { return(decimals >= 0); }
+
+   /**
+    * Write the JSON text of a number.
+    * @param writer The writer via which the JSON-encoded text is written.
+    * @param n The number.
+    * @throws JSONException if the number is not finite.
+    * @throws IOException if an IO error occurs while writing.
+    */
+   void write(Writer writer, Number n) throws JSONException, IOException
+   {
+      int len = -1;
+      if(n instanceof Double)
+      {
+         double d = n.doubleValue();
+         JSONObject.testValidity(n);
+         len = (decimals >= 0) ? formatFixed(d, decimals, buf) : formatShortest(d, buf);
+      }
+      else if((n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte))
+      {
+         long v = n.longValue();
+         if(v != Long.MIN_VALUE) len = putDecimal(v < 0, Math.abs(v), 0, buf);
+      }
+      if(len < 0) writer.write(JSONObject.numberToString(n));
+      else writer.write(buf, 0, len);
+   }
+
+   /**
+    * Format a finite double in its shortest round-trip form, as described in the class header.
+    * @param d The value.
+    * @param buf The buffer, of length {@link #BUFLEN}. The text is written at the start of the buffer.
+    * @return The length of the text, or -1 if the value is outside the range handled directly. In that case, the
+    * caller must format the value with {@link Double#toString(double)}.
+    */
+   static int formatShortest(double d, char[] buf)
+   {
+      double abs = Math.abs(d);
+      if(abs == 0)
+      {
+         // Double.toString() yields "0.0" or "-0.0"
+         int len = 0;
+         if(Double.doubleToRawLongBits(d) != 0) buf[len++] = '-';
+         buf[len++] = '0';
+         return(len);
+      }
+      if(!(abs >= 1e-3 && abs < 1e7)) return(-1);
+      if(abs == Math.rint(abs)) return(putDecimal(d < 0, (long) abs, 0, buf));
+
+      // find the fewest decimal places k such that an integer m gives back the value as m / 10^k. The computed m is
+      // at most one off the integer nearest to the exact product, and the integers that work form an interval
+      // around it, so checking m first and then its neighbours finds the closest one.
+      for(int k=1; k<POW10.length; k++)
+      {
+         double p = POW10[k];
+         double s = abs * p;
+         if(s >= TWO_53) break;
+         long m = Math.round(s);
+         if(m / p == abs) return(putDecimal(d < 0, m, k, buf));
+         if((m - 1) / p == abs) return(putDecimal(d < 0, m - 1, k, buf));
+         if((m + 1) / p == abs) return(putDecimal(d < 0, m + 1, k, buf));
+      }
+      return(-1);
+   }
+
+   /**
+    * Format a finite double rounded half up (away from zero) to a fixed number of decimal places, without trailing 
+    * zeros, exactly as <code>BigDecimal.setScale(decimals, RoundingMode.HALF_UP)</code> would. An integral value of
+    * 2^53 or more, which is unchanged by rounding, is formatted in its shortest round-trip form instead.
+    * @param d The value.
+    * @param decimals The number of decimal places, in [0..{@link #MAX_DECIMALS}].
+    * @param buf The buffer, of length {@link #BUFLEN}. The text is written at the start of the buffer.
+    * @return The length of the text, or -1 if the value must be formatted with {@link Double#toString(double)}.
+    */
+   static int formatFixed(double d, int decimals, char[] buf)
+   {
+      double abs = Math.abs(d);
+      if(!(abs < TWO_53)) return(formatShortest(d, buf));
+      double s = abs * POW10[decimals];
+      if(!(s < TWO_52))
+      {
+         // from 2^52 on, the product has no fractional bits, so a tie has already been rounded to even. Round the
+         // exact value instead. The text is at most 35 characters long, but it may have more digits than a long.
+         String t = new BigDecimal(d).setScale(decimals, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+         t.getChars(0, t.length(), buf, 0);
+         return(t.length());
+      }
+
+      // the scaled value is rounded half up. If the product was itself rounded up to a tie, the exact product is
+      // below the tie, so round down instead. The product error is only needed in that case.
+      long m = Math.round(s);
+      if(s - m == -0.5 && Math.fma(abs, POW10[decimals], -s) < 0) --m;
+      int k = decimals;
+      while(k > 0 && m % 10 == 0)
+      {
+         m /= 10;
+         --k;
+      }
+      return(putDecimal(d < 0 && m != 0, m, k, buf));
+   }
+
+   /**
+    * Write the decimal text of the number <i>m / 10^k</i> at the start of a buffer.
+    * @param neg True if the number is negative.
+    * @param m The magnitude of the number, scaled by <i>10^k</i>. Must be non-negative.
+    * @param k The number of decimal places.
+    * @param buf The buffer, of length {@link #BUFLEN}. The digits of <i>m</i> are generated at the end of the buffer
+    * first, so the text must not exceed half the buffer length.
+    * @return The length of the text.
+    */
+   private static int putDecimal(boolean neg, long m, int k, char[] buf)
+   {
+      int p = buf.length;
+      do
+      {
+         buf[--p] = (char) ('0' + (m % 10));
+         m /= 10;
+      } while(m > 0);
+      int nDigits = buf.length - p;
+
+      int len = 0;
+      if(neg) buf[len++] = '-';
+      if(nDigits > k)
+      {
+         System.arraycopy(buf, p, buf, len, nDigits - k);
+         len += nDigits - k;
+         p += nDigits - k;
+         if(k > 0) buf[len++] = '.';
+      }
+      else
+      {
+         buf[len++] = '0';
+         buf[len++] = '.';
+         for(int i=nDigits; i<k; i++) buf[len++] = '0';
+      }
+      System.arraycopy(buf, p, buf, len, buf.length - p);
+      return(len + buf.length - p);
+   }
+
+   /** Length of the buffer passed to {@link #formatShortest} and {@link #formatFixed}. */
+   static final int BUFLEN = 48;
+
+   /** 2^52. Every double from here on is an integer. */
+   private static final double TWO_52 = 4503599627370496.0;
+
+   /** 2^53. Every non-negative integer below this is exactly representable as a double. */
+   private static final double TWO_53 = 9007199254740992.0;
+
+   /** Powers of ten that are exactly representable as doubles. */
+   private static final double[] POW10 = {
+         1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+         1e20, 1e21, 1e22
+   };
+
+   /** If non-negative, the number of decimal places to which each double is rounded. */
+   private final int decimals;
+   /** The buffer into which each number is formatted. */
+   private final char[] buf = new char[BUFLEN];
+}
@@ -25,6 +25,7 @@ SOFTWARE.
 */
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -189,7 +190,7 @@ public class JSONObject {
                 return;
             default:
                 x.back();
-                key = x.nextValue().toString();
+                key = x.nextKey();
             }
 
             /*
@@ -364,7 +365,8 @@ public class JSONObject {
 
     /**
      * Produce a string from a double. The string "null" will be returned if
-     * the number is not finite.
+     * the number is not finite. The string is the shortest one that reads
+     * back as the same double; see {@link JSONNumberWriter}.
      * @param  d A double.
      * @return A String.
      */
@@ -372,24 +374,36 @@ public class JSONObject {
         if (Double.isInfinite(d) || Double.isNaN(d)) {
             return "null";
         }
+        char[] buf = new char[JSONNumberWriter.BUFLEN];
+        int len = JSONNumberWriter.formatShortest(d, buf);
+        return len >= 0 ? new String(buf, 0, len) : trimZeros(Double.toString(d));
+    }
 
-// Shave off trailing zeros and decimal point, if possible.
 
-        String s = Double.toString(d);
+    /**
+     * Shave off trailing zeros and decimal point, if possible.
+     * @param s The string form of a number.
+     * @return The string, less any trailing zeros after the decimal point,
+     *  and less the decimal point if no digits follow it.
+     */
+    private static String trimZeros(String s) {
         if (s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
-            while (s.endsWith("0")) {
-                s = s.substring(0, s.length() - 1);
+            int end = s.length();
+            while (s.charAt(end - 1) == '0') {
+                end -= 1;
             }
-            if (s.endsWith(".")) {
-                s = s.substring(0, s.length() - 1);
+            if (s.charAt(end - 1) == '.') {
+                end -= 1;
             }
+            return s.substring(0, end);
         }
         return s;
     }
 
 
     /**
-     * Get the value object associated with a key.
+     * Get the value object associated with a key. Like {@link #opt(String)},
+     * this may store a decoded lazy scalar in the object.
      *
      * @param key   A key string.
      * @return      The object associated with the key.
@@ -671,7 +685,8 @@ public class JSONObject {
     }
 
     /**
-     * Produce a string from a Number.
+     * Produce a string from a Number. A Double is written in the shortest
+     * form that reads back as the same double; see {@link JSONNumberWriter}.
      * @param  n A Number
      * @return A String.
      * @throws JSONException If n is a non-finite number.
@@ -682,29 +697,39 @@ public class JSONObject {
             throw new JSONException("Null pointer");
         }
         testValidity(n);
-
-// Shave off trailing zeros and decimal point, if possible.
-
-        String s = n.toString();
-        if (s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
-            while (s.endsWith("0")) {
-                s = s.substring(0, s.length() - 1);
-            }
-            if (s.endsWith(".")) {
-                s = s.substring(0, s.length() - 1);
+        if (n instanceof Double) {
+            char[] buf = new char[JSONNumberWriter.BUFLEN];
+            int len = JSONNumberWriter.formatShortest(n.doubleValue(), buf);
+            if (len >= 0) {
+                return new String(buf, 0, len);
             }
         }
-        return s;
+        return trimZeros(n.toString());
     }
 
 
     /**
-     * Get an optional value associated with a key.
+     * Get an optional value associated with a key. A string or number
+     * that was parsed by a {@link JSONByteTokener} in lazy-scalar mode is
+     * decoded now and stored in place of the undecoded text.
+     * <p>
+     * Since such a decode modifies the object, this is not a pure read:
+     * threads that share an object parsed in lazy-scalar mode must
+     * synchronize their access to it, even if none of them modifies it.
      * @param key   A key string.
      * @return      An object which is the value, or null if there is no value.
      */
+    @SuppressWarnings("unchecked")
     public Object opt(String key) {
-        return key == null ? null : this.map.get(key);
+        if (key == null) {
+            return null;
+        }
+        Object o = this.map.get(key);
+        if (o instanceof JSONLazyScalar) {
+            o = ((JSONLazyScalar)o).decode();
+            this.map.put(key, o);
+        }
+        return o;
     }
 
 
@@ -1070,6 +1095,25 @@ public class JSONObject {
     }
 
 
+    /**
+     * Put a key/value pair parsed by a strict-mode JSONByteTokener, with a
+     * single map operation. Unlike putOnce, the key and value must not be
+     * null. The member is stored even if the key is a duplicate, but the
+     * parse fails anyway.
+     * @param key The key.
+     * @param value The corresponding value.
+     * @throws JSONException if the key is a duplicate or the value is a
+     *  non-finite number.
+     */
+    @SuppressWarnings("unchecked")
+    void putParsed(String key, Object value) throws JSONException {
+        testValidity(value);
+        if (this.map.put(key, value) != null) {
+            throw new JSONException("Duplicate key \"" + key + "\"");
+        }
+    }
+
+
     /**
      * Put a key/value pair in the JSONObject, but only if the
      * key and the value are both non-null.
@@ -1097,62 +1141,81 @@ public class JSONObject {
      * @return  A String correctly formatted for insertion in a JSON text.
      */
     public static String quote(String string) {
+        StringWriter sw = new StringWriter(string == null ? 2 : string.length() + 4);
+        try {
+            return quote(string, sw).toString();
+        } catch (IOException ignored) {
+            // a StringWriter never fails
+            return "";
+        }
+    }
+
+    /**
+     * Write a string in double quotes with backslash sequences in all the
+     * right places, as in {@link #quote(String)}, directly to a writer. Runs
+     * of characters that need no escaping are written as is, so no string is
+     * created.
+     * @param string A String
+     * @param w The writer.
+     * @return The writer.
+     * @throws IOException If the writer fails.
+     */
+    public static Writer quote(String string, Writer w) throws IOException {
         if (string == null || string.isEmpty()) {
-            return "\"\"";
+            w.write("\"\"");
+            return w;
         }
 
-        char         b;
-        char         c = 0;
-        int          i;
-        int          len = string.length();
-        StringBuilder sb = new StringBuilder(len + 4);
-        String       t;
+        char b;
+        char c = 0;
+        int len = string.length();
+        int start = 0;
 
-        sb.append('"');
-        for (i = 0; i < len; i += 1) {
+        w.write('"');
+        for (int i = 0; i < len; i += 1) {
             b = c;
             c = string.charAt(i);
-            switch (c) {
-            case '\\':
-            case '"':
-                sb.append('\\');
-                sb.append(c);
-                break;
-            case '/':
-                if (b == '<') {
-                    sb.append('\\');
-                }
-                sb.append(c);
-                break;
-            case '\b':
-                sb.append("\\b");
-                break;
-            case '\t':
-                sb.append("\\t");
-                break;
-            case '\n':
-                sb.append("\\n");
-                break;
-            case '\f':
-                sb.append("\\f");
-                break;
-            case '\r':
-                sb.append("\\r");
-                break;
-            default:
-                if (c < ' ' || (c >= '\u0080' && c < '\u00a0') ||
-                               (c >= '\u2000' && c < '℀')) {
-                    t = "000" + Integer.toHexString(c);
-                    sb.append("\\u").append(t.substring(t.length() - 4));
-                } else {
-                    sb.append(c);
+            if (c == '\\' || c == '"' || (c == '/' && b == '<')) {
+                w.write(string, start, i - start);
+                w.write('\\');
+                start = i;
+            } else if (c < ' ' || (c >= '\u0080' && c < '\u00a0') ||
+                    (c >= '\u2000' && c < '\u2100')) {
+                w.write(string, start, i - start);
+                switch (c) {
+                case '\b':
+                    w.write("\\b");
+                    break;
+                case '\t':
+                    w.write("\\t");
+                    break;
+                case '\n':
+                    w.write("\\n");
+                    break;
+                case '\f':
+                    w.write("\\f");
+                    break;
+                case '\r':
+                    w.write("\\r");
+                    break;
+                default:
+                    w.write("\\u");
+                    w.write(HEX[(c >> 12) & 0xF]);
+                    w.write(HEX[(c >> 8) & 0xF]);
+                    w.write(HEX[(c >> 4) & 0xF]);
+                    w.write(HEX[c & 0xF]);
                 }
+                start = i + 1;
             }
         }
-        sb.append('"');
-        return sb.toString();
+        w.write(string, start, len - start);
+        w.write('"');
+        return w;
     }
 
+    /** Hexadecimal digits for the Unicode escapes written by {@link #quote(String, Writer)}. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     /**
      * Remove a name and its value, if present.
      * @param key The name to be removed.
@@ -1160,7 +1223,8 @@ public class JSONObject {
      * or null if there was no value.
      */
     public Object remove(String key) {
-        return this.map.remove(key);
+        Object o = this.map.remove(key);
+        return o instanceof JSONLazyScalar ? ((JSONLazyScalar)o).decode() : o;
     }
 
     /**
@@ -1540,25 +1604,39 @@ public class JSONObject {
       * @throws JSONException if an IO error occurs or an invalid JSON format/value is detected.
       */
      public Writer write(Writer writer) throws JSONException {
+        return write(writer, new JSONNumberWriter(-1));
+     }
+
+     /**
+      * Write the contents of the JSONObject as JSON text to a writer, as in
+      * {@link #write(Writer)}, formatting numbers with the number writer
+      * specified.
+      * @param writer The writer.
+      * @param numbers The number writer.
+      * @return The writer.
+      * @throws JSONException if an IO error occurs or an invalid JSON format/value is detected.
+      */
+     Writer write(Writer writer, JSONNumberWriter numbers) throws JSONException {
         try {
             boolean  b = false;
-            Iterator keys = keys();
             writer.write('{');
 
-            while (keys.hasNext()) {
+            for (Object o : this.map.entrySet()) {
                 if (b) {
                     writer.write(',');
                 }
-                Object k = keys.next();
-                writer.write(quote(k.toString()));
+                Map.Entry e = (Map.Entry) o;
+                quote(e.getKey().toString(), writer);
                 writer.write(':');
-                Object v = this.map.get(k);
+                Object v = e.getValue();
                 if (v instanceof JSONObject) {
-                    ((JSONObject)v).write(writer);
+                    ((JSONObject)v).write(writer, numbers);
                 } else if (v instanceof JSONArray) {
-                    ((JSONArray)v).write(writer);
+                    ((JSONArray)v).write(writer, numbers);
+                } else if (v instanceof JSONSlice) {
+                    ((JSONSlice)v).write(writer, numbers);
                 } else {
-                    writer.write(valueToString(v));
+                    writeValue(writer, v, numbers);
                 }
                 b = true;
             }
@@ -1571,7 +1649,10 @@ public class JSONObject {
 
    /**
     * Write the contents of this JSON object as JSON text via the specified writer. Whitespace and linefeeds are
-    * added for legibility.
+    * added for legibility. If none of the member values is an object or array, all members are written on one line.
+    * <p>Keys and string values are escaped directly into the writer, and indentation is written from a shared buffer
+    * of spaces, so the only objects created are for number values. The members are written in a single pass over the
+    * map entries; the check for the one-line layout only scans the values up to the first object or array.</p>
     * <p>Warning: This method assumes that the data structure is acyclical.</p>
     * <p>NOTE: Method added by sruffner to support "pretty-printing" via a writer.</p>
     * @param writer The writer via which the JSON-encoded text is written.
@@ -1582,68 +1663,109 @@ public class JSONObject {
     */
    Writer write(Writer writer, int indentBy, int indent) throws JSONException 
    {
-      char[] buf = new char[indent];
-      Arrays.fill(buf, ' ');
-      String strCurrIndent = new String(buf);
-      
-      int nextIndent = indent + indentBy;
-      
+      return(write(writer, indentBy, indent, new JSONNumberWriter(-1)));
+   }
+   
+   /**
+    * Write the contents of this JSON object as JSON text via the specified writer, with whitespace and linefeeds added
+    * for legibility as in {@link #write(Writer, int, int)}, formatting numbers with the number writer specified.
+    * @param writer The writer via which the JSON-encoded text is written.
+    * @param indentBy The number of spaces to add to each level of indentation.
+    * @param indent The number of spaces in the current indentation level.
+    * @param numbers The number writer.
+    * @return The writer.
+    * @throws JSONException if this JSON object is invalid. Also wraps any IO exception that occurs while writing.
+    */
+   Writer write(Writer writer, int indentBy, int indent, JSONNumberWriter numbers) throws JSONException 
+   {
       try 
       {
          // special case: empty object.
-         if(length() == 0)
+         newline(writer, indent);
+         if(map.isEmpty())
          {
-            writer.write("\n" + strCurrIndent + "{}");
+            writer.write("{}");
             return(writer);
          }
          
-         // we write out the array differently if it contains no objects or arrays as elements
+         // we write out the object differently if it contains no objects or arrays as values
          boolean hasContainers = false;
-         Iterator keys = keys();
-         while(keys.hasNext() && !hasContainers)
+         for(Iterator it = map.values().iterator(); it.hasNext() && !hasContainers; )
          {
-            Object v = this.map.get(keys.next());
-            hasContainers = (v instanceof JSONObject) || (v instanceof JSONArray);
+            Object v = it.next();
+            hasContainers = (v instanceof JSONObject) || (v instanceof JSONArray) || 
+                  (v instanceof JSONSlice && ((JSONSlice) v).isContainer());
          }
 
-         keys = keys();
-         if(!hasContainers)
-         {
-            writer.write("\n" + strCurrIndent + "{");
-            while(keys.hasNext())
-            {
-               Object k = keys.next();
-               writer.write(quote(k.toString()));
-               writer.write(":");
-               Object v = this.map.get(k);
-               writer.write(valueToString(v));
-               if(keys.hasNext()) writer.write(", ");
-            }
-            writer.write("}");
-         }
-         else
+         int nextIndent = indent + indentBy;
+         boolean first = true;
+         writer.write('{');
+         for(Object o : map.entrySet())
          {
-            writer.write("\n" + strCurrIndent+ "{\n");
-            while(keys.hasNext()) 
+            if(hasContainers)
             {
-               Object k = keys.next();
-               writer.write(strCurrIndent + quote(k.toString()));
-               writer.write(':');
-               Object v = this.map.get(k);
-               if(v instanceof JSONObject)
-                  ((JSONObject)v).write(writer, indentBy, nextIndent);
-               else if(v instanceof JSONArray)
-                  ((JSONArray)v).write(writer, indentBy, nextIndent);
-               else
-                  writer.write(valueToString(v));
-               
-               if(keys.hasNext()) writer.write(",\n");
+               if(!first) writer.write(',');
+               newline(writer, indent);
             }
-            writer.write("\n" + strCurrIndent + "}");
+            else if(!first) writer.write(", ");
+            first = false;
+
+            Map.Entry e = (Map.Entry) o;
+            quote(e.getKey().toString(), writer);
+            writer.write(':');
+            Object v = e.getValue();
+            if(v instanceof JSONObject)
+               ((JSONObject)v).write(writer, indentBy, nextIndent, numbers);
+            else if(v instanceof JSONArray)
+               ((JSONArray)v).write(writer, indentBy, nextIndent, numbers);
+            else if(v instanceof JSONSlice && ((JSONSlice) v).isContainer())
+               ((JSONSlice)v).write(writer, indentBy, nextIndent, numbers);
+            else
+               writeValue(writer, v, numbers);
          }
+         if(hasContainers) newline(writer, indent);
+         writer.write('}');
          
          return(writer);
       } 
       catch(IOException ioe) { throw new JSONException(ioe); }
    }
-}
\ No newline at end of file
+   
+   /**
+    * Write the JSON text of a value that is not a JSON object or array. A string is escaped directly into the writer,
+    * and a number is formatted by the number writer, as are the literals for a boolean; any other value is converted by
+    * {@link #valueToString(Object)}. A string or number that has not been decoded yet is written verbatim, unless the
+    * number writer rounds to a fixed number of decimal places. So is a {@link JSONSlice}, which the container writers
+    * otherwise write as if it had been parsed.
+    * @param writer The writer via which the JSON-encoded text is written.
+    * @param value The value.
+    * @param numbers The number writer.
+    * @throws JSONException if the value is an invalid number.
+    * @throws IOException if an IO error occurs while writing.
+    */
+   static void writeValue(Writer writer, Object value, JSONNumberWriter numbers) throws JSONException, IOException
+   {
+      if(value instanceof JSONLazyScalar && numbers.isFixed()) value = ((JSONLazyScalar) value).decode();
+      
+      if(value instanceof String) quote((String) value, writer);
+      else if(value instanceof Number) numbers.write(writer, (Number) value);
+      else if(value instanceof Boolean) writer.write(((Boolean) value) ? "true" : "false");
+      else writer.write(valueToString(value));
+   }
+   
+   /**
+    * Write a linefeed followed by the specified indentation, taking the spaces from a shared buffer.
+    * @param writer The writer via which the JSON-encoded text is written.
+    * @param indent The number of spaces.
+    * @throws IOException if an IO error occurs while writing.
+    */
+   static void newline(Writer writer, int indent) throws IOException
+   {
+      writer.write('\n');
+      for(int n = indent; n > 0; n -= SPACES.length) writer.write(SPACES, 0, Math.min(n, SPACES.length));
+   }
+   
+   /** Spaces for indentation. See {@link #newline}. */
+   private static final char[] SPACES = new char[64];
+   static { Arrays.fill(SPACES, ' '); }
+}
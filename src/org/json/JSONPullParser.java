@@ -0,0 +1,460 @@
+package org.json;
+
+import java.util.Arrays;
+
+/**
+ * A pull parser that reads JSON content from a {@link JSONTokener} as a stream of parse events, without building the
+ * {@link JSONObject} / {@link JSONArray} tree.
+ *
+ * <p>Each call to {@link #next} consumes the next token and returns the corresponding {@link Event}. For a key or a
+ * scalar value, {@link #getString}, {@link #getValue} and the numeric accessors return the token's content. The caller
+ * may skip any value it does not need with {@link #skipValue}, which finds the end of the value -- an entire object or
+ * array, if applicable -- without constructing anything. Use {@link #hasNext} to loop over the elements of an array
+ * or the members of an object. Memory use is independent of the size of the content, apart from the space needed for
+ * the largest single token and a few bytes per level of nesting.</p>
+ *
+ * <p>For example, to list the name of every element in an array of objects that is the value of key "sets":</p>
+ * <pre>
+ *    JSONPullParser p = new JSONPullParser(new JSONByteTokener(JSONUtilities.loadJSONFile(f)));
+ *    p.next();                                                // START_OBJECT
+ *    while(p.hasNext())
+ *    {
+ *       p.next();                                             // KEY
+ *       if(!p.getString().equals("sets")) { p.skipValue(); continue; }
+ *       p.next();                                             // START_ARRAY
+ *       while(p.hasNext())
+ *       {
+ *          p.next();                                          // START_OBJECT
+ *          while(p.hasNext())
+ *          {
+ *             p.next();                                       // KEY
+ *             if(p.getString().equals("name")) { p.next(); System.out.println(p.getString()); }
+ *             else p.skipValue();
+ *          }
+ *          p.next();                                          // END_OBJECT
+ *       }
+ *       p.next();                                             // END_ARRAY
+ *    }
+ * </pre>
+ *
+ * <p>The parser accepts the same lenient syntax as {@link JSONObject} and {@link JSONArray} for keys and scalar values
+ * -- single-quoted strings, unquoted text, '=' or '=&gt;' after a key, ';' as a separator, an omitted array element
+ * (read as null), and a trailing separator before a closing bracket -- and parses unquoted scalars exactly as {@link
+ * JSONTokener#nextValue} does. It does not accept the parenthesized array form. With a {@link JSONByteTokener}, 
+ * numbers in the usual form are parsed directly into primitives, without boxing.</p>
+ *
+ * <p>This class was added to the freely provided org.json.* package and relies on classes from that package.</p>
+ *
+ * @author sruffner
+ */
+public class JSONPullParser
+{
+   /** The parse events. */
+   public enum Event
+   {
+      /** Start of an object: '{'. */
+      START_OBJECT,
+      /** End of an object: '}'. */
+      END_OBJECT,
+      /** Start of an array: '['. */
+      START_ARRAY,
+      /** End of an array: ']'. */
+      END_ARRAY,
+      /** The key of an object member. The member value follows. */
+      KEY,
+      /** A string value, quoted or unquoted. */
+      VALUE_STRING,
+      /** A numeric value. */
+      VALUE_NUMBER,
+      /** The value <i>true</i>. */
+      VALUE_TRUE,
+      /** The value <i>false</i>. */
+      VALUE_FALSE,
+      /** The value <i>null</i>. */
+      VALUE_NULL,
+      /** The end of the top-level value. Any content after it is ignored. */
+      END_DOCUMENT
+   }
+
+   /**
+    * Construct a pull parser that reads JSON content from the specified tokener. The content must consist of a single
+    * top-level value, typically an object.
+    * @param x The tokener.
+    */
+   public JSONPullParser(JSONTokener x)
+   {
+      this.x = x;
+      this.bx = (x instanceof JSONByteTokener) ? (JSONByteTokener) x : null;
+   }
+
+   /**
+    * Consume the next token.
+    * @return The corresponding parse event. Once the top-level value is complete, this is always {@link
+    * Event#END_DOCUMENT}.
+    * @throws JSONException if a syntax error is encountered.
+    */
+   public Event next() throws JSONException
+   {
+      switch(state)
+      {
+      case ST_TOP:
+         state = ST_DONE;
+         return(readValue(false));
+      case ST_DONE:
+         return(setEvent(Event.END_DOCUMENT));
+      case ST_ARRAY_FIRST:
+      case ST_ARRAY_NEXT:
+      case ST_OBJECT_FIRST:
+      case ST_OBJECT_NEXT:
+         if(!hasNext()) return(endContainer());
+         if(state == ST_ARRAY_FIRST)
+         {
+            state = ST_ARRAY_NEXT;
+            return(readValue(true));
+         }
+         setEvent(Event.KEY);
+         readKey();
+         state = ST_OBJECT_COLON;
+         return(event);
+      default:  // ST_OBJECT_COLON
+         readColon();
+         state = ST_OBJECT_NEXT;
+         return(readValue(false));
+      }
+   }
+
+   /**
+    * Is there another element in the current array, or another member in the current object? If so, the next call to
+    * {@link #next} starts that element or member; otherwise, it returns the event that ends the array or object. This
+    * consumes any separator that precedes the next element or member.
+    * @return True if the current array or object has another element or member. False if the parser is not inside an
+    * array or object, or if a key was just read (the member value must be read or skipped first).
+    * @throws JSONException if a syntax error is encountered.
+    */
+   public boolean hasNext() throws JSONException
+   {
+      boolean isArray;
+      switch(state)
+      {
+      case ST_ARRAY_FIRST:
+      case ST_OBJECT_FIRST:
+         isArray = (state == ST_ARRAY_FIRST);
+         break;
+      case ST_ARRAY_NEXT:
+      case ST_OBJECT_NEXT:
+         isArray = (state == ST_ARRAY_NEXT);
+         char sep = x.nextClean();
+         if(sep == ',' || sep == ';') state = isArray ? ST_ARRAY_FIRST : ST_OBJECT_FIRST;
+         else if(sep == (isArray ? ']' : '}'))
+         {
+            x.back();
+            return(false);
+         }
+         else if(isArray && sep == ')') throw x.syntaxError("Expected a ']'");
+         else throw x.syntaxError(isArray ? "Expected a ',' or ']'" : "Expected a ',' or '}'");
+         break;
+      default:
+         return(false);
+      }
+
+      char c = x.nextClean();
+      x.back();
+      if(c == 0) throw x.syntaxError(isArray ? "Expected a ',' or ']'" : "A JSONObject text must end with '}'");
+      return(c != (isArray ? ']' : '}'));
+   }
+
+   /**
+    * Skip the next value without constructing it. If the current event is {@link Event#KEY}, the member value is
+    * skipped. Inside an array, the next element is skipped; inside an object (when a key has not just been read), the
+    * next member, key and value, is skipped. If the current array or object has no more elements, nothing is skipped.
+    * An object or array is skipped in its entirety; its content is checked only to the extent needed to find its end.
+    * In all cases, the next call to {@link #next} returns the event following the skipped content.
+    * @throws JSONException if a syntax error is encountered.
+    */
+   public void skipValue() throws JSONException
+   {
+      switch(state)
+      {
+      case ST_TOP:
+         x.skipValue();
+         state = ST_DONE;
+         break;
+      case ST_DONE:
+         break;
+      case ST_OBJECT_COLON:
+         readColon();
+         x.skipValue();
+         state = ST_OBJECT_NEXT;
+         break;
+      default:
+         if(!hasNext()) break;
+         if(state == ST_OBJECT_FIRST)
+         {
+            readKey();
+            readColon();
+            x.skipValue();
+            state = ST_OBJECT_NEXT;
+         }
+         else
+         {
+            if(x.nextClean() != ',') 
+            {
+               x.back();
+               x.skipValue();
+            }
+            else x.back();
+            state = ST_ARRAY_NEXT;
+         }
+         break;
+      }
+   }
+
+   /** @return The most recent parse event, or null if {@link #next} has not yet been called. */
+   public Event getEvent() { return(event); }
+
+   /**
+    * Get the number of objects and arrays that are currently open. It is 0 before the top-level value, 1 just after a
+    * top-level {@link Event#START_OBJECT}, and 0 again after the matching {@link Event#END_OBJECT}.
+    * @return The current nesting depth.
+    */
+   public int getDepth() { return(depth); }
+
+   /**
+    * Get the text of the current token.
+    * @return For {@link Event#KEY} and {@link Event#VALUE_STRING}, the key or string. For any other scalar value, its
+    * string representation. Otherwise, null.
+    */
+   public String getString()
+   {
+      if(text != null) return(text);
+      if(event == Event.VALUE_NUMBER || event == Event.VALUE_TRUE || event == Event.VALUE_FALSE ||
+            event == Event.VALUE_NULL)
+         text = getValue().toString();
+      return(text);
+   }
+
+   /**
+    * Get the value of the current token, converted exactly as {@link JSONTokener#nextValue} would convert it.
+    * @return For a scalar value: a <code>String</code>, <code>Integer</code>, <code>Long</code>, <code>Double</code>,
+    * <code>Boolean</code> or {@link JSONObject#NULL}. For {@link Event#KEY}, the key. Otherwise, null.
+    */
+   public Object getValue()
+   {
+      if(value == null && event == Event.VALUE_NUMBER)
+      {
+         if(numIsDouble) value = numDouble;
+         else if(numLong == (int) numLong) value = (int) numLong;
+         else value = numLong;
+      }
+      return(value);
+   }
+
+   /**
+    * Get the value of the current numeric token as an <code>int</code>.
+    * @return The value, truncated if it is not an integer.
+    * @throws JSONException if the current event is not {@link Event#VALUE_NUMBER}.
+    */
+   public int getInt() throws JSONException
+   {
+      checkNumber();
+      return(numIsDouble ? (int) numDouble : (int) numLong);
+   }
+
+   /**
+    * Get the value of the current numeric token as a <code>long</code>.
+    * @return The value, truncated if it is not an integer.
+    * @throws JSONException if the current event is not {@link Event#VALUE_NUMBER}.
+    */
+   public long getLong() throws JSONException
+   {
+      checkNumber();
+      return(numIsDouble ? (long) numDouble : numLong);
+   }
+
+   /**
+    * Get the value of the current numeric token as a <code>double</code>.
+    * @return The value.
+    * @throws JSONException if the current event is not {@link Event#VALUE_NUMBER}.
+    */
+   public double getDouble() throws JSONException
+   {
+      checkNumber();
+      return(numIsDouble ? numDouble : numLong);
+   }
+
+   /**
+    * Is the current numeric token a decimal number rather than an integer? A decimal number is one that {@link 
+    * #getValue} would return as a <code>Double</code>.
+    * @return True if the current token is a decimal number.
+    * @throws JSONException if the current event is not {@link Event#VALUE_NUMBER}.
+    */
+   public boolean isDouble() throws JSONException
+   {
+      checkNumber();
+      return(numIsDouble);
+   }
+
+   private void checkNumber() throws JSONException
+   {
+      if(event != Event.VALUE_NUMBER) throw new JSONException("Current token is not a number: " + event);
+   }
+
+   /**
+    * Read the value that starts at the current position. If it is an object or array, the parser enters it.
+    * @param inArray True if the value is an array element. As in {@link JSONArray#JSONArray(JSONTokener)}, an omitted
+    * element -- a ',' where an element is expected -- is read as a null value.
+    * @return The parse event.
+    * @throws JSONException if a syntax error is encountered.
+    */
+   private Event readValue(boolean inArray) throws JSONException
+   {
+      char c = x.nextClean();
+      switch(c)
+      {
+      case ',':
+         if(!inArray) break;
+         x.back();
+         return(setEvent(Event.VALUE_NULL));
+      case '{':
+         push(ST_OBJECT_FIRST);
+         return(setEvent(Event.START_OBJECT));
+      case '[':
+         push(ST_ARRAY_FIRST);
+         return(setEvent(Event.START_ARRAY));
+      case '(':
+         throw x.syntaxError("Parenthesized arrays are not supported");
+      case '"':
+      case '\'':
+         setEvent(Event.VALUE_STRING);
+         text = x.nextString(c);
+         value = text;
+         return(event);
+      }
+
+      x.back();
+      if(bx != null && bx.nextNumber())
+      {
+         setEvent(Event.VALUE_NUMBER);
+         numIsDouble = bx.isNumberDouble();
+         numLong = bx.numberAsLong();
+         numDouble = bx.numberAsDouble();
+         return(event);
+      }
+
+      Object v = x.nextValue();
+      if(v instanceof JSONLazyScalar) v = ((JSONLazyScalar) v).decode();
+      if(v instanceof Number)
+      {
+         setEvent(Event.VALUE_NUMBER);
+         numIsDouble = !(v instanceof Integer || v instanceof Long);
+         numLong = ((Number) v).longValue();
+         numDouble = ((Number) v).doubleValue();
+      }
+      else if(v instanceof Boolean) setEvent(((Boolean) v) ? Event.VALUE_TRUE : Event.VALUE_FALSE);
+      else if(v == JSONObject.NULL) setEvent(Event.VALUE_NULL);
+      else
+      {
+         setEvent(Event.VALUE_STRING);
+         text = v.toString();
+      }
+      value = v;
+      return(event);
+   }
+
+   /**
+    * Read an object key. As in {@link JSONObject#JSONObject(JSONTokener)}, an unquoted key is converted like any other
+    * unquoted value and then to a string.
+    * @throws JSONException if a syntax error is encountered.
+    */
+   private void readKey() throws JSONException
+   {
+      char c = x.nextClean();
+      if(c == '"' || c == '\'') text = x.nextString(c);
+      else
+      {
+         x.back();
+         text = x.nextKey();
+      }
+      value = text;
+   }
+
+   /**
+    * Consume the separator between an object key and its value: ':', '=' or '=&gt;'.
+    * @throws JSONException if the separator is missing.
+    */
+   private void readColon() throws JSONException
+   {
+      char c = x.nextClean();
+      if(c == '=')
+      {
+         if(x.next() != '>') x.back();
+      }
+      else if(c != ':') throw x.syntaxError("Expected a ':' after a key");
+   }
+
+   /**
+    * Consume the bracket that closes the current array or object, and return to the enclosing context.
+    * @return The parse event.
+    */
+   private Event endContainer() throws JSONException
+   {
+      boolean isArray = (state == ST_ARRAY_FIRST || state == ST_ARRAY_NEXT);
+      x.nextClean();
+      state = stack[--depth];
+      return(setEvent(isArray ? Event.END_ARRAY : Event.END_OBJECT));
+   }
+
+   private void push(int newState)
+   {
+      if(depth == stack.length) stack = Arrays.copyOf(stack, 2*depth);
+      stack[depth++] = state;
+      state = newState;
+   }
+
+   private Event setEvent(Event e)
+   {
+      event = e;
+      text = null;
+      value = null;
+      return(e);
+   }
+
+   /** Parser state: Expecting the top-level value. */
+   private static final int ST_TOP = 0;
+   /** Parser state: The top-level value is complete. */
+   private static final int ST_DONE = 1;
+   /** Parser state: In an array, after '[' or ',' -- expecting an element or ']'. */
+   private static final int ST_ARRAY_FIRST = 2;
+   /** Parser state: In an array, after an element -- expecting ',' or ']'. */
+   private static final int ST_ARRAY_NEXT = 3;
+   /** Parser state: In an object, after '{' or ',' -- expecting a key or '}'. */
+   private static final int ST_OBJECT_FIRST = 4;
+   /** Parser state: In an object, after a key -- expecting ':' and the member value. */
+   private static final int ST_OBJECT_COLON = 5;
+   /** Parser state: In an object, after a member value -- expecting ',' or '}'. */
+   private static final int ST_OBJECT_NEXT = 6;
+
+   /** The source of JSON tokens. */
+   private final JSONTokener x;
+   /** The source of JSON tokens, if it is a byte tokener; else null. */
+   private final JSONByteTokener bx;
+   /** The current parser state. */
+   private int state = ST_TOP;
+   /** The parser states of the enclosing contexts, innermost last. */
+   private int[] stack = new int[16];
+   /** The current nesting depth = number of entries in use in {@link #stack}. */
+   private int depth = 0;
+
+   /** The most recent parse event. */
+   private Event event = null;
+   /** The text of the current key or string value; lazily prepared for other scalar values. */
+   private String text = null;
+   /** The value of the current scalar token; lazily boxed for a number. */
+   private Object value = null;
+   /** For a numeric token: true if it is a decimal rather than an integer. */
+   private boolean numIsDouble;
+   /** For a numeric token: its integer value. */
+   private long numLong;
+   /** For a numeric token: its value as a double. */
+   private double numDouble;
+}
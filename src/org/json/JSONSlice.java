@@ -0,0 +1,334 @@
+package org.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An unparsed JSON value: a slice of a byte array holding the ASCII or UTF-8 encoded JSON text of a single value.
+ *
+ * <p>A slice stands in for a value that has not been parsed yet, so that a large document can be opened without
+ * constructing -- or checking -- the parts of it that are never used. It may be stored in a {@link JSONObject} or
+ * {@link JSONArray} like any other value. The slice is located by {@link JSONTokener#skipValue}, which only checks
+ * that brackets are balanced and strings are terminated; a syntax error within the slice is not detected until the
+ * slice is parsed.</p>
+ *
+ * <p>Since a slice implements {@link JSONString}, it is written back verbatim when the containing object or array is
+ * converted to a string. When the containing object or array is written to a <code>Writer</code>, however, a slice
+ * holding an object or array is parsed and written like any other object or array, so that the text written has the
+ * same layout -- compact or indented -- as it would if the slice had been parsed beforehand. The parsed value is not
+ * retained. Only a slice that fails to parse is written verbatim.</p>
+ *
+ * <p>A syntax error found when a slice is parsed or scanned is reported at its position in the entire byte array, not
+ * in the slice. When the array holds the content of a file, as it does when a document is opened lazily, the error
+ * message thus locates the error in the file -- exactly as if the file had been parsed in full.</p>
+ *
+ * <p>The byte array is shared, not copied, and must not be modified while any slice of it is in use.</p>
+ *
+ * <p>This class was added to the freely provided org.json.* package and relies on classes from that package.</p>
+ *
+ * @author sruffner
+ */
+public final class JSONSlice implements JSONString
+{
+   /**
+    * Construct a slice holding the JSON text of a single value.
+    * @param bytes The byte array.
+    * @param offset Index of the first byte of the value's JSON text.
+    * @param length Number of bytes of JSON text.
+    */
+   public JSONSlice(byte[] bytes, int offset, int length)
+   {
+      this(bytes, offset, length, 0);
+   }
+
+   /**
+    * Construct a slice holding the JSON text of a single value, which is parsed with the specified tokener options.
+    * @param bytes The byte array.
+    * @param offset Index of the first byte of the value's JSON text.
+    * @param length Number of bytes of JSON text.
+    * @param options Bitwise OR of zero or more {@link JSONByteTokener} option flags: {@link 
+    * JSONByteTokener#LAZY_SCALARS}, {@link JSONByteTokener#STRICT}.
+    */
+   public JSONSlice(byte[] bytes, int offset, int length, int options)
+   {
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+      this.options = options;
+   }
+
+   /** @return The number of bytes of JSON text in this slice. */
+   public int length() { return(length); }
+
+   /** @return The JSON text in this slice, exactly as it appears in the underlying byte array. */
+   @Override public String toJSONString()
+   {
+      return(new String(bytes, offset, length, StandardCharsets.UTF_8));
+   }
+
+   @Override public String toString() { return(toJSONString()); }
+
+   /**
+    * Parse the JSON value in this slice.
+    * @return The value: a <code>JSONObject</code>, <code>JSONArray</code>, <code>String</code>, <code>Boolean</code>,
+    * <code>Number</code>, or <code>JSONObject.NULL</code>.
+    * @throws JSONException if the slice does not contain exactly one valid JSON value.
+    */
+   public Object parse() throws JSONException
+   {
+      JSONByteTokener x = new JSONByteTokener(bytes, offset, length, options, 0);
+      Object value = x.nextValue();
+      if(x.nextClean() != 0) throw x.syntaxError("Unexpected text after value");
+      return((value instanceof JSONLazyScalar) ? ((JSONLazyScalar) value).decode() : value);
+   }
+
+   /** @return True if this slice holds the JSON text of an object or array. */
+   public boolean isContainer()
+   {
+      return(length > 0 && (bytes[offset] == '{' || bytes[offset] == '['));
+   }
+
+   /**
+    * Write the JSON value in this slice in compact form, as if it had been parsed beforehand -- see class header.
+    * @param writer The writer via which the JSON-encoded text is written.
+    * @param numbers The number writer.
+    * @throws JSONException if the value contains an invalid number. Also wraps any IO exception that occurs.
+    */
+   void write(Writer writer, JSONNumberWriter numbers) throws JSONException
+   {
+      Object value = parseForWrite();
+      if(value instanceof JSONObject) ((JSONObject) value).write(writer, numbers);
+      else if(value instanceof JSONArray) ((JSONArray) value).write(writer, numbers);
+      else
+      {
+         try { JSONObject.writeValue(writer, value, numbers); }
+         catch(IOException ioe) { throw new JSONException(ioe); }
+      }
+   }
+
+   /**
+    * Write the JSON value in this slice with whitespace and linefeeds added for legibility, as if it had been parsed 
+    * beforehand -- see class header. As with {@link JSONObject#write(Writer, int, int)}, the text begins with a 
+    * linefeed and the current indentation.
+    * @param writer The writer via which the JSON-encoded text is written.
+    * @param indentBy The number of spaces to add to each level of indentation.
+    * @param indent The number of spaces in the current indentation level.
+    * @param numbers The number writer.
+    * @throws JSONException if the value contains an invalid number. Also wraps any IO exception that occurs.
+    */
+   void write(Writer writer, int indentBy, int indent, JSONNumberWriter numbers) throws JSONException
+   {
+      Object value = parseForWrite();
+      if(value instanceof JSONObject) ((JSONObject) value).write(writer, indentBy, indent, numbers);
+      else if(value instanceof JSONArray) ((JSONArray) value).write(writer, indentBy, indent, numbers);
+      else
+      {
+         try 
+         { 
+            JSONObject.newline(writer, indent);
+            JSONObject.writeValue(writer, value, numbers); 
+         }
+         catch(IOException ioe) { throw new JSONException(ioe); }
+      }
+   }
+
+   /**
+    * Helper method for the <code>write()</code> methods. Parse the JSON value in this slice -- in strict mode first, 
+    * since that is faster, and then in the slice's own mode.
+    * @return The value parsed or, if the slice fails to parse, the slice itself.
+    */
+   private Object parseForWrite()
+   {
+      JSONByteTokener x = new JSONByteTokener(bytes, offset, length, options | JSONByteTokener.STRICT, 0);
+      try
+      {
+         Object value = x.nextValue();
+         if(x.nextClean() == 0) return(value);
+      }
+      catch(JSONException jse) { /* fall through */ }
+      try { return(parse()); }
+      catch(JSONException jse) { return(this); }
+   }
+
+   /**
+    * Parse the JSON object in this slice, except that each element of the array member named is left unparsed as a
+    * slice of the same byte array.
+    * @param lazyKey The name of the array member whose elements are not parsed.
+    * @return The JSON object.
+    * @throws JSONException if a syntax error is encountered. Only the JSON text outside the elements of the named
+    * array member is checked.
+    */
+   public JSONObject parseObject(String lazyKey) throws JSONException
+   {
+      return(parseObject(bytes, offset, length, lazyKey, options));
+   }
+
+   /**
+    * Parse a JSON object in the specified portion of a byte array, except that each element of the array member named
+    * is left unparsed as a {@link JSONSlice} of the array. As with {@link JSONObject#JSONObject(JSONTokener)}, any text
+    * after the object is ignored.
+    * @param bytes The byte array.
+    * @param offset Index of the first byte of the JSON text.
+    * @param length Number of bytes of JSON text.
+    * @param lazyKey The name of the array member whose elements are not parsed.
+    * @return The JSON object.
+    * @throws JSONException if a syntax error is encountered. Only the JSON text outside the elements of the named
+    * array member is checked.
+    */
+   public static JSONObject parseObject(byte[] bytes, int offset, int length, String lazyKey) throws JSONException
+   {
+      return(parseObject(bytes, offset, length, lazyKey, 0));
+   }
+
+   /**
+    * Parse a JSON object in the specified portion of a byte array, except that each element of the array member named
+    * is left unparsed as a {@link JSONSlice} of the array, as in {@link #parseObject(byte[], int, int, String)}. The
+    * member values are parsed with the specified tokener options, and so is each of the slices when it is parsed.
+    * @param bytes The byte array.
+    * @param offset Index of the first byte of the JSON text.
+    * @param length Number of bytes of JSON text.
+    * @param lazyKey The name of the array member whose elements are not parsed. If null, all members are parsed.
+    * @param options Bitwise OR of zero or more {@link JSONByteTokener} option flags: {@link 
+    * JSONByteTokener#LAZY_SCALARS}, {@link JSONByteTokener#STRICT}.
+    * @return The JSON object.
+    * @throws JSONException if a syntax error is encountered. Only the JSON text outside the elements of the named
+    * array member is checked.
+    */
+   public static JSONObject parseObject(byte[] bytes, int offset, int length, String lazyKey, int options)
+         throws JSONException
+   {
+      JSONByteTokener x = new JSONByteTokener(bytes, offset, length, options, 0);
+      JSONObject jo = new JSONObject();
+      if(x.nextClean() != '{') throw x.syntaxError("A JSONObject text must begin with '{'");
+      for(;;)
+      {
+         char c = x.nextClean();
+         if(c == 0) throw x.syntaxError("A JSONObject text must end with '}'");
+         if(c == '}') return(jo);
+         x.back();
+         String key = x.nextKey();
+
+         nextColon(x);
+         if(key.equals(lazyKey) && x.nextClean() == '[')
+         {
+            JSONArray ja = new JSONArray();
+            if(x.nextClean() != ']')
+            {
+               x.back();
+               for(;;)
+               {
+                  if(x.nextClean() == ',')
+                  {
+                     x.back();
+                     ja.put((Object) null);
+                  }
+                  else
+                  {
+                     x.back();
+                     int start = x.position();
+                     x.skipValue();
+                     ja.put(new JSONSlice(bytes, start, x.position() - start, options));
+                  }
+                  c = x.nextClean();
+                  if(c == ']') break;
+                  if(c != ',' && c != ';') throw x.syntaxError("Expected a ',' or ']'");
+                  if(x.nextClean() == ']') break;
+                  x.back();
+               }
+            }
+            jo.putOnce(key, ja);
+         }
+         else
+         {
+            if(key.equals(lazyKey)) x.back();
+            jo.putOnce(key, x.nextValue());
+         }
+
+         if(nextSeparator(x)) return(jo);
+      }
+   }
+
+   /**
+    * Parse only the named members of the JSON object in this slice. All other members are skipped without being
+    * parsed, and the scan stops as soon as all of the named members have been found.
+    * @param keys The names of the members to parse.
+    * @return A JSON object containing those named members that are present in the slice.
+    * @throws JSONException if a syntax error is encountered. Skipped members are only checked for balanced brackets
+    * and terminated strings, and any text after the last named member is not checked at all.
+    */
+   public JSONObject members(String... keys) throws JSONException
+   {
+      JSONByteTokener x = new JSONByteTokener(bytes, offset, length, options, 0);
+      JSONObject jo = new JSONObject();
+      if(x.nextClean() != '{') throw x.syntaxError("A JSONObject text must begin with '{'");
+      for(;;)
+      {
+         char c = x.nextClean();
+         if(c == 0) throw x.syntaxError("A JSONObject text must end with '}'");
+         if(c == '}') return(jo);
+         x.back();
+         String key = x.nextKey();
+
+         nextColon(x);
+         boolean wanted = false;
+         for(int i=0; i<keys.length && !wanted; i++) wanted = keys[i].equals(key);
+         if(wanted)
+         {
+            jo.putOnce(key, x.nextValue());
+            if(jo.length() == keys.length) return(jo);
+         }
+         else x.skipValue();
+
+         if(nextSeparator(x)) return(jo);
+      }
+   }
+
+   /**
+    * Consume the separator after a key in a JSON object, as in {@link JSONObject#JSONObject(JSONTokener)}: a ':', or
+    * the tolerated '=' or '=&gt;'.
+    * @param x The tokener.
+    * @throws JSONException if the separator is missing.
+    */
+   private static void nextColon(JSONTokener x) throws JSONException
+   {
+      char c = x.nextClean();
+      if(c == '=')
+      {
+         if(x.next() != '>') x.back();
+      }
+      else if(c != ':') throw x.syntaxError("Expected a ':' after a key");
+   }
+
+   /**
+    * Consume the separator after a member of a JSON object, as in {@link JSONObject#JSONObject(JSONTokener)}: a ','
+    * or the tolerated ';', possibly followed by the closing brace; or the closing brace itself.
+    * @param x The tokener.
+    * @return True if the closing brace was consumed.
+    * @throws JSONException if the separator is missing.
+    */
+   private static boolean nextSeparator(JSONTokener x) throws JSONException
+   {
+      switch(x.nextClean())
+      {
+      case ';':
+      case ',':
+         if(x.nextClean() == '}') return(true);
+         x.back();
+         return(false);
+      case '}':
+         return(true);
+      default:
+         throw x.syntaxError("Expected a ',' or '}'");
+      }
+   }
+
+   /** The byte array. */
+   private final byte[] bytes;
+   /** Index of the first byte of the value's JSON text. */
+   private final int offset;
+   /** Number of bytes of JSON text. */
+   private final int length;
+   /** The {@link JSONByteTokener} options with which the slice is parsed. */
+   private final int options;
+}
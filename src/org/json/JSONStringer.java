@@ -50,7 +50,7 @@ import java.io.StringWriter;
  * <p>
  * The first method called must be <code>array</code> or <code>object</code>.
  * There are no methods for adding commas or colons. JSONStringer adds them for
- * you. Objects and arrays can be nested up to 20 levels deep.
+ * you. Objects and arrays can be nested to any depth.
  * <p>
  * This can sometimes be easier than using a JSONObject to build a string.
  * @author JSON.org
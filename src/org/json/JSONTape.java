@@ -0,0 +1,519 @@
+package org.json;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A compact, read-only representation of a parsed JSON document: a single <code>long[]</code> tape of typed tokens
+ * plus a pool of distinct strings, navigated with a {@link Cursor}.
+ *
+ * <p>A {@link JSONObject} / {@link JSONArray} tree costs a hash map or array list for every object or array, a map
+ * entry for every member, and a boxed value for every number, so it typically occupies several times the size of the
+ * JSON text itself. A tape needs one 8-byte word per token (two for a number that does not fit in 56 bits or is not an
+ * integer), and each distinct string -- key or value -- is stored once no matter how often it occurs. Consumers that
+ * only read a document, such as a listing or a statistics report on a large <i>Maestro</i> JMX file, use a small
+ * fraction of the heap the <code>org.json</code> tree needs.</p>
+ *
+ * <p>Each word holds the token type in its top 8 bits and a 56-bit payload:</p>
+ * <ul>
+ * <li>The start of an object or array holds the number of members or elements (bits 32-55) and the tape index just
+ * past the matching end token (bits 0-31), so a cursor can step over the entire container in one move. The end token
+ * holds the tape index of the start token.</li>
+ * <li>A key or string holds an index into the string pool. In an object, each member is a key token followed by the
+ * tokens of its value.</li>
+ * <li>An integer that fits in 56 bits is held in the payload itself. A larger integer, or a decimal number, is held in
+ * the next word -- as the raw <code>long</code> or the raw bits of the <code>double</code>.</li>
+ * <li>The tokens for <i>true</i>, <i>false</i> and <i>null</i> have no payload.</li>
+ * </ul>
+ *
+ * <p>The tape is filled by a {@link JSONPullParser}, so it accepts the same lenient syntax, and numbers are classified
+ * exactly as {@link JSONObject#stringToValue} does: an integer in the range of a <code>long</code> is an integer,
+ * anything else a decimal number. Unlike a {@link JSONObject}, a tape does not reject duplicate keys; {@link
+ * Cursor#find} finds the first member with the given key.</p>
+ *
+ * <p>This class was added to the freely provided org.json.* package and relies on classes from that package.</p>
+ *
+ * @author sruffner
+ */
+public final class JSONTape
+{
+   /** Value type: an object. */
+   public static final int TYPE_OBJECT = 1;
+   /** Value type: an array. */
+   public static final int TYPE_ARRAY = 2;
+   /** Value type: a string. */
+   public static final int TYPE_STRING = 3;
+   /** Value type: a number. */
+   public static final int TYPE_NUMBER = 4;
+   /** Value type: <i>true</i> or <i>false</i>. */
+   public static final int TYPE_BOOLEAN = 5;
+   /** Value type: <i>null</i>. */
+   public static final int TYPE_NULL = 6;
+
+   /**
+    * Parse a single JSON value -- typically an object -- from the specified tokener onto a new tape. As with {@link
+    * JSONObject#JSONObject(JSONTokener)}, any text after the value is ignored.
+    * @param x The tokener. For best performance, use a {@link JSONByteTokener}.
+    * @throws JSONException if a syntax error is encountered.
+    */
+   public JSONTape(JSONTokener x) throws JSONException
+   {
+      JSONPullParser p = new JSONPullParser(x);
+      HashMap<String, Integer> poolIndex = new HashMap<>();
+      long[] t = new long[1024];
+      String[] pool = new String[256];
+      int n = 0;
+      int nStrings = 0;
+      int[] open = new int[16];
+      int[] counts = new int[16];
+      int depth = 0;
+
+      JSONPullParser.Event e;
+      while((e = p.next()) != JSONPullParser.Event.END_DOCUMENT)
+      {
+         if(n + 2 > t.length) t = Arrays.copyOf(t, t.length * 2);
+         if(e != JSONPullParser.Event.KEY && e != JSONPullParser.Event.END_OBJECT &&
+               e != JSONPullParser.Event.END_ARRAY && depth > 0)
+            ++counts[depth-1];
+
+         switch(e)
+         {
+         case START_OBJECT:
+         case START_ARRAY:
+            if(depth == open.length)
+            {
+               open = Arrays.copyOf(open, depth * 2);
+               counts = Arrays.copyOf(counts, depth * 2);
+            }
+            open[depth] = n;
+            counts[depth++] = 0;
+            t[n++] = word(e == JSONPullParser.Event.START_OBJECT ? T_OBJ_START : T_ARR_START, 0);
+            break;
+         case END_OBJECT:
+         case END_ARRAY:
+            int start = open[--depth];
+            if(n + 1 > MAX_INDEX) throw new JSONException("JSON content too large for a tape");
+            t[start] |= (((long) Math.min(counts[depth], MAX_COUNT)) << 32) | (n + 1);
+            t[n++] = word(e == JSONPullParser.Event.END_OBJECT ? T_OBJ_END : T_ARR_END, start);
+            break;
+         case KEY:
+         case VALUE_STRING:
+            String s = p.getString();
+            Integer idx = poolIndex.get(s);
+            if(idx == null)
+            {
+               if(nStrings == pool.length) pool = Arrays.copyOf(pool, nStrings * 2);
+               idx = nStrings;
+               pool[nStrings++] = s;
+               poolIndex.put(s, idx);
+            }
+            t[n++] = word(e == JSONPullParser.Event.KEY ? T_KEY : T_STRING, idx);
+            break;
+         case VALUE_NUMBER:
+            if(p.isDouble())
+            {
+               t[n++] = word(T_DOUBLE, 0);
+               t[n++] = Double.doubleToRawLongBits(p.getDouble());
+            }
+            else
+            {
+               long v = p.getLong();
+               if(((v << 8) >> 8) == v) t[n++] = word(T_INT, v & PAYLOAD_MASK);
+               else
+               {
+                  t[n++] = word(T_LONG, 0);
+                  t[n++] = v;
+               }
+            }
+            break;
+         case VALUE_TRUE:
+            t[n++] = word(T_TRUE, 0);
+            break;
+         case VALUE_FALSE:
+            t[n++] = word(T_FALSE, 0);
+            break;
+         default:
+            t[n++] = word(T_NULL, 0);
+            break;
+         }
+      }
+
+      tape = Arrays.copyOf(t, n);
+      strings = Arrays.copyOf(pool, nStrings);
+   }
+
+   /** @return The number of words in this tape. */
+   public int size() { return(tape.length); }
+
+   /** @return The number of distinct strings -- keys and string values -- in this tape's string pool. */
+   public int stringCount() { return(strings.length); }
+
+   /** @return A new cursor positioned at the top-level value. */
+   public Cursor root() { return(new Cursor(this)); }
+
+   /**
+    * A position on a {@link JSONTape}: the current value, plus the chain of containers enclosing it. A cursor starts at
+    * the top-level value. Use {@link #enter} to move to the first element or member value of an object or array,
+    * {@link #next} to move to the following sibling, and {@link #exit} to return to the enclosing container. Moving a
+    * cursor does not allocate memory, except when the nesting depth first exceeds that of any container visited.
+    */
+   public static final class Cursor
+   {
+      private Cursor(JSONTape owner)
+      {
+         this.owner = owner;
+         this.t = owner.tape;
+      }
+
+      /** @return A new cursor at the same position as this one. The two cursors move independently. */
+      public Cursor copy()
+      {
+         Cursor c = new Cursor(owner);
+         c.pos = pos;
+         c.depth = depth;
+         c.parents = Arrays.copyOf(parents, parents.length);
+         return(c);
+      }
+
+      /** @return The type of the current value: one of the <code>JSONTape.TYPE_*</code> constants. */
+      public int getType()
+      {
+         switch(type(t[pos]))
+         {
+         case T_OBJ_START: return(TYPE_OBJECT);
+         case T_ARR_START: return(TYPE_ARRAY);
+         case T_STRING: return(TYPE_STRING);
+         case T_TRUE:
+         case T_FALSE: return(TYPE_BOOLEAN);
+         case T_NULL: return(TYPE_NULL);
+         default: return(TYPE_NUMBER);
+         }
+      }
+
+      /** @return True if the current value is an object. */
+      public boolean isObject() { return(type(t[pos]) == T_OBJ_START); }
+
+      /** @return True if the current value is an array. */
+      public boolean isArray() { return(type(t[pos]) == T_ARR_START); }
+
+      /** @return True if the current value is <i>null</i>. */
+      public boolean isNull() { return(type(t[pos]) == T_NULL); }
+
+      /** @return True if the current value is a decimal number rather than an integer. */
+      public boolean isDouble() { return(type(t[pos]) == T_DOUBLE); }
+
+      /** @return The number of members in the current object or elements in the current array; else 0. */
+      public int length()
+      {
+         long w = t[pos];
+         int ty = type(w);
+         if(ty != T_OBJ_START && ty != T_ARR_START) return(0);
+         int count = (int) ((w >>> 32) & MAX_COUNT);
+         if(count < MAX_COUNT) return(count);
+
+         // count saturated: count the children
+         int end = (int) w - 1;
+         count = 0;
+         for(int i = pos + 1; i < end; i = owner.next(i))
+         {
+            if(ty == T_OBJ_START) ++i;
+            ++count;
+         }
+         return(count);
+      }
+
+      /** @return The key of the current value, if it is a member of an object; else null. */
+      public String getKey()
+      {
+         if(depth == 0 || type(t[parents[depth-1]]) != T_OBJ_START) return(null);
+         return(owner.strings[(int) (t[pos-1] & PAYLOAD_MASK)]);
+      }
+
+      /**
+       * Get the current value as a string. As with {@link JSONObject#getString}, a number, boolean or <i>null</i> is
+       * converted to the string form of its <code>org.json</code> value.
+       * @return The string.
+       * @throws JSONException if the current value is an object or array.
+       */
+      public String getString() throws JSONException
+      {
+         long w = t[pos];
+         switch(type(w))
+         {
+         case T_STRING: return(owner.strings[(int) (w & PAYLOAD_MASK)]);
+         case T_OBJ_START:
+         case T_ARR_START: throw new JSONException("Value at tape index " + pos + " is not a scalar");
+         default: return(getValue().toString());
+         }
+      }
+
+      /**
+       * Get the current value as an <code>int</code>. As with {@link JSONObject#getInt}, a decimal number is truncated
+       * and a string is parsed as an integer.
+       * @return The value.
+       * @throws JSONException if the current value is not a number or a string holding an integer.
+       */
+      public int getInt() throws JSONException
+      {
+         return(type(t[pos]) == T_DOUBLE ? (int) getDouble() : (int) getLong());
+      }
+
+      /**
+       * Get the current value as a <code>long</code>. As with {@link JSONObject#getLong}, a decimal number is truncated
+       * and a string is parsed as an integer.
+       * @return The value.
+       * @throws JSONException if the current value is not a number or a string holding an integer.
+       */
+      public long getLong() throws JSONException
+      {
+         long w = t[pos];
+         switch(type(w))
+         {
+         case T_INT: return((w << 8) >> 8);
+         case T_LONG: return(t[pos+1]);
+         case T_DOUBLE: return((long) Double.longBitsToDouble(t[pos+1]));
+         case T_STRING:
+            try { return(Long.parseLong(getString())); }
+            catch(NumberFormatException nfe) { break; }
+         default: break;
+         }
+         throw new JSONException("Value at tape index " + pos + " is not a number");
+      }
+
+      /**
+       * Get the current value as a <code>double</code>. As with {@link JSONObject#getDouble}, a string is parsed as a
+       * number.
+       * @return The value.
+       * @throws JSONException if the current value is not a number or a string holding a number.
+       */
+      public double getDouble() throws JSONException
+      {
+         long w = t[pos];
+         switch(type(w))
+         {
+         case T_INT: return((w << 8) >> 8);
+         case T_LONG: return(t[pos+1]);
+         case T_DOUBLE: return(Double.longBitsToDouble(t[pos+1]));
+         case T_STRING:
+            try { return(Double.parseDouble(getString())); }
+            catch(NumberFormatException nfe) { break; }
+         default: break;
+         }
+         throw new JSONException("Value at tape index " + pos + " is not a number");
+      }
+
+      /**
+       * Get the current value as a <code>boolean</code>. As with {@link JSONObject#getBoolean}, the strings "true" and
+       * "false" (ignoring case) are accepted.
+       * @return The value.
+       * @throws JSONException if the current value is not a boolean or a string holding one.
+       */
+      public boolean getBoolean() throws JSONException
+      {
+         int ty = type(t[pos]);
+         if(ty == T_TRUE) return(true);
+         if(ty == T_FALSE) return(false);
+         if(ty == T_STRING)
+         {
+            String s = getString();
+            if(s.equalsIgnoreCase("true")) return(true);
+            if(s.equalsIgnoreCase("false")) return(false);
+         }
+         throw new JSONException("Value at tape index " + pos + " is not a boolean");
+      }
+
+      /**
+       * Get the current value in <code>org.json</code> form, building the object or array tree if the current value
+       * is an object or array. Numbers are boxed as in {@link JSONObject#stringToValue}.
+       * @return The value: a <code>JSONObject</code>, <code>JSONArray</code>, <code>String</code>,
+       * <code>Integer</code>, <code>Long</code>, <code>Double</code>, <code>Boolean</code>, or
+       * <code>JSONObject.NULL</code>.
+       * @throws JSONException if an object contains a duplicate key.
+       */
+      public Object getValue() throws JSONException
+      {
+         return(owner.value(pos));
+      }
+
+      /**
+       * Move to the first element of the current array, or to the value of the first member of the current object.
+       * @return True if successful; false if the current value is not an array or object, or is empty.
+       */
+      public boolean enter()
+      {
+         long w = t[pos];
+         int ty = type(w);
+         if((ty != T_OBJ_START && ty != T_ARR_START) || (int) w == pos + 2) return(false);
+         if(depth == parents.length) parents = Arrays.copyOf(parents, depth * 2);
+         parents[depth++] = pos;
+         pos += (ty == T_OBJ_START) ? 2 : 1;
+         return(true);
+      }
+
+      /**
+       * Move to the next element of the enclosing array, or the value of the next member of the enclosing object.
+       * @return True if successful; false if the current value is the last element or member, or is the top-level
+       * value.
+       */
+      public boolean next()
+      {
+         if(depth == 0) return(false);
+         int i = owner.next(pos);
+         int ty = type(t[i]);
+         if(ty == T_OBJ_END || ty == T_ARR_END) return(false);
+         pos = (ty == T_KEY) ? i + 1 : i;
+         return(true);
+      }
+
+      /**
+       * Move to the enclosing array or object.
+       * @return True if successful; false if the current value is the top-level value.
+       */
+      public boolean exit()
+      {
+         if(depth == 0) return(false);
+         pos = parents[--depth];
+         return(true);
+      }
+
+      /**
+       * Move to the value of the first member of the current object with the specified key.
+       * @param key The key.
+       * @return True if successful. False if the current value is not an object or has no such member; in that case,
+       * the cursor does not move.
+       */
+      public boolean find(String key)
+      {
+         long w = t[pos];
+         if(type(w) != T_OBJ_START) return(false);
+         String[] pool = owner.strings;
+         int end = (int) w - 1;
+         for(int i = pos + 1; i < end; i = owner.next(i + 1))
+         {
+            if(pool[(int) (t[i] & PAYLOAD_MASK)].equals(key))
+            {
+               if(depth == parents.length) parents = Arrays.copyOf(parents, depth * 2);
+               parents[depth++] = pos;
+               pos = i + 1;
+               return(true);
+            }
+         }
+         return(false);
+      }
+
+      /**
+       * Move to the element of the current array at the specified index. This steps over the preceding elements, so
+       * it takes time proportional to the index -- but not to the size of those elements.
+       * @param index The index.
+       * @return True if successful. False if the current value is not an array or the index is out of range; in that
+       * case, the cursor does not move.
+       */
+      public boolean element(int index)
+      {
+         long w = t[pos];
+         if(type(w) != T_ARR_START || index < 0) return(false);
+         int end = (int) w - 1;
+         int i = pos + 1;
+         for(int k = 0; k < index && i < end; k++) i = owner.next(i);
+         if(i >= end) return(false);
+         if(depth == parents.length) parents = Arrays.copyOf(parents, depth * 2);
+         parents[depth++] = pos;
+         pos = i;
+         return(true);
+      }
+
+      /** The tape being navigated. */
+      private final JSONTape owner;
+      /** The tape words. */
+      private final long[] t;
+      /** Tape index of the current value. */
+      private int pos = 0;
+      /** Tape indices of the start tokens of the containers enclosing the current value, outermost first. */
+      private int[] parents = new int[8];
+      /** The number of containers enclosing the current value. */
+      private int depth = 0;
+   }
+
+   /**
+    * Build the <code>org.json</code> form of the value at the specified tape index.
+    * @param i Tape index of the first word of the value.
+    * @return The value.
+    * @throws JSONException if an object contains a duplicate key.
+    */
+   private Object value(int i) throws JSONException
+   {
+      long w = tape[i];
+      switch(type(w))
+      {
+      case T_OBJ_START:
+      {
+         JSONObject jo = new JSONObject();
+         int end = (int) w - 1;
+         for(int k = i + 1; k < end; )
+         {
+            String key = strings[(int) (tape[k] & PAYLOAD_MASK)];
+            jo.putOnce(key, value(k + 1));
+            k = next(k + 1);
+         }
+         return(jo);
+      }
+      case T_ARR_START:
+      {
+         JSONArray ja = new JSONArray();
+         int end = (int) w - 1;
+         for(int k = i + 1; k < end; k = next(k)) ja.put(value(k));
+         return(ja);
+      }
+      case T_STRING: return(strings[(int) (w & PAYLOAD_MASK)]);
+      case T_INT: return(box((w << 8) >> 8));
+      case T_LONG: return(box(tape[i+1]));
+      case T_DOUBLE: return(Double.longBitsToDouble(tape[i+1]));
+      case T_TRUE: return(Boolean.TRUE);
+      case T_FALSE: return(Boolean.FALSE);
+      default: return(JSONObject.NULL);
+      }
+   }
+
+   /**
+    * Find the tape index just past the value that starts at the specified index.
+    * @param i Tape index of the first word of a value.
+    * @return Tape index of the word after the value.
+    */
+   private int next(int i)
+   {
+      long w = tape[i];
+      switch(type(w))
+      {
+      case T_OBJ_START:
+      case T_ARR_START: return((int) w);
+      case T_LONG:
+      case T_DOUBLE: return(i + 2);
+      default: return(i + 1);
+      }
+   }
+
+   /** Box an integer as {@link JSONObject#stringToValue} does: an <code>Integer</code> if it fits, else a Long. */
+   private static Object box(long v)
+   {
+      return(v == (int) v ? (Object) Integer.valueOf((int) v) : (Object) Long.valueOf(v));
+   }
+
+   private static long word(int type, long payload) { return((((long) type) << 56) | payload); }
+
+   private static int type(long w) { return((int) (w >>> 56)); }
+
+   /** Token types. */
+   private static final int T_OBJ_START = 1, T_OBJ_END = 2, T_ARR_START = 3, T_ARR_END = 4, T_KEY = 5, T_STRING = 6,
+         T_INT = 7, T_LONG = 8, T_DOUBLE = 9, T_TRUE = 10, T_FALSE = 11, T_NULL = 12;
+   /** Mask for the 56-bit payload of a tape word. */
+   private static final long PAYLOAD_MASK = (1L << 56) - 1;
+   /** The child count stored in a start token saturates at this value. */
+   private static final int MAX_COUNT = 0xFFFFFF;
+   /** Tape indices must not exceed this value. */
+   private static final int MAX_INDEX = Integer.MAX_VALUE - 8;
+
+   /** The tape. */
+   private final long[] tape;
+   /** The distinct strings -- keys and string values -- referenced by the tape. */
+   private final String[] strings;
+}
@@ -64,6 +64,22 @@ public class JSONTokener {
     }
 
 
+    /**
+     * Construct a JSONTokener without a reader. For use by a subclass that
+     * supplies its own source of characters; it must override every method
+     * that reads from the reader.
+     */
+    protected JSONTokener() {
+        this.reader = null;
+        this.eof = false;
+        this.usePrevious = false;
+        this.previous = 0;
+        this.index = 0;
+        this.character = 1;
+        this.line = 1;
+    }
+
+
     /**
      * Construct a JSONTokener from a string.
      *
@@ -380,6 +396,95 @@ public class JSONTokener {
     }
 
 
+    /**
+     * Get the next key of an object member: a quoted string, or unquoted
+     * text converted to a string. Unlike {@link #nextValue}, this always
+     * decodes the key, even if the tokener defers decoding values.
+     * @return The key.
+     * @throws JSONException If syntax error.
+     */
+    public String nextKey() throws JSONException {
+        return nextValue().toString();
+    }
+
+
+    /**
+     * Skip the next value -- a quoted string, unquoted text such as a number,
+     * or an entire object or array -- without constructing it. The skipped
+     * content is only checked to the extent needed to find its end: strings
+     * must be terminated and brackets must balance.
+     * @throws JSONException If there is no value, or if the end of the
+     * source is reached before the end of the value.
+     */
+    public void skipValue() throws JSONException {
+        char c = nextClean();
+        switch (c) {
+        case 0:
+            throw syntaxError("Missing value");
+        case '"':
+        case '\'':
+            skipString(c);
+            return;
+        case '{':
+        case '[':
+        case '(':
+            int depth = 1;
+            while (depth > 0) {
+                c = next();
+                switch (c) {
+                case 0:
+                    throw syntaxError("Unterminated object or array");
+                case '"':
+                case '\'':
+                    skipString(c);
+                    break;
+                case '{':
+                case '[':
+                case '(':
+                    depth += 1;
+                    break;
+                case '}':
+                case ']':
+                case ')':
+                    depth -= 1;
+                    break;
+                }
+            }
+            return;
+        }
+        if (",:]}/\\\"[{;=#".indexOf(c) >= 0) {
+            back();
+            throw syntaxError("Missing value");
+        }
+        while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
+            c = next();
+        }
+        back();
+    }
+
+
+    /**
+     * Skip the remainder of a quoted string, up to and including the close
+     * quote character.
+     * @param quote The quoting character.
+     * @throws JSONException Unterminated string.
+     */
+    private void skipString(char quote) throws JSONException {
+        for (;;) {
+            char c = next();
+            if (c == quote) {
+                return;
+            }
+            if (c == 0 || c == '\n' || c == '\r') {
+                throw syntaxError("Unterminated string");
+            }
+            if (c == '\\') {
+                next();
+            }
+        }
+    }
+
+
     /**
      * Skip characters until the next character is the requested character.
      * If the requested character is not found, no characters are skipped.
@@ -1,14 +1,26 @@
 package org.json;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Collection of static methods for reading and writing JSON-formatted content.
@@ -50,8 +62,14 @@ public class JSONUtilities
    
    /**
     * Read and parse a JavaScript Object Notation (JSON)-formatted file containing the definition of a <i>single</i>
-    * JSON object. A buffered reader is used to stream file contents through a JSON tokener, so the method can be used 
-    * with large JSON files.
+    * JSON object. The file must be ASCII or UTF-8 encoded.
+    * 
+    * <p>A regular file is loaded by {@link #loadJSONFile} -- a large file is memory-mapped rather than copied into the
+    * heap -- and parsed directly from the raw bytes by a {@link JSONByteTokener}. If the file cannot be loaded that way
+    * (eg, it is a pipe or device), a buffered reader is used to stream the file contents through a JSON tokener.</p>
+    * 
+    * <p>A gzip-compressed file is decompressed transparently; see {@link #loadJSONFile} and {@link #openJSONStream}.
+    * </p>
     * 
     * @param f Abstract pathname of JSON file
     * @return The JSON object parsed from the file.
@@ -59,21 +77,234 @@ public class JSONUtilities
     * @throws JSONException if a JSON syntax error occurs while parsing file content.
     */
    public static JSONObject readJSONObject(File f) throws IOException, JSONException
+   {
+      return(readJSONObject(f, false));
+   }
+   
+   /**
+    * Read and parse a JavaScript Object Notation (JSON)-formatted file containing the definition of a <i>single</i>
+    * JSON object, as in {@link #readJSONObject(File)}. Optionally, a large regular file is parsed by a {@link 
+    * JSONIndexedParser}, which builds the large subtrees of the object concurrently in the common fork-join pool. The
+    * object is the same either way.
+    * 
+    * @param f Abstract pathname of JSON file
+    * @param parallel If true, use all available processors to parse a large file.
+    * @return The JSON object parsed from the file.
+    * @throws IOException if an IO error occurs while reading the file (including file not found).
+    * @throws JSONException if a JSON syntax error occurs while parsing file content.
+    */
+   public static JSONObject readJSONObject(File f, boolean parallel) throws IOException, JSONException
    {
       if(f == null) throw new IllegalArgumentException("Null file argument!");
       
+      ByteBuffer content = loadJSONFile(f);
+      if(content != null)
+         return(parallel ? JSONIndexedParser.parseObject(content) : new JSONObject(new JSONByteTokener(content)));
+
       JSONObject jsonObj;
-       try (BufferedReader rdr = new BufferedReader(
-               new InputStreamReader(new FileInputStream(f), StandardCharsets.US_ASCII))) {
-           JSONTokener tokener = new JSONTokener(rdr);
-           jsonObj = new JSONObject(tokener);
-       }
+      try (BufferedReader rdr = new BufferedReader(new InputStreamReader(openJSONStream(f), StandardCharsets.UTF_8)))
+      {
+         jsonObj = new JSONObject(new JSONTokener(rdr));
+      }
       return(jsonObj);
    }
    
    /**
-    * Write a single JavaScript Object Notation (JSON) object to file. A buffered writer is used to handle a large,
-    * complex object.
+    * Read and parse a JavaScript Object Notation (JSON)-formatted file onto a read-only {@link JSONTape}. The file is
+    * loaded as in {@link #readJSONObject(File)}. The tape occupies a small fraction of the heap needed by the {@link
+    * JSONObject} tree, so use this method when the file content is only inspected -- listed, summarized, compared or
+    * exported -- rather than modified.
+    * 
+    * @param f Abstract pathname of JSON file
+    * @return The tape holding the JSON value parsed from the file.
+    * @throws IOException if an IO error occurs while reading the file (including file not found).
+    * @throws JSONException if a JSON syntax error occurs while parsing file content.
+    */
+   public static JSONTape readJSONTape(File f) throws IOException, JSONException
+   {
+      if(f == null) throw new IllegalArgumentException("Null file argument!");
+      
+      ByteBuffer content = loadJSONFile(f);
+      if(content != null) return(new JSONTape(new JSONByteTokener(content)));
+
+      try (BufferedReader rdr = new BufferedReader(new InputStreamReader(openJSONStream(f), StandardCharsets.UTF_8)))
+      {
+         return(new JSONTape(new JSONTokener(rdr)));
+      }
+   }
+   
+   /**
+    * Load the content of a JSON-formatted file into a byte buffer for parsing by a {@link JSONByteTokener}.
+    * 
+    * <p>A regular file of at least {@link #MMAP_MIN_SIZE} bytes is memory-mapped read-only, so the raw text is never
+    * copied into the heap and a file that was recently read or written is served from the operating system's page 
+    * cache. A smaller file is simply read into a heap buffer, since mapping has a fixed cost that is not recouped for
+    * small files. The mapping is released when the returned buffer is garbage-collected.</p>
+    * 
+    * <p>Files are never mapped on Windows, where a file cannot be overwritten or deleted while a mapping of it is still
+    * reachable -- which would make it impossible to save a document back to the file from which it was just read.</p>
+    * 
+    * <p>A gzip-compressed file is recognized by the gzip magic number in its first two bytes, whatever its name. It is
+    * decompressed into a heap buffer as it is read from the file; see {@link #inflate}.</p>
+    * 
+    * @param f Abstract pathname of JSON file
+    * @return A buffer holding the entire file content, positioned at the start of the content. Returns null if the file
+    * is not a regular file (eg, a pipe or device) or is too large for a single buffer (2GB or more, after 
+    * decompression); in this case, the caller should stream the content instead -- see {@link #openJSONStream}.
+    * @throws IOException if an IO error occurs while reading, mapping or decompressing the file.
+    */
+   public static ByteBuffer loadJSONFile(File f) throws IOException
+   {
+      Path path = f.toPath();
+      if(!Files.isRegularFile(path)) return(null);
+      try(FileChannel ch = FileChannel.open(path, StandardOpenOption.READ))
+      {
+         long size = ch.size();
+         if(isGzip(ch))
+         {
+            byte[] content = inflate(ch);
+            return(content == null ? null : ByteBuffer.wrap(content));
+         }
+         if(size > Integer.MAX_VALUE) return(null);
+         if(size >= MMAP_MIN_SIZE && !IS_WINDOWS) return(ch.map(FileChannel.MapMode.READ_ONLY, 0, size));
+
+         ByteBuffer buf = ByteBuffer.allocate((int) size);
+         while(buf.hasRemaining()) if(ch.read(buf) < 0) break;
+         buf.flip();
+         return(buf);
+      }
+   }
+   
+   /**
+    * Read the entire content of a JSON-formatted file into a byte array. Unlike {@link #loadJSONFile}, the content is
+    * always copied into the heap, so it may be retained -- eg, by deferred {@link JSONSlice}s -- while the file is
+    * overwritten. A gzip-compressed file is decompressed as it is read, as in {@link #loadJSONFile}.
+    * 
+    * @param f Abstract pathname of JSON file
+    * @return The file content.
+    * @throws IOException if an IO error occurs while reading or decompressing the file, or if the content is too large
+    * for a single array (2GB or more).
+    */
+   public static byte[] readJSONBytes(File f) throws IOException
+   {
+      try(FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ))
+      {
+         if(isGzip(ch))
+         {
+            byte[] content = inflate(ch);
+            if(content == null) throw new IOException("Decompressed file content is too large");
+            return(content);
+         }
+      }
+      return(Files.readAllBytes(f.toPath()));
+   }
+   
+   /**
+    * Open an input stream for reading the content of a JSON-formatted file. If the file is gzip-compressed, as 
+    * indicated by the gzip magic number in its first two bytes, the content is decompressed while it is streamed to 
+    * the reader. Use this method to stream content that cannot be loaded by {@link #loadJSONFile}.
+    * 
+    * @param f Abstract pathname of JSON file
+    * @return A buffered input stream that delivers the (decompressed) file content.
+    * @throws IOException if an IO error occurs while opening the file or reading the gzip header.
+    */
+   public static InputStream openJSONStream(File f) throws IOException
+   {
+      InputStream in = new BufferedInputStream(new FileInputStream(f), IO_BUFSIZE);
+      try
+      {
+         in.mark(2);
+         int magic = in.read() | (in.read() << 8);
+         in.reset();
+         return((magic == GZIPInputStream.GZIP_MAGIC) ? new GZIPInputStream(in, IO_BUFSIZE) : in);
+      }
+      catch(IOException ioe)
+      {
+         in.close();
+         throw ioe;
+      }
+   }
+   
+   /**
+    * Does a file start with the gzip magic number?
+    * @param ch A channel open for reading the file. Its position is not changed.
+    * @return True if the first two bytes of the file are the gzip magic number.
+    * @throws IOException if an IO error occurs while reading the file.
+    */
+   private static boolean isGzip(FileChannel ch) throws IOException
+   {
+      ByteBuffer magic = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+      while(magic.hasRemaining()) if(ch.read(magic, magic.position()) < 0) return(false);
+      return((magic.getShort(0) & 0xFFFF) == GZIPInputStream.GZIP_MAGIC);
+   }
+   
+   /**
+    * Decompress the entire content of a gzip-compressed file into a byte array. The compressed data is streamed from 
+    * the file through the inflater, straight into the array. The array is sized initially by the uncompressed size
+    * recorded in the gzip trailer, so it is normally allocated once and not copied at all. The array only grows if 
+    * the trailer is not accurate -- eg, if the file holds several concatenated gzip members. A recorded size that 
+    * exceeds what the deflate format can possibly yield from the file -- eg, the "trailer" of a truncated file -- is
+    * ignored, so a damaged file cannot trigger a huge allocation.
+    * 
+    * @param ch A channel open for reading the gzip-compressed file. Its position is changed.
+    * @return The decompressed content, or null if it is too large for a single array (2GB or more).
+    * @throws IOException if an IO error occurs while reading the file, or if the file is not a valid gzip file.
+    */
+   private static byte[] inflate(FileChannel ch) throws IOException
+   {
+      // the trailer holds the uncompressed size modulo 2^32 in its last 4 bytes, little-endian
+      long size = ch.size();
+      long hint = 0;
+      if(size >= 18)
+      {
+         ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+         while(trailer.hasRemaining()) if(ch.read(trailer, size - 4 + trailer.position()) < 0) break;
+         if(!trailer.hasRemaining()) hint = trailer.getInt(0) & 0xFFFFFFFFL;
+      }
+      if(hint > MAX_DEFLATE_RATIO * size) hint = 4 * size;
+      
+      ch.position(0);
+      try(InputStream in = new GZIPInputStream(Channels.newInputStream(ch), IO_BUFSIZE))
+      {
+         byte[] buf = new byte[(int) Math.max(1, Math.min(hint, MAX_ARRAY_SIZE))];
+         int n = 0;
+         for(;;)
+         {
+            if(n == buf.length)
+            {
+               int b = in.read();
+               if(b < 0) break;
+               if(n == MAX_ARRAY_SIZE) return(null);
+               buf = Arrays.copyOf(buf, (int) Math.min(2L*n, MAX_ARRAY_SIZE));
+               buf[n++] = (byte) b;
+            }
+            int count = in.read(buf, n, buf.length - n);
+            if(count < 0) break;
+            n += count;
+         }
+         return((n == buf.length) ? buf : Arrays.copyOf(buf, n));
+      }
+   }
+   
+   /** The largest possible ratio of uncompressed to compressed size for the deflate format. */
+   private static final long MAX_DEFLATE_RATIO = 1032;
+   
+   /** Size of the largest byte array that can be allocated. */
+   private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+   
+   /** Buffer size for streamed file IO, including the gzip inflater and deflater. */
+   private static final int IO_BUFSIZE = 64*1024;
+   
+   /** Files smaller than this are read into a heap buffer rather than memory-mapped. See {@link #loadJSONFile}. */
+   public static final int MMAP_MIN_SIZE = 256*1024;
+   
+   /** True if running on a Windows platform. */
+   private static final boolean IS_WINDOWS = 
+         System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+   
+   /**
+    * Write a single JavaScript Object Notation (JSON) object to file. The JSON text is written as ASCII bytes through a
+    * {@link JSONAsciiWriter}, which buffers it and writes it to the file channel directly.
     * 
     * @param f Abstract pathname of target file. If the file already exists, its previous content is lost.
     * @param jsonObj The JSON object to be written.
@@ -86,18 +317,60 @@ public class JSONUtilities
    {
       if(f == null || jsonObj == null) throw new IllegalArgumentException("Null argument!");
 
-      try (BufferedWriter writer = new BufferedWriter(
-               new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.US_ASCII)))
+      try (Writer writer = new JSONAsciiWriter(openForWriting(f)))
       {
          if (pretty) jsonObj.write(writer, 2, 0);
          else jsonObj.write(writer);
       }
    }
    
+   /**
+    * Open a file channel for writing JSON text to a file, creating the file if it does not exist. If it does exist,
+    * its previous content is discarded.
+    * 
+    * @param f Abstract pathname of target file.
+    * @return The file channel, opened for writing.
+    * @throws IOException if an IO error occurs while opening or creating the file.
+    */
+   public static FileChannel openForWriting(File f) throws IOException
+   {
+      return(FileChannel.open(f.toPath(), 
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+   }
+   
+   /**
+    * Open a channel for writing gzip-compressed JSON text to a file, as in {@link #openForWriting}. The bytes written
+    * to the channel are compressed as they are written. The gzip trailer is written when the channel is closed.
+    * 
+    * <p>The fastest deflate level is used. JSON text is so repetitive that it still compresses to a small fraction of
+    * its size, while the default level takes more than twice as long -- far longer than writing the uncompressed text.
+    * </p>
+    * 
+    * @param f Abstract pathname of target file.
+    * @return The channel, opened for writing.
+    * @throws IOException if an IO error occurs while opening or creating the file, or writing the gzip header.
+    */
+   public static WritableByteChannel openGzipForWriting(File f) throws IOException
+   {
+      FileChannel ch = openForWriting(f);
+      try
+      {
+         GZIPOutputStream out = new GZIPOutputStream(Channels.newOutputStream(ch), IO_BUFSIZE) {
+            { def.setLevel(Deflater.BEST_SPEED); }
+         };
+         return(Channels.newChannel(out));
+      }
+      catch(IOException ioe)
+      {
+         ch.close();
+         throw ioe;
+      }
+   }
+   
    /**
     * Read and parse a JavaScript Object Notation (JSON)-formatted file containing the definition of a <i>single</i>
     * JSON array. A buffered reader is used to stream file contents through a JSON tokener, so the method can be used 
-    * with large JSON files.
+    * with large JSON files. As in {@link #readJSONObject(File)}, the file content is decoded as UTF-8.
     * 
     * @param f Abstract pathname of JSON file
     * @return The JSON array parsed from the file.
@@ -109,8 +382,7 @@ public class JSONUtilities
       if(f == null) throw new IllegalArgumentException("Null file argument!");
       
       JSONArray jsonAr;
-      try (BufferedReader rdr = new BufferedReader(
-               new InputStreamReader(new FileInputStream(f), StandardCharsets.US_ASCII)))
+      try (BufferedReader rdr = new BufferedReader(new InputStreamReader(openJSONStream(f), StandardCharsets.UTF_8)))
       {
            JSONTokener tokener = new JSONTokener(rdr);
            jsonAr = new JSONArray(tokener);
@@ -119,8 +391,8 @@ public class JSONUtilities
    }
    
    /**
-    * Write a single JavaScript Object Notation (JSON) array to file. A buffered writer is used to handle a large,
-    * complex array.
+    * Write a single JavaScript Object Notation (JSON) array to file. The JSON text is written as ASCII bytes through a
+    * {@link JSONAsciiWriter}, which buffers it and writes it to the file channel directly.
     * 
     * @param f Abstract pathname of target file. If the file already exists, its previous content is lost.
     * @param jsonAr The JSON array to be written.
@@ -133,8 +405,7 @@ public class JSONUtilities
    {
       if(f == null || jsonAr == null) throw new IllegalArgumentException("Null argument!");
 
-      try (BufferedWriter writer = new BufferedWriter(
-               new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.US_ASCII)))
+      try (Writer writer = new JSONAsciiWriter(openForWriting(f)))
       {
          if (pretty) jsonAr.write(writer, 2, 0);
          else jsonAr.write(writer);
@@ -2,6 +2,7 @@ package org.json;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Arrays;
 
 /*
 Copyright (c) 2006 JSON.org
@@ -29,9 +30,9 @@ SOFTWARE.
 
 /**
  * JSONWriter provides a quick and convenient way of producing JSON text.
- * The texts produced strictly conform to JSON syntax rules. No whitespace is
- * added, so the results are ready for transmission or storage. Each instance of
- * JSONWriter can produce one JSON text.
+ * The texts produced strictly conform to JSON syntax rules. By default, no
+ * whitespace is added, so the results are ready for transmission or storage.
+ * Each instance of JSONWriter can produce one JSON text.
  * <p>
  * A JSONWriter instance provides a <code>value</code> method for appending
  * values to the
@@ -48,16 +49,39 @@ SOFTWARE.
  *     .endObject();</pre> which writes <pre>
  * {"JSON":"Hello, World!"}</pre>
  * <p>
- * The first method called must be <code>array</code> or <code>object</code>.
- * There are no methods for adding commas or colons. JSONWriter adds them for
- * you. Objects and arrays can be nested up to 20 levels deep.
+ * The first method called must be <code>array</code> or <code>object</code>,
+ * or <code>value</code> with a JSONObject or JSONArray. There are no methods
+ * for adding commas or colons. JSONWriter adds them for you. Objects and
+ * arrays can be nested to any depth.
+ * <p>
+ * A JSONObject or JSONArray passed to <code>value</code> is streamed to the
+ * writer member by member, so the JSON text of a large object tree is never
+ * held in memory. If the writer is constructed with an indentation, linefeeds
+ * and indentation are added for legibility. A JSONObject or JSONArray passed
+ * to <code>value</code> is laid out as by
+ * {@link JSONObject#write(Writer, int, int)}, which keeps an object or array
+ * that contains no object or array on a single line. An object or array
+ * built with <code>object</code> or <code>array</code>, on the other hand,
+ * is written before its contents are known, so every key or element in it
+ * starts on a new line, even if its values are all scalars. For example,
+ * with an indentation of 2, <pre>
+ * new JSONWriter(myWriter, 2)
+ *     .object()
+ *         .key("a").value(1)
+ *         .key("b").value("x")
+ *     .endObject();</pre> writes <pre>
+ * {
+ * "a":1,
+ * "b":"x"
+ * }</pre> while the same object passed to <code>value</code> is written as
+ * <code>{"a":1, "b":"x"}</code>.
  * <p>
  * This can sometimes be easier than using a JSONObject to build a string.
  * @author JSON.org
  * @version 2010-03-11
  */
 public class JSONWriter {
-    private static final int maxdepth = 20;
+    private static final int initdepth = 20;
 
     /**
      * The comma flag determines if a comma should be output before the next
@@ -76,9 +100,9 @@ public class JSONWriter {
     protected char mode;
 
     /**
-     * The object/array stack.
+     * The object/array stack. It grows as needed.
      */
-    private final JSONObject[] stack;
+    private JSONObject[] stack;
 
     /**
      * The stack top index. A value of 0 indicates that the stack is empty.
@@ -90,33 +114,71 @@ public class JSONWriter {
      */
     protected final Writer writer;
 
+    /**
+     * The number of spaces added to each level of indentation, or -1 if no
+     * whitespace is added.
+     */
+    private final int indentBy;
+
+    /**
+     * Formats number values.
+     */
+    private final JSONNumberWriter numbers;
+
     /**
      * Make a fresh JSONWriter. It can be used to build one JSON text.
      */
     public JSONWriter(Writer w) {
+        this(w, -1);
+    }
+
+    /**
+     * Make a fresh JSONWriter that adds linefeeds and indentation for
+     * legibility. It can be used to build one JSON text.
+     * @param w The writer that will receive the output.
+     * @param indentBy The number of spaces to add to each level of
+     *  indentation. If negative, no whitespace is added.
+     */
+    public JSONWriter(Writer w, int indentBy) {
+        this(w, indentBy, -1);
+    }
+
+    /**
+     * Make a fresh JSONWriter that optionally adds linefeeds and indentation
+     * for legibility, and optionally rounds every double value to a fixed
+     * number of decimal places. Rounding makes the text shorter and faster
+     * to write, but it loses information. It can be used to build one JSON
+     * text.
+     * @param w The writer that will receive the output.
+     * @param indentBy The number of spaces to add to each level of
+     *  indentation. If negative, no whitespace is added.
+     * @param decimals The number of decimal places to which each double is
+     *  rounded, at most 17. If negative, each double is written in the
+     *  shortest form that reads back as the same double.
+     * @throws IllegalArgumentException If decimals is greater than 17.
+     */
+    public JSONWriter(Writer w, int indentBy, int decimals) {
         this.comma = false;
         this.mode = 'i';
-        this.stack = new JSONObject[maxdepth];
+        this.stack = new JSONObject[initdepth];
         this.top = 0;
         this.writer = w;
+        this.indentBy = indentBy < 0 ? -1 : indentBy;
+        this.numbers = new JSONNumberWriter(decimals);
     }
 
     /**
-     * Append a value.
-     * @param s A string value.
+     * Append a value that is not an object or array.
+     * @param o The value.
      * @return this
-     * @throws JSONException If the value is out of sequence.
+     * @throws JSONException If the value is out of sequence, or if it is an
+     *  invalid number.
      */
-    private JSONWriter append(String s) throws JSONException {
-        if (s == null) {
-            throw new JSONException("Null pointer");
-        }
+    private JSONWriter append(Object o) throws JSONException {
         if (this.mode == 'o' || this.mode == 'a') {
             try {
-                if (this.comma && this.mode == 'a') {
-                    this.writer.write(',');
-                }
-                this.writer.write(s);
+                this.separate(false);
+                JSONObject.writeValue(this.writer, o, this.numbers);
             } catch (IOException e) {
                 throw new JSONException(e);
             }
@@ -129,23 +191,71 @@ public class JSONWriter {
         throw new JSONException("Value out of sequence.");
     }
 
+    /**
+     * Write whatever precedes the next value: a comma if the value follows
+     * another array element, and, when indenting, a linefeed and indentation
+     * if the value is a scalar array element. An object or array value writes
+     * its own linefeed and indentation.
+     * @param container True if the value is an object or array.
+     * @throws IOException If the writer fails.
+     */
+    private void separate(boolean container) throws IOException {
+        if (this.mode == 'a') {
+            if (this.comma) {
+                this.writer.write(',');
+            }
+            if (this.indentBy >= 0 && !container) {
+                this.newline((this.top - 1) * this.indentBy);
+            }
+        }
+    }
+
+    /**
+     * Write a linefeed followed by the specified indentation.
+     * @param indent The number of spaces.
+     * @throws IOException If the writer fails.
+     */
+    private void newline(int indent) throws IOException {
+        JSONObject.newline(this.writer, indent);
+    }
+
     /**
      * Begin appending a new array. All values until the balancing
      * <code>endArray</code> will be appended to this array. The
      * <code>endArray</code> method must be called to mark the array's end.
      * @return this
-     * @throws JSONException If the nesting is too deep, or if the object is
-     * started in the wrong place (for example as a key or after the end of the
-     * outermost array or object).
+     * @throws JSONException If the array is started in the wrong place (for
+     * example as a key or after the end of the outermost array or object).
      */
     public JSONWriter array() throws JSONException {
+        return this.begin(null, '[');
+    }
+
+    /**
+     * Begin appending a new array or object.
+     * @param jo The scope to open: null for an array, or an empty JSONObject
+     *  that records the keys of an object.
+     * @param c Opening character
+     * @return this
+     * @throws JSONException If misplaced.
+     */
+    private JSONWriter begin(JSONObject jo, char c) throws JSONException {
         if (this.mode == 'i' || this.mode == 'o' || this.mode == 'a') {
-            this.push(null);
-            this.append("[");
+            try {
+                this.separate(true);
+                if (this.indentBy >= 0) {
+                    this.newline(this.top * this.indentBy);
+                }
+                this.writer.write(c);
+            } catch (IOException e) {
+                throw new JSONException(e);
+            }
+            this.push(jo);
             this.comma = false;
             return this;
         }
-        throw new JSONException("Misplaced array.");
+        throw new JSONException(jo == null ? "Misplaced array." :
+                "Misplaced object.");
     }
 
     /**
@@ -160,12 +270,15 @@ public class JSONWriter {
             throw new JSONException(m == 'a' ? "Misplaced endArray." : 
             		"Misplaced endObject.");
         }
-        this.pop(m);
         try {
+            if (this.indentBy >= 0 && this.comma) {
+                this.newline((this.top - 1) * this.indentBy);
+            }
             this.writer.write(c);
         } catch (IOException e) {
             throw new JSONException(e);
         }
+        this.pop(m);
         this.comma = true;
         return this;
     }
@@ -208,7 +321,10 @@ public class JSONWriter {
                 if (this.comma) {
                     this.writer.write(',');
                 }
-                this.writer.write(JSONObject.quote(s));
+                if (this.indentBy >= 0) {
+                    this.newline((this.top - 1) * this.indentBy);
+                }
+                JSONObject.quote(s, this.writer);
                 this.writer.write(':');
                 this.comma = false;
                 this.mode = 'o';
@@ -226,22 +342,11 @@ public class JSONWriter {
      * <code>endObject</code> will be appended to this object. The
      * <code>endObject</code> method must be called to mark the object's end.
      * @return this
-     * @throws JSONException If the nesting is too deep, or if the object is
-     * started in the wrong place (for example as a key or after the end of the
-     * outermost array or object).
+     * @throws JSONException If the object is started in the wrong place (for
+     * example as a key or after the end of the outermost array or object).
      */
     public JSONWriter object() throws JSONException {
-        if (this.mode == 'i') {
-            this.mode = 'o';
-        }
-        if (this.mode == 'o' || this.mode == 'a') {
-            this.append("{");
-            this.push(new JSONObject());
-            this.comma = false;
-            return this;
-        }
-        throw new JSONException("Misplaced object.");
-
+        return this.begin(new JSONObject(), '{');
     }
 
 
@@ -259,17 +364,17 @@ public class JSONWriter {
             throw new JSONException("Nesting error.");
         }
         this.top -= 1;
+        this.stack[this.top] = null;
         this.mode = this.top == 0 ? 'd' : this.stack[this.top - 1] == null ? 'a' : 'k';
     }
 
     /**
-     * Push an array or object scope.
+     * Push an array or object scope. The stack grows as needed.
      * @param jo The scope to open.
-     * @throws JSONException If nesting is too deep.
      */
-    private void push(JSONObject jo) throws JSONException {
-        if (this.top >= maxdepth) {
-            throw new JSONException("Nesting too deep.");
+    private void push(JSONObject jo) {
+        if (this.top == this.stack.length) {
+            this.stack = Arrays.copyOf(this.stack, 2 * this.top);
         }
         this.stack[this.top] = jo;
         this.mode = jo == null ? 'a' : 'k';
@@ -285,7 +390,7 @@ public class JSONWriter {
      * @throws JSONException if boolean cannot be appended because it is out of sequence.
      */
     public JSONWriter value(boolean b) throws JSONException {
-        return this.append(b ? "true" : "false");
+        return this.append(Boolean.valueOf(b));
     }
 
     /**
@@ -305,12 +410,15 @@ public class JSONWriter {
      * @throws JSONException if long value cannot be appended because it is out of sequence.
      */
     public JSONWriter value(long l) throws JSONException {
-        return this.append(Long.toString(l));
+        return this.append(Long.valueOf(l));
     }
 
 
     /**
-     * Append an object value.
+     * Append an object value. A JSONObject or JSONArray is streamed to the
+     * writer rather than converted to a string first, and it may be the
+     * first value written. So is a JSONSlice holding an object or array,
+     * which is written as if it had been parsed.
      * @param o The object to append. It can be null, or a Boolean, Number,
      *   String, JSONObject, or JSONArray, or an object with a toJSONString()
      *   method.
@@ -318,6 +426,55 @@ public class JSONWriter {
      * @throws JSONException If the value is out of sequence.
      */
     public JSONWriter value(Object o) throws JSONException {
-        return this.append(JSONObject.valueToString(o));
+        if (o instanceof JSONObject || o instanceof JSONArray ||
+                (o instanceof JSONSlice && ((JSONSlice) o).isContainer())) {
+            return this.tree(o);
+        }
+        return this.append(o);
+    }
+
+    /**
+     * Append a JSONObject or JSONArray value, streaming it to the writer.
+     * @param o The object or array, or a JSONSlice holding one.
+     * @return this
+     * @throws JSONException If the value is out of sequence, or if it
+     *  contains an invalid number.
+     */
+    private JSONWriter tree(Object o) throws JSONException {
+        if (this.mode == 'i' || this.mode == 'o' || this.mode == 'a') {
+            try {
+                this.separate(true);
+            } catch (IOException e) {
+                throw new JSONException(e);
+            }
+            int indent = this.top * this.indentBy;
+            if (o instanceof JSONObject) {
+                if (this.indentBy >= 0) {
+                    ((JSONObject) o).write(this.writer, this.indentBy, indent, this.numbers);
+                } else {
+                    ((JSONObject) o).write(this.writer, this.numbers);
+                }
+            } else if (o instanceof JSONSlice) {
+                if (this.indentBy >= 0) {
+                    ((JSONSlice) o).write(this.writer, this.indentBy, indent, this.numbers);
+                } else {
+                    ((JSONSlice) o).write(this.writer, this.numbers);
+                }
+            } else {
+                if (this.indentBy >= 0) {
+                    ((JSONArray) o).write(this.writer, this.indentBy, indent, this.numbers);
+                } else {
+                    ((JSONArray) o).write(this.writer, this.numbers);
+                }
+            }
+            if (this.mode == 'o') {
+                this.mode = 'k';
+            } else if (this.mode == 'i') {
+                this.mode = 'd';
+            }
+            this.comma = true;
+            return this;
+        }
+        throw new JSONException("Value out of sequence.");
     }
 }